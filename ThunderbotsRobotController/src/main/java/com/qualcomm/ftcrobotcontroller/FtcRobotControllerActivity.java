@@ -73,12 +73,27 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.Serializable;
 
+import io.github.thunderbots.robotcontroller.DalvikConverter;
+import io.github.thunderbots.robotcontroller.OpModeRegister;
+import io.github.thunderbots.robotcontroller.logging.ThunderLog;
+
 public class FtcRobotControllerActivity extends Activity {
 
   private static final int REQUEST_CONFIG_WIFI_CHANNEL = 1;
   private static final boolean USE_DEVICE_EMULATION = false;
+
+  // keep the most recent Thunderbots log messages in a crash-proof file, for post-match analysis
+  private static final boolean USE_BINARY_LOG = true;
+  private static final String BINARY_LOG_FILE = "thunderbots/log.bin";
+  private static final int BINARY_LOG_SIZE = 4 * 1024 * 1024;
   private static final int NUM_GAMEPADS = 2;
 
+  // find and convert the op mode jars while the service binds and the hardware is set up
+  private static final boolean USE_PRE_CONVERSION = true;
+
+  // convert every op mode jar into one merged dex file, instead of one dex file per jar
+  private static final boolean USE_MERGED_DEX = false;
+
   public static final String CONFIGURE_FILENAME = "CONFIGURE_FILENAME";
 
   protected SharedPreferences preferences;
@@ -147,6 +162,14 @@ public class FtcRobotControllerActivity extends Activity {
   protected void onCreate(Bundle savedInstanceState) {
     super.onCreate(savedInstanceState);
 
+    if (USE_BINARY_LOG) {
+      ThunderLog.enableBinaryLog(new File(getFilesDir(), BINARY_LOG_FILE), BINARY_LOG_SIZE);
+    }
+    DalvikConverter.setMerge(USE_MERGED_DEX);
+    if (USE_PRE_CONVERSION) {
+      OpModeRegister.startPreConversion();
+    }
+
     setContentView(R.layout.activity_ftc_controller);
 
     utility = new Utility(this);
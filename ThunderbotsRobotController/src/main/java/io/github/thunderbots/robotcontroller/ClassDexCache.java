@@ -0,0 +1,208 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+
+import io.github.thunderbots.robotcontroller.logging.ThunderLog;
+
+/**
+ * {@code ClassDexCache} keeps the Dalvik-converted form of single class files between boots, so
+ * that {@link IncrementalDexer} only has to convert the classes of a JAR file that have changed.
+ * Every converted class is stored in its own file under a key from
+ * {@link ConversionCache#getClassKey(byte[])}, and the merged classes of a package are stored
+ * under a key from {@link ConversionCache#getPackageKey(java.util.List)}. The modification time
+ * of each file is updated whenever it is used, and when the total size of the cache grows past
+ * {@link #MAX_CACHE_SIZE}, the least-recently-used files are deleted.
+ */
+public class ClassDexCache {
+
+    /**
+     * The sub-directory, inside the app's private cache file, that will contain all the
+     * converted classes.
+     */
+    private static final String CACHE_DIRECTORY = "/classes/";
+
+    /**
+     * The file extension given to every converted class in the cache.
+     */
+    private static final String EXTENSION = ".dex";
+
+    /**
+     * The file extension given to a converted class while it is being written.
+     */
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    /**
+     * The maximum total size, in bytes, of all the converted classes in the cache.
+     */
+    private static final long MAX_CACHE_SIZE = 32L * 1024 * 1024;
+
+    /**
+     * The keys of every class that has been used since the app started. These classes will not
+     * be evicted, even if the cache is over its size limit.
+     */
+    private static Set<String> usedKeys = new HashSet<String>();
+
+    /**
+     * Gets the converted class that is stored under the given key, and marks it as recently used.
+     *
+     * @param key the cache key of the class.
+     * @return the contents of the converted class, or {@code null} if there is no class stored
+     * under the key, or it cannot be read.
+     */
+    public static synchronized byte[] get(String key) {
+        File file = getFile(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            byte[] contents = readFile(file);
+            file.setLastModified(System.currentTimeMillis());
+            usedKeys.add(key);
+            return contents;
+        } catch (IOException e) {
+            ThunderLog.w("The cached class " + key + " cannot be read", e);
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Stores a converted class under the given key. The class is written to a temporary file
+     * first, so that an interrupted write cannot leave a partial class in the cache. A class
+     * that cannot be stored is only logged, since it can always be converted again.
+     *
+     * @param key the cache key of the class.
+     * @param dex the contents of the converted class.
+     */
+    public static synchronized void put(String key, byte[] dex) {
+        File file = getFile(key);
+        File temp = new File(getCacheDirectory(), key + TEMP_EXTENSION);
+        try {
+            OutputStream out = new FileOutputStream(temp);
+            try {
+                out.write(dex);
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(file)) {
+                ThunderLog.w("The converted class " + key + " cannot be cached");
+                temp.delete();
+                return;
+            }
+            usedKeys.add(key);
+        } catch (IOException e) {
+            ThunderLog.w("The converted class " + key + " cannot be cached", e);
+            temp.delete();
+        }
+    }
+
+    /**
+     * Deletes least-recently-used classes until the cache fits within {@link #MAX_CACHE_SIZE},
+     * along with any temporary files left behind by an interrupted write. Classes that have been
+     * used since the app started are never deleted.
+     */
+    public static synchronized void trim() {
+        File[] files = getCacheDirectory().listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long difference = a.lastModified() - b.lastModified();
+                return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+            }
+        });
+        long totalSize = 0;
+        for (File f : files) {
+            if (f.getName().endsWith(TEMP_EXTENSION)) {
+                f.delete();
+            } else {
+                totalSize += f.length();
+            }
+        }
+        for (int i = 0; i < files.length && totalSize > MAX_CACHE_SIZE; i++) {
+            String name = files[i].getName();
+            if (!name.endsWith(EXTENSION)) {
+                continue;
+            }
+            String key = name.substring(0, name.length() - EXTENSION.length());
+            if (!usedKeys.contains(key)) {
+                totalSize -= files[i].length();
+                files[i].delete();
+            }
+        }
+    }
+
+    /**
+     * Gets the file that the converted class with the given key is stored in.
+     *
+     * @param key the cache key of the class.
+     * @return the file for the key.
+     */
+    private static File getFile(String key) {
+        return new File(getCacheDirectory(), key + EXTENSION);
+    }
+
+    /**
+     * Reads the entire contents of a file.
+     *
+     * @param file the file to read.
+     * @return the contents of the file.
+     * @throws IOException if the file cannot be read.
+     */
+    private static byte[] readFile(File file) throws IOException {
+        byte[] contents = new byte[(int) file.length()];
+        InputStream in = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < contents.length) {
+                int read = in.read(contents, offset, contents.length - offset);
+                if (read == -1) {
+                    throw new IOException(file.getName() + " ended unexpectedly");
+                }
+                offset += read;
+            }
+        } finally {
+            in.close();
+        }
+        return contents;
+    }
+
+    /**
+     * Returns the directory that contains the converted classes.
+     *
+     * @return the cache directory.
+     */
+    private static File getCacheDirectory() {
+        File directory = new File(FileLoader.getCacheDirectory(), CACHE_DIRECTORY);
+        directory.mkdirs();
+        return directory;
+    }
+
+}
@@ -0,0 +1,192 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller;
+
+/**
+ * A {@code ClassFileInfo} holds the information about a class that {@link ClassFileReader} reads
+ * from its class file. None of this information requires the class to be loaded.
+ */
+public class ClassFileInfo {
+
+    /**
+     * The access flag for public classes and methods.
+     */
+    public static final int ACC_PUBLIC = 0x0001;
+
+    /**
+     * The access flag for static nested classes.
+     */
+    public static final int ACC_STATIC = 0x0008;
+
+    /**
+     * The access flag for interfaces.
+     */
+    public static final int ACC_INTERFACE = 0x0200;
+
+    /**
+     * The access flag for abstract classes.
+     */
+    public static final int ACC_ABSTRACT = 0x0400;
+
+    /**
+     * The binary name of the class, such as {@code com.example.Outer$Inner}.
+     */
+    String name;
+
+    /**
+     * The binary name of the superclass, or {@code null} if the class has no superclass.
+     */
+    String superName;
+
+    /**
+     * The access flags of the class, as written in the class file.
+     */
+    int accessFlags;
+
+    /**
+     * The access flags of the class, as written in the {@code InnerClasses} attribute, or
+     * {@code -1} if the class is not a nested class.
+     */
+    int innerAccessFlags = -1;
+
+    /**
+     * Whether the class is declared as a member of another class. This is {@code false} for top
+     * level, local and anonymous classes.
+     */
+    boolean member;
+
+    /**
+     * The simple name of the class, or an empty string if the class is anonymous.
+     */
+    String simpleName;
+
+    /**
+     * Whether the class declares a public constructor that takes no arguments.
+     */
+    boolean publicNoArgConstructor;
+
+    /**
+     * Whether the class has an {@code Active} annotation.
+     */
+    boolean active;
+
+    /**
+     * Whether the class has an {@code OpMode} annotation.
+     */
+    boolean opModeAnnotation;
+
+    /**
+     * The {@code name} value of the class's {@code OpMode} annotation, or {@code null} if there is
+     * no annotation or it does not declare a name.
+     */
+    String opModeName;
+
+    /**
+     * Gets the binary name of the class.
+     *
+     * @return the binary name of the class.
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Gets the binary name of the superclass.
+     *
+     * @return the binary name of the superclass, or {@code null} if the class has no superclass.
+     */
+    public String getSuperName() {
+        return this.superName;
+    }
+
+    /**
+     * Gets the simple name of the class.
+     *
+     * @return the simple name of the class, or an empty string if the class is anonymous.
+     */
+    public String getSimpleName() {
+        return this.simpleName;
+    }
+
+    /**
+     * Determines if the class has an {@code Active} annotation.
+     *
+     * @return {@code true} if the class is active, or {@code false} otherwise.
+     * @see AnnotationReader#isActive(Class)
+     */
+    public boolean isActive() {
+        return this.active;
+    }
+
+    /**
+     * Determines if the class has an {@code OpMode} annotation.
+     *
+     * @return {@code true} if the class has an {@code OpMode} annotation, or {@code false}
+     * otherwise.
+     */
+    public boolean hasOpModeAnnotation() {
+        return this.opModeAnnotation;
+    }
+
+    /**
+     * Determines the name of the class as an op mode, following the same rules as
+     * {@link AnnotationReader#getOpModeName(Class)}.
+     *
+     * @return the name of the op mode.
+     */
+    public String getOpModeName() {
+        if (this.opModeName != null && !this.opModeName.equals("")) {
+            return this.opModeName;
+        }
+        return this.simpleName;
+    }
+
+    /**
+     * Gets the effective access flags of the class. For nested classes, these are the flags from
+     * the {@code InnerClasses} attribute, which is where the source-level modifiers are kept.
+     *
+     * @return the access flags of the class.
+     */
+    public int getModifiers() {
+        return this.innerAccessFlags != -1 ? this.innerAccessFlags : this.accessFlags;
+    }
+
+    /**
+     * Determines if the class is a non-static member class, which can only be constructed with an
+     * instance of its enclosing class.
+     *
+     * @return {@code true} if the class requires an enclosing instance, or {@code false} otherwise.
+     */
+    public boolean requiresEnclosingInstance() {
+        return this.member && (this.innerAccessFlags & ACC_STATIC) == 0;
+    }
+
+    /**
+     * Determines if the class can be constructed by another package through its public no-arg
+     * constructor. The class must be public, concrete, and must not require an enclosing instance.
+     *
+     * @return {@code true} if the class is instantiable, or {@code false} otherwise.
+     */
+    public boolean isInstantiable() {
+        int modifiers = this.getModifiers();
+        return (modifiers & ACC_PUBLIC) != 0
+                && (modifiers & (ACC_ABSTRACT | ACC_INTERFACE)) == 0
+                && !this.requiresEnclosingInstance()
+                && this.publicNoArgConstructor;
+    }
+
+}
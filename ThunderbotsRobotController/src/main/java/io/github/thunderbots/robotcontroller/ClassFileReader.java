@@ -0,0 +1,393 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * {@code ClassFileReader} reads the information that is needed to find op modes directly from the
+ * bytes of a class file, without loading the class. Only the constant pool, the class header, the
+ * constructors and the class-level attributes are examined; everything else is skipped.
+ */
+public class ClassFileReader {
+
+    /**
+     * The magic number that every class file begins with.
+     */
+    private static final int CLASS_MAGIC = 0xCAFEBABE;
+
+    /**
+     * The type descriptor of the {@code Active} annotation.
+     */
+    private static final String ACTIVE_DESCRIPTOR = "Lio/github/thunderbots/annotation/Active;";
+
+    /**
+     * The type descriptor of the {@code OpMode} annotation.
+     */
+    private static final String OP_MODE_DESCRIPTOR = "Lio/github/thunderbots/annotation/OpMode;";
+
+    /*
+     * The tags of the constant pool entries, as defined by the JVM specification.
+     */
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    /**
+     * The stream that the class file is read from.
+     */
+    private final DataInputStream in;
+
+    /**
+     * The UTF-8 strings in the constant pool, by index. Entries that are not UTF-8 strings are
+     * {@code null}.
+     */
+    private String[] utf8;
+
+    /**
+     * The name index of every class constant in the constant pool, by index.
+     */
+    private int[] classNameIndex;
+
+    /**
+     * The class index of every method reference, and the name index of every name-and-type
+     * constant, in the constant pool, by index. This is only kept while collecting method ids.
+     */
+    private int[] firstIndex;
+
+    /**
+     * The name-and-type index of every method reference, and the descriptor index of every
+     * name-and-type constant, in the constant pool, by index. This is only kept while collecting
+     * method ids.
+     */
+    private int[] secondIndex;
+
+    /**
+     * The ids of every method that the class declares or refers to, or {@code null} if they are
+     * not being collected.
+     */
+    private Set<String> methodIds;
+
+    /**
+     * Constructs a reader for the given class file bytes.
+     *
+     * @param classFile the bytes of the class file.
+     */
+    private ClassFileReader(byte[] classFile) {
+        this.in = new DataInputStream(new ByteArrayInputStream(classFile));
+    }
+
+    /**
+     * Reads the information about a class from the bytes of its class file.
+     *
+     * @param classFile the bytes of the class file.
+     * @return the information about the class.
+     * @throws IOException if the bytes are not a valid class file.
+     */
+    public static ClassFileInfo read(byte[] classFile) throws IOException {
+        return new ClassFileReader(classFile).read();
+    }
+
+    /**
+     * Reads the ids of every method that a class declares or refers to, in the form
+     * {@code owner.name(descriptor)}, where the owner is an internal class name. A dex file gives
+     * every distinct id one entry in its method table, which can hold at most 65536 entries, so
+     * the size of the union of these sets over every class in a dex file estimates how full its
+     * method table will be.
+     *
+     * @param classFile the bytes of the class file.
+     * @return the method ids.
+     * @throws IOException if the bytes are not a valid class file.
+     */
+    public static Set<String> readMethodIds(byte[] classFile) throws IOException {
+        ClassFileReader reader = new ClassFileReader(classFile);
+        reader.methodIds = new HashSet<String>();
+        reader.read();
+        return reader.methodIds;
+    }
+
+    /**
+     * Reads the class file.
+     *
+     * @return the information about the class.
+     * @throws IOException if the bytes are not a valid class file.
+     */
+    private ClassFileInfo read() throws IOException {
+        if (this.in.readInt() != CLASS_MAGIC) {
+            throw new IOException("Not a class file");
+        }
+        this.in.readUnsignedShort(); // minor version
+        this.in.readUnsignedShort(); // major version
+        this.readConstantPool();
+
+        ClassFileInfo info = new ClassFileInfo();
+        info.accessFlags = this.in.readUnsignedShort();
+        int thisClass = this.in.readUnsignedShort();
+        info.name = this.getClassName(thisClass);
+        info.superName = this.getClassName(this.in.readUnsignedShort());
+        info.simpleName = info.name.substring(
+                Math.max(info.name.lastIndexOf('.'), info.name.lastIndexOf('$')) + 1);
+        this.skip(2 * this.in.readUnsignedShort()); // interfaces
+
+        int fieldCount = this.in.readUnsignedShort();
+        for (int i = 0; i < fieldCount; i++) {
+            this.skip(6);
+            this.skipAttributes();
+        }
+        int methodCount = this.in.readUnsignedShort();
+        for (int i = 0; i < methodCount; i++) {
+            int flags = this.in.readUnsignedShort();
+            String name = this.utf8[this.in.readUnsignedShort()];
+            String descriptor = this.utf8[this.in.readUnsignedShort()];
+            if (this.methodIds != null) {
+                this.methodIds.add(this.utf8[this.classNameIndex[thisClass]] + "." + name
+                        + descriptor);
+            }
+            if ((flags & ClassFileInfo.ACC_PUBLIC) != 0 && "<init>".equals(name)
+                    && "()V".equals(descriptor)) {
+                info.publicNoArgConstructor = true;
+            }
+            this.skipAttributes();
+        }
+
+        int attributeCount = this.in.readUnsignedShort();
+        for (int i = 0; i < attributeCount; i++) {
+            String name = this.utf8[this.in.readUnsignedShort()];
+            int length = this.in.readInt();
+            if ("RuntimeVisibleAnnotations".equals(name)) {
+                this.readAnnotations(info);
+            } else if ("InnerClasses".equals(name)) {
+                this.readInnerClasses(info, thisClass);
+            } else {
+                this.skip(length);
+            }
+        }
+        return info;
+    }
+
+    /**
+     * Reads the constant pool, keeping the UTF-8 strings and class references.
+     *
+     * @throws IOException if the constant pool is not valid.
+     */
+    private void readConstantPool() throws IOException {
+        int count = this.in.readUnsignedShort();
+        this.utf8 = new String[count];
+        this.classNameIndex = new int[count];
+        boolean collect = this.methodIds != null;
+        if (collect) {
+            this.firstIndex = new int[count];
+            this.secondIndex = new int[count];
+        }
+        boolean[] methodRefs = collect ? new boolean[count] : null;
+        for (int i = 1; i < count; i++) {
+            int tag = this.in.readUnsignedByte();
+            switch (tag) {
+                case CONSTANT_UTF8:
+                    this.utf8[i] = this.in.readUTF();
+                    break;
+                case CONSTANT_CLASS:
+                    this.classNameIndex[i] = this.in.readUnsignedShort();
+                    break;
+                case CONSTANT_STRING:
+                case CONSTANT_METHOD_TYPE:
+                case CONSTANT_MODULE:
+                case CONSTANT_PACKAGE:
+                    this.skip(2);
+                    break;
+                case CONSTANT_METHOD_HANDLE:
+                    this.skip(3);
+                    break;
+                case CONSTANT_METHODREF:
+                case CONSTANT_INTERFACE_METHODREF:
+                case CONSTANT_NAME_AND_TYPE:
+                    if (collect) {
+                        methodRefs[i] = tag != CONSTANT_NAME_AND_TYPE;
+                        this.firstIndex[i] = this.in.readUnsignedShort();
+                        this.secondIndex[i] = this.in.readUnsignedShort();
+                    } else {
+                        this.skip(4);
+                    }
+                    break;
+                case CONSTANT_INTEGER:
+                case CONSTANT_FLOAT:
+                case CONSTANT_FIELDREF:
+                case CONSTANT_DYNAMIC:
+                case CONSTANT_INVOKE_DYNAMIC:
+                    this.skip(4);
+                    break;
+                case CONSTANT_LONG:
+                case CONSTANT_DOUBLE:
+                    this.skip(8);
+                    i++; // these constants take two slots
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+        if (collect) {
+            for (int i = 1; i < count; i++) {
+                if (methodRefs[i]) {
+                    int nameAndType = this.secondIndex[i];
+                    this.methodIds.add(this.utf8[this.classNameIndex[this.firstIndex[i]]] + "."
+                            + this.utf8[this.firstIndex[nameAndType]]
+                            + this.utf8[this.secondIndex[nameAndType]]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a {@code RuntimeVisibleAnnotations} attribute, looking for the {@code Active} and
+     * {@code OpMode} annotations.
+     *
+     * @param info the class information to fill in.
+     * @throws IOException if the attribute is not valid.
+     */
+    private void readAnnotations(ClassFileInfo info) throws IOException {
+        int count = this.in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            String type = this.utf8[this.in.readUnsignedShort()];
+            if (ACTIVE_DESCRIPTOR.equals(type)) {
+                info.active = true;
+            } else if (OP_MODE_DESCRIPTOR.equals(type)) {
+                info.opModeAnnotation = true;
+            }
+            int pairs = this.in.readUnsignedShort();
+            for (int j = 0; j < pairs; j++) {
+                String element = this.utf8[this.in.readUnsignedShort()];
+                String value = this.readElementValue();
+                if (OP_MODE_DESCRIPTOR.equals(type) && "name".equals(element)) {
+                    info.opModeName = value;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads an annotation element value.
+     *
+     * @return the value, if it is a string constant, or {@code null} otherwise.
+     * @throws IOException if the element value is not valid.
+     */
+    private String readElementValue() throws IOException {
+        int tag = this.in.readUnsignedByte();
+        switch (tag) {
+            case 's':
+                return this.utf8[this.in.readUnsignedShort()];
+            case 'e':
+                this.skip(4);
+                return null;
+            case '@':
+                this.skip(2);
+                int pairs = this.in.readUnsignedShort();
+                for (int i = 0; i < pairs; i++) {
+                    this.skip(2);
+                    this.readElementValue();
+                }
+                return null;
+            case '[':
+                int values = this.in.readUnsignedShort();
+                for (int i = 0; i < values; i++) {
+                    this.readElementValue();
+                }
+                return null;
+            default:
+                this.skip(2);
+                return null;
+        }
+    }
+
+    /**
+     * Reads an {@code InnerClasses} attribute, looking for the entry that describes this class.
+     *
+     * @param info the class information to fill in.
+     * @param thisClass the constant pool index of this class.
+     * @throws IOException if the attribute is not valid.
+     */
+    private void readInnerClasses(ClassFileInfo info, int thisClass) throws IOException {
+        int count = this.in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            int inner = this.in.readUnsignedShort();
+            int outer = this.in.readUnsignedShort();
+            int innerName = this.in.readUnsignedShort();
+            int flags = this.in.readUnsignedShort();
+            if (inner == thisClass) {
+                info.innerAccessFlags = flags;
+                info.member = outer != 0;
+                info.simpleName = innerName != 0 ? this.utf8[innerName] : "";
+            }
+        }
+    }
+
+    /**
+     * Skips over a list of attributes.
+     *
+     * @throws IOException if the attributes are not valid.
+     */
+    private void skipAttributes() throws IOException {
+        int count = this.in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            this.skip(2);
+            this.skip(this.in.readInt());
+        }
+    }
+
+    /**
+     * Skips the given number of bytes.
+     *
+     * @param length the number of bytes to skip.
+     * @throws IOException if the end of the class file is reached first.
+     */
+    private void skip(int length) throws IOException {
+        if (this.in.skipBytes(length) != length) {
+            throw new IOException("Unexpected end of class file");
+        }
+    }
+
+    /**
+     * Gets the binary name of the class referred to by the given constant pool index.
+     *
+     * @param index the index of a class constant, or {@code 0}.
+     * @return the binary name of the class, or {@code null} if the index is {@code 0}.
+     */
+    private String getClassName(int index) {
+        if (index == 0) {
+            return null;
+        }
+        return this.utf8[this.classNameIndex[index]].replace('/', '.');
+    }
+
+}
@@ -0,0 +1,657 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import com.android.dx.Version;
+
+import io.github.thunderbots.robotcontroller.logging.ThunderLog;
+import io.github.thunderbots.robotcontroller.metrics.Metrics;
+
+/**
+ * {@code ConversionCache} keeps Dalvik-converted JAR files between boots, so that a JAR file that
+ * has not changed does not have to be converted again. Every converted file is stored under a key
+ * that is derived from the contents of the source JAR file and the version of the conversion
+ * tools, and a small manifest records the size of each entry in least-recently-used order. When
+ * the total size of the cache grows past {@link #MAX_CACHE_SIZE}, the least-recently-used entries
+ * are deleted.
+ */
+public class ConversionCache {
+
+    /**
+     * The sub-directory, inside the app's private cache file, that will contain all the
+     * Dalvik-converted JAR files.
+     */
+    private static final String CACHE_DIRECTORY = "/converted/";
+
+    /**
+     * The name of the manifest file, inside the cache directory.
+     */
+    private static final String MANIFEST_NAME = "manifest";
+
+    /**
+     * The name of the file, inside the cache directory, that stores the computed keys.
+     */
+    private static final String KEYS_NAME = "keys";
+
+    /**
+     * The name of the file, inside the cache directory, that stores the merged key of the last
+     * set of JAR files that could not be merged.
+     */
+    private static final String UNMERGEABLE_NAME = "unmergeable";
+
+    /**
+     * The file extension given to every converted JAR file in the cache.
+     */
+    private static final String EXTENSION = ".jar";
+
+    /**
+     * The version of the conversion process. This is included in every key, and should be changed
+     * whenever a change to {@link DalvikConverter} makes previously converted files invalid.
+     */
+    private static final String TOOL_VERSION = "1";
+
+    /**
+     * The algorithm that is used to hash the contents of the source JAR files.
+     */
+    private static final String HASH_ALGORITHM = "SHA-1";
+
+    /**
+     * The maximum total size, in bytes, of all the converted files in the cache.
+     */
+    private static final long MAX_CACHE_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * The size of the buffer that is used while hashing files.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The size of every entry in the cache, mapped by key. The map is kept in access order, so
+     * that the first entry is always the least-recently-used one.
+     */
+    private static Map<String, Long> entries;
+
+    /**
+     * The keys of every entry that has been used since the app started. These entries will not
+     * be evicted, even if the cache is over its size limit.
+     */
+    private static Set<String> usedKeys = new HashSet<String>();
+
+    /**
+     * The keys of the entries, in the order that they were last read from or written to the
+     * manifest.
+     */
+    private static List<String> savedOrder = new ArrayList<String>();
+
+    /**
+     * The keys that have been computed on a previous boot, each followed by a space and the
+     * fingerprint of the file it was computed from, mapped by the size, modification time and
+     * path of the file. This is loaded from the key file the first time a key is requested.
+     */
+    private static Map<String, String> computedKeys;
+
+    /**
+     * The keys that have been computed or verified since the app started, mapped by the size,
+     * modification time and path of the file they were computed from.
+     */
+    private static Map<String, String> verifiedKeys = new HashMap<String, String>();
+
+    /**
+     * Computes the cache key for the given source JAR file. The key is a hash of the contents of
+     * the file and the version of the conversion tools, so a key will only match a converted file
+     * that was produced from exactly the same input by exactly the same tools.
+     * <p>
+     * A file is not hashed again on the same boot unless its size or modification time changes.
+     * On a later boot, the size and modification time are not enough, since a FAT file system
+     * only stores the modification time to two seconds, so a key from a previous boot is only
+     * reused if the file's fingerprint has not changed either. The fingerprint is read from the
+     * central directory of the JAR file, which lists the CRC of every entry, so the rest of the
+     * file does not have to be read.
+     *
+     * @param jar the source JAR file.
+     * @return the cache key for the given file.
+     * @throws IOException if the file cannot be read.
+     */
+    public static String getKey(File jar) throws IOException {
+        String fileId = getFileId(jar);
+        String stored;
+        synchronized (ConversionCache.class) {
+            String key = verifiedKeys.get(fileId);
+            if (key != null) {
+                Metrics.counter("cache.keysReused").increment();
+                return key;
+            }
+            stored = getComputedKeys().get(fileId);
+        }
+        String fingerprint = getFingerprint(jar);
+        String key;
+        if (stored != null && fingerprint != null && stored.endsWith(" " + fingerprint)) {
+            key = stored.substring(0, stored.indexOf(' '));
+            Metrics.counter("cache.keysVerified").increment();
+        } else {
+            key = computeKey(jar);
+            Metrics.counter("cache.keysHashed").increment();
+        }
+        synchronized (ConversionCache.class) {
+            verifiedKeys.put(fileId, key);
+            if (fingerprint != null && !(key + " " + fingerprint).equals(stored)) {
+                getComputedKeys().put(fileId, key + " " + fingerprint);
+                saveComputedKeys();
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Computes a fingerprint of a JAR file from its central directory: the name, CRC and size of
+     * every entry. Any change to the contents of an entry changes its CRC, so this identifies the
+     * contents of the file without reading all of it.
+     *
+     * @param jar the source JAR file.
+     * @return the fingerprint of the file, or {@code null} if it is not a readable zip file.
+     */
+    private static String getFingerprint(File jar) {
+        MessageDigest digest = getDigest();
+        try {
+            ZipFile zip = new ZipFile(jar);
+            try {
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    digest.update((entry.getName() + ":" + entry.getCrc() + ":"
+                            + entry.getSize() + "\n").getBytes("UTF-8"));
+                }
+            } finally {
+                zip.close();
+            }
+        } catch (IOException e) {
+            // the whole file is hashed instead
+            return null;
+        }
+        return toHexString(digest.digest());
+    }
+
+    /**
+     * Builds a string that identifies the given file in the state it is in now. The path is the
+     * last part of the string, since it may contain any character.
+     *
+     * @param file the file to identify.
+     * @return the size, modification time and path of the file.
+     */
+    private static String getFileId(File file) {
+        return file.length() + ":" + file.lastModified() + ":" + file.getAbsolutePath();
+    }
+
+    /**
+     * Computes the cache key for the given file by hashing its contents.
+     *
+     * @param jar the source JAR file.
+     * @return the cache key for the given file.
+     * @throws IOException if the file cannot be read.
+     */
+    private static String computeKey(File jar) throws IOException {
+        MessageDigest digest = getDigest();
+        digest.update((TOOL_VERSION + ":" + Version.VERSION + ":").getBytes("UTF-8"));
+        InputStream in = new FileInputStream(jar);
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return toHexString(digest.digest());
+    }
+
+    /**
+     * Computes the cache key for a single converted file that merges several source JAR files.
+     * The key depends on the order of the source files as well as their keys, since the first of
+     * two classes with the same name is the one that is kept.
+     *
+     * @param keys the keys of the source JAR files, in class path order.
+     * @return the cache key for the merged file.
+     */
+    public static String getMergedKey(List<String> keys) {
+        MessageDigest digest = getDigest();
+        try {
+            digest.update(("merged:" + TOOL_VERSION + ":").getBytes("UTF-8"));
+            for (String key : keys) {
+                digest.update((key + "\n").getBytes("UTF-8"));
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is not supported", e);
+        }
+        return toHexString(digest.digest());
+    }
+
+    /**
+     * Computes the key that the converted form of a single class file is stored under in the
+     * {@link ClassDexCache}. Like the key of a JAR file, it depends on the contents of the class
+     * file and the version of the conversion tools.
+     *
+     * @param classFile the contents of the class file.
+     * @return the cache key for the class file.
+     */
+    public static String getClassKey(byte[] classFile) {
+        MessageDigest digest = getDigest();
+        try {
+            digest.update(("class:" + TOOL_VERSION + ":" + Version.VERSION + ":")
+                    .getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is not supported", e);
+        }
+        digest.update(classFile);
+        return toHexString(digest.digest());
+    }
+
+    /**
+     * Computes the key that the converted classes of a single package are stored under in the
+     * {@link ClassDexCache}, once they have been merged. The key depends on the keys of the
+     * classes, in order, so it only matches if every class in the package is unchanged.
+     *
+     * @param classKeys the keys of the classes in the package, from
+     * {@link #getClassKey(byte[])}.
+     * @return the cache key for the merged package.
+     */
+    public static String getPackageKey(List<String> classKeys) {
+        MessageDigest digest = getDigest();
+        try {
+            digest.update(("package:" + TOOL_VERSION + ":").getBytes("UTF-8"));
+            for (String key : classKeys) {
+                digest.update((key + "\n").getBytes("UTF-8"));
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is not supported", e);
+        }
+        return toHexString(digest.digest());
+    }
+
+    /**
+     * Gets the converted file that is stored under the given key, and marks it as recently used.
+     * The new order of the entries is not written to the manifest until
+     * {@link #saveOrder()} is called, or the contents of the cache change, so a boot that only
+     * reads from the cache does not write to storage for every JAR file.
+     *
+     * @param key the cache key of the file.
+     * @return the converted file, or {@code null} if there is no file stored under the key.
+     */
+    public static synchronized File get(String key) {
+        Map<String, Long> entries = getEntries();
+        // get() rather than containsKey(), since only get() moves the entry in access order
+        if (entries.get(key) == null) {
+            return null;
+        }
+        File file = getOutputFile(key);
+        if (!file.isFile()) {
+            entries.remove(key);
+            saveManifest();
+            return null;
+        }
+        usedKeys.add(key);
+        return file;
+    }
+
+    /**
+     * Writes the order in which the entries were used to the manifest, if it is different from
+     * the order in the manifest. This should be called once the cache has been used for every JAR
+     * file that is being converted, so that the JAR files that are used on every boot, in the
+     * same order, never cause the manifest to be written.
+     */
+    public static synchronized void saveOrder() {
+        if (entries != null && !savedOrder.equals(new ArrayList<String>(entries.keySet()))) {
+            saveManifest();
+        }
+    }
+
+    /**
+     * Records that the file returned by {@link #getOutputFile(String)} has been successfully
+     * written for the given key. If this causes the cache to grow past its size limit, the
+     * least-recently-used entries are evicted.
+     *
+     * @param key the cache key of the file.
+     */
+    public static synchronized void put(String key) {
+        File file = getOutputFile(key);
+        getEntries().put(key, file.length());
+        usedKeys.add(key);
+        evict();
+        saveManifest();
+    }
+
+    /**
+     * Determines if the JAR files with the given merged key are already known to not fit in a
+     * single merged file, so that they do not have to be merged again just to fail again.
+     *
+     * @param key the merged key of the JAR files, as returned by {@link #getMergedKey(List)}.
+     * @return {@code true} if {@link #setUnmergeable(String)} was last called with the same key,
+     * or {@code false} otherwise.
+     */
+    public static synchronized boolean isUnmergeable(String key) {
+        File file = new File(getCacheDirectory(), UNMERGEABLE_NAME);
+        if (!file.isFile()) {
+            return false;
+        }
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader(file));
+            try {
+                return key.equals(reader.readLine());
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            ThunderLog.w("The unmergeable key cannot be read", e);
+            return false;
+        }
+    }
+
+    /**
+     * Records that the JAR files with the given merged key do not fit in a single merged file.
+     * Only the most recent key is kept, since any change to the JAR files changes the key.
+     *
+     * @param key the merged key of the JAR files, as returned by {@link #getMergedKey(List)}.
+     */
+    public static synchronized void setUnmergeable(String key) {
+        File file = new File(getCacheDirectory(), UNMERGEABLE_NAME);
+        try {
+            PrintWriter writer = new PrintWriter(new FileWriter(file));
+            try {
+                writer.println(key);
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            ThunderLog.w("The unmergeable key cannot be saved", e);
+        }
+    }
+
+    /**
+     * Gets the file that a converted JAR file should be written to, for the given key. The file
+     * will not be part of the cache until it is added with {@link #put(String)}.
+     *
+     * @param key the cache key of the file.
+     * @return the output file for the key.
+     */
+    public static File getOutputFile(String key) {
+        return new File(getCacheDirectory(), key + EXTENSION);
+    }
+
+    /**
+     * Gets the key that the given converted file is stored under in the cache.
+     *
+     * @param converted a converted file.
+     * @return the key of the file, or {@code null} if the file is not stored in the cache.
+     */
+    public static synchronized String getStoredKey(File converted) {
+        String name = converted.getName();
+        if (!name.endsWith(EXTENSION) || !converted.getParentFile().equals(getCacheDirectory())) {
+            return null;
+        }
+        String key = name.substring(0, name.length() - EXTENSION.length());
+        return getEntries().containsKey(key) ? key : null;
+    }
+
+    /**
+     * Deletes least-recently-used entries until the cache fits within {@link #MAX_CACHE_SIZE}.
+     * Entries that have been used since the app started are never deleted.
+     */
+    private static void evict() {
+        long totalSize = 0;
+        for (long size : entries.values()) {
+            totalSize += size;
+        }
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (totalSize > MAX_CACHE_SIZE && it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            if (!usedKeys.contains(entry.getKey())) {
+                getOutputFile(entry.getKey()).delete();
+                OpModeIndex.delete(entry.getKey());
+                totalSize -= entry.getValue();
+                it.remove();
+                ThunderLog.i("Evicted {} from the conversion cache", entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Gets the map of cache entries, reading the manifest file the first time this is called.
+     *
+     * @return the map of cache entries.
+     */
+    private static Map<String, Long> getEntries() {
+        if (entries == null) {
+            entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+            loadManifest();
+            savedOrder = new ArrayList<String>(entries.keySet());
+            deleteOrphans();
+        }
+        return entries;
+    }
+
+    /**
+     * Reads the manifest file into the map of entries. If the manifest cannot be read, the cache
+     * is treated as empty.
+     */
+    private static void loadManifest() {
+        File manifest = new File(getCacheDirectory(), MANIFEST_NAME);
+        if (!manifest.isFile()) {
+            return;
+        }
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader(manifest));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] parts = line.split(" ");
+                    if (parts.length == 2) {
+                        entries.put(parts[0], Long.parseLong(parts[1]));
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            ThunderLog.w("The conversion cache manifest cannot be read", e);
+            entries.clear();
+        } catch (NumberFormatException e) {
+            ThunderLog.w("The conversion cache manifest is corrupt", e);
+            entries.clear();
+        }
+    }
+
+    /**
+     * Writes the map of entries to the manifest file, in least-recently-used order. The manifest
+     * is written to a temporary file first, so that an interrupted write cannot corrupt it.
+     */
+    private static void saveManifest() {
+        File manifest = new File(getCacheDirectory(), MANIFEST_NAME);
+        File temp = new File(getCacheDirectory(), MANIFEST_NAME + ".tmp");
+        try {
+            PrintWriter writer = new PrintWriter(new FileWriter(temp));
+            try {
+                for (Map.Entry<String, Long> entry : entries.entrySet()) {
+                    writer.println(entry.getKey() + " " + entry.getValue());
+                }
+            } finally {
+                writer.close();
+            }
+            if (!temp.renameTo(manifest)) {
+                ThunderLog.w("The conversion cache manifest cannot be saved");
+            } else {
+                savedOrder = new ArrayList<String>(entries.keySet());
+                Metrics.counter("cache.manifestWrites").increment();
+            }
+        } catch (IOException e) {
+            ThunderLog.w("The conversion cache manifest cannot be saved", e);
+        }
+    }
+
+    /**
+     * Gets the map of computed keys, reading the key file the first time this is called.
+     *
+     * @return the map of computed keys.
+     */
+    private static Map<String, String> getComputedKeys() {
+        if (computedKeys == null) {
+            computedKeys = new HashMap<String, String>();
+            loadComputedKeys();
+        }
+        return computedKeys;
+    }
+
+    /**
+     * Reads the key file into the map of computed keys. If the key file cannot be read, every
+     * file will be hashed again.
+     */
+    private static void loadComputedKeys() {
+        File keys = new File(getCacheDirectory(), KEYS_NAME);
+        if (!keys.isFile()) {
+            return;
+        }
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader(keys));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] parts = line.split(" ", 3);
+                    // lines without a fingerprint, from before fingerprints were kept, are skipped
+                    if (parts.length == 3 && parts[1].indexOf(':') < 0) {
+                        computedKeys.put(parts[2], parts[0] + " " + parts[1]);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            ThunderLog.w("The conversion cache keys cannot be read", e);
+            computedKeys.clear();
+        }
+    }
+
+    /**
+     * Writes the computed keys to the key file. Keys for files that no longer exist, or that have
+     * changed since they were hashed, are dropped.
+     */
+    private static void saveComputedKeys() {
+        File keys = new File(getCacheDirectory(), KEYS_NAME);
+        File temp = new File(getCacheDirectory(), KEYS_NAME + ".tmp");
+        try {
+            PrintWriter writer = new PrintWriter(new FileWriter(temp));
+            try {
+                Iterator<Map.Entry<String, String>> it = computedKeys.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<String, String> entry = it.next();
+                    String[] parts = entry.getKey().split(":", 3);
+                    if (parts.length < 3 || !getFileId(new File(parts[2])).equals(entry.getKey())) {
+                        it.remove();
+                    } else {
+                        writer.println(entry.getValue() + " " + entry.getKey());
+                    }
+                }
+            } finally {
+                writer.close();
+            }
+            if (!temp.renameTo(keys)) {
+                ThunderLog.w("The conversion cache keys cannot be saved");
+            }
+        } catch (IOException e) {
+            ThunderLog.w("The conversion cache keys cannot be saved", e);
+        }
+    }
+
+    /**
+     * Deletes every converted file in the cache directory that is not listed in the manifest.
+     * These files are left behind when a conversion is interrupted.
+     */
+    private static void deleteOrphans() {
+        File[] files = getCacheDirectory().listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File f : files) {
+            String name = f.getName();
+            if (name.endsWith(EXTENSION)
+                    && !entries.containsKey(name.substring(0, name.length() - EXTENSION.length()))) {
+                f.delete();
+            }
+        }
+    }
+
+    /**
+     * Returns the directory that contains the cached files and the manifest.
+     *
+     * @return the cache directory.
+     */
+    private static File getCacheDirectory() {
+        File directory = new File(FileLoader.getCacheDirectory(), CACHE_DIRECTORY);
+        directory.mkdirs();
+        return directory;
+    }
+
+    /**
+     * Constructs the message digest that is used to compute cache keys.
+     *
+     * @return a new message digest.
+     */
+    private static MessageDigest getDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(HASH_ALGORITHM + " is not supported", e);
+        }
+    }
+
+    /**
+     * Converts the given bytes to a string of lower-case hexadecimal digits.
+     *
+     * @param bytes the bytes to convert.
+     * @return the hexadecimal representation of the bytes.
+     */
+    private static String toHexString(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+            builder.append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+}
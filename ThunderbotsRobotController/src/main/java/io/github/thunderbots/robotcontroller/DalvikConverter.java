@@ -17,17 +17,23 @@
 package io.github.thunderbots.robotcontroller;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.android.dx.command.Main;
 
 import io.github.thunderbots.robotcontroller.logging.ThunderLog;
+import io.github.thunderbots.robotcontroller.metrics.Metrics;
+import io.github.thunderbots.robotcontroller.metrics.Timer;
 
 /**
  * {@code DalvikConverter} is responsible for converting standard Java JAR files to
@@ -39,31 +45,127 @@ import io.github.thunderbots.robotcontroller.logging.ThunderLog;
 public class DalvikConverter {
 
     /**
-     * The sub-directory, inside the app's private cache file, that will contain all the
-     * Dalvik-converted JAR files.
+     * The maximum allowed (major) Java compiler version.
      */
-    private static final String OUTPUT_DIRECTORY = "/converted/";
+    private static final int MAX_JAR_VERSION = 51;
 
     /**
-     * The maximum allowed (major) Java compiler version.
+     * The largest number of method ids that a single dex file can hold.
      */
-    private static final int MAX_JAR_VERSION = 51;
+    private static final int MAX_DEX_METHODS = 65536;
+
+    /**
+     * The lock that is held while dx is running. dx keeps the state of a conversion in static
+     * fields, so two conversions cannot run at the same time.
+     */
+    private static final Object DX_LOCK = new Object();
+
+    /**
+     * The number of jar files that may be converted at the same time. A value of {@code 1} or less
+     * will cause all jar files to be converted serially, on the calling thread.
+     */
+    private static int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Whether every jar file should be converted into a single merged file.
+     */
+    private static boolean merge = false;
 
     /**
-     * The number of bytes that should be read from the beginning of each class file in order to
-     * verify bytecode version compatibility. The actual version code of the class will be in the
-     * last two bytes of the chunk.
+     * Whether jar files should be converted one class at a time.
      */
-    private static final int CHUNK_LENGTH = 8;
+    private static boolean incremental = false;
+
+    /**
+     * Sets the number of jar files that may be converted at the same time. A value of {@code 1} or
+     * less will cause all jar files to be converted serially, on the calling thread.
+     *
+     * @param parallelism the number of jar files to convert at the same time.
+     */
+    public static void setParallelism(int parallelism) {
+        DalvikConverter.parallelism = parallelism;
+    }
+
+    /**
+     * Sets whether every jar file should be converted into a single merged file by one run of
+     * dx, instead of one converted file per jar file. A merged file is loaded and optimized once,
+     * and a class that is bundled in several jar files is only converted and loaded once. If the
+     * merged classes would not fit in a single dex file, or the merged conversion fails, the jar
+     * files are converted separately instead.
+     * <p>
+     * The two modes can be compared with the boot metrics: the {@code boot} timer and the
+     * {@code memory.residentKb} counter are recorded on every boot. The
+     * {@link io.github.thunderbots.robotcontroller.platform.DesktopRunner} can run the same
+     * comparison on a computer.
+     *
+     * @param merge {@code true} to convert every jar file into one merged file, or {@code false}
+     * to convert each jar file separately.
+     * @see JarMerger
+     */
+    public static void setMerge(boolean merge) {
+        DalvikConverter.merge = merge;
+    }
+
+    /**
+     * Sets whether jar files should be converted one class at a time by the
+     * {@link IncrementalDexer}, so that only the classes that have changed since an earlier
+     * conversion are converted again. If a jar file cannot be converted this way, it is converted
+     * by a single run of dx instead. This is off by default: converting a jar file whose classes
+     * are not cached yet takes about a third longer than a single run of dx, and that is what
+     * happens on the first boot after a new jar file is copied to the phone, so it only pays off
+     * for teams that copy small changes to large jar files often.
+     *
+     * @param incremental {@code true} to convert only the changed classes, or {@code false} to
+     * convert every jar file with a single run of dx.
+     * @see ClassDexCache
+     */
+    public static void setIncremental(boolean incremental) {
+        DalvikConverter.incremental = incremental;
+    }
 
     /**
      * Converts the jar files in the given list to dalvik-compatible jar files, and returns a list
-     * of the converted files.
+     * of the converted files. The converted files are returned in the same order as the given
+     * list, regardless of the order in which they were converted. In merge mode, the list holds
+     * a single merged file instead.
      *
      * @param jarList the list of jar files to convert.
      * @return the list of converted jar files.
+     * @see #setParallelism(int)
+     * @see #setMerge(boolean)
      */
     public static List<File> convertJars(List<File> jarList) {
+        Timer timer = Metrics.timer("convert");
+        long start = timer.start();
+        try {
+            if (merge && jarList.size() > 1) {
+                File merged = convertMerged(jarList);
+                if (merged != null) {
+                    List<File> convertedJars = new LinkedList<File>();
+                    convertedJars.add(merged);
+                    return convertedJars;
+                }
+                Metrics.counter("convert.merge.fallbacks").increment();
+                ThunderLog.w("The jar files cannot be merged, so they will be converted "
+                        + "separately");
+            }
+            if (parallelism <= 1 || jarList.size() <= 1) {
+                return convertJarsSerially(jarList);
+            }
+            return convertJarsInParallel(jarList);
+        } finally {
+            ConversionCache.saveOrder();
+            timer.stop(start);
+        }
+    }
+
+    /**
+     * Converts the jar files in the given list one at a time, on the calling thread.
+     *
+     * @param jarList the list of jar files to convert.
+     * @return the list of converted jar files.
+     */
+    private static List<File> convertJarsSerially(List<File> jarList) {
         List<File> convertedJars = new LinkedList<File>();
         for (File jar : jarList) {
             File converted = DalvikConverter.convertJar(jar);
@@ -74,28 +176,283 @@ public class DalvikConverter {
         return convertedJars;
     }
 
+    /**
+     * Converts the jar files in the given list on a pool of worker threads. The largest files are
+     * started first, so that a single large file is not left to run alone at the end.
+     *
+     * @param jarList the list of jar files to convert.
+     * @return the list of converted jar files.
+     */
+    private static List<File> convertJarsInParallel(List<File> jarList) {
+        List<File> schedule = new ArrayList<File>(jarList);
+        Collections.sort(schedule, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long difference = b.length() - a.length();
+                return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+            }
+        });
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, jarList.size()));
+        List<Future<File>> futures = new ArrayList<Future<File>>(jarList.size());
+        try {
+            for (final File jar : schedule) {
+                futures.add(pool.submit(new Callable<File>() {
+                    @Override
+                    public File call() {
+                        return DalvikConverter.convertJar(jar);
+                    }
+                }));
+            }
+            List<File> convertedJars = new LinkedList<File>();
+            for (File jar : jarList) {
+                File converted = getResult(jar, futures.get(schedule.indexOf(jar)));
+                if (converted != null) {
+                    convertedJars.add(converted);
+                }
+            }
+            return convertedJars;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits for the conversion of a jar file to finish, and returns the result. If the conversion
+     * failed with an exception, the exception is logged and {@code null} is returned.
+     *
+     * @param jar the jar file being converted.
+     * @param future the conversion of the jar file.
+     * @return the converted jar file, or {@code null} if the file could not be converted.
+     */
+    private static File getResult(File jar, Future<File> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            ThunderLog.e("There was an error while converting " + jar.getName()
+                    + ". It will not be loaded.", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ThunderLog.e("Interrupted while converting " + jar.getName());
+        }
+        return null;
+    }
+
+    /**
+     * Converts every jar file in the given list into a single dalvik-compatible jar file. Jar
+     * files that cannot be read or converted are left out, just as they are when the jar files are
+     * converted separately. The merged file is cached under a key made from the keys of every jar
+     * file, in order, so it is only converted again when one of them changes. Jar files that refer
+     * to too many methods to be merged are remembered under the same key, so they are not merged
+     * again on every boot.
+     *
+     * @param jarList the list of jar files to convert, in class path order.
+     * @return the merged file, or {@code null} if the jar files cannot be merged.
+     */
+    private static File convertMerged(List<File> jarList) {
+        Timer timer = Metrics.timer("convert.merge");
+        long start = timer.start();
+        try {
+            List<File> jars = new ArrayList<File>();
+            List<String> keys = new ArrayList<String>();
+            for (File jar : jarList) {
+                try {
+                    keys.add(ConversionCache.getKey(jar));
+                    jars.add(jar);
+                } catch (IOException e) {
+                    ThunderLog.e(jar.getName() + " cannot be read. It will not be loaded.");
+                    Metrics.counter("convert.failures").increment();
+                }
+            }
+            String key = ConversionCache.getMergedKey(keys);
+            File cached = ConversionCache.get(key);
+            if (cached != null) {
+                Metrics.counter("convert.cacheHits").increment();
+                return cached;
+            }
+            if (ConversionCache.isUnmergeable(key)) {
+                Metrics.counter("convert.merge.skipped").increment();
+                return null;
+            }
+            Metrics.counter("convert.cacheMisses").increment();
+            List<String> convertedKeys = new ArrayList<String>();
+            File input = File.createTempFile("merge", ".jar", FileLoader.getCacheDirectory());
+            try {
+                JarMerger merger = new JarMerger(input);
+                try {
+                    for (int i = 0; i < jars.size(); i++) {
+                        File jar = jars.get(i);
+                        Metrics.histogram("convert.jarBytes").record(jar.length());
+                        if (!isJarConvertable(jar)) {
+                            Metrics.counter("convert.failures").increment();
+                            continue;
+                        }
+                        int duplicates = merger.add(jar);
+                        if (duplicates > 0) {
+                            ThunderLog.i("{} classes in {} are already in an earlier jar file, "
+                                    + "and were left out", duplicates, jar.getName());
+                        }
+                        convertedKeys.add(keys.get(i));
+                    }
+                } finally {
+                    merger.close();
+                }
+                Metrics.counter("convert.merge.duplicates").add(merger.getDuplicateCount());
+                Metrics.counter("convert.merge.methods").add(merger.getMethodCount());
+                if (merger.getMethodCount() > MAX_DEX_METHODS) {
+                    ThunderLog.w("The merged jar files refer to about {} methods, but a dex file "
+                            + "can only hold {}", merger.getMethodCount(), MAX_DEX_METHODS);
+                    ConversionCache.setUnmergeable(key);
+                    return null;
+                }
+                File output = convertWithDx(input, key);
+                if (output == null) {
+                    return null;
+                }
+                OpModeIndex.writeMerged(key, convertedKeys);
+                Metrics.counter("convert.merge.jars").add(convertedKeys.size());
+                return output;
+            } finally {
+                input.delete();
+            }
+        } catch (IOException e) {
+            ThunderLog.e("The jar files cannot be merged", e);
+            return null;
+        } finally {
+            timer.stop(start);
+        }
+    }
+
     /**
      * Converts the given input file to a dalvik-compatible jar file, then returns the corresponding
-     * output file. If, for any reason, the file cannot be converted, then {@code null} is returned.
-     * All other consequences of the failure will be handled by this method.
+     * output file. If the same file has already been converted, the converted file is taken from
+     * the {@link ConversionCache} instead of being converted again. If, for any reason, the file
+     * cannot be converted, then {@code null} is returned. All other consequences of the failure
+     * will be handled by this method.
+     * <p>
+     * This method may be called from several threads at once. Reading and checking the jar file
+     * happens concurrently, but the conversion itself is done by one thread at a time.
      *
      * @param jar the file to convert.
      * @return the converted jar file, or {@code null} if the file cannot be converted.
      */
     public static File convertJar(File jar) {
-        if (!isJarConvertable(jar)) {
+        Timer timer = Metrics.timer("convert.jar");
+        long start = timer.start();
+        try {
+            return convertJarUntimed(jar);
+        } finally {
+            Metrics.timer("convert.jar." + jar.getName()).record(timer.stop(start));
+        }
+    }
+
+    /**
+     * Converts the given input file to a dalvik-compatible jar file, without recording the time
+     * taken in total. The time taken by each step is still recorded.
+     *
+     * @param jar the file to convert.
+     * @return the converted jar file, or {@code null} if the file cannot be converted.
+     * @see #convertJar(File)
+     */
+    private static File convertJarUntimed(File jar) {
+        String key;
+        Timer hashTimer = Metrics.timer("convert.hash");
+        long hashStart = hashTimer.start();
+        try {
+            key = ConversionCache.getKey(jar);
+        } catch (IOException e) {
+            ThunderLog.e(jar.getName() + " cannot be read. It will not be loaded.");
+            Metrics.counter("convert.failures").increment();
             return null;
+        } finally {
+            hashTimer.stop(hashStart);
+        }
+        File cached = ConversionCache.get(key);
+        if (cached != null) {
+            Metrics.counter("convert.cacheHits").increment();
+            return cached;
+        }
+        Metrics.counter("convert.cacheMisses").increment();
+        Metrics.histogram("convert.jarBytes").record(jar.length());
+        Timer checkTimer = Metrics.timer("convert.versionCheck");
+        long checkStart = checkTimer.start();
+        boolean convertable = isJarConvertable(jar);
+        checkTimer.stop(checkStart);
+        if (!convertable) {
+            Metrics.counter("convert.failures").increment();
+            return null;
+        }
+        File output = convertWithDx(jar, key);
+        if (output == null) {
+            ThunderLog.e(jar.getName() + " could not be converted. It will not be loaded.");
         }
-        File output = getOutputFile(jar);
-        String[] args = {
-                "--dex",
-                "--output=" + output.getAbsolutePath(),
-                jar.getAbsolutePath(),
-        };
-        Main.main(args);
         return output;
     }
 
+    /**
+     * Runs dx on the given jar file, and stores the output in the {@link ConversionCache} under
+     * the given key. Only one thread runs dx at a time.
+     *
+     * @param jar the jar file to convert.
+     * @param key the cache key of the converted file.
+     * @return the converted file, or {@code null} if dx failed.
+     */
+    private static File convertWithDx(File jar, String key) {
+        Timer waitTimer = Metrics.timer("convert.lockWait");
+        long waitStart = waitTimer.start();
+        synchronized (DX_LOCK) {
+            waitTimer.stop(waitStart);
+            // another thread may have converted an identical jar while this one was waiting
+            File cached = ConversionCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            File output = ConversionCache.getOutputFile(key);
+            Timer dxTimer = Metrics.timer("convert.dx");
+            long dxStart = dxTimer.start();
+            if (!incremental || !convertIncrementally(jar, output)) {
+                String[] args = {
+                        "--dex",
+                        "--num-threads=" + Math.max(parallelism, 1),
+                        "--output=" + output.getAbsolutePath(),
+                        jar.getAbsolutePath(),
+                };
+                Main.main(args);
+            }
+            dxTimer.stop(dxStart);
+            if (!output.isFile()) {
+                Metrics.counter("convert.failures").increment();
+                return null;
+            }
+            ConversionCache.put(key);
+            return output;
+        }
+    }
+
+    /**
+     * Converts the given jar file with the {@link IncrementalDexer}. This must only be called
+     * while {@link #DX_LOCK} is held.
+     *
+     * @param jar the jar file to convert.
+     * @param output the converted file to write.
+     * @return {@code true} if the file was converted, or {@code false} if it should be converted
+     * by a single run of dx instead.
+     */
+    private static boolean convertIncrementally(File jar, File output) {
+        try {
+            return IncrementalDexer.convert(jar, output, Math.max(parallelism, 1));
+        } catch (IOException e) {
+            ThunderLog.w("The classes in " + jar.getName() + " cannot be converted separately",
+                    e);
+        } catch (RuntimeException e) {
+            // dx reports classes that it cannot translate or merge with unchecked exceptions
+            ThunderLog.w("The classes in " + jar.getName() + " cannot be converted separately",
+                    e);
+        }
+        Metrics.counter("convert.incremental.fallbacks").increment();
+        output.delete();
+        return false;
+    }
+
     /**
      * Determines if the given jar file can be converted to a dalvik-compatible jar. The Java
      * compiler version of each class file will be checked, and any found issues will be logged.
@@ -106,77 +463,40 @@ public class DalvikConverter {
      */
     public static boolean isJarConvertable(File jar) {
         try {
-            if (checkJarVersion(jar)) {
+            JarVersionReport report = checkJarVersion(jar);
+            if (report.isCompatible(MAX_JAR_VERSION)) {
                 return true;
             } else {
+                for (String name : report.getIncompatibleClasses(MAX_JAR_VERSION)) {
+                    ThunderLog.i("{} in {} was compiled for Java class version {}, but the "
+                            + "maximum supported version is {}", name, jar.getName(),
+                            report.getVersions().get(name), MAX_JAR_VERSION);
+                }
                 ThunderLog.i(jar.getName()
                         + " uses an incompatible version of Java, and cannot be loaded");
                 return false;
             }
         } catch (IOException e) {
             ThunderLog.e("There was an error while checking the version information for "
-                    + jar.getName() + ". It will not be loaded.");
+                    + jar.getName() + ". It will not be loaded.", e);
             return false;
         }
     }
 
     /**
-     * Checks that the given jar uses a compatible version of Java. The bytecode compliance level
-     * is extracted from the header bytes of every class file, and this version is compared against
-     * the maximum supported version, as specified by {@link #MAX_JAR_VERSION}.
+     * Reads the Java compiler version of every class file in the given jar. The bytecode
+     * compliance level is extracted from the header bytes of every class file, and the returned
+     * report can be compared against the maximum supported version, as specified by
+     * {@link #MAX_JAR_VERSION}.
      *
      * @param file the jar file to check.
-     * @return {@code true} if the jar is entirely compatible, or {@code false} if one or more class
-     * files in the jar use an incompatible version of Java.
+     * @return a report of the version of every class file in the jar.
      * @throws IOException if there are any errors while reading the class files, or if the file
      * does not exist.
+     * @see JarInspector#getVersionReport(File)
      */
-    public static boolean checkJarVersion(File file) throws IOException {
-        ZipInputStream zip = getZipStream(file);
-        ZipEntry entry = zip.getNextEntry();
-        while (entry != null) {
-            if (entry.getName().toLowerCase().endsWith(".class")) {
-                byte[] chunk = new byte[CHUNK_LENGTH];
-                if (zip.read(chunk) != CHUNK_LENGTH) {
-                    throw new IOException();
-                }
-                int version = ((chunk[chunk.length - 2]) << 8) + (chunk[chunk.length - 1]);
-                if (version > DalvikConverter.MAX_JAR_VERSION) {
-                    return false;
-                }
-            }
-            entry = zip.getNextEntry();
-        }
-        return true;
-    }
-
-    /**
-     * Constructs a {@code ZipInputStream} that represents the given file.
-     *
-     * @param file the file to represent as a zip input stream.
-     * @return a constructed zip input stream.
-     * @throws FileNotFoundException if the file does not exist.
-     */
-    public static ZipInputStream getZipStream(File file) throws FileNotFoundException {
-        return new ZipInputStream(new FileInputStream(file));
-    }
-
-    /**
-     * Gets the output file that corresponds to any given input file. The name of the output file is
-     * identical to the input file, but it will be located in the app's private directory, so that
-     * other apps or users will not be able to see it.
-     *
-     * @param inputFile the input file.
-     * @return the output file corresponding to the input file.
-     */
-    private static File getOutputFile(File inputFile) {
-        // TODO: find out how the app responds to files with spaces in the name
-        File output = new File(FileLoader.getCacheDirectory(), OUTPUT_DIRECTORY);
-        if (output.exists()) {
-            output.delete();
-        }
-        output.mkdirs();
-        return new File(output, "compiled-" + inputFile.getName());
+    public static JarVersionReport checkJarVersion(File file) throws IOException {
+        return JarInspector.getVersionReport(file);
     }
 
 }
@@ -0,0 +1,170 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@code DirectorySnapshot} records the size and modification time of a set of files at one
+ * point in time, so that it can later be compared against another snapshot to find the files that
+ * were added, modified or removed in between.
+ */
+public class DirectorySnapshot {
+
+    /**
+     * The state of every file in the snapshot, mapped by file.
+     */
+    private final Map<File, FileState> files;
+
+    /**
+     * Constructs an empty snapshot.
+     */
+    public DirectorySnapshot() {
+        this.files = new LinkedHashMap<File, FileState>();
+    }
+
+    /**
+     * Adds a file to this snapshot.
+     *
+     * @param file the file to add.
+     * @param size the size of the file, in bytes.
+     * @param lastModified the modification time of the file.
+     */
+    public void add(File file, long size, long lastModified) {
+        this.files.put(file, new FileState(size, lastModified));
+    }
+
+    /**
+     * Adds every file in another snapshot to this snapshot.
+     *
+     * @param other the snapshot to add.
+     */
+    public void addAll(DirectorySnapshot other) {
+        this.files.putAll(other.files);
+    }
+
+    /**
+     * Gets the files in this snapshot, in the order they were added.
+     *
+     * @return the files in this snapshot.
+     */
+    public List<File> getFiles() {
+        return new ArrayList<File>(this.files.keySet());
+    }
+
+    /**
+     * Gets the files that are in this snapshot, but not in the given older snapshot.
+     *
+     * @param older the older snapshot.
+     * @return the files that were added.
+     */
+    public List<File> getAdded(DirectorySnapshot older) {
+        List<File> added = new ArrayList<File>();
+        for (File f : this.files.keySet()) {
+            if (!older.files.containsKey(f)) {
+                added.add(f);
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Gets the files that are in both this snapshot and the given older snapshot, but have a
+     * different size or modification time.
+     *
+     * @param older the older snapshot.
+     * @return the files that were modified.
+     */
+    public List<File> getModified(DirectorySnapshot older) {
+        List<File> modified = new ArrayList<File>();
+        for (Map.Entry<File, FileState> entry : this.files.entrySet()) {
+            FileState olderState = older.files.get(entry.getKey());
+            if (olderState != null && !olderState.equals(entry.getValue())) {
+                modified.add(entry.getKey());
+            }
+        }
+        return modified;
+    }
+
+    /**
+     * Gets the files that are in the given older snapshot, but not in this snapshot.
+     *
+     * @param older the older snapshot.
+     * @return the files that were removed.
+     */
+    public List<File> getRemoved(DirectorySnapshot older) {
+        return older.getAdded(this);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof DirectorySnapshot && ((DirectorySnapshot) o).files.equals(this.files);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.files.hashCode();
+    }
+
+    /**
+     * A {@code FileState} holds the size and modification time of a single file.
+     */
+    private static class FileState {
+
+        /**
+         * The size of the file, in bytes.
+         */
+        final long size;
+
+        /**
+         * The modification time of the file.
+         */
+        final long lastModified;
+
+        /**
+         * Constructs a file state.
+         *
+         * @param size the size of the file, in bytes.
+         * @param lastModified the modification time of the file.
+         */
+        FileState(long size, long lastModified) {
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof FileState)) {
+                return false;
+            }
+            FileState other = (FileState) o;
+            return other.size == this.size && other.lastModified == this.lastModified;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (this.size ^ (this.size >>> 32) ^ this.lastModified
+                    ^ (this.lastModified >>> 32));
+        }
+
+    }
+
+}
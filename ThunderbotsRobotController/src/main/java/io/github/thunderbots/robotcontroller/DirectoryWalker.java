@@ -0,0 +1,323 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+/**
+ * {@code DirectoryWalker} finds the files under a directory that match a set of patterns. Files
+ * are filtered while the directory tree is being walked, so files that do not match are never
+ * collected, and excluded directories are never entered. The tree is walked with an explicit
+ * stack instead of recursion, and the top-level subdirectories may optionally be walked on
+ * separate threads. The result is a {@link DirectorySnapshot} of the matching files, in a
+ * deterministic order.
+ * <p>
+ * Patterns are matched against the name of each file or directory, ignoring case. A {@code *}
+ * matches any sequence of characters, and a {@code ?} matches any single character.
+ */
+public class DirectoryWalker {
+
+    /**
+     * The maximum depth that is walked if no other depth is set. This keeps a symbolic link that
+     * points back up the tree from being followed forever.
+     */
+    private static final int DEFAULT_MAX_DEPTH = 32;
+
+    /**
+     * The directory to walk.
+     */
+    private final File root;
+
+    /**
+     * The patterns that a file's name must match at least one of, or an empty list if every file
+     * should be included.
+     */
+    private final List<Pattern> includes;
+
+    /**
+     * The patterns of the names of files and directories that should be skipped.
+     */
+    private final List<Pattern> excludes;
+
+    /**
+     * The maximum number of directory levels below the root directory that will be entered.
+     */
+    private int maxDepth;
+
+    /**
+     * The number of threads that the top-level subdirectories will be walked on.
+     */
+    private int parallelism;
+
+    /**
+     * Constructs a {@code DirectoryWalker} that includes every file under the given directory.
+     *
+     * @param root the directory to walk.
+     */
+    public DirectoryWalker(File root) {
+        this.root = root;
+        this.includes = new ArrayList<Pattern>();
+        this.excludes = new ArrayList<Pattern>();
+        this.maxDepth = DEFAULT_MAX_DEPTH;
+        this.parallelism = 1;
+    }
+
+    /**
+     * Adds a pattern that file names may match. Once any include pattern has been added, only
+     * files whose names match at least one include pattern are included.
+     *
+     * @param pattern the pattern to add, such as {@code *.jar}.
+     * @return this walker.
+     */
+    public DirectoryWalker include(String pattern) {
+        this.includes.add(toRegex(pattern));
+        return this;
+    }
+
+    /**
+     * Adds a pattern of names that should be skipped. Matching files are not included, and
+     * matching directories are not entered.
+     *
+     * @param pattern the pattern to add, such as {@code logs}.
+     * @return this walker.
+     */
+    public DirectoryWalker exclude(String pattern) {
+        this.excludes.add(toRegex(pattern));
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of directory levels below the root directory that will be entered.
+     * A depth of {@code 0} only includes the files directly inside the root directory.
+     *
+     * @param maxDepth the maximum depth.
+     * @return this walker.
+     */
+    public DirectoryWalker setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    /**
+     * Sets the number of threads that the top-level subdirectories will be walked on. A value of
+     * {@code 1} or less walks the whole tree on the calling thread.
+     *
+     * @param parallelism the number of threads to use.
+     * @return this walker.
+     */
+    public DirectoryWalker setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Walks the directory tree, and returns a snapshot of every matching file.
+     *
+     * @return a snapshot of the matching files.
+     */
+    public DirectorySnapshot walk() {
+        DirectorySnapshot snapshot = new DirectorySnapshot();
+        File[] children = list(this.root);
+        List<File> subdirectories = new ArrayList<File>();
+        for (File f : children) {
+            if (f.isDirectory()) {
+                if (this.maxDepth > 0 && !this.isExcluded(f)) {
+                    subdirectories.add(f);
+                }
+            } else {
+                this.visitFile(f, snapshot);
+            }
+        }
+        if (this.parallelism <= 1 || subdirectories.size() <= 1) {
+            for (File directory : subdirectories) {
+                this.walkSubtree(directory, snapshot);
+            }
+        } else {
+            this.walkSubtreesInParallel(subdirectories, snapshot);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Walks each of the given subdirectories on a pool of threads, and adds the results to the
+     * snapshot in the order of the list.
+     *
+     * @param subdirectories the top-level subdirectories to walk.
+     * @param snapshot the snapshot to add matching files to.
+     */
+    private void walkSubtreesInParallel(List<File> subdirectories, DirectorySnapshot snapshot) {
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Math.min(this.parallelism, subdirectories.size()));
+        try {
+            List<Future<DirectorySnapshot>> futures = new ArrayList<Future<DirectorySnapshot>>();
+            for (final File directory : subdirectories) {
+                futures.add(pool.submit(new Callable<DirectorySnapshot>() {
+                    @Override
+                    public DirectorySnapshot call() {
+                        DirectorySnapshot subtree = new DirectorySnapshot();
+                        DirectoryWalker.this.walkSubtree(directory, subtree);
+                        return subtree;
+                    }
+                }));
+            }
+            for (Future<DirectorySnapshot> future : futures) {
+                snapshot.addAll(future.get());
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Error while walking " + this.root, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Walks the tree under one top-level subdirectory, in depth-first order, without recursion.
+     *
+     * @param directory a top-level subdirectory.
+     * @param snapshot the snapshot to add matching files to.
+     */
+    private void walkSubtree(File directory, DirectorySnapshot snapshot) {
+        Deque<File> stack = new ArrayDeque<File>();
+        Deque<Integer> depths = new ArrayDeque<Integer>();
+        stack.push(directory);
+        depths.push(1);
+        while (!stack.isEmpty()) {
+            File current = stack.pop();
+            int depth = depths.pop();
+            File[] children = list(current);
+            // push directories in reverse, so that they are popped in order
+            for (int i = children.length - 1; i >= 0; i--) {
+                File f = children[i];
+                if (f.isDirectory() && depth < this.maxDepth && !this.isExcluded(f)) {
+                    stack.push(f);
+                    depths.push(depth + 1);
+                }
+            }
+            for (File f : children) {
+                if (!f.isDirectory()) {
+                    this.visitFile(f, snapshot);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a file to the snapshot if it matches the include patterns and is not excluded.
+     *
+     * @param f the file to visit.
+     * @param snapshot the snapshot to add the file to.
+     */
+    private void visitFile(File f, DirectorySnapshot snapshot) {
+        if (this.isIncluded(f) && !this.isExcluded(f)) {
+            snapshot.add(f, f.length(), f.lastModified());
+        }
+    }
+
+    /**
+     * Determines if a file's name matches any include pattern.
+     *
+     * @param f the file to check.
+     * @return {@code true} if the file should be included, or {@code false} otherwise.
+     */
+    private boolean isIncluded(File f) {
+        if (this.includes.isEmpty()) {
+            return true;
+        }
+        return matchesAny(this.includes, f.getName());
+    }
+
+    /**
+     * Determines if a file or directory's name matches any exclude pattern.
+     *
+     * @param f the file or directory to check.
+     * @return {@code true} if the file or directory should be skipped, or {@code false} otherwise.
+     */
+    private boolean isExcluded(File f) {
+        return matchesAny(this.excludes, f.getName());
+    }
+
+    /**
+     * Determines if a name matches any of the given patterns.
+     *
+     * @param patterns the patterns to match against.
+     * @param name the name to match.
+     * @return {@code true} if any pattern matches, or {@code false} otherwise.
+     */
+    private static boolean matchesAny(List<Pattern> patterns, String name) {
+        for (Pattern p : patterns) {
+            if (p.matcher(name).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Lists the contents of a directory, sorted by name.
+     *
+     * @param directory the directory to list.
+     * @return the contents of the directory, or an empty array if it cannot be listed.
+     */
+    private static File[] list(File directory) {
+        File[] children = directory.listFiles();
+        if (children == null) {
+            return new File[0];
+        }
+        Arrays.sort(children);
+        return children;
+    }
+
+    /**
+     * Converts a name pattern to a case-insensitive regular expression.
+     *
+     * @param pattern the name pattern.
+     * @return the compiled regular expression.
+     */
+    private static Pattern toRegex(String pattern) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : pattern.toCharArray()) {
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE);
+    }
+
+}
@@ -16,10 +16,6 @@
 
 package io.github.thunderbots.robotcontroller;
 
-import android.os.Environment;
-
-import com.qualcomm.ftcrobotcontroller.FtcRobotControllerActivity;
-
 import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -27,6 +23,7 @@ import java.util.LinkedList;
 import java.util.List;
 
 import io.github.thunderbots.robotcontroller.logging.ThunderLog;
+import io.github.thunderbots.robotcontroller.platform.Platform;
 
 /**
  * {@code FileLoader} is responsible for all direct file operations on the device. Some of the
@@ -42,6 +39,11 @@ public class FileLoader {
      */
     public static final String FILE_LOCATION = "FIRST"; // on the SD card
 
+    /**
+     * The number of threads that the subdirectories of the target directory are walked on.
+     */
+    private static int walkParallelism = 1;
+
     /**
      * Constructs a list of URL's from the given list of Files. If any given file cannot be
      * converted to a URL, the exception will be caught and logged, and the method will continue
@@ -56,83 +58,60 @@ public class FileLoader {
             try {
                 urlList.add(f.getAbsoluteFile().toURI().toURL());
             } catch (MalformedURLException e) {
-                ThunderLog.e("Cannot convert a file to URL:");
-                e.printStackTrace();
+                ThunderLog.e("Cannot convert {} to a URL", f, e);
             }
         }
         return urlList;
     }
 
     /**
-     * Builds a list of all the JAR files that exist within the target directory. The list is built
-     * in the {@link #getFileSet()} method, and then all the non-JAR files are removed from the list.
+     * Builds a list of all the JAR files that exist within the target directory.
      *
      * @return a list of the JAR files in the target directory.
+     * @see #getJarSnapshot()
      */
     public static List<File> getJarList() {
-        List<File> fileList = getFileSet();
-        filterForType(fileList, "jar");
-        return fileList;
+        return getJarSnapshot().getFiles();
     }
 
     /**
-     * Filter out all items from a file list that are not the given type.
+     * Walks the target directory for JAR files, and records the size and modification time of
+     * each one. Non-JAR files are filtered out during the walk, so they are never collected.
      *
-     * @param fileList the list of files to filter.
-     * @param filetype the file type to isolate.
+     * @return a snapshot of the JAR files in the target directory.
      */
-    private static void filterForType(List<File> fileList, String filetype) {
-        if (!filetype.startsWith(".")) {
-            filetype = "." + filetype;
-        }
-        for (int i = fileList.size() - 1; i >= 0; i--) {
-            if (!fileList.get(i).getName().toLowerCase().endsWith(filetype)) {
-                fileList.remove(i);
-            }
-        }
+    public static DirectorySnapshot getJarSnapshot() {
+        return newWalker().include("*.jar").walk();
     }
 
     /**
-     * Builds a list of every file that exists within the target directory. This method essentially
-     * acts as a delegate to {@link #getFilesInDirectory(File)} with {@link #getTargetDirectory()}
-     * as an argument.
+     * Builds a list of every file that exists within the target directory.
      *
      * @return a list of every file that exists within the target directory.
-     * @see #getFilesInDirectory(File)
      * @see #getTargetDirectory()
      */
     public static List<File> getFileSet() {
-        return getFilesInDirectory(getTargetDirectory());
+        return newWalker().walk().getFiles();
     }
 
     /**
-     * Recursively finds all the files in a given base directory. This method essentially
-     * acts as a delegate to {@link #getFilesInDirectory(File, List)}
+     * Sets the number of threads that the subdirectories of the target directory are walked on.
      *
-     * @param baseDirectory the directory to search for files and subdirectories.
-     * @return the list of all files in the base directory.
-     * @see #getFilesInDirectory(File, List)
+     * @param threads the number of threads to use.
      */
-    private static List<File> getFilesInDirectory(File baseDirectory) {
-        return getFilesInDirectory(baseDirectory, new LinkedList<File>());
+    public static void setWalkParallelism(int threads) {
+        walkParallelism = threads;
     }
 
     /**
-     * Recursively finds all the files in a given base directory, and adds them to the given list.
+     * Constructs a walker over the target directory, that skips hidden files and directories.
      *
-     * @param baseDirectory the directory to search for files and subdirectories.
-     * @param foundFiles the list of all files that have been found.
-     * @return the list of all files in the base directory.
+     * @return a new walker.
      */
-    private static List<File> getFilesInDirectory(File baseDirectory, List<File> foundFiles) {
-        for (File f : baseDirectory.listFiles()) {
-            if (f.isFile()) {
-                foundFiles.add(f);
-            } else if (f.isDirectory()) {
-                getFilesInDirectory(f, foundFiles);
-            }
-        }
-        return foundFiles;
+    private static DirectoryWalker newWalker() {
+        return new DirectoryWalker(getTargetDirectory())
+                .exclude(".*")
+                .setParallelism(walkParallelism);
     }
 
     /**
@@ -141,7 +120,7 @@ public class FileLoader {
      * @return the base directory for all jar files.
      */
     private static File getTargetDirectory() {
-        File sdcard = Environment.getExternalStorageDirectory();
+        File sdcard = Platform.getStorage().getExternalStorageDirectory();
         return new File(sdcard, FileLoader.FILE_LOCATION);
     }
 
@@ -152,7 +131,8 @@ public class FileLoader {
      * @return the cache directory.
      */
     public static File getCacheDirectory() {
-        File cache = new File(FtcRobotControllerActivity.getPrivateFilesDirectory(), "/thunderbots/");
+        File cache = new File(Platform.getStorage().getPrivateFilesDirectory(),
+                "/thunderbots/");
         cache.mkdirs();
         return cache;
     }
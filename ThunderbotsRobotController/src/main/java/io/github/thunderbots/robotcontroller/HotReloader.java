@@ -0,0 +1,198 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller;
+
+import com.qualcomm.robotcore.eventloop.opmode.OpModeManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.github.thunderbots.robotcontroller.logging.ThunderLog;
+import io.github.thunderbots.robotcontroller.platform.Platform;
+
+/**
+ * {@code HotReloader} updates the registered op modes when the JAR files in the target directory
+ * change, without restarting the robot. Only the JAR files that were added or modified are
+ * converted, and each one is loaded with a new class loader of its own. Op modes are registered
+ * as {@link LazyOpMode}s, so an op mode that already exists is updated in place; the change takes
+ * effect the next time the op mode is initialized, and a running op mode is never interrupted.
+ * <p>
+ * The class loaders of the reloaded JAR files are linked to each other, and to the class loader
+ * that loaded every other JAR file, as described in {@link JarClassLoaders}. A reloaded op mode
+ * can therefore extend a class from a library JAR file that did not change. A class from an
+ * unchanged JAR file still sees the classes that it was first linked to.
+ */
+public class HotReloader implements JarWatcher.Listener {
+
+    /**
+     * The op mode manager that op modes are registered with.
+     */
+    private final OpModeManager manager;
+
+    /**
+     * Every registered op mode, mapped by its registered name.
+     */
+    private final Map<String, LazyOpMode> registered;
+
+    /**
+     * The names of the op modes that came from each source JAR file.
+     */
+    private final Map<File, List<String>> namesByJar;
+
+    /**
+     * The class loader that loaded the current version of every JAR file. Each reload links its
+     * class loaders to this one, and then replaces it.
+     */
+    private ClassLoader links;
+
+    /**
+     * Constructs a {@code HotReloader} for op modes that have already been registered.
+     *
+     * @param manager the op mode manager that the op modes were registered with.
+     * @param registered every registered op mode, mapped by its registered name.
+     * @param jarList the source JAR files that the op modes were loaded from.
+     * @param classLoader the class loader that the op modes were loaded with.
+     */
+    public HotReloader(OpModeManager manager, Map<String, LazyOpMode> registered,
+            List<File> jarList, ClassLoader classLoader) {
+        this.manager = manager;
+        this.registered = registered;
+        this.links = classLoader;
+        this.namesByJar = new HashMap<File, List<String>>();
+        for (File jar : jarList) {
+            this.namesByJar.put(jar, getActiveNames(jar));
+        }
+    }
+
+    @Override
+    public synchronized void jarsChanged(List<File> jarList, List<File> added,
+            List<File> modified, List<File> removed) {
+        ThunderLog.i("Reloading jar files: " + added.size() + " added, " + modified.size()
+                + " modified, " + removed.size() + " removed");
+        for (File jar : removed) {
+            this.replaceNames(jar, Collections.<String>emptyList());
+        }
+        List<File> changed = new ArrayList<File>(added);
+        changed.addAll(modified);
+        OpModeIndex.createMissingIndexes(jarList, OpModeRegister.class.getClassLoader());
+        Map<File, File> loadedFiles = new LinkedHashMap<File, File>();
+        for (File jar : changed) {
+            File converted = DalvikConverter.convertJar(jar);
+            if (converted == null) {
+                this.replaceNames(jar, Collections.<String>emptyList());
+            } else {
+                loadedFiles.put(jar, Platform.getCodeLoader().loadsDexFiles() ? converted : jar);
+            }
+        }
+        ConversionCache.saveOrder();
+        if (loadedFiles.isEmpty()) {
+            return;
+        }
+        JarClassLoaders loaders = new JarClassLoaders(new ArrayList<File>(loadedFiles.values()),
+                this.links, OpModeRegister.class.getClassLoader());
+        for (Map.Entry<File, File> entry : loadedFiles.entrySet()) {
+            this.reload(entry.getKey(), new OpModeLoader(
+                    Collections.singletonList(entry.getValue()), loaders));
+        }
+        this.links = loaders;
+    }
+
+    /**
+     * Updates the op modes that came from a single JAR file, once it has been converted.
+     *
+     * @param jar the source JAR file.
+     * @param loader the op mode loader of the converted JAR file.
+     */
+    private void reload(File jar, OpModeLoader loader) {
+        List<String> names = new ArrayList<String>();
+        for (OpModeIndex.Entry entry : loader.getOpModeEntries()) {
+            if (!entry.isActive()) {
+                continue;
+            }
+            LazyOpMode opmode = this.registered.get(entry.getName());
+            if (opmode != null) {
+                opmode.update(entry.getClassName(), loader.getClassLoader());
+                ThunderLog.i("Reloaded {}", entry.getName());
+            } else {
+                opmode = new LazyOpMode(entry.getClassName(), loader.getClassLoader());
+                try {
+                    this.manager.register(entry.getName(), opmode);
+                    this.registered.put(entry.getName(), opmode);
+                    ThunderLog.i("Registered {} lazily", entry.getName());
+                } catch (Throwable ex) {
+                    ThunderLog.e("Error registering op mode: " + entry.getName());
+                    ThunderLog.e(ex.getMessage());
+                    continue;
+                }
+            }
+            names.add(entry.getName());
+        }
+        this.replaceNames(jar, names);
+    }
+
+    /**
+     * Records the op modes that now come from a JAR file, and removes any op mode that used to
+     * come from it, but no longer does.
+     *
+     * @param jar the source JAR file.
+     * @param names the names of the op modes that now come from the JAR file.
+     */
+    private void replaceNames(File jar, List<String> names) {
+        List<String> oldNames = names.isEmpty() ? this.namesByJar.remove(jar)
+                : this.namesByJar.put(jar, names);
+        if (oldNames == null) {
+            return;
+        }
+        for (String name : oldNames) {
+            LazyOpMode opmode = this.registered.get(name);
+            if (!names.contains(name) && opmode != null) {
+                opmode.remove();
+                ThunderLog.i("Removed {}", name);
+            }
+        }
+    }
+
+    /**
+     * Gets the names of the active op modes in a source JAR file, from its op mode index.
+     *
+     * @param jar the source JAR file.
+     * @return the names of the active op modes in the JAR file.
+     */
+    private static List<String> getActiveNames(File jar) {
+        List<String> names = new ArrayList<String>();
+        try {
+            List<OpModeIndex.Entry> index = OpModeIndex.read(ConversionCache.getKey(jar));
+            if (index != null) {
+                for (OpModeIndex.Entry entry : index) {
+                    if (entry.isActive()) {
+                        names.add(entry.getName());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            ThunderLog.w(jar.getName() + " cannot be read", e);
+        }
+        return names;
+    }
+
+}
@@ -0,0 +1,429 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import com.android.dex.Dex;
+import com.android.dex.DexFormat;
+import com.android.dx.Version;
+import com.android.dx.cf.direct.DirectClassFile;
+import com.android.dx.cf.direct.StdAttributeFactory;
+import com.android.dx.dex.DexOptions;
+import com.android.dx.dex.cf.CfOptions;
+import com.android.dx.dex.cf.CfTranslator;
+import com.android.dx.dex.code.PositionList;
+import com.android.dx.dex.file.DexFile;
+import com.android.dx.merge.CollisionPolicy;
+import com.android.dx.merge.DexMerger;
+
+import io.github.thunderbots.robotcontroller.logging.ThunderLog;
+import io.github.thunderbots.robotcontroller.metrics.Metrics;
+import io.github.thunderbots.robotcontroller.metrics.Timer;
+
+/**
+ * {@code IncrementalDexer} converts a JAR file one class at a time, instead of with a single run
+ * of dx over the whole file. Each class file is hashed, and only the classes whose converted form
+ * is not already in the {@link ClassDexCache} are converted. The converted classes of each
+ * package are merged, and the merged packages are cached too, before they are merged into the
+ * single dex file of the output JAR file. After a small change to a large JAR file, only the
+ * changed classes are converted again, and only their packages are merged again.
+ * <p>
+ * The classes are converted with the same options that dx uses by default, and on several
+ * threads, as dx does. dx keeps some of its state in static fields, so this must not run at the
+ * same time as any other conversion.
+ */
+public class IncrementalDexer {
+
+    /**
+     * The file extension of a class file.
+     */
+    private static final String CLASS_EXTENSION = ".class";
+
+    /**
+     * The size of the buffer that is used while reading entries.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The options that class files are translated with.
+     */
+    private static final CfOptions CF_OPTIONS = createCfOptions();
+
+    /**
+     * The options that dex files are written with.
+     */
+    private static final DexOptions DEX_OPTIONS = new DexOptions();
+
+    /**
+     * Converts the given JAR file into a dalvik-compatible JAR file. The classes are converted
+     * one package at a time. If the classes of a package have all been converted together
+     * before, the merged package is taken from the {@link ClassDexCache}. Otherwise, each class
+     * is taken from the cache if it has been converted before, and converted otherwise, and the
+     * merged package is added to the cache. Every entry of the JAR file that is not a class file
+     * is copied to the output, except for the manifest, which is replaced.
+     *
+     * @param jar the JAR file to convert.
+     * @param output the converted file to write.
+     * @param threads the number of classes that may be converted at the same time.
+     * @return {@code true} if the file was converted, or {@code false} if it does not contain
+     * any classes.
+     * @throws IOException if the JAR file cannot be read, or the output cannot be written.
+     */
+    public static boolean convert(File jar, File output, int threads) throws IOException {
+        Map<String, List<String>> packages = new LinkedHashMap<String, List<String>>();
+        Map<String, byte[]> classFiles = new HashMap<String, byte[]>();
+        Map<String, byte[]> resources = new LinkedHashMap<String, byte[]>();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        ZipFile zip = new ZipFile(jar);
+        try {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (entry.isDirectory() || name.equalsIgnoreCase(JarFile.MANIFEST_NAME)) {
+                    continue;
+                }
+                byte[] contents = readEntry(zip, entry, buffer);
+                if (!name.endsWith(CLASS_EXTENSION)) {
+                    resources.put(name, contents);
+                    continue;
+                }
+                String packageName = name.substring(0, Math.max(name.lastIndexOf('/'), 0));
+                List<String> classNames = packages.get(packageName);
+                if (classNames == null) {
+                    classNames = new ArrayList<String>();
+                    packages.put(packageName, classNames);
+                }
+                classNames.add(name);
+                classFiles.put(name, contents);
+            }
+        } finally {
+            zip.close();
+        }
+        if (classFiles.isEmpty()) {
+            return false;
+        }
+        List<Dex> converted = new ArrayList<Dex>(packages.size());
+        List<String> packageKeys = new ArrayList<String>(packages.size());
+        Map<String, String> classKeys = new HashMap<String, String>();
+        Map<String, byte[]> classDexes = new HashMap<String, byte[]>();
+        List<String> untranslated = new ArrayList<String>();
+        int reused = 0;
+        for (List<String> classNames : packages.values()) {
+            List<String> keys = new ArrayList<String>(classNames.size());
+            for (String name : classNames) {
+                String key = ConversionCache.getClassKey(classFiles.get(name));
+                classKeys.put(name, key);
+                keys.add(key);
+            }
+            String packageKey = ConversionCache.getPackageKey(keys);
+            packageKeys.add(packageKey);
+            byte[] cached = ClassDexCache.get(packageKey);
+            if (cached != null) {
+                converted.add(new Dex(cached));
+                reused += classNames.size();
+                continue;
+            }
+            // the package is merged once all of its classes have been converted
+            converted.add(null);
+            for (String name : classNames) {
+                byte[] dex = ClassDexCache.get(classKeys.get(name));
+                if (dex == null) {
+                    untranslated.add(name);
+                } else {
+                    classDexes.put(name, dex);
+                    reused++;
+                }
+            }
+        }
+        Metrics.counter("convert.classes.reused").add(reused);
+        Metrics.counter("convert.classes.translated").add(untranslated.size());
+        translateAll(untranslated, classFiles, threads, classDexes);
+        for (String name : untranslated) {
+            ClassDexCache.put(classKeys.get(name), classDexes.get(name));
+        }
+        int index = 0;
+        for (List<String> classNames : packages.values()) {
+            if (converted.get(index) == null) {
+                List<Dex> classes = new ArrayList<Dex>(classNames.size());
+                for (String name : classNames) {
+                    classes.add(new Dex(classDexes.get(name)));
+                }
+                Dex merged = merge(classes);
+                if (classes.size() > 1) {
+                    // a package of one class is already cached as that class
+                    ClassDexCache.put(packageKeys.get(index), merged.getBytes());
+                }
+                converted.set(index, merged);
+            }
+            index++;
+        }
+        ClassDexCache.trim();
+        write(output, merge(converted), resources);
+        return true;
+    }
+
+    /**
+     * Translates the given class files, on a pool of worker threads if more than one thread may
+     * be used. dx translates the classes of a JAR file on several threads in the same way.
+     *
+     * @param names the names of the class file entries to translate.
+     * @param classFiles the contents of every class file, mapped by entry name.
+     * @param threads the number of classes that may be translated at the same time.
+     * @param classDexes the map that every translated class is put in, by entry name.
+     * @throws IOException if a class cannot be translated.
+     */
+    private static void translateAll(List<String> names, final Map<String, byte[]> classFiles,
+            int threads, Map<String, byte[]> classDexes) throws IOException {
+        if (threads <= 1 || names.size() <= 1) {
+            for (String name : names) {
+                classDexes.put(name, translate(name, classFiles.get(name)));
+            }
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, names.size()));
+        List<Future<byte[]>> futures = new ArrayList<Future<byte[]>>(names.size());
+        try {
+            for (final String name : names) {
+                futures.add(pool.submit(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws IOException {
+                        return translate(name, classFiles.get(name));
+                    }
+                }));
+            }
+            for (int i = 0; i < names.size(); i++) {
+                classDexes.put(names.get(i), getResult(futures.get(i)));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits for the translation of a class to finish, and returns the result. An exception
+     * thrown by the translation is thrown again on the calling thread.
+     *
+     * @param future the translation of the class.
+     * @return the translated class.
+     * @throws IOException if the class cannot be translated.
+     */
+    private static byte[] getResult(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("A class cannot be translated", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while translating classes");
+        }
+    }
+
+    /**
+     * Translates a single class file into a dex file that contains only that class.
+     *
+     * @param name the name of the class file entry.
+     * @param classFile the contents of the class file.
+     * @return the contents of the dex file.
+     * @throws IOException if the dex file cannot be written.
+     */
+    private static byte[] translate(String name, byte[] classFile) throws IOException {
+        Timer timer = Metrics.timer("convert.translate");
+        long start = timer.start();
+        try {
+            DirectClassFile parsed = new DirectClassFile(classFile, name,
+                    CF_OPTIONS.strictNameCheck);
+            parsed.setAttributeFactory(StdAttributeFactory.THE_ONE);
+            DexFile dexFile = new DexFile(DEX_OPTIONS);
+            dexFile.add(CfTranslator.translate(parsed, classFile, CF_OPTIONS, DEX_OPTIONS,
+                    dexFile));
+            return dexFile.toDex(null, false);
+        } finally {
+            timer.stop(start);
+        }
+    }
+
+    /**
+     * Merges a list of dex files into one. The files are merged in pairs, and then the results
+     * are merged in pairs, and so on, so that each class is copied a logarithmic number of times
+     * instead of once for every class after it.
+     *
+     * @param dexes the dex files to merge. There must be at least one.
+     * @return the merged dex file.
+     * @throws IOException if the files cannot be merged.
+     */
+    private static Dex merge(List<Dex> dexes) throws IOException {
+        Timer timer = Metrics.timer("convert.dexMerge");
+        long start = timer.start();
+        List<Dex> level = dexes;
+        while (level.size() > 1) {
+            List<Dex> next = new ArrayList<Dex>((level.size() + 1) / 2);
+            for (int i = 0; i + 1 < level.size(); i += 2) {
+                next.add(new DexMerger(level.get(i), level.get(i + 1),
+                        CollisionPolicy.KEEP_FIRST).merge());
+            }
+            if (level.size() % 2 == 1) {
+                next.add(level.get(level.size() - 1));
+            }
+            level = next;
+        }
+        timer.stop(start);
+        return level.get(0);
+    }
+
+    /**
+     * Writes a dalvik-compatible JAR file, which holds a manifest, the dex file, and the other
+     * entries of the source JAR file. If the file cannot be written completely, it is deleted.
+     *
+     * @param output the file to write.
+     * @param dex the dex file.
+     * @param resources the contents of every other entry, mapped by name.
+     * @throws IOException if the file cannot be written.
+     */
+    private static void write(File output, Dex dex, Map<String, byte[]> resources)
+            throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().putValue("Created-By", Version.VERSION + " (Android)");
+        boolean written = false;
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(output), manifest);
+        try {
+            out.putNextEntry(new ZipEntry(DexFormat.DEX_IN_JAR_NAME));
+            dex.writeTo(out);
+            out.closeEntry();
+            for (Map.Entry<String, byte[]> resource : resources.entrySet()) {
+                out.putNextEntry(new ZipEntry(resource.getKey()));
+                out.write(resource.getValue());
+                out.closeEntry();
+            }
+            written = true;
+        } finally {
+            out.close();
+            if (!written) {
+                output.delete();
+            }
+        }
+    }
+
+    /**
+     * Reads the entire contents of a zip entry.
+     *
+     * @param zip the zip file that contains the entry.
+     * @param entry the entry to read.
+     * @param buffer the buffer to read through.
+     * @return the contents of the entry.
+     * @throws IOException if the entry cannot be read.
+     */
+    private static byte[] readEntry(ZipFile zip, ZipEntry entry, byte[] buffer)
+            throws IOException {
+        int size = entry.getSize() > 0 ? (int) entry.getSize() : buffer.length;
+        ByteArrayOutputStream contents = new ByteArrayOutputStream(size);
+        InputStream in = zip.getInputStream(entry);
+        try {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                contents.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return contents.toByteArray();
+    }
+
+    /**
+     * Creates the options that class files are translated with. These are the options that dx
+     * uses when it is run without any flags.
+     *
+     * @return the translation options.
+     */
+    private static CfOptions createCfOptions() {
+        CfOptions options = new CfOptions();
+        options.positionInfo = PositionList.LINES;
+        options.localInfo = true;
+        options.strictNameCheck = true;
+        options.optimize = true;
+        options.warn = new PrintStream(new LogStream());
+        return options;
+    }
+
+    /**
+     * A {@code LogStream} writes each line that dx prints as a warning to the {@link ThunderLog}.
+     */
+    private static class LogStream extends OutputStream {
+
+        /**
+         * The line that is being printed.
+         */
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        @Override
+        public synchronized void write(int b) {
+            if (b == '\n') {
+                this.flushLine();
+            } else if (b != '\r') {
+                this.line.write(b);
+            }
+        }
+
+        /**
+         * Logs the line that has been printed, if it is not empty. Partial lines are kept until
+         * they are finished, even if the stream is flushed, since dx prints some warnings in
+         * pieces.
+         */
+        private void flushLine() {
+            if (this.line.size() > 0) {
+                ThunderLog.w("dx: {}", this.line.toString());
+                this.line.reset();
+            }
+        }
+
+    }
+
+}
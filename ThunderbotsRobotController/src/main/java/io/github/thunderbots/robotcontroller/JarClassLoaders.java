@@ -0,0 +1,282 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.github.thunderbots.robotcontroller.logging.ThunderLog;
+import io.github.thunderbots.robotcontroller.metrics.Metrics;
+import io.github.thunderbots.robotcontroller.metrics.Timer;
+import io.github.thunderbots.robotcontroller.platform.Platform;
+
+/**
+ * {@code JarClassLoaders} gives every JAR file that contains op modes its own class loader, so
+ * that the JAR files can be opened and scanned independently, and a problem with one of them
+ * does not affect the others. JAR files that contain no op modes are libraries: they share a
+ * single class loader, which is not created until a class is needed from one of them.
+ * <p>
+ * Every JAR class loader has a link loader as its parent. A link loader first delegates to the
+ * app's class loader. If the class is in the loader's own JAR file, the link loader fails, so the
+ * JAR class loader defines its own copy of the class. Otherwise, the link loader delegates to the
+ * one JAR file that contains the class, or to the library loader if no op mode JAR file contains
+ * it. This lets an op mode extend a class from another JAR file, or use a library, just as it
+ * could when every JAR file shared one class loader, while a class that is in two JAR files is
+ * still loaded from each of them separately.
+ * <p>
+ * A lookup is only ever passed on to the loader of the JAR file that contains the class, and that
+ * loader never passes the same class on again, so a thread that holds the class loading lock of
+ * one JAR file only ever waits for the lock of the JAR file that owns the class. Two threads that
+ * load the same classes from different JAR files in parallel therefore cannot deadlock. The
+ * classes in each JAR file are listed the first time a class is looked up through the links.
+ * <p>
+ * When JAR files are reloaded, their class loaders are linked to the class loader that loaded
+ * the other JAR files in place of a library loader, so a reloaded op mode can still use the
+ * classes of the JAR files that did not change.
+ * <p>
+ * This class is itself a class loader that can load any class from the JAR files, for code that
+ * does not know which JAR file a class is in.
+ */
+public class JarClassLoaders extends ClassLoader {
+
+    /**
+     * The class loader of each JAR file that contains op modes, in class path order.
+     */
+    private final Map<File, ClassLoader> jarLoaders;
+
+    /**
+     * The library JAR files.
+     */
+    private final List<File> libraryFiles;
+
+    /**
+     * The class loader of the library JAR files, or of the JAR files that were loaded before these
+     * ones were reloaded, or {@code null} if it has not been created yet.
+     */
+    private volatile ClassLoader libraryLoader;
+
+    /**
+     * The op mode JAR file that contains each class, or {@code null} if the JAR files have not
+     * been listed yet. A class that is in more than one JAR file is mapped to the first of them in
+     * class path order.
+     */
+    private volatile Map<String, File> classOwners;
+
+    /**
+     * The names of the classes in each op mode JAR file, or {@code null} if the JAR files have
+     * not been listed yet.
+     */
+    private Map<File, Set<String>> jarClasses;
+
+    /**
+     * Constructs a class loader for each of the given op mode JAR files. The library loader is
+     * not created until it is needed.
+     *
+     * @param opModeFiles the JAR files that contain op modes, in class path order.
+     * @param libraryFiles the JAR files that contain no op modes.
+     * @param parent the app's class loader.
+     */
+    public JarClassLoaders(List<File> opModeFiles, List<File> libraryFiles, ClassLoader parent) {
+        super(parent);
+        this.libraryFiles = libraryFiles;
+        Map<File, ClassLoader> loaders = new LinkedHashMap<File, ClassLoader>();
+        for (File f : opModeFiles) {
+            loaders.put(f, createLoader(Collections.singletonList(f), new LinkLoader(f)));
+        }
+        this.jarLoaders = loaders;
+    }
+
+    /**
+     * Constructs a class loader for each of the given reloaded JAR files. Classes that are not in
+     * any of the files are loaded by the given class loader, which loaded the JAR files that did
+     * not change.
+     *
+     * @param reloadedFiles the JAR files that are being reloaded, in class path order.
+     * @param links the class loader of the JAR files that were loaded before.
+     * @param parent the app's class loader.
+     */
+    public JarClassLoaders(List<File> reloadedFiles, ClassLoader links, ClassLoader parent) {
+        this(reloadedFiles, Collections.<File>emptyList(), parent);
+        this.libraryLoader = links;
+    }
+
+    /**
+     * Gets the class loader of the given op mode JAR file.
+     *
+     * @param file an op mode JAR file.
+     * @return the class loader of the file, or {@code null} if it is not an op mode JAR file.
+     */
+    public ClassLoader getLoader(File file) {
+        return this.jarLoaders.get(file);
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        // never synchronized, since this only delegates to the other class loaders
+        try {
+            return this.getParent().loadClass(name);
+        } catch (ClassNotFoundException e) {
+            return this.findLinkedClass(name, null);
+        }
+    }
+
+    /**
+     * Looks up a class in the op mode JAR file that contains it, or in the library loader if no
+     * op mode JAR file contains it.
+     *
+     * @param name the binary name of the class.
+     * @param requester the JAR file whose class loader is looking up the class, or {@code null}.
+     * @return the class.
+     * @throws ClassNotFoundException if the class is in the requesting JAR file, so that its own
+     * class loader should define it, or if the class is not in any of the JAR files.
+     */
+    private Class<?> findLinkedClass(String name, File requester)
+            throws ClassNotFoundException {
+        Map<String, File> owners = this.getClassOwners();
+        if (requester != null && this.jarClasses.get(requester).contains(name)) {
+            throw new ClassNotFoundException(name);
+        }
+        File owner = owners.get(name);
+        if (owner != null) {
+            return this.jarLoaders.get(owner).loadClass(name);
+        }
+        ClassLoader libraries = this.getLibraryLoader();
+        if (libraries != null) {
+            return libraries.loadClass(name);
+        }
+        throw new ClassNotFoundException(name);
+    }
+
+    /**
+     * Gets the op mode JAR file that contains each class, and lists the JAR files if this is the
+     * first time they are needed. This also lists the classes in each JAR file. A JAR file that
+     * cannot be listed is logged, and its classes can then only be loaded by its own class
+     * loader.
+     *
+     * @return the JAR file that contains each class.
+     */
+    private Map<String, File> getClassOwners() {
+        if (this.classOwners == null) {
+            synchronized (this.jarLoaders) {
+                if (this.classOwners == null) {
+                    Timer timer = Metrics.timer("load.classOwners");
+                    long start = timer.start();
+                    Map<String, File> owners = new HashMap<String, File>();
+                    Map<File, Set<String>> contents = new HashMap<File, Set<String>>();
+                    for (File f : this.jarLoaders.keySet()) {
+                        Set<String> names = new HashSet<String>();
+                        try {
+                            names.addAll(Platform.getCodeLoader().getClassNames(f,
+                                    OptimizedDexFiles.getOptimizedFile(f)));
+                        } catch (IOException e) {
+                            ThunderLog.w("The classes in {} cannot be listed, so other jar files "
+                                    + "cannot use them", f.getName(), e);
+                        }
+                        for (String name : names) {
+                            if (!owners.containsKey(name)) {
+                                owners.put(name, f);
+                            }
+                        }
+                        contents.put(f, names);
+                    }
+                    timer.stop(start);
+                    // published by the volatile write below
+                    this.jarClasses = contents;
+                    this.classOwners = owners;
+                }
+            }
+        }
+        return this.classOwners;
+    }
+
+    /**
+     * Gets the class loader of the library JAR files, and creates it if this is the first time
+     * it is needed.
+     *
+     * @return the library loader, or {@code null} if there are no library JAR files.
+     */
+    private ClassLoader getLibraryLoader() {
+        if (this.libraryLoader == null && !this.libraryFiles.isEmpty()) {
+            synchronized (this.libraryFiles) {
+                if (this.libraryLoader == null) {
+                    Timer timer = Metrics.timer("load.libraryLoader");
+                    long start = timer.start();
+                    this.libraryLoader = createLoader(this.libraryFiles, this.getParent());
+                    timer.stop(start);
+                    Metrics.counter("load.libraryJars").add(this.libraryFiles.size());
+                }
+            }
+        }
+        return this.libraryLoader;
+    }
+
+    /**
+     * Creates a platform class loader for the given files.
+     *
+     * @param files the files to load classes from.
+     * @param parent the parent of the class loader.
+     * @return the class loader.
+     */
+    private static ClassLoader createLoader(List<File> files, ClassLoader parent) {
+        return Platform.getCodeLoader().createClassLoader(FileLoader.getUrlList(files),
+                OptimizedDexFiles.getDirectory(), parent);
+    }
+
+    /**
+     * A {@code LinkLoader} is the parent of the class loader of one op mode JAR file. It finds
+     * classes in the app first, and then in the JAR file that contains them, unless that is the
+     * owner's own JAR file.
+     */
+    private class LinkLoader extends ClassLoader {
+
+        /**
+         * The JAR file whose class loader this is the parent of.
+         */
+        private final File owner;
+
+        /**
+         * Constructs a link loader for the class loader of the given JAR file.
+         *
+         * @param owner the JAR file whose class loader this is the parent of.
+         */
+        LinkLoader(File owner) {
+            super(JarClassLoaders.this.getParent());
+            this.owner = owner;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve)
+                throws ClassNotFoundException {
+            // never synchronized; the lookup only ever moves from this JAR file to the one that
+            // owns the class, which never passes it on, so class loading locks cannot form a cycle
+            try {
+                return this.getParent().loadClass(name);
+            } catch (ClassNotFoundException e) {
+                return JarClassLoaders.this.findLinkedClass(name, this.owner);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,115 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * {@code JarInspector} reads information about the class files in a JAR file without reading the
+ * whole JAR file. The entries are found through the central directory at the end of the file, and
+ * only the first few bytes of each class file are read and inflated, so the cost of inspecting a
+ * JAR file depends on the number of entries it has, not on its size.
+ */
+public class JarInspector {
+
+    /**
+     * The magic number that every class file begins with.
+     */
+    private static final int CLASS_MAGIC = 0xCAFEBABE;
+
+    /**
+     * The number of bytes that should be read from the beginning of each class file in order to
+     * find its version. The magic number is in the first four bytes of the chunk, and the major
+     * version is in the last two.
+     */
+    private static final int CHUNK_LENGTH = 8;
+
+    /**
+     * Reads the major version of every class file in the given JAR file.
+     *
+     * @param file the JAR file to inspect.
+     * @return a report of the version of every class file in the JAR file.
+     * @throws IOException if the file cannot be read, or if any class file is too short to
+     * contain a version.
+     */
+    public static JarVersionReport getVersionReport(File file) throws IOException {
+        JarVersionReport report = new JarVersionReport(file);
+        byte[] chunk = new byte[CHUNK_LENGTH];
+        ZipFile zip = new ZipFile(file);
+        try {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!entry.isDirectory() && entry.getName().toLowerCase().endsWith(".class")) {
+                    readChunk(zip, entry, chunk);
+                    report.addClass(entry.getName(), getMajorVersion(entry, chunk));
+                }
+            }
+        } finally {
+            zip.close();
+        }
+        return report;
+    }
+
+    /**
+     * Reads the first {@link #CHUNK_LENGTH} bytes of the given entry into the given array. Only as
+     * much of the entry as is needed to fill the array will be inflated.
+     *
+     * @param zip the zip file that contains the entry.
+     * @param entry the entry to read.
+     * @param chunk the array to read into.
+     * @throws IOException if the entry cannot be read, or if it is shorter than the array.
+     */
+    private static void readChunk(ZipFile zip, ZipEntry entry, byte[] chunk) throws IOException {
+        InputStream in = zip.getInputStream(entry);
+        try {
+            int offset = 0;
+            while (offset < chunk.length) {
+                int read = in.read(chunk, offset, chunk.length - offset);
+                if (read == -1) {
+                    throw new IOException(entry.getName() + " is not a valid class file");
+                }
+                offset += read;
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Extracts the major version from the header bytes of a class file.
+     *
+     * @param entry the entry that the header bytes were read from.
+     * @param chunk the header bytes of the class file.
+     * @return the major version of the class file.
+     * @throws IOException if the header bytes do not begin with the class file magic number.
+     */
+    private static int getMajorVersion(ZipEntry entry, byte[] chunk) throws IOException {
+        int magic = ((chunk[0] & 0xFF) << 24) | ((chunk[1] & 0xFF) << 16)
+                | ((chunk[2] & 0xFF) << 8) | (chunk[3] & 0xFF);
+        if (magic != CLASS_MAGIC) {
+            throw new IOException(entry.getName() + " is not a valid class file");
+        }
+        return ((chunk[6] & 0xFF) << 8) | (chunk[7] & 0xFF);
+    }
+
+}
@@ -0,0 +1,180 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * {@code JarMerger} combines several JAR files into one, so that they can be converted by a
+ * single run of dx. If more than one JAR file contains an entry with the same name, only the
+ * first one is kept, just as a class loader over the JAR files in the same order would only find
+ * the first. dx rejects duplicate classes, so this is also what makes a merged conversion
+ * possible when several JAR files bundle the same library.
+ * <p>
+ * While the classes are copied, the ids of the methods they declare and refer to are collected
+ * with {@link ClassFileReader#readMethodIds(byte[])}, so that the caller can tell whether the
+ * merged classes will fit in a single dex file.
+ */
+public class JarMerger {
+
+    /**
+     * The size of the buffer that is used while copying entries.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The stream that the merged JAR file is written to.
+     */
+    private final ZipOutputStream out;
+
+    /**
+     * The names of the entries that have been written.
+     */
+    private final Set<String> entryNames;
+
+    /**
+     * The ids of every method that the written classes declare or refer to.
+     */
+    private final Set<String> methodIds;
+
+    /**
+     * The number of classes that were left out because an earlier JAR file had already added a
+     * class with the same name.
+     */
+    private int duplicateCount;
+
+    /**
+     * The buffer that is used while copying entries.
+     */
+    private final byte[] buffer;
+
+    /**
+     * Constructs a merger that writes to the given file.
+     *
+     * @param output the merged JAR file to write.
+     * @throws IOException if the file cannot be created.
+     */
+    public JarMerger(File output) throws IOException {
+        this.out = new ZipOutputStream(new FileOutputStream(output));
+        this.entryNames = new HashSet<String>();
+        this.methodIds = new HashSet<String>();
+        this.buffer = new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * Adds every entry of a JAR file that has not already been added by an earlier JAR file.
+     *
+     * @param jar the JAR file to add.
+     * @return the number of classes in the JAR file that were left out as duplicates.
+     * @throws IOException if the JAR file cannot be read, or the merged file cannot be written.
+     */
+    public int add(File jar) throws IOException {
+        int duplicates = 0;
+        ZipFile zip = new ZipFile(jar);
+        try {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                boolean isClass = name.endsWith(".class");
+                if (!this.entryNames.add(name)) {
+                    if (isClass) {
+                        duplicates++;
+                    }
+                    continue;
+                }
+                byte[] contents = this.readEntry(zip, entry);
+                if (isClass) {
+                    this.methodIds.addAll(ClassFileReader.readMethodIds(contents));
+                }
+                this.out.putNextEntry(new ZipEntry(name));
+                this.out.write(contents);
+                this.out.closeEntry();
+            }
+        } finally {
+            zip.close();
+        }
+        this.duplicateCount += duplicates;
+        return duplicates;
+    }
+
+    /**
+     * Gets the number of distinct methods that the added classes declare or refer to. This is an
+     * estimate of the size of the method table of a dex file that contains the added classes.
+     *
+     * @return the estimated number of methods.
+     */
+    public int getMethodCount() {
+        return this.methodIds.size();
+    }
+
+    /**
+     * Gets the number of classes that were left out because an earlier JAR file had already
+     * added a class with the same name.
+     *
+     * @return the number of duplicate classes.
+     */
+    public int getDuplicateCount() {
+        return this.duplicateCount;
+    }
+
+    /**
+     * Finishes writing the merged JAR file.
+     *
+     * @throws IOException if the file cannot be written.
+     */
+    public void close() throws IOException {
+        this.out.close();
+    }
+
+    /**
+     * Reads the entire contents of a zip entry.
+     *
+     * @param zip the zip file that contains the entry.
+     * @param entry the entry to read.
+     * @return the contents of the entry.
+     * @throws IOException if the entry cannot be read.
+     */
+    private byte[] readEntry(ZipFile zip, ZipEntry entry) throws IOException {
+        int size = entry.getSize() > 0 ? (int) entry.getSize() : BUFFER_SIZE;
+        ByteArrayOutputStream contents = new ByteArrayOutputStream(size);
+        InputStream in = zip.getInputStream(entry);
+        try {
+            int read;
+            while ((read = in.read(this.buffer)) != -1) {
+                contents.write(this.buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return contents.toByteArray();
+    }
+
+}
@@ -0,0 +1,112 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@code JarVersionReport} holds the major Java compiler version of every class file in a JAR
+ * file, as read by {@link JarInspector}.
+ */
+public class JarVersionReport {
+
+    /**
+     * The JAR file that this report describes.
+     */
+    private final File jar;
+
+    /**
+     * The major version of every class file in the JAR file, mapped by the name of the entry.
+     */
+    private final Map<String, Integer> versions;
+
+    /**
+     * Constructs an empty report for the given JAR file.
+     *
+     * @param jar the JAR file that the report describes.
+     */
+    public JarVersionReport(File jar) {
+        this.jar = jar;
+        this.versions = new LinkedHashMap<String, Integer>();
+    }
+
+    /**
+     * Adds the version of a class file to this report.
+     *
+     * @param entryName the name of the class file's entry in the JAR file.
+     * @param version the major version of the class file.
+     */
+    public void addClass(String entryName, int version) {
+        this.versions.put(entryName, version);
+    }
+
+    /**
+     * Gets the JAR file that this report describes.
+     *
+     * @return the JAR file that this report describes.
+     */
+    public File getJar() {
+        return this.jar;
+    }
+
+    /**
+     * Gets the major version of every class file in the JAR file, mapped by the name of the entry.
+     *
+     * @return the version of every class file.
+     */
+    public Map<String, Integer> getVersions() {
+        return Collections.unmodifiableMap(this.versions);
+    }
+
+    /**
+     * Gets the names of every class file that has a major version greater than the given version.
+     *
+     * @param maxVersion the maximum allowed major version.
+     * @return the names of the class files that are not compatible with the given version.
+     */
+    public List<String> getIncompatibleClasses(int maxVersion) {
+        List<String> incompatible = new LinkedList<String>();
+        for (Map.Entry<String, Integer> entry : this.versions.entrySet()) {
+            if (entry.getValue() > maxVersion) {
+                incompatible.add(entry.getKey());
+            }
+        }
+        return incompatible;
+    }
+
+    /**
+     * Determines if every class file in the JAR file has a major version that is less than or
+     * equal to the given version.
+     *
+     * @param maxVersion the maximum allowed major version.
+     * @return {@code true} if every class file is compatible, or {@code false} otherwise.
+     */
+    public boolean isCompatible(int maxVersion) {
+        for (int version : this.versions.values()) {
+            if (version > maxVersion) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,144 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller;
+
+import java.io.File;
+import java.util.List;
+
+import io.github.thunderbots.robotcontroller.logging.ThunderLog;
+
+/**
+ * {@code JarWatcher} watches the JAR files in the target directory for changes, on a background
+ * thread. The directory is polled at a fixed interval, and a change is only reported once the
+ * directory has looked the same for two polls in a row, so that a JAR file that is still being
+ * copied is not reported until the copy has finished.
+ */
+public class JarWatcher implements Runnable {
+
+    /**
+     * The time, in milliseconds, between polls of the target directory.
+     */
+    private static final long POLL_INTERVAL = 2000;
+
+    /**
+     * The listener that is notified of changes.
+     */
+    private final Listener listener;
+
+    /**
+     * The snapshot that the last reported change brought the directory to.
+     */
+    private DirectorySnapshot reported;
+
+    /**
+     * The snapshot from the previous poll, if it differed from {@link #reported}.
+     */
+    private DirectorySnapshot pending;
+
+    /**
+     * The thread that polls the target directory, or {@code null} if the watcher is not running.
+     */
+    private Thread thread;
+
+    /**
+     * Constructs a {@code JarWatcher} that reports changes relative to the given snapshot.
+     *
+     * @param initial a snapshot of the JAR files that are currently loaded.
+     * @param listener the listener to notify of changes.
+     */
+    public JarWatcher(DirectorySnapshot initial, Listener listener) {
+        this.reported = initial;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts watching the target directory.
+     */
+    public synchronized void start() {
+        if (this.thread == null) {
+            this.thread = new Thread(this, "Jar watcher");
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+    }
+
+    /**
+     * Stops watching the target directory. A change that is currently being handled will still
+     * finish.
+     */
+    public synchronized void stop() {
+        if (this.thread != null) {
+            this.thread.interrupt();
+            this.thread = null;
+        }
+    }
+
+    @Override
+    public void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(POLL_INTERVAL);
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                this.poll();
+            } catch (Throwable ex) {
+                ThunderLog.e("Error while reloading changed jar files", ex);
+            }
+        }
+    }
+
+    /**
+     * Takes a snapshot of the target directory, and reports a change if the directory has changed
+     * and then stayed the same since the previous poll.
+     */
+    private void poll() {
+        DirectorySnapshot current = FileLoader.getJarSnapshot();
+        if (current.equals(this.reported)) {
+            this.pending = null;
+        } else if (current.equals(this.pending)) {
+            List<File> added = current.getAdded(this.reported);
+            List<File> modified = current.getModified(this.reported);
+            List<File> removed = current.getRemoved(this.reported);
+            this.reported = current;
+            this.pending = null;
+            this.listener.jarsChanged(current.getFiles(), added, modified, removed);
+        } else {
+            this.pending = current;
+        }
+    }
+
+    /**
+     * A {@code Listener} is notified when the JAR files in the target directory change.
+     */
+    public interface Listener {
+
+        /**
+         * Called on the watcher thread when the JAR files in the target directory have changed.
+         *
+         * @param jarList every JAR file that is now in the target directory.
+         * @param added the JAR files that were added.
+         * @param modified the JAR files that were modified.
+         * @param removed the JAR files that were removed.
+         */
+        void jarsChanged(List<File> jarList, List<File> added, List<File> modified,
+                List<File> removed);
+
+    }
+
+}
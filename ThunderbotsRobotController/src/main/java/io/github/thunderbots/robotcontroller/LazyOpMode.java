@@ -0,0 +1,251 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller;
+
+import com.qualcomm.robotcore.eventloop.opmode.OpMode;
+
+import io.github.thunderbots.robotcontroller.logging.ThunderLog;
+
+/**
+ * A {@code LazyOpMode} stands in for an op mode whose class has not been loaded yet. It is
+ * registered with the op mode manager in place of the real op mode, and the real op mode class is
+ * only loaded, linked and initialized when the op mode is selected. Each time the op mode is
+ * initialized, a new instance of the real op mode is created, and every call from the op mode
+ * manager is passed on to it.
+ * <p>
+ * The class that a {@code LazyOpMode} stands in for can be replaced with {@link #update(String,
+ * ClassLoader)} when its JAR file changes. A running op mode is not affected; the new class is used
+ * the next time the op mode is initialized. If the new class cannot be loaded or linked, the class
+ * that it replaced is used instead.
+ */
+public class LazyOpMode extends OpMode {
+
+    /**
+     * The binary name of the real op mode class.
+     */
+    private String className;
+
+    /**
+     * The class loader that the real op mode class will be loaded with.
+     */
+    private ClassLoader classLoader;
+
+    /**
+     * The binary name of the class that was replaced by {@link #update(String, ClassLoader)},
+     * which is used if the new class cannot be resolved, or {@code null} if there is none.
+     */
+    private String previousClassName;
+
+    /**
+     * The class loader of the class that was replaced, or {@code null} if there is none.
+     */
+    private ClassLoader previousClassLoader;
+
+    /**
+     * Whether the real op mode has been removed. A removed op mode cannot be initialized.
+     */
+    private boolean removed;
+
+    /**
+     * The real op mode class, or {@code null} if it has not been loaded yet.
+     */
+    private volatile Class<? extends OpMode> opModeClass;
+
+    /**
+     * The instance of the real op mode that is currently running, or {@code null} if the op mode
+     * is not running.
+     */
+    private OpMode delegate;
+
+    /**
+     * Constructs a {@code LazyOpMode} for the given op mode class.
+     *
+     * @param className the binary name of the real op mode class.
+     * @param classLoader the class loader that the real op mode class will be loaded with.
+     */
+    public LazyOpMode(String className, ClassLoader classLoader) {
+        this.className = className;
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * Gets the binary name of the real op mode class.
+     *
+     * @return the binary name of the real op mode class.
+     */
+    public synchronized String getClassName() {
+        return this.className;
+    }
+
+    /**
+     * Replaces the real op mode class. The new class will be loaded the next time the op mode is
+     * initialized.
+     *
+     * @param className the binary name of the new op mode class.
+     * @param classLoader the class loader that the new op mode class will be loaded with.
+     */
+    public synchronized void update(String className, ClassLoader classLoader) {
+        // a class that was never resolved may be broken, so an older resolved one is kept instead
+        if (!this.removed && (this.opModeClass != null || this.previousClassName == null)) {
+            this.previousClassName = this.className;
+            this.previousClassLoader = this.classLoader;
+        }
+        this.className = className;
+        this.classLoader = classLoader;
+        this.opModeClass = null;
+        this.removed = false;
+    }
+
+    /**
+     * Marks the real op mode as removed. The op mode manager has no way to unregister an op mode,
+     * so a removed op mode stays in the list, but fails to initialize.
+     */
+    public synchronized void remove() {
+        this.removed = true;
+        this.opModeClass = null;
+        this.previousClassName = null;
+        this.previousClassLoader = null;
+    }
+
+    /**
+     * Loads, links and initializes the real op mode class, if that has not already been done.
+     * If the class cannot be resolved, and it replaced another class, the other class is
+     * resolved and used instead. This may be called from any thread.
+     *
+     * @return the real op mode class.
+     * @throws ClassNotFoundException if the class cannot be found, linked or initialized, or is
+     * not an op mode.
+     */
+    public synchronized Class<? extends OpMode> resolve() throws ClassNotFoundException {
+        if (this.removed) {
+            throw new ClassNotFoundException(this.className + " has been removed");
+        }
+        if (this.opModeClass == null) {
+            try {
+                this.opModeClass = load(this.className, this.classLoader);
+            } catch (ClassNotFoundException e) {
+                if (this.previousClassName == null) {
+                    throw e;
+                }
+                ThunderLog.w("The new version of {} cannot be loaded, so the previous version "
+                        + "will be used", this.className, e);
+                this.opModeClass = load(this.previousClassName, this.previousClassLoader);
+                this.className = this.previousClassName;
+                this.classLoader = this.previousClassLoader;
+                this.previousClassName = null;
+                this.previousClassLoader = null;
+            }
+        }
+        return this.opModeClass;
+    }
+
+    /**
+     * Loads, links and initializes an op mode class.
+     *
+     * @param className the binary name of the class.
+     * @param classLoader the class loader to load the class with.
+     * @return the op mode class.
+     * @throws ClassNotFoundException if the class cannot be found, linked or initialized, or is
+     * not an op mode.
+     */
+    private static Class<? extends OpMode> load(String className, ClassLoader classLoader)
+            throws ClassNotFoundException {
+        Class<?> c;
+        try {
+            c = Class.forName(className, true, classLoader);
+        } catch (LinkageError e) {
+            // a class that the op mode needs is missing or broken, or its initializer failed
+            throw new ClassNotFoundException(className + " cannot be linked", e);
+        }
+        if (!OpMode.class.isAssignableFrom(c)) {
+            throw new ClassNotFoundException(className + " is not an op mode");
+        }
+        return c.asSubclass(OpMode.class);
+    }
+
+    @Override
+    public void init() {
+        try {
+            this.delegate = this.resolve().newInstance();
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot create op mode " + this.getClassName(), e);
+        } catch (LinkageError e) {
+            throw new IllegalStateException("Cannot create op mode " + this.getClassName(), e);
+        }
+        OpModePrefetcher.recordUsed(this.getClassName());
+        this.updateDelegate();
+        this.delegate.init();
+    }
+
+    @Override
+    public void init_loop() {
+        if (this.delegate != null) {
+            this.updateDelegate();
+            this.delegate.init_loop();
+        }
+    }
+
+    @Override
+    public void start() {
+        if (this.delegate != null) {
+            this.updateDelegate();
+            this.delegate.start();
+        }
+    }
+
+    @Override
+    public void loop() {
+        if (this.delegate != null) {
+            this.updateDelegate();
+            this.delegate.loop();
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (this.delegate != null) {
+            this.updateDelegate();
+            this.delegate.stop();
+            this.delegate = null;
+        }
+    }
+
+    @Override
+    public double getRuntime() {
+        return this.delegate != null ? this.delegate.getRuntime() : super.getRuntime();
+    }
+
+    @Override
+    public void resetStartTime() {
+        super.resetStartTime();
+        if (this.delegate != null) {
+            this.delegate.resetStartTime();
+        }
+    }
+
+    /**
+     * Copies the fields that the op mode manager sets on this op mode to the real op mode.
+     */
+    private void updateDelegate() {
+        this.delegate.gamepad1 = this.gamepad1;
+        this.delegate.gamepad2 = this.gamepad2;
+        this.delegate.telemetry = this.telemetry;
+        this.delegate.hardwareMap = this.hardwareMap;
+        this.delegate.time = this.time;
+    }
+
+}
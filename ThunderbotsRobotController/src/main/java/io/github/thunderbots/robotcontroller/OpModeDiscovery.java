@@ -0,0 +1,313 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import io.github.thunderbots.robotcontroller.metrics.Metrics;
+
+/**
+ * {@code OpModeDiscovery} finds the op modes in a set of standard Java JAR files by reading their
+ * class files directly, without loading any classes. The superclass chain of every class is
+ * followed through all of the JAR files that have been added, so an op mode may extend a class
+ * from a different JAR file. When a chain leaves the JAR files, the remaining superclass is looked
+ * up in the parent class loader, which will only find classes that are already part of the app.
+ * A chain whose superclass cannot be found anywhere is unresolved, rather than not an op mode,
+ * since the class may become an op mode once a missing JAR file is added.
+ */
+public class OpModeDiscovery {
+
+    /**
+     * The binary name of the class that every op mode extends.
+     */
+    public static final String OP_MODE_CLASS = "com.qualcomm.robotcore.eventloop.opmode.OpMode";
+
+    /**
+     * The size of the buffer that is used while reading class files.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The class loader that is used to look up superclasses that are not in any of the JAR files.
+     */
+    private final ClassLoader parentLoader;
+
+    /**
+     * The op mode class, as loaded by the parent class loader, or {@code null} if the parent class
+     * loader cannot load it.
+     */
+    private final Class<?> opModeClass;
+
+    /**
+     * The information about every class in every added JAR file, mapped by binary name. If the
+     * same class is in more than one JAR file, the first one added is kept, just as a class loader
+     * would find it first.
+     */
+    private final Map<String, ClassFileInfo> classes;
+
+    /**
+     * The binary names of the classes in each added JAR file.
+     */
+    private final Map<File, List<String>> jarClasses;
+
+    /**
+     * Whether each class that has been examined is a subclass of {@link #OP_MODE_CLASS}.
+     */
+    private final Map<String, Ancestry> ancestryCache;
+
+    /**
+     * Constructs an {@code OpModeDiscovery} that looks up classes outside the JAR files with the
+     * given class loader.
+     *
+     * @param parentLoader the class loader that the discovered classes will be loaded under.
+     */
+    public OpModeDiscovery(ClassLoader parentLoader) {
+        this.parentLoader = parentLoader;
+        this.opModeClass = loadOpModeClass(parentLoader);
+        this.classes = new HashMap<String, ClassFileInfo>();
+        this.jarClasses = new LinkedHashMap<File, List<String>>();
+        this.ancestryCache = new HashMap<String, Ancestry>();
+    }
+
+    /**
+     * Reads every class file in the given JAR file.
+     *
+     * @param jar the JAR file to read.
+     * @throws IOException if the file, or any class file in it, cannot be read.
+     */
+    public void addJar(File jar) throws IOException {
+        List<String> names = new ArrayList<String>();
+        ZipFile zip = new ZipFile(jar);
+        try {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!entry.isDirectory() && entry.getName().endsWith(".class")) {
+                    ClassFileInfo info = ClassFileReader.read(readEntry(zip, entry));
+                    names.add(info.getName());
+                    if (!this.classes.containsKey(info.getName())) {
+                        this.classes.put(info.getName(), info);
+                    }
+                }
+            }
+        } finally {
+            zip.close();
+        }
+        this.jarClasses.put(jar, names);
+        this.ancestryCache.clear();
+        Metrics.counter("discovery.classes").add(names.size());
+    }
+
+    /**
+     * Gets the op modes in the given JAR file. A class is an op mode if it extends
+     * {@link #OP_MODE_CLASS} and can be instantiated through a public no-arg constructor.
+     *
+     * @param jar a JAR file that has been added.
+     * @return the op modes in the JAR file.
+     */
+    public List<ClassFileInfo> getOpModes(File jar) {
+        List<ClassFileInfo> opModes = new ArrayList<ClassFileInfo>();
+        List<String> names = this.jarClasses.get(jar);
+        if (names == null) {
+            return opModes;
+        }
+        for (String name : names) {
+            ClassFileInfo info = this.classes.get(name);
+            if (info.isInstantiable() && this.isOpMode(name)) {
+                opModes.add(info);
+            }
+        }
+        return opModes;
+    }
+
+    /**
+     * Counts the classes in the given JAR file that could be op modes, but whose superclass chain
+     * cannot be followed to its end, because a superclass is not in any of the added JAR files
+     * or the app. The op modes of a JAR file with unresolved classes are not complete.
+     *
+     * @param jar a JAR file that has been added.
+     * @return the number of instantiable classes in the JAR file with an unresolved superclass.
+     */
+    public int getUnresolvedCount(File jar) {
+        int unresolved = 0;
+        List<String> names = this.jarClasses.get(jar);
+        if (names == null) {
+            return unresolved;
+        }
+        for (String name : names) {
+            if (this.classes.get(name).isInstantiable()
+                    && this.getAncestry(name) == Ancestry.UNRESOLVED) {
+                unresolved++;
+            }
+        }
+        return unresolved;
+    }
+
+    /**
+     * Gets the information about a class in one of the added JAR files.
+     *
+     * @param name the binary name of the class.
+     * @return the information about the class, or {@code null} if it is not in any JAR file.
+     */
+    public ClassFileInfo getClass(String name) {
+        return this.classes.get(name);
+    }
+
+    /**
+     * Determines if the given class is a subclass of {@link #OP_MODE_CLASS}. The superclass chain
+     * is followed through the added JAR files, and the result for every class along the chain is
+     * remembered.
+     *
+     * @param name the binary name of the class.
+     * @return {@code true} if the class extends {@link #OP_MODE_CLASS}, or {@code false} if it
+     * does not, or its superclass chain cannot be resolved.
+     */
+    public boolean isOpMode(String name) {
+        return this.getAncestry(name) == Ancestry.OP_MODE;
+    }
+
+    /**
+     * Follows the superclass chain of the given class, and remembers the result for every class
+     * along the chain.
+     *
+     * @param name the binary name of the class.
+     * @return whether the class extends {@link #OP_MODE_CLASS}, or if that cannot be determined.
+     */
+    private Ancestry getAncestry(String name) {
+        List<String> chain = new ArrayList<String>();
+        Ancestry result = null;
+        String current = name;
+        while (result == null) {
+            if (current == null) {
+                result = Ancestry.OTHER;
+            } else if (current.equals(OP_MODE_CLASS)) {
+                result = Ancestry.OP_MODE;
+            } else if (this.ancestryCache.containsKey(current)) {
+                result = this.ancestryCache.get(current);
+            } else if (chain.contains(current)) {
+                result = Ancestry.OTHER; // a malformed, circular hierarchy
+            } else {
+                chain.add(current);
+                ClassFileInfo info = this.classes.get(current);
+                if (info != null) {
+                    current = info.getSuperName();
+                } else {
+                    result = this.getLoadedAncestry(current);
+                }
+            }
+        }
+        for (String c : chain) {
+            this.ancestryCache.put(c, result);
+        }
+        return result;
+    }
+
+    /**
+     * Determines if a class that is not in any of the JAR files is a subclass of
+     * {@link #OP_MODE_CLASS}, by looking it up in the parent class loader. The class is not
+     * initialized.
+     *
+     * @param name the binary name of the class.
+     * @return whether the class extends {@link #OP_MODE_CLASS}, or {@link Ancestry#UNRESOLVED} if
+     * the class or one of its superclasses cannot be loaded.
+     */
+    private Ancestry getLoadedAncestry(String name) {
+        if (this.opModeClass == null) {
+            return Ancestry.UNRESOLVED;
+        }
+        try {
+            Class<?> c = Class.forName(name, false, this.parentLoader);
+            return this.opModeClass.isAssignableFrom(c) ? Ancestry.OP_MODE : Ancestry.OTHER;
+        } catch (ClassNotFoundException e) {
+            return Ancestry.UNRESOLVED;
+        } catch (LinkageError e) {
+            return Ancestry.UNRESOLVED;
+        }
+    }
+
+    /**
+     * Loads the op mode class with the given class loader.
+     *
+     * @param loader the class loader to use.
+     * @return the op mode class, or {@code null} if it cannot be loaded.
+     */
+    private static Class<?> loadOpModeClass(ClassLoader loader) {
+        try {
+            return Class.forName(OP_MODE_CLASS, false, loader);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the entire contents of a zip entry.
+     *
+     * @param zip the zip file that contains the entry.
+     * @param entry the entry to read.
+     * @return the contents of the entry.
+     * @throws IOException if the entry cannot be read.
+     */
+    private static byte[] readEntry(ZipFile zip, ZipEntry entry) throws IOException {
+        int size = entry.getSize() > 0 ? (int) entry.getSize() : BUFFER_SIZE;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+        InputStream in = zip.getInputStream(entry);
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * {@code Ancestry} is the result of following the superclass chain of a class.
+     */
+    private enum Ancestry {
+
+        /**
+         * The class extends {@link OpModeDiscovery#OP_MODE_CLASS}.
+         */
+        OP_MODE,
+
+        /**
+         * The class does not extend {@link OpModeDiscovery#OP_MODE_CLASS}.
+         */
+        OTHER,
+
+        /**
+         * A superclass cannot be found, so it is not known if the class is an op mode.
+         */
+        UNRESOLVED
+
+    }
+
+}
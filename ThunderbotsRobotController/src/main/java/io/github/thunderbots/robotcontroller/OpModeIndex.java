@@ -0,0 +1,328 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.github.thunderbots.robotcontroller.logging.ThunderLog;
+import io.github.thunderbots.robotcontroller.metrics.Metrics;
+import io.github.thunderbots.robotcontroller.metrics.Timer;
+
+/**
+ * {@code OpModeIndex} stores the op modes that were found in each converted JAR file, so that
+ * later boots can load only those classes instead of scanning every class in the file. Each index
+ * is stored under the cache key of the converted file, so an index can never describe a different
+ * version of the file than the one being loaded. Indexes are normally created from the source JAR
+ * files by {@link OpModeDiscovery}, before any classes are loaded; if that is not possible, the
+ * {@link OpModeLoader} creates one after it has scanned the file.
+ */
+public class OpModeIndex {
+
+    /**
+     * The sub-directory, inside the app's private cache file, that will contain all the indexes.
+     */
+    private static final String INDEX_DIRECTORY = "/index/";
+
+    /**
+     * The first line of every index file. This should be changed whenever the format of the file
+     * changes, so that old index files are ignored.
+     */
+    private static final String HEADER = "# op mode index 1";
+
+    /**
+     * The string that separates the fields on each line of an index file.
+     */
+    private static final String SEPARATOR = "\t";
+
+    /**
+     * Gets the key that identifies the given converted JAR file. Files from the
+     * {@link ConversionCache} are already named by their key; any other file is hashed.
+     *
+     * @param convertedJar the converted JAR file.
+     * @return the key that identifies the file.
+     * @throws IOException if the file must be hashed, and cannot be read.
+     */
+    public static String getKey(File convertedJar) throws IOException {
+        String key = ConversionCache.getStoredKey(convertedJar);
+        if (key == null) {
+            key = ConversionCache.getKey(convertedJar);
+        }
+        return key;
+    }
+
+    /**
+     * Writes an index for every JAR file in the given list that does not already have one. A JAR
+     * file with an {@link OpModeManifest} is indexed from its manifest alone. The op modes in the
+     * other JAR files are found by {@link OpModeDiscovery}, which reads the class files of the
+     * source JAR files directly, so no classes are loaded. If any of them is missing an index,
+     * every JAR file in the list is read, so that superclasses in other JAR files can be followed.
+     * No index is written for a JAR file with a class whose superclass cannot be found, so that
+     * the JAR file is searched again on the next boot, when the missing JAR file may be present.
+     *
+     * @param jarList the source JAR files.
+     * @param parentLoader the class loader that the op modes will be loaded under.
+     */
+    public static void createMissingIndexes(List<File> jarList, ClassLoader parentLoader) {
+        Map<File, String> missing = new LinkedHashMap<File, String>();
+        for (File jar : jarList) {
+            try {
+                String key = ConversionCache.getKey(jar);
+                if (getIndexFile(key).isFile()) {
+                    continue;
+                }
+                List<Entry> manifest = OpModeManifest.read(jar);
+                if (manifest != null) {
+                    write(key, manifest);
+                    Metrics.counter("index.fromManifest").increment();
+                } else {
+                    missing.put(jar, key);
+                }
+            } catch (IOException e) {
+                ThunderLog.w(jar.getName() + " cannot be read", e);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        Timer timer = Metrics.timer("index.discovery");
+        long startTime = timer.start();
+        OpModeDiscovery discovery = new OpModeDiscovery(parentLoader);
+        Set<File> unreadable = new HashSet<File>();
+        for (File jar : jarList) {
+            Timer jarTimer = Metrics.timer("index.discovery.jar");
+            long jarStart = jarTimer.start();
+            try {
+                discovery.addJar(jar);
+            } catch (IOException e) {
+                ThunderLog.w("The class files in " + jar.getName() + " cannot be read", e);
+                unreadable.add(jar);
+            } finally {
+                jarTimer.stop(jarStart);
+            }
+        }
+        for (Map.Entry<File, String> jar : missing.entrySet()) {
+            if (unreadable.contains(jar.getKey())) {
+                continue;
+            }
+            int unresolved = discovery.getUnresolvedCount(jar.getKey());
+            if (unresolved > 0) {
+                // the index is keyed only on this file, so it would hide these classes for good
+                Metrics.counter("index.incomplete").increment();
+                ThunderLog.i("{} classes in {} extend a class that cannot be found, so its op "
+                        + "mode index will not be saved", unresolved, jar.getKey().getName());
+                continue;
+            }
+            List<Entry> entries = new ArrayList<Entry>();
+            for (ClassFileInfo info : discovery.getOpModes(jar.getKey())) {
+                entries.add(new Entry(info.getName(), info.getOpModeName(), info.isActive()));
+            }
+            write(jar.getValue(), entries);
+            Metrics.counter("index.written").increment();
+        }
+        long elapsed = timer.stop(startTime);
+        ThunderLog.i("Discovered op modes in " + missing.size() + " jar files in "
+                + elapsed / 1000000 + " ms");
+    }
+
+    /**
+     * Reads the index that is stored under the given key.
+     *
+     * @param key the key of the converted JAR file.
+     * @return the op modes in the converted JAR file, or {@code null} if there is no readable
+     * index for the file.
+     */
+    public static List<Entry> read(String key) {
+        File file = getIndexFile(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader(file));
+            try {
+                if (!HEADER.equals(reader.readLine())) {
+                    return null;
+                }
+                List<Entry> entries = new ArrayList<Entry>();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] parts = line.split(SEPARATOR);
+                    if (parts.length != 3) {
+                        return null;
+                    }
+                    entries.add(new Entry(parts[0], parts[1], Boolean.parseBoolean(parts[2])));
+                }
+                return entries;
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            ThunderLog.w("The op mode index for " + key + " cannot be read", e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes an index under the given key. The index is written to a temporary file first, so
+     * that an interrupted write cannot leave a partial index behind.
+     *
+     * @param key the key of the converted JAR file.
+     * @param entries the op modes in the converted JAR file.
+     */
+    public static void write(String key, List<Entry> entries) {
+        File file = getIndexFile(key);
+        File temp = new File(file.getParentFile(), key + ".tmp");
+        try {
+            PrintWriter writer = new PrintWriter(new FileWriter(temp));
+            try {
+                writer.println(HEADER);
+                for (Entry entry : entries) {
+                    writer.println(entry.getClassName() + SEPARATOR + entry.getName()
+                            + SEPARATOR + entry.isActive());
+                }
+            } finally {
+                writer.close();
+            }
+            if (!temp.renameTo(file)) {
+                ThunderLog.w("The op mode index for " + key + " cannot be saved");
+            }
+        } catch (IOException e) {
+            ThunderLog.w("The op mode index for " + key + " cannot be saved", e);
+        }
+    }
+
+    /**
+     * Writes the index of a merged converted file, by combining the indexes of its source JAR
+     * files in order. If the same class is listed by more than one source, only the first entry
+     * is kept, since only the first class is kept in the merged file. Nothing is written if any
+     * source index is missing, in which case the merged file is scanned when it is loaded.
+     *
+     * @param key the key of the merged converted file.
+     * @param sourceKeys the keys of the source JAR files, in class path order.
+     * @see JarMerger
+     */
+    public static void writeMerged(String key, List<String> sourceKeys) {
+        List<Entry> entries = new ArrayList<Entry>();
+        Set<String> classNames = new HashSet<String>();
+        for (String sourceKey : sourceKeys) {
+            List<Entry> index = read(sourceKey);
+            if (index == null) {
+                return;
+            }
+            for (Entry entry : index) {
+                if (classNames.add(entry.getClassName())) {
+                    entries.add(entry);
+                }
+            }
+        }
+        write(key, entries);
+    }
+
+    /**
+     * Deletes the index that is stored under the given key, if there is one.
+     *
+     * @param key the key of the converted JAR file.
+     */
+    public static void delete(String key) {
+        getIndexFile(key).delete();
+    }
+
+    /**
+     * Gets the file that the index for the given key is stored in.
+     *
+     * @param key the key of the converted JAR file.
+     * @return the index file.
+     */
+    private static File getIndexFile(String key) {
+        File directory = new File(FileLoader.getCacheDirectory(), INDEX_DIRECTORY);
+        directory.mkdirs();
+        return new File(directory, key);
+    }
+
+    /**
+     * An {@code Entry} describes a single op mode in an index.
+     */
+    public static class Entry {
+
+        /**
+         * The binary name of the op mode class.
+         */
+        private final String className;
+
+        /**
+         * The name of the op mode, as returned by {@link AnnotationReader#getOpModeName(Class)}.
+         */
+        private final String name;
+
+        /**
+         * Whether the op mode has an {@code Active} annotation.
+         */
+        private final boolean active;
+
+        /**
+         * Constructs an index entry.
+         *
+         * @param className the binary name of the op mode class.
+         * @param name the name of the op mode.
+         * @param active whether the op mode has an {@code Active} annotation.
+         */
+        public Entry(String className, String name, boolean active) {
+            this.className = className;
+            this.name = name;
+            this.active = active;
+        }
+
+        /**
+         * Gets the binary name of the op mode class.
+         *
+         * @return the binary name of the op mode class.
+         */
+        public String getClassName() {
+            return this.className;
+        }
+
+        /**
+         * Gets the name of the op mode.
+         *
+         * @return the name of the op mode.
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * Determines if the op mode has an {@code Active} annotation.
+         *
+         * @return {@code true} if the op mode is active, or {@code false} otherwise.
+         */
+        public boolean isActive() {
+            return this.active;
+        }
+
+    }
+
+}
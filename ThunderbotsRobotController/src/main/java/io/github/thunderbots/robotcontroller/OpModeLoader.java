@@ -20,28 +20,82 @@ import com.qualcomm.robotcore.eventloop.opmode.OpMode;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.Modifier;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.Enumeration;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import dalvik.system.DexClassLoader;
-import dalvik.system.DexFile;
 import io.github.thunderbots.robotcontroller.logging.ThunderLog;
+import io.github.thunderbots.robotcontroller.metrics.Metrics;
+import io.github.thunderbots.robotcontroller.metrics.Timer;
+import io.github.thunderbots.robotcontroller.platform.Platform;
 
 /**
  * {@code OpModeLoader} is responsible for extracting valid op modes from a list of JAR files. The
- * files must have already been converted to Dalvik-compatible files.
+ * files must have already been converted to Dalvik-compatible files, unless the platform's code
+ * loader loads standard JAR files.
+ *
+ * @see io.github.thunderbots.robotcontroller.platform.CodeLoader#loadsDexFiles()
  *
  * @author Zach Ohara
  */
 public class OpModeLoader {
 
+    /**
+     * Whether every JAR file that contains op modes should have its own class loader.
+     */
+    private static boolean perJarLoading = false;
+
+    /**
+     * The number of JAR files that may be scanned at the same time, when every JAR file has its
+     * own class loader.
+     */
+    private static int scanParallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Sets whether every JAR file that contains op modes should have its own class loader. The
+     * JAR files are then scanned on a pool of worker threads, and a JAR file that cannot be
+     * scanned does not stop the others from being scanned. JAR files whose op mode index lists
+     * no op modes are treated as libraries, and are not opened until a class is needed from
+     * them.
+     *
+     * @param perJar {@code true} to give every JAR file its own class loader, or {@code false} to
+     * load every JAR file with one class loader.
+     * @see JarClassLoaders
+     */
+    public static void setPerJarLoading(boolean perJar) {
+        OpModeLoader.perJarLoading = perJar;
+    }
+
+    /**
+     * Sets the number of JAR files that may be scanned at the same time, when every JAR file has
+     * its own class loader. A value of {@code 1} or less will cause all JAR files to be scanned
+     * serially, on the calling thread.
+     *
+     * @param parallelism the number of JAR files to scan at the same time.
+     */
+    public static void setScanParallelism(int parallelism) {
+        OpModeLoader.scanParallelism = parallelism;
+    }
+
     /**
      * The class loader that is used to load all classes from the file system.
      */
     private ClassLoader classLoader;
 
+    /**
+     * The class loaders of the individual JAR files, or {@code null} if every JAR file is loaded
+     * by {@link #classLoader}.
+     */
+    private JarClassLoaders jarLoaders;
+
     /**
      * The list of files that will be searched for op modes.
      */
@@ -52,6 +106,12 @@ public class OpModeLoader {
      */
     private List<Class<? extends OpMode>> opModeList;
 
+    /**
+     * The problems with every class that extends {@code OpMode}, but could not be loaded as an op
+     * mode.
+     */
+    private Map<String, List<String>> diagnostics;
+
     /**
      * Constructs an {@code OpModeLoader} that will load op modes from all of the files in the given
      * list.
@@ -61,49 +121,327 @@ public class OpModeLoader {
      */
     public OpModeLoader(List<File> fileList) {
         this.fileList = fileList;
-        List<URL> jarList = FileLoader.getUrlList(this.fileList);
-        this.classLoader = getClassLoader(jarList);
+        Timer timer = Metrics.timer("load.classLoader");
+        long start = timer.start();
+        List<File> unoptimized = OptimizedDexFiles.getUnoptimized(this.fileList);
+        if (perJarLoading && this.fileList.size() > 1) {
+            this.jarLoaders = createJarLoaders(this.fileList);
+            this.classLoader = this.jarLoaders;
+        } else {
+            List<URL> jarList = FileLoader.getUrlList(this.fileList);
+            this.classLoader = getClassLoader(jarList);
+        }
+        timer.stop(start);
+        OptimizedDexFiles.recordOptimized(unoptimized);
         Thread.currentThread().setContextClassLoader(this.classLoader);
     }
 
     /**
-     * Gets a list of all op modes inside any of the searched files.
+     * Constructs an {@code OpModeLoader} that will load op modes from the given files, with class
+     * loaders that have already been created for them. This is used to reload JAR files one at a
+     * time, while the reloaded files can still use each other's classes.
+     *
+     * @param fileList the list of files that will be searched for op modes.
+     * @param jarLoaders the class loaders of the files, and of any other files they may use.
+     */
+    public OpModeLoader(List<File> fileList, JarClassLoaders jarLoaders) {
+        this.fileList = fileList;
+        this.jarLoaders = jarLoaders;
+        this.classLoader = jarLoaders;
+    }
+
+    /**
+     * Gets a list of all op modes inside any of the searched files. If a file has an
+     * {@link OpModeIndex}, only the classes listed in the index are loaded. Otherwise, every class
+     * in the file is searched, and an index is written for the file so that later calls will not
+     * have to search it again.
      *
      * @return all op modes found in the searched files.
      */
     public List<Class<? extends OpMode>> getOpModes() {
+        this.scanFiles(true);
+        return this.opModeList;
+    }
+
+    /**
+     * Gets the index entries of all op modes inside any of the searched files, without loading
+     * the op mode classes. Only files that do not have an {@link OpModeIndex} are scanned, which
+     * loads their classes; the op modes in every other file are taken from the index alone.
+     *
+     * @return the index entries of all op modes found in the searched files.
+     */
+    public List<OpModeIndex.Entry> getOpModeEntries() {
+        return this.scanFiles(false);
+    }
+
+    /**
+     * Gets the class loader that is used to load all classes from the searched files.
+     *
+     * @return the class loader for the searched files.
+     */
+    public ClassLoader getClassLoader() {
+        return this.classLoader;
+    }
+
+    /**
+     * Scans every searched file, and collects the op modes and diagnostics of all of them, in the
+     * order of the files. When every file has its own class loader, the files are scanned on a
+     * pool of worker threads.
+     *
+     * @param loadIndexed whether the op modes listed in an index should be loaded.
+     * @return the index entries of all op modes found in the searched files.
+     */
+    private List<OpModeIndex.Entry> scanFiles(boolean loadIndexed) {
         this.opModeList = new ArrayList<Class<? extends OpMode>>();
+        this.diagnostics = new LinkedHashMap<String, List<String>>();
+        List<File> scanned = new ArrayList<File>();
         for (File f : this.fileList) {
+            if (this.jarLoaders == null || this.jarLoaders.getLoader(f) != null) {
+                scanned.add(f);
+            }
+        }
+        List<FileScan> scans;
+        if (this.jarLoaders == null || scanParallelism <= 1 || scanned.size() <= 1) {
+            scans = this.scanSerially(scanned, loadIndexed);
+        } else {
+            scans = this.scanInParallel(scanned, loadIndexed);
+        }
+        List<OpModeIndex.Entry> entries = new ArrayList<OpModeIndex.Entry>();
+        for (FileScan scan : scans) {
+            this.opModeList.addAll(scan.opModes);
+            this.diagnostics.putAll(scan.diagnostics);
+            entries.addAll(scan.entries);
+        }
+        return entries;
+    }
+
+    /**
+     * Scans the given files one at a time, on the calling thread.
+     *
+     * @param files the files to scan.
+     * @param loadIndexed whether the op modes listed in an index should be loaded.
+     * @return the results of scanning the files that could be opened.
+     */
+    private List<FileScan> scanSerially(List<File> files, boolean loadIndexed) {
+        List<FileScan> scans = new ArrayList<FileScan>(files.size());
+        for (File f : files) {
             try {
-                this.loadJar(f);
+                scans.add(this.scanFile(f, loadIndexed));
             } catch (IOException e) {
-                ThunderLog.e(f.getAbsolutePath() + " cannot be opened");
-                e.printStackTrace();
+                ThunderLog.e("{} cannot be opened", f.getAbsolutePath(), e);
             }
         }
-        return this.opModeList;
+        return scans;
+    }
+
+    /**
+     * Scans the given files on a pool of worker threads. A file that cannot be scanned is logged
+     * and left out, and does not affect the other files.
+     *
+     * @param files the files to scan.
+     * @param loadIndexed whether the op modes listed in an index should be loaded.
+     * @return the results of scanning the files that could be scanned, in the order of the files.
+     */
+    private List<FileScan> scanInParallel(List<File> files, final boolean loadIndexed) {
+        Timer timer = Metrics.timer("load.parallelScan");
+        long start = timer.start();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(scanParallelism,
+                files.size()));
+        List<Future<FileScan>> futures = new ArrayList<Future<FileScan>>(files.size());
+        try {
+            for (final File f : files) {
+                futures.add(pool.submit(new Callable<FileScan>() {
+                    @Override
+                    public FileScan call() throws IOException {
+                        return OpModeLoader.this.scanFile(f, loadIndexed);
+                    }
+                }));
+            }
+            List<FileScan> scans = new ArrayList<FileScan>(files.size());
+            for (int i = 0; i < files.size(); i++) {
+                try {
+                    scans.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    Metrics.counter("load.failedJars").increment();
+                    ThunderLog.e("{} cannot be scanned. Its op modes will not be loaded.",
+                            files.get(i).getName(), e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    ThunderLog.e("Interrupted while scanning " + files.get(i).getName());
+                    break;
+                }
+            }
+            return scans;
+        } finally {
+            pool.shutdownNow();
+            timer.stop(start);
+        }
+    }
+
+    /**
+     * Finds the op modes in a single file. If the file has an {@link OpModeIndex}, or an
+     * {@link OpModeManifest} that an index can be written from, its op modes are taken from the
+     * index, and their classes are loaded if requested. Otherwise, every class in the file is
+     * searched, and an index is written for the file.
+     *
+     * @param file the file to scan.
+     * @param loadIndexed whether the op modes listed in an index should be loaded.
+     * @return the op modes found in the file.
+     * @throws IOException if the file cannot be opened.
+     */
+    private FileScan scanFile(File file, boolean loadIndexed) throws IOException {
+        FileScan scan = new FileScan(this.getLoader(file));
+        String key = OpModeIndex.getKey(file);
+        List<OpModeIndex.Entry> index = OpModeIndex.read(key);
+        if (index == null) {
+            index = OpModeManifest.read(file);
+            if (index != null) {
+                OpModeIndex.write(key, index);
+            }
+        }
+        if (index == null) {
+            Metrics.counter("load.indexMisses").increment();
+            index = this.scanJar(file, key, scan);
+        } else {
+            Metrics.counter("load.indexHits").increment();
+            if (loadIndexed) {
+                this.loadIndex(index, scan);
+            }
+        }
+        scan.entries.addAll(index);
+        return scan;
+    }
+
+    /**
+     * Gets the class loader that loads the classes of the given file.
+     *
+     * @param file one of the searched files.
+     * @return the class loader of the file.
+     */
+    private ClassLoader getLoader(File file) {
+        if (this.jarLoaders != null) {
+            ClassLoader loader = this.jarLoaders.getLoader(file);
+            if (loader != null) {
+                return loader;
+            }
+        }
+        return this.classLoader;
+    }
+
+    /**
+     * Searches every class in the given file for op modes, adds them to the scan, and writes an
+     * index for the file. The index is keyed only on the file itself, so it is not written if any
+     * class failed to load: the class may be an op mode that only needs a JAR file that is
+     * missing on this boot, and it would otherwise be left out of the index after the JAR file is
+     * added.
+     *
+     * @param jarFile the file to search for op modes.
+     * @param key the key of the file.
+     * @param scan the scan to add the op modes to.
+     * @return the index entries of the op modes in the file.
+     * @throws IOException if the file cannot be opened.
+     */
+    private List<OpModeIndex.Entry> scanJar(File jarFile, String key, FileScan scan)
+            throws IOException {
+        Timer timer = Metrics.timer("load.scan");
+        long start = timer.start();
+        try {
+            this.loadJar(jarFile, scan);
+        } finally {
+            Metrics.timer("load.scan." + jarFile.getName()).record(timer.stop(start));
+        }
+        List<OpModeIndex.Entry> index = getIndexEntries(scan.opModes);
+        if (scan.failedClasses == 0) {
+            OpModeIndex.write(key, index);
+        } else {
+            Metrics.counter("index.incomplete").increment();
+            ThunderLog.i("{} classes in {} cannot be loaded, so its op mode index will not be "
+                    + "saved", scan.failedClasses, jarFile.getName());
+        }
+        return index;
+    }
+
+    /**
+     * Loads the op modes that are listed in an index. Every listed class is still checked, so a
+     * class that is no longer a valid op mode will not be added to the scan.
+     *
+     * @param index the index entries of the op modes to load.
+     * @param scan the scan to add the op modes to.
+     */
+    private void loadIndex(List<OpModeIndex.Entry> index, FileScan scan) {
+        for (OpModeIndex.Entry entry : index) {
+            try {
+                this.loadOpMode(loadClassTimed(scan.loader, entry.getClassName()), scan);
+            } catch (ClassNotFoundException e) {
+                ThunderLog.w("{} is in the op mode index, but cannot be found",
+                        entry.getClassName(), e);
+            }
+        }
+    }
+
+    /**
+     * Builds the index entries that describe the given op modes.
+     *
+     * @param opModes the op modes to describe.
+     * @return the index entries of the op modes.
+     */
+    private static List<OpModeIndex.Entry> getIndexEntries(
+            List<Class<? extends OpMode>> opModes) {
+        List<OpModeIndex.Entry> entries = new ArrayList<OpModeIndex.Entry>(opModes.size());
+        for (Class<? extends OpMode> c : opModes) {
+            entries.add(new OpModeIndex.Entry(c.getName(), AnnotationReader.getOpModeName(c),
+                    AnnotationReader.isActive(c)));
+        }
+        return entries;
     }
 
     /**
      * Loads the given JAR file and searches it for valid op modes.
      *
      * @param jarFile the file to search for op modes.
+     * @param scan the scan to add the op modes to.
      * @throws IOException if the file cannot be opened.
      */
-    private void loadJar(File jarFile) throws IOException {
-        File cache = new File(FileLoader.getCacheDirectory() + "/temp/");
-        DexFile jar = DexFile.loadDex(jarFile.getAbsolutePath(), cache.getAbsolutePath(), 0);
-        Enumeration<String> entries = jar.entries();
-        while(entries.hasMoreElements()) {
-            String entry  = entries.nextElement();
+    private void loadJar(File jarFile, FileScan scan) throws IOException {
+        Timer dexTimer = Metrics.timer("load.dexFile");
+        long dexStart = dexTimer.start();
+        // the class loader has already written this optimized file, so it is reused
+        List<String> entries = Platform.getCodeLoader().getClassNames(jarFile,
+                OptimizedDexFiles.getOptimizedFile(jarFile));
+        dexTimer.stop(dexStart);
+        OptimizedDexFiles.recordShared(jarFile);
+        for (String entry : entries) {
             try {
-                Class<?> c = this.classLoader.loadClass(entry);
-                this.loadClass(c);
+                Class<?> c = loadClassTimed(scan.loader, entry);
+                this.loadClass(c, scan);
             } catch (ClassNotFoundException e) {
-                e.printStackTrace();
+                scan.failedClasses++;
+                ThunderLog.w("{} cannot be loaded", entry, e);
+            } catch (LinkageError e) {
+                // usually a superclass or interface in a JAR file that is not on the device
+                scan.failedClasses++;
+                ThunderLog.w("{} cannot be loaded", entry, e);
             }
         }
-        jar.close();
+    }
+
+    /**
+     * Loads a class through a class loader, and records the time it took.
+     *
+     * @param loader the class loader to load the class with.
+     * @param name the binary name of the class.
+     * @return the loaded class.
+     * @throws ClassNotFoundException if the class cannot be found.
+     */
+    private static Class<?> loadClassTimed(ClassLoader loader, String name)
+            throws ClassNotFoundException {
+        Timer timer = Metrics.timer("load.class");
+        long start = timer.start();
+        try {
+            return loader.loadClass(name);
+        } finally {
+            timer.stop(start);
+        }
     }
 
     /**
@@ -111,11 +449,12 @@ public class OpModeLoader {
      * searched recursively.
      *
      * @param c the class to search for valid op modes.
+     * @param scan the scan to add the op modes to.
      */
-    private void loadClass(Class<?> c) {
-        loadOpMode(c);
+    private void loadClass(Class<?> c, FileScan scan) {
+        loadOpMode(c, scan);
         for (Class<?> subclass : c.getDeclaredClasses()) {
-            loadClass(subclass);
+            loadClass(subclass, scan);
         }
     }
 
@@ -123,31 +462,39 @@ public class OpModeLoader {
      * Attempts to load an op mode from the given class. If the given class is not an op mode, or
      * is not instantiable, then this method returns without any action being taken. If the given
      * class is found to be a valid op mode (it extends {@code OpMode} and is instantiable), then
-     * it is added to to the op mode list.
+     * it is added to to the scan. The class is never instantiated; if it extends {@code OpMode}
+     * but cannot be instantiated, the reasons are recorded in the diagnostics.
      *
      * @param c the class to attempt to load an op mode from.
+     * @param scan the scan to add the op mode to.
      * @see #opModeList
+     * @see #getDiagnostics()
      */
     @SuppressWarnings("unchecked")
-    private void loadOpMode(Class<?> c) {
-        if (OpMode.class.isAssignableFrom(c) && OpModeLoader.isInstantiable(c)) {
-            this.opModeList.add((Class<? extends OpMode>) c);
+    private void loadOpMode(Class<?> c, FileScan scan) {
+        if (!OpMode.class.isAssignableFrom(c)) {
+            return;
+        }
+        List<String> problems = OpModeValidator.validate(c);
+        if (problems.isEmpty()) {
+            scan.opModes.add((Class<? extends OpMode>) c);
+            Metrics.counter("load.opModes").increment();
+        } else if (!Modifier.isAbstract(c.getModifiers())) {
+            scan.diagnostics.put(c.getName(), problems);
+            Metrics.counter("load.rejected").increment();
+            ThunderLog.i("{} cannot be loaded as an op mode. It {}", c.getName(), problems);
         }
     }
 
     /**
-     * Determines if a given class is legally instantiable.
+     * Gets the problems that prevented classes that extend {@code OpMode} from being loaded as op
+     * modes, mapped by class name. Abstract classes are left out, since they are usually meant to
+     * be extended by other op modes.
      *
-     * @param c the class to check for instantiability.
-     * @return {@code true} if the class is instantiable, or {@code false} otherwise.
+     * @return the problems found while loading op modes.
      */
-    private static boolean isInstantiable(Class<?> c) {
-        try {
-            c.newInstance();
-            return true;
-        } catch (Exception e) {
-            return false;
-        }
+    public Map<String, List<String>> getDiagnostics() {
+        return this.diagnostics;
     }
 
     /**
@@ -157,26 +504,82 @@ public class OpModeLoader {
      * @return a constructed class loader.
      */
     private ClassLoader getClassLoader(List<URL> jarList) {
-        String pathString = getDelimitedPathString(jarList);
-        String cacheDir = FileLoader.getCacheDirectory().toString();
         ClassLoader parentLoader = this.getClass().getClassLoader();
-        return new DexClassLoader(pathString, cacheDir, null, parentLoader);
+        return Platform.getCodeLoader().createClassLoader(jarList,
+                OptimizedDexFiles.getDirectory(), parentLoader);
     }
 
     /**
-     * Gets a string representation of the given list, with each entry in the list being delimited
-     * by the system path separator.
+     * Creates a class loader for every file that contains op modes. A file whose index lists no
+     * op modes is a library, and shares a class loader with the other libraries. A file without
+     * an index might contain op modes, so it gets its own class loader.
      *
-     * @param list the list to convert to a string.
-     * @return a string representation of the given list.
+     * @param files the files to create class loaders for.
+     * @return the class loaders of the files.
      */
-    private static String getDelimitedPathString(List<?> list) {
-        String result = "";
-        for (Object o : list) {
-            result += File.pathSeparator;
-            result += o.toString();
+    private JarClassLoaders createJarLoaders(List<File> files) {
+        List<File> opModeFiles = new ArrayList<File>();
+        List<File> libraryFiles = new ArrayList<File>();
+        for (File f : files) {
+            List<OpModeIndex.Entry> index = null;
+            try {
+                index = OpModeIndex.read(OpModeIndex.getKey(f));
+            } catch (IOException e) {
+                ThunderLog.w(f.getName() + " cannot be read", e);
+            }
+            if (index != null && index.isEmpty()) {
+                libraryFiles.add(f);
+            } else {
+                opModeFiles.add(f);
+            }
+        }
+        Metrics.counter("load.opModeJars").add(opModeFiles.size());
+        return new JarClassLoaders(opModeFiles, libraryFiles, this.getClass().getClassLoader());
+    }
+
+    /**
+     * A {@code FileScan} holds what was found while scanning a single file, so that files can be
+     * scanned on different threads and their results combined in order.
+     */
+    private static class FileScan {
+
+        /**
+         * The class loader that loads the classes of the file.
+         */
+        final ClassLoader loader;
+
+        /**
+         * The op modes that were loaded from the file.
+         */
+        final List<Class<? extends OpMode>> opModes;
+
+        /**
+         * The problems with every class in the file that could not be loaded as an op mode.
+         */
+        final Map<String, List<String>> diagnostics;
+
+        /**
+         * The index entries of the op modes in the file.
+         */
+        final List<OpModeIndex.Entry> entries;
+
+        /**
+         * The number of classes in the file that could not be loaded.
+         */
+        int failedClasses;
+
+        /**
+         * Constructs an empty scan of a file.
+         *
+         * @param loader the class loader that loads the classes of the file.
+         */
+        FileScan(ClassLoader loader) {
+            this.loader = loader;
+            this.opModes = new ArrayList<Class<? extends OpMode>>();
+            this.diagnostics = new LinkedHashMap<String, List<String>>();
+            this.entries = new ArrayList<OpModeIndex.Entry>();
         }
-        return result.substring(1);
+
     }
 
 }
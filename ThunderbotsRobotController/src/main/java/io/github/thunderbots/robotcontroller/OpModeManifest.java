@@ -0,0 +1,123 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import io.github.thunderbots.robotcontroller.logging.ThunderLog;
+import io.github.thunderbots.robotcontroller.metrics.Metrics;
+
+/**
+ * {@code OpModeManifest} reads the op mode manifest that the {@code OpModeProcessor} annotation
+ * processor writes into a JAR file when it is compiled. The manifest lists the same information
+ * as an {@link OpModeIndex}, so a JAR file that has one never needs to be scanned, and none of
+ * its classes are read or loaded to find its op modes. JAR files that were compiled without the
+ * processor have no manifest, and are scanned as before.
+ * <p>
+ * The format of the manifest is described by the processor, and must be kept in sync with it.
+ */
+public class OpModeManifest {
+
+    /**
+     * The path of the manifest inside a JAR file.
+     */
+    private static final String MANIFEST_PATH = "META-INF/thunderbots/opmodes";
+
+    /**
+     * The first line of every manifest that can be read.
+     */
+    private static final String HEADER = "# op mode manifest 1";
+
+    /**
+     * The string that separates the fields on each line of a manifest.
+     */
+    private static final String SEPARATOR = "\t";
+
+    /**
+     * Reads the manifest of the given JAR file. Only the manifest entry is read from the file.
+     *
+     * @param jar the JAR file, or a converted JAR file that kept the resources of its source.
+     * @return the op modes in the JAR file, or {@code null} if the file has no manifest, or its
+     * manifest cannot be read.
+     */
+    public static List<OpModeIndex.Entry> read(File jar) {
+        try {
+            ZipFile zip = new ZipFile(jar);
+            try {
+                ZipEntry entry = zip.getEntry(MANIFEST_PATH);
+                if (entry == null) {
+                    return null;
+                }
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(zip.getInputStream(entry), "UTF-8"));
+                try {
+                    List<OpModeIndex.Entry> entries = parse(reader);
+                    if (entries == null) {
+                        ThunderLog.w("The op mode manifest in " + jar.getName()
+                                + " has an unknown format, so the file will be scanned");
+                    } else {
+                        Metrics.counter("manifest.reads").increment();
+                    }
+                    return entries;
+                } finally {
+                    reader.close();
+                }
+            } finally {
+                zip.close();
+            }
+        } catch (IOException e) {
+            ThunderLog.w("The op mode manifest in " + jar.getName() + " cannot be read", e);
+            return null;
+        }
+    }
+
+    /**
+     * Parses the lines of a manifest.
+     *
+     * @param reader the reader of the manifest.
+     * @return the op modes in the manifest, or {@code null} if the manifest has an unknown
+     * format.
+     * @throws IOException if the manifest cannot be read.
+     */
+    private static List<OpModeIndex.Entry> parse(BufferedReader reader) throws IOException {
+        if (!HEADER.equals(reader.readLine())) {
+            return null;
+        }
+        List<OpModeIndex.Entry> entries = new ArrayList<OpModeIndex.Entry>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.length() == 0) {
+                continue;
+            }
+            String[] parts = line.split(SEPARATOR);
+            if (parts.length != 3) {
+                return null;
+            }
+            entries.add(new OpModeIndex.Entry(parts[0], parts[1],
+                    Boolean.parseBoolean(parts[2])));
+        }
+        return entries;
+    }
+
+}
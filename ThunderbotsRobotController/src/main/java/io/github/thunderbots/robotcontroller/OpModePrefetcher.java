@@ -0,0 +1,153 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import io.github.thunderbots.robotcontroller.logging.ThunderLog;
+
+/**
+ * {@code OpModePrefetcher} loads the classes of the op modes that are most likely to be run, on a
+ * background thread, so that a {@link LazyOpMode} does not have to load its class when it is
+ * selected. An op mode is considered likely if it is one of the most recently run op modes.
+ */
+public class OpModePrefetcher {
+
+    /**
+     * The name of the file, inside the app's private cache file, that lists the most recently run
+     * op mode classes, most recent first.
+     */
+    private static final String HISTORY_FILE = "likely-op-modes";
+
+    /**
+     * The number of recently run op modes that are remembered.
+     */
+    private static final int HISTORY_LENGTH = 3;
+
+    /**
+     * Starts loading the classes of the likely op modes in the given list, on a background thread.
+     *
+     * @param opModes the registered op modes.
+     */
+    public static void prefetch(List<LazyOpMode> opModes) {
+        List<String> history = readHistory();
+        final List<LazyOpMode> likely = new ArrayList<LazyOpMode>();
+        for (String className : history) {
+            for (LazyOpMode opMode : opModes) {
+                if (opMode.getClassName().equals(className)) {
+                    likely.add(opMode);
+                }
+            }
+        }
+        if (likely.isEmpty()) {
+            return;
+        }
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (LazyOpMode opMode : likely) {
+                    try {
+                        opMode.resolve();
+                        ThunderLog.d("Prefetched {}", opMode.getClassName());
+                    } catch (Throwable ex) {
+                        ThunderLog.w("Cannot prefetch " + opMode.getClassName(), ex);
+                    }
+                }
+            }
+        }, "Op mode prefetch");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Records that the given op mode class has been run, so that it will be prefetched on later
+     * boots.
+     *
+     * @param className the binary name of the op mode class.
+     */
+    public static synchronized void recordUsed(String className) {
+        List<String> history = readHistory();
+        if (!history.isEmpty() && history.get(0).equals(className)) {
+            return;
+        }
+        history.remove(className);
+        history.add(0, className);
+        while (history.size() > HISTORY_LENGTH) {
+            history.remove(history.size() - 1);
+        }
+        try {
+            PrintWriter writer = new PrintWriter(new FileWriter(getHistoryFile()));
+            try {
+                for (String name : history) {
+                    writer.println(name);
+                }
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            ThunderLog.w("The op mode history cannot be saved", e);
+        }
+    }
+
+    /**
+     * Reads the list of recently run op mode classes.
+     *
+     * @return the recently run op mode classes, most recent first.
+     */
+    private static List<String> readHistory() {
+        List<String> history = new LinkedList<String>();
+        File file = getHistoryFile();
+        if (!file.isFile()) {
+            return history;
+        }
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader(file));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isEmpty()) {
+                        history.add(line);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            ThunderLog.w("The op mode history cannot be read", e);
+        }
+        return history;
+    }
+
+    /**
+     * Gets the file that the op mode history is stored in.
+     *
+     * @return the history file.
+     */
+    private static File getHistoryFile() {
+        return new File(FileLoader.getCacheDirectory(), HISTORY_FILE);
+    }
+
+}
@@ -20,9 +20,20 @@ import com.qualcomm.robotcore.eventloop.opmode.OpMode;
 import com.qualcomm.robotcore.eventloop.opmode.OpModeManager;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import io.github.thunderbots.robotcontroller.logging.ThunderLog;
+import io.github.thunderbots.robotcontroller.metrics.MemoryUsage;
+import io.github.thunderbots.robotcontroller.metrics.Metrics;
+import io.github.thunderbots.robotcontroller.metrics.MetricsReport;
+import io.github.thunderbots.robotcontroller.metrics.Timer;
 
 /**
  * {@code OpModeRegister} is an extension of
@@ -34,29 +45,290 @@ import io.github.thunderbots.robotcontroller.logging.ThunderLog;
  */
 public class OpModeRegister {
 
+    /**
+     * The sub-directory, inside the app's private cache file, that boot metrics are written to.
+     */
+    private static final String METRICS_DIRECTORY = "/metrics/";
+
+    /**
+     * The smallest fractional change in a metric, since the previous boot, that will be logged.
+     */
+    private static final double METRICS_THRESHOLD = 0.2;
+
+    /**
+     * Whether op modes should be registered lazily. If this is {@code true}, op mode classes are
+     * not loaded until they are selected.
+     *
+     * @see LazyOpMode
+     */
+    private static boolean lazyRegistration = false;
+
+    /**
+     * Sets whether op modes should be registered lazily. Lazily registered op modes are registered
+     * with the names from the op mode index, and their classes are not loaded until they are
+     * selected. The most recently run op modes are loaded on a background thread after
+     * registration.
+     *
+     * @param lazy {@code true} to register op modes lazily, or {@code false} to load every op mode
+     * class during registration.
+     */
+    public static void setLazyRegistration(boolean lazy) {
+        OpModeRegister.lazyRegistration = lazy;
+    }
+
+    /**
+     * Whether the target directory should be watched for changed jar files after registration.
+     */
+    private static boolean hotReload = false;
+
+    /**
+     * The watcher that was started by the last registration, or {@code null} if there is none.
+     */
+    private static JarWatcher watcher;
+
+    /**
+     * Sets whether the target directory should be watched for changed jar files after
+     * registration. Changed jar files are converted and loaded on their own, and the registered
+     * op modes are updated without restarting the robot. Hot reloading requires lazy
+     * registration, so enabling it also enables lazy registration for as long as it is enabled.
+     *
+     * @param enabled {@code true} to reload changed jar files, or {@code false} otherwise.
+     * @see HotReloader
+     */
+    public static void setHotReload(boolean enabled) {
+        OpModeRegister.hotReload = enabled;
+    }
+
+    /**
+     * The pre-conversion that has been started and not yet used by a registration, or
+     * {@code null} if there is none.
+     */
+    private static FutureTask<PreparedJars> preConversion;
+
+    /**
+     * The time, in nanoseconds, at which the pending pre-conversion was started.
+     */
+    private static long preConversionStart;
+
+    /**
+     * Starts finding, indexing and converting the jar files on a background thread, so that the
+     * next registration only has to wait for the conversion to finish instead of doing all of it.
+     * This should be called as soon as the app starts, so that the conversion runs while the
+     * robot controller service is bound and the hardware is set up. It does nothing if a
+     * pre-conversion has already been started and not yet used.
+     * <p>
+     * The metrics of the next boot are reset here instead of at registration, so that they
+     * include the pre-conversion. The {@code launch} timer records the time from this call until
+     * the op modes are registered.
+     */
+    public static synchronized void startPreConversion() {
+        if (preConversion != null) {
+            return;
+        }
+        Metrics.reset();
+        preConversionStart = System.nanoTime();
+        preConversion = new FutureTask<PreparedJars>(new Callable<PreparedJars>() {
+            @Override
+            public PreparedJars call() {
+                Timer timer = Metrics.timer("preconvert");
+                long start = timer.start();
+                try {
+                    return PreparedJars.prepare();
+                } finally {
+                    timer.stop(start);
+                }
+            }
+        });
+        Thread thread = new Thread(preConversion, "Jar pre-conversion");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Takes the pending pre-conversion, so that it is only used by one registration.
+     *
+     * @return the pending pre-conversion, or {@code null} if there is none.
+     */
+    private static synchronized FutureTask<PreparedJars> takePreConversion() {
+        FutureTask<PreparedJars> pending = preConversion;
+        preConversion = null;
+        return pending;
+    }
+
     /**
      * Registers all code in the op mode manager. This can be thought of as the 'main' method for
      * the dynamic jar loading system.
      *
      * @param manager the op mode manager to register op modes with.
+     * @see #startPreConversion()
      */
     public static void register(OpModeManager manager) {
-        List<File> fileList = FileLoader.getJarList();
-        fileList = DalvikConverter.convertJars(fileList);
-        OpModeLoader loader = new OpModeLoader(fileList);
+        FutureTask<PreparedJars> pending = takePreConversion();
+        long launchStart = preConversionStart;
+        if (pending == null) {
+            Metrics.reset();
+        }
+        Timer timer = Metrics.timer("boot");
+        long start = timer.start();
+        try {
+            registerAll(manager, getPreparedJars(pending));
+        } finally {
+            timer.stop(start);
+            if (pending != null) {
+                Metrics.timer("launch").stop(launchStart);
+            }
+            MemoryUsage.record();
+            writeMetrics();
+        }
+    }
+
+    /**
+     * Gets the prepared jar files for a registration. If a pre-conversion was started, this
+     * waits for it to finish, and uses its result if the jar files have not changed since it
+     * started. Otherwise, the jar files are prepared on the calling thread.
+     *
+     * @param pending the pre-conversion for this registration, or {@code null} if there is none.
+     * @return the prepared jar files.
+     */
+    private static PreparedJars getPreparedJars(FutureTask<PreparedJars> pending) {
+        if (pending == null) {
+            return PreparedJars.prepare();
+        }
+        Timer waitTimer = Metrics.timer("preconvert.wait");
+        long waitStart = waitTimer.start();
+        try {
+            PreparedJars prepared = pending.get();
+            waitTimer.stop(waitStart);
+            if (prepared.getJarSnapshot().equals(FileLoader.getJarSnapshot())) {
+                return prepared;
+            }
+            ThunderLog.i("The jar files changed while they were being converted, so they will "
+                    + "be converted again");
+        } catch (ExecutionException e) {
+            ThunderLog.e("There was an error while converting the jar files in the background",
+                    e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ThunderLog.e("Interrupted while waiting for the jar files to be converted");
+        }
+        Metrics.counter("preconvert.discarded").increment();
+        return PreparedJars.prepare();
+    }
+
+    /**
+     * Loads every prepared jar file, and registers the op modes in them.
+     *
+     * @param manager the op mode manager to register op modes with.
+     * @param prepared the found and converted jar files.
+     */
+    private static void registerAll(OpModeManager manager, PreparedJars prepared) {
+        stopWatcher();
+        OpModeLoader loader = new OpModeLoader(prepared.getLoadableFiles());
+        OptimizedDexFiles.removeStale(prepared.getLoadableFiles());
+        if (hotReload) {
+            Map<String, LazyOpMode> registered = registerLazily(manager, loader);
+            startWatcher(new HotReloader(manager, registered, prepared.getJarList(),
+                    loader.getClassLoader()), prepared.getJarSnapshot());
+            return;
+        }
+        if (lazyRegistration) {
+            registerLazily(manager, loader);
+            return;
+        }
         List<Class<? extends OpMode>> opmodeList = loader.getOpModes();
         //ThunderLog.i("Now registering op modes");
+        Timer registerTimer = Metrics.timer("register");
+        long registerStart = registerTimer.start();
         for (Class<? extends OpMode> opmode : opmodeList) {
             if (AnnotationReader.isActive(opmode)) {
                 try {
                     manager.register(AnnotationReader.getOpModeName(opmode), opmode);
-                    ThunderLog.i("Registered " + opmode.getSimpleName());
+                    Metrics.counter("register.opModes").increment();
+                    ThunderLog.i("Registered {}", opmode.getSimpleName());
                 } catch (Throwable ex) {
+                    Metrics.counter("register.errors").increment();
                     ThunderLog.e("Error registering op mode: " + opmode.getSimpleName());
                     ThunderLog.e(ex.getMessage());
                 }
             }
         }
+        registerTimer.stop(registerStart);
+    }
+
+    /**
+     * Writes a summary of the metrics from this boot, and logs every metric that changed
+     * noticeably since the previous boot.
+     */
+    private static void writeMetrics() {
+        File directory = new File(FileLoader.getCacheDirectory(), METRICS_DIRECTORY);
+        try {
+            MetricsReport.write(directory);
+            for (String change : MetricsReport.compareLatest(directory, METRICS_THRESHOLD)) {
+                ThunderLog.i("Since the last boot: " + change);
+            }
+        } catch (IOException e) {
+            ThunderLog.w("The boot metrics cannot be saved", e);
+        }
+    }
+
+    /**
+     * Registers a {@link LazyOpMode} for every active op mode in the index, then starts
+     * prefetching the op modes that are likely to be run.
+     *
+     * @param manager the op mode manager to register op modes with.
+     * @param loader the op mode loader for the converted jar files.
+     * @return the registered op modes, mapped by their registered names.
+     */
+    private static Map<String, LazyOpMode> registerLazily(OpModeManager manager,
+            OpModeLoader loader) {
+        Map<String, LazyOpMode> registered = new HashMap<String, LazyOpMode>();
+        List<LazyOpMode> lazyOpModes = new ArrayList<LazyOpMode>();
+        List<OpModeIndex.Entry> entries = loader.getOpModeEntries();
+        Timer timer = Metrics.timer("register");
+        long start = timer.start();
+        for (OpModeIndex.Entry entry : entries) {
+            if (entry.isActive()) {
+                LazyOpMode opmode = new LazyOpMode(entry.getClassName(), loader.getClassLoader());
+                try {
+                    manager.register(entry.getName(), opmode);
+                    registered.put(entry.getName(), opmode);
+                    lazyOpModes.add(opmode);
+                    Metrics.counter("register.opModes").increment();
+                    ThunderLog.i("Registered {} lazily", entry.getName());
+                } catch (Throwable ex) {
+                    Metrics.counter("register.errors").increment();
+                    ThunderLog.e("Error registering op mode: " + entry.getName());
+                    ThunderLog.e(ex.getMessage());
+                }
+            }
+        }
+        timer.stop(start);
+        OpModePrefetcher.prefetch(lazyOpModes);
+        return registered;
+    }
+
+    /**
+     * Starts watching the target directory for changes to the given jar files.
+     *
+     * @param reloader the hot reloader that will handle changes.
+     * @param jarSnapshot a snapshot of the jar files that are currently loaded.
+     */
+    private static synchronized void startWatcher(HotReloader reloader,
+            DirectorySnapshot jarSnapshot) {
+        watcher = new JarWatcher(jarSnapshot, reloader);
+        watcher.start();
+    }
+
+    /**
+     * Stops the watcher that was started by the last registration, if there is one. The robot is
+     * restarted by registering again, so the old watcher must not keep updating an op mode
+     * manager that is no longer in use.
+     */
+    private static synchronized void stopWatcher() {
+        if (watcher != null) {
+            watcher.stop();
+            watcher = null;
+        }
     }
 
 }
@@ -0,0 +1,105 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller;
+
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * {@code OpModeValidator} determines if an op mode class can be instantiated by the op mode
+ * manager, without instantiating it. Only the modifiers and constructors of the class are
+ * examined, so no user code is run. A list of problems is only created for an invalid class.
+ */
+public class OpModeValidator {
+
+    /**
+     * Checks that the given class can be instantiated through a public no-arg constructor, and
+     * returns a description of every problem that would prevent it.
+     *
+     * @param c the class to check.
+     * @return a list of problems with the class, which is empty if the class is instantiable.
+     */
+    public static List<String> validate(Class<?> c) {
+        List<String> problems = Collections.emptyList();
+        int modifiers = c.getModifiers();
+        if (c.isInterface()) {
+            problems = addProblem(problems, "is an interface");
+        } else if (Modifier.isAbstract(modifiers)) {
+            problems = addProblem(problems, "is abstract");
+        }
+        if (!Modifier.isPublic(modifiers)) {
+            problems = addProblem(problems, "is not public");
+        }
+        if (c.isAnonymousClass()) {
+            problems = addProblem(problems, "is an anonymous class");
+        } else if (c.isLocalClass()) {
+            problems = addProblem(problems, "is a local class");
+        } else if (c.isMemberClass() && !Modifier.isStatic(modifiers)) {
+            problems = addProblem(problems, "is an inner class that needs an enclosing instance");
+        }
+        if (!hasPublicNoArgConstructor(c)) {
+            problems = addProblem(problems, "does not have a public no-arg constructor");
+        }
+        return problems;
+    }
+
+    /**
+     * Determines if the given class can be instantiated through a public no-arg constructor.
+     *
+     * @param c the class to check.
+     * @return {@code true} if the class is instantiable, or {@code false} otherwise.
+     */
+    public static boolean isInstantiable(Class<?> c) {
+        return validate(c).isEmpty();
+    }
+
+    /**
+     * Determines if the given class declares a public constructor that takes no arguments.
+     *
+     * @param c the class to check.
+     * @return {@code true} if the constructor exists, or {@code false} otherwise.
+     */
+    private static boolean hasPublicNoArgConstructor(Class<?> c) {
+        try {
+            c.getConstructor();
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        } catch (SecurityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Adds a problem to a list of problems. The shared empty list is replaced with a new list the
+     * first time a problem is added.
+     *
+     * @param problems the current list of problems.
+     * @param problem the problem to add.
+     * @return the list of problems, with the new problem added.
+     */
+    private static List<String> addProblem(List<String> problems, String problem) {
+        if (problems.isEmpty()) {
+            problems = new LinkedList<String>();
+        }
+        problems.add(problem);
+        return problems;
+    }
+
+}
@@ -0,0 +1,184 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import io.github.thunderbots.robotcontroller.logging.ThunderLog;
+import io.github.thunderbots.robotcontroller.metrics.Metrics;
+
+/**
+ * {@code OptimizedDexFiles} manages the directory that the platform writes optimized dex files
+ * to. Every converted JAR file is optimized the first time it is opened, and the optimized file
+ * is reused as long as it is newer than the JAR file, but only if it is opened with the same
+ * output directory. The listing of the classes in a JAR file writes the same file that the class
+ * loader does, from {@link #getOptimizedFile(File)}, so every JAR file is optimized at most once.
+ * <p>
+ * The optimized files of JAR files that are no longer loaded are deleted by
+ * {@link #removeStale(List)}, along with the files that earlier versions of the app left in the
+ * cache directory.
+ */
+public class OptimizedDexFiles {
+
+    /**
+     * The sub-directory, inside the app's private cache file, that optimized files are written
+     * to.
+     */
+    private static final String OPTIMIZED_DIRECTORY = "/optimized/";
+
+    /**
+     * The sub-directory, inside the app's private cache file, that earlier versions of the app
+     * wrote a second optimized copy of each JAR file to.
+     */
+    private static final String LEGACY_DIRECTORY = "/temp/";
+
+    /**
+     * The file extension of an optimized file.
+     */
+    private static final String EXTENSION = ".dex";
+
+    /**
+     * Gets the directory that optimized files are written to.
+     *
+     * @return the optimized file directory.
+     */
+    public static File getDirectory() {
+        File directory = new File(FileLoader.getCacheDirectory(), OPTIMIZED_DIRECTORY);
+        directory.mkdirs();
+        return directory;
+    }
+
+    /**
+     * Gets the optimized file that the platform writes for the given JAR file. This follows the
+     * naming of the platform's class loader, which replaces the extension of the file with
+     * {@code .dex}.
+     *
+     * @param file the JAR file.
+     * @return the optimized file for the JAR file.
+     */
+    public static File getOptimizedFile(File file) {
+        String name = file.getName();
+        if (!name.endsWith(EXTENSION)) {
+            int dot = name.lastIndexOf('.');
+            name = (dot < 0 ? name : name.substring(0, dot)) + EXTENSION;
+        }
+        return new File(getDirectory(), name);
+    }
+
+    /**
+     * Finds the JAR files in the given list that do not have an up-to-date optimized file, and
+     * will be optimized when they are opened.
+     *
+     * @param files the JAR files that are about to be opened.
+     * @return the JAR files that will be optimized.
+     */
+    public static List<File> getUnoptimized(List<File> files) {
+        List<File> unoptimized = new ArrayList<File>();
+        for (File f : files) {
+            File optimized = getOptimizedFile(f);
+            if (optimized.isFile() && optimized.lastModified() >= f.lastModified()) {
+                Metrics.counter("optimize.reused").increment();
+            } else {
+                unoptimized.add(f);
+            }
+        }
+        return unoptimized;
+    }
+
+    /**
+     * Records the optimized files that were written for the given JAR files, so that the boot
+     * metrics show how much was written to flash.
+     *
+     * @param files the JAR files that were optimized, from {@link #getUnoptimized(List)}.
+     */
+    public static void recordOptimized(List<File> files) {
+        for (File f : files) {
+            File optimized = getOptimizedFile(f);
+            if (optimized.isFile()) {
+                Metrics.counter("optimize.written").increment();
+                Metrics.counter("optimize.writtenBytes").add(optimized.length());
+            }
+        }
+    }
+
+    /**
+     * Records that the optimized file of the given JAR file was opened a second time, to list
+     * its classes. Earlier versions of the app wrote a second optimized file for this, so the
+     * boot metrics show the writes that were saved.
+     *
+     * @param file the JAR file.
+     */
+    public static void recordShared(File file) {
+        File optimized = getOptimizedFile(file);
+        if (optimized.isFile()) {
+            Metrics.counter("optimize.shared").increment();
+            Metrics.counter("optimize.sharedBytes").add(optimized.length());
+        }
+    }
+
+    /**
+     * Deletes every optimized file that does not belong to one of the given JAR files, and every
+     * optimized file that earlier versions of the app left in the cache directory.
+     *
+     * @param loadedFiles the JAR files that are loaded by this boot.
+     */
+    public static void removeStale(List<File> loadedFiles) {
+        Set<String> current = new HashSet<String>();
+        for (File f : loadedFiles) {
+            current.add(getOptimizedFile(f).getName());
+        }
+        int removed = removeFiles(getDirectory(), current);
+        File legacy = new File(FileLoader.getCacheDirectory(), LEGACY_DIRECTORY);
+        removed += removeFiles(legacy, new HashSet<String>());
+        legacy.delete();
+        removed += removeFiles(FileLoader.getCacheDirectory(), new HashSet<String>());
+        if (removed > 0) {
+            ThunderLog.i("Removed {} stale optimized files", removed);
+        }
+    }
+
+    /**
+     * Deletes the optimized files in a directory, except for the ones with the given names.
+     *
+     * @param directory the directory to clean.
+     * @param keep the names of the files to keep.
+     * @return the number of files that were deleted.
+     */
+    private static int removeFiles(File directory, Set<String> keep) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        int removed = 0;
+        for (File f : files) {
+            if (f.isFile() && f.getName().endsWith(EXTENSION) && !keep.contains(f.getName())) {
+                long size = f.length();
+                if (f.delete()) {
+                    Metrics.counter("optimize.staleFiles").increment();
+                    Metrics.counter("optimize.staleBytes").add(size);
+                    removed++;
+                }
+            }
+        }
+        return removed;
+    }
+
+}
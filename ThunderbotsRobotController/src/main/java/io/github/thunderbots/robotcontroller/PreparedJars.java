@@ -0,0 +1,106 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller;
+
+import java.io.File;
+import java.util.List;
+
+import io.github.thunderbots.robotcontroller.metrics.Metrics;
+import io.github.thunderbots.robotcontroller.metrics.Timer;
+import io.github.thunderbots.robotcontroller.platform.Platform;
+
+/**
+ * {@code PreparedJars} holds the result of the stages of a boot that come before any class is
+ * loaded: the jar files are found, their op mode indexes are created, and they are converted.
+ * None of these stages need the op mode manager, so they can be run before the robot is set up.
+ *
+ * @see OpModeRegister#startPreConversion()
+ */
+public class PreparedJars {
+
+    /**
+     * A snapshot of the jar files that were found.
+     */
+    private final DirectorySnapshot jarSnapshot;
+
+    /**
+     * The files that the op modes should be loaded from.
+     */
+    private final List<File> loadableFiles;
+
+    /**
+     * Constructs a new {@code PreparedJars}.
+     *
+     * @param jarSnapshot a snapshot of the jar files that were found.
+     * @param loadableFiles the files that the op modes should be loaded from.
+     */
+    private PreparedJars(DirectorySnapshot jarSnapshot, List<File> loadableFiles) {
+        this.jarSnapshot = jarSnapshot;
+        this.loadableFiles = loadableFiles;
+    }
+
+    /**
+     * Finds every jar file, creates the missing op mode indexes, and converts the jar files.
+     *
+     * @return the prepared jar files.
+     */
+    public static PreparedJars prepare() {
+        Timer scanTimer = Metrics.timer("scan");
+        long scanStart = scanTimer.start();
+        DirectorySnapshot jarSnapshot = FileLoader.getJarSnapshot();
+        List<File> jarList = jarSnapshot.getFiles();
+        scanTimer.stop(scanStart);
+        Metrics.counter("scan.jars").add(jarList.size());
+        // the indexes are created first, so that a merged conversion can combine them
+        OpModeIndex.createMissingIndexes(jarList, PreparedJars.class.getClassLoader());
+        List<File> fileList = DalvikConverter.convertJars(jarList);
+        if (!Platform.getCodeLoader().loadsDexFiles()) {
+            // the jars are still converted above, so that conversion is part of every boot
+            fileList = jarList;
+        }
+        return new PreparedJars(jarSnapshot, fileList);
+    }
+
+    /**
+     * Gets a snapshot of the jar files that were found.
+     *
+     * @return the snapshot of the jar files.
+     */
+    public DirectorySnapshot getJarSnapshot() {
+        return this.jarSnapshot;
+    }
+
+    /**
+     * Gets the jar files that were found.
+     *
+     * @return the list of jar files.
+     */
+    public List<File> getJarList() {
+        return this.jarSnapshot.getFiles();
+    }
+
+    /**
+     * Gets the files that the op modes should be loaded from. These are the converted files on
+     * Android, and the jar files themselves on a computer.
+     *
+     * @return the list of loadable files.
+     */
+    public List<File> getLoadableFiles() {
+        return this.loadableFiles;
+    }
+
+}
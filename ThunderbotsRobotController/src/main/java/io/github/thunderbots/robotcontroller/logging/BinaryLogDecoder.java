@@ -0,0 +1,274 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller.logging;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * {@code BinaryLogDecoder} prints the records in a {@link BinaryLogFile}, oldest first, in a
+ * format similar to logcat. It does not depend on Android, and is meant to be run on a computer
+ * after the log file has been pulled off the phone:
+ *
+ * <pre>
+ * adb pull /data/data/com.qualcomm.ftcrobotcontroller/files/thunderbots/log.bin
+ * java -cp classes io.github.thunderbots.robotcontroller.logging.BinaryLogDecoder log.bin
+ * </pre>
+ */
+public class BinaryLogDecoder {
+
+    /**
+     * The letter that logcat uses for each priority, indexed by priority.
+     */
+    private static final String PRIORITY_LETTERS = "??VDIWEA";
+
+    /**
+     * The contents of the log file.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * The offset of the data area in the file.
+     */
+    private final int dataStart;
+
+    /**
+     * The size of the data area, in bytes.
+     */
+    private final int dataSize;
+
+    /**
+     * The interned templates, indexed by id.
+     */
+    private final List<String> templates;
+
+    /**
+     * The format of the time of each record.
+     */
+    private final SimpleDateFormat timeFormat;
+
+    /**
+     * Constructs a decoder for the given log file contents.
+     *
+     * @param contents the contents of a log file.
+     * @throws IOException if the contents are not a binary log.
+     */
+    public BinaryLogDecoder(byte[] contents) throws IOException {
+        this.buffer = ByteBuffer.wrap(contents);
+        if (contents.length < BinaryLogFile.HEADER_SIZE
+                || this.buffer.getInt(0) != BinaryLogFile.MAGIC) {
+            throw new IOException("This is not a binary log file");
+        }
+        if (this.buffer.getInt(4) != BinaryLogFile.VERSION) {
+            throw new IOException("Unsupported binary log version " + this.buffer.getInt(4));
+        }
+        int templateAreaSize = this.buffer.getInt(BinaryLogFile.OFFSET_TEMPLATE_AREA_SIZE);
+        this.dataStart = BinaryLogFile.HEADER_SIZE + templateAreaSize;
+        this.dataSize = this.buffer.getInt(BinaryLogFile.OFFSET_DATA_SIZE);
+        if (this.dataStart + this.dataSize > contents.length) {
+            throw new IOException("The binary log file is truncated");
+        }
+        this.templates = new ArrayList<String>();
+        int count = this.buffer.getInt(BinaryLogFile.OFFSET_TEMPLATE_COUNT);
+        int position = BinaryLogFile.HEADER_SIZE;
+        for (int id = 0; id < count; id++) {
+            int length = this.buffer.getShort(position) & 0xFFFF;
+            this.templates.add(this.getString(position + 2, length));
+            position += 2 + length;
+        }
+        this.timeFormat = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US);
+    }
+
+    /**
+     * Prints every record in the log, oldest first.
+     *
+     * @param out the stream to print to.
+     * @return the number of records that were printed.
+     */
+    public int print(PrintStream out) {
+        long head = this.buffer.getLong(BinaryLogFile.OFFSET_HEAD);
+        long position = this.buffer.getLong(BinaryLogFile.OFFSET_TAIL);
+        int printed = 0;
+        while (position < head) {
+            int physical = (int) (position % this.dataSize);
+            int remaining = this.dataSize - physical;
+            if (remaining < BinaryLogFile.MIN_PADDING) {
+                position += remaining;
+                continue;
+            }
+            int offset = this.dataStart + physical;
+            int length = this.buffer.getInt(offset);
+            if (length <= 0 || length > remaining) {
+                out.println("(the log is corrupt after this point)");
+                break;
+            }
+            byte type = this.buffer.get(offset + 4);
+            if (type == BinaryLogFile.TYPE_SESSION) {
+                out.println("---- session started "
+                        + this.timeFormat.format(new Date(this.buffer.getLong(offset + 8)))
+                        + " ----");
+            } else if (type == BinaryLogFile.TYPE_EVENT) {
+                out.println(this.formatEvent(offset));
+                printed++;
+            }
+            position += length;
+        }
+        return printed;
+    }
+
+    /**
+     * Formats an event record as a line of text.
+     *
+     * @param offset the offset of the record.
+     * @return the formatted record.
+     */
+    private String formatEvent(int offset) {
+        int level = this.buffer.get(offset + 5);
+        int valueCount = this.buffer.getShort(offset + 6);
+        long time = this.buffer.getLong(offset + 8);
+        long threadId = this.buffer.getLong(offset + 16);
+        int templateId = this.buffer.getInt(offset + 24);
+        List<Object> values = new ArrayList<Object>(valueCount);
+        String throwable = null;
+        int p = offset + BinaryLogFile.RECORD_HEADER_SIZE;
+        for (int i = 0; i < valueCount; i++) {
+            byte tag = this.buffer.get(p);
+            switch (tag) {
+                case BinaryLogFile.TAG_NULL:
+                    values.add(null);
+                    p += 1;
+                    break;
+                case BinaryLogFile.TAG_INT:
+                    values.add(this.buffer.getInt(p + 1));
+                    p += 5;
+                    break;
+                case BinaryLogFile.TAG_LONG:
+                    values.add(this.buffer.getLong(p + 1));
+                    p += 9;
+                    break;
+                case BinaryLogFile.TAG_DOUBLE:
+                    values.add(this.buffer.getDouble(p + 1));
+                    p += 9;
+                    break;
+                case BinaryLogFile.TAG_BOOLEAN:
+                    values.add(this.buffer.get(p + 1) != 0);
+                    p += 2;
+                    break;
+                default:
+                    int length = this.buffer.getShort(p + 1) & 0xFFFF;
+                    String s = this.getString(p + 3, length);
+                    if (tag == BinaryLogFile.TAG_THROWABLE && i == valueCount - 1) {
+                        throwable = s;
+                    } else {
+                        values.add(s);
+                    }
+                    p += 3 + length;
+                    break;
+            }
+        }
+        String template;
+        if (templateId >= 0 && templateId < this.templates.size()) {
+            template = this.templates.get(templateId);
+        } else {
+            template = values.isEmpty() ? "" : String.valueOf(values.remove(0));
+        }
+        char letter = level >= 0 && level < PRIORITY_LETTERS.length()
+                ? PRIORITY_LETTERS.charAt(level) : '?';
+        StringBuilder line = new StringBuilder(this.timeFormat.format(new Date(time)))
+                .append(' ').append(String.format(Locale.US, "%5d", threadId)).append(' ')
+                .append(letter).append(' ').append(substitute(template, values));
+        if (throwable != null) {
+            line.append('\n').append(throwable);
+        }
+        return line.toString();
+    }
+
+    /**
+     * Replaces the placeholders in a template with its arguments.
+     *
+     * @param template the template.
+     * @param values the arguments.
+     * @return the formatted message.
+     */
+    private static String substitute(String template, List<Object> values) {
+        StringBuilder message = new StringBuilder();
+        int start = 0;
+        int used = 0;
+        int placeholder;
+        while (used < values.size() && (placeholder = template.indexOf("{}", start)) >= 0) {
+            message.append(template, start, placeholder).append(values.get(used++));
+            start = placeholder + 2;
+        }
+        return message.append(template, start, template.length()).toString();
+    }
+
+    /**
+     * Decodes a UTF-8 string from the log.
+     *
+     * @param offset the offset of the string.
+     * @param length the length of the string, in bytes.
+     * @return the string.
+     */
+    private String getString(int offset, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = this.buffer.get(offset + i);
+        }
+        return BinaryLogFile.decode(bytes);
+    }
+
+    /**
+     * Prints the records in the binary log files given on the command line.
+     *
+     * @param args the paths of the log files.
+     * @throws IOException if a log file cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("usage: BinaryLogDecoder <log file>...");
+            return;
+        }
+        for (String path : args) {
+            File file = new File(path);
+            byte[] contents = new byte[(int) file.length()];
+            InputStream in = new FileInputStream(file);
+            try {
+                int read = 0;
+                while (read < contents.length) {
+                    int n = in.read(contents, read, contents.length - read);
+                    if (n < 0) {
+                        break;
+                    }
+                    read += n;
+                }
+            } finally {
+                in.close();
+            }
+            new BinaryLogDecoder(contents).print(System.out);
+        }
+    }
+
+}
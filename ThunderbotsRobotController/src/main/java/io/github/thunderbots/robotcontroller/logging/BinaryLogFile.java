@@ -0,0 +1,534 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller.logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@code BinaryLogFile} is a fixed-size log file that is memory-mapped and written as a ring,
+ * so that the most recent log records are always kept, and survive the app crashing. The file
+ * can be read on a computer with {@link BinaryLogDecoder}.
+ * <p>
+ * The file has three areas. The header records the layout of the file, and the logical positions
+ * of the oldest and newest records. The template area lists every interned message template, in
+ * the order they were first seen; a template's id is its index in that list. The data area is
+ * the ring of records. Each record is:
+ *
+ * <pre>
+ * int    length of the record, in bytes
+ * byte   type ({@link #TYPE_PADDING}, {@link #TYPE_EVENT} or {@link #TYPE_SESSION})
+ * byte   priority, as in android.util.Log
+ * short  number of arguments
+ * long   wall-clock time, in milliseconds
+ * long   thread id
+ * int    template id, or -1 if the template is the first argument
+ * ...    arguments, each a one-byte tag followed by its value
+ * </pre>
+ *
+ * A record that does not fit at the end of the data area is written at its start instead, and
+ * the unused end is marked with a padding record, or left alone if it is too small to hold one.
+ * This class is not thread-safe; it is only written from the ThunderLog writer thread. It does
+ * not depend on Android.
+ */
+public class BinaryLogFile {
+
+    // the layout of the header
+    static final int MAGIC = 0x54424C47; // "TBLG"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int OFFSET_TEMPLATE_AREA_SIZE = 8;
+    static final int OFFSET_DATA_SIZE = 12;
+    static final int OFFSET_HEAD = 16;
+    static final int OFFSET_TAIL = 24;
+    static final int OFFSET_TEMPLATE_COUNT = 32;
+    static final int OFFSET_TEMPLATE_BYTES = 36;
+
+    // the types of records
+    static final byte TYPE_PADDING = 0;
+    static final byte TYPE_EVENT = 1;
+    static final byte TYPE_SESSION = 2;
+
+    // the tags of argument values
+    static final byte TAG_NULL = 0;
+    static final byte TAG_INT = 1;
+    static final byte TAG_LONG = 2;
+    static final byte TAG_DOUBLE = 3;
+    static final byte TAG_BOOLEAN = 4;
+    static final byte TAG_STRING = 5;
+    static final byte TAG_THROWABLE = 6;
+
+    /**
+     * The size of the fixed part of every record, in bytes.
+     */
+    static final int RECORD_HEADER_SIZE = 28;
+
+    /**
+     * The smallest space at the end of the data area that a padding record is written into.
+     * Smaller spaces are skipped by both the writer and the reader.
+     */
+    static final int MIN_PADDING = 8;
+
+    /**
+     * The size of the template area, in bytes.
+     */
+    private static final int TEMPLATE_AREA_SIZE = 64 * 1024;
+
+    /**
+     * The smallest allowed size of the data area, in bytes.
+     */
+    private static final int MIN_DATA_SIZE = 16 * 1024;
+
+    /**
+     * The longest string argument that is stored, in bytes. Longer strings are truncated.
+     */
+    private static final int MAX_STRING_BYTES = 2048;
+
+    /**
+     * The number of stack frames that are stored for an exception.
+     */
+    private static final int MAX_STACK_FRAMES = 12;
+
+    /**
+     * The mapped contents of the file.
+     */
+    private final MappedByteBuffer buffer;
+
+    /**
+     * The offset of the data area in the file.
+     */
+    private final int dataStart;
+
+    /**
+     * The size of the data area, in bytes.
+     */
+    private final int dataSize;
+
+    /**
+     * The id of every interned template, mapped by template.
+     */
+    private final Map<String, Integer> templates;
+
+    /**
+     * The logical position after the newest record. Logical positions only ever increase; the
+     * position in the data area is the logical position modulo the size of the data area.
+     */
+    private long head;
+
+    /**
+     * The logical position of the oldest record.
+     */
+    private long tail;
+
+    /**
+     * Opens the given file as a binary log of the given size, or creates it if it does not
+     * exist. If the file already holds a log with the same layout, new records are added after
+     * the existing ones. Otherwise the file is cleared.
+     *
+     * @param file the log file.
+     * @param size the total size of the file, in bytes.
+     * @throws IOException if the file cannot be opened or mapped.
+     */
+    public BinaryLogFile(File file, int size) throws IOException {
+        int minSize = HEADER_SIZE + TEMPLATE_AREA_SIZE + MIN_DATA_SIZE;
+        if (size < minSize) {
+            throw new IllegalArgumentException("A binary log must be at least " + minSize
+                    + " bytes");
+        }
+        file.getParentFile().mkdirs();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(size);
+            this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            // the mapping stays valid after the file is closed
+            raf.close();
+        }
+        this.dataStart = HEADER_SIZE + TEMPLATE_AREA_SIZE;
+        this.dataSize = size - this.dataStart;
+        this.templates = new HashMap<String, Integer>();
+        if (!this.openExisting()) {
+            this.clear();
+        }
+    }
+
+    /**
+     * Reads the header and templates of an existing log.
+     *
+     * @return {@code true} if the file holds a log with the same layout, or {@code false} if it
+     * must be cleared.
+     */
+    private boolean openExisting() {
+        if (this.buffer.getInt(0) != MAGIC || this.buffer.getInt(4) != VERSION
+                || this.buffer.getInt(OFFSET_TEMPLATE_AREA_SIZE) != TEMPLATE_AREA_SIZE
+                || this.buffer.getInt(OFFSET_DATA_SIZE) != this.dataSize) {
+            return false;
+        }
+        this.head = this.buffer.getLong(OFFSET_HEAD);
+        this.tail = this.buffer.getLong(OFFSET_TAIL);
+        if (this.tail > this.head || this.head - this.tail > this.dataSize) {
+            return false;
+        }
+        int count = this.buffer.getInt(OFFSET_TEMPLATE_COUNT);
+        int position = HEADER_SIZE;
+        for (int id = 0; id < count; id++) {
+            int length = this.buffer.getShort(position) & 0xFFFF;
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = this.buffer.get(position + 2 + i);
+            }
+            this.templates.put(decode(bytes), id);
+            position += 2 + length;
+        }
+        return true;
+    }
+
+    /**
+     * Clears the file, and writes a new header.
+     */
+    private void clear() {
+        this.templates.clear();
+        this.head = 0;
+        this.tail = 0;
+        this.buffer.putInt(0, MAGIC);
+        this.buffer.putInt(4, VERSION);
+        this.buffer.putInt(OFFSET_TEMPLATE_AREA_SIZE, TEMPLATE_AREA_SIZE);
+        this.buffer.putInt(OFFSET_DATA_SIZE, this.dataSize);
+        this.buffer.putLong(OFFSET_HEAD, 0);
+        this.buffer.putLong(OFFSET_TAIL, 0);
+        this.buffer.putInt(OFFSET_TEMPLATE_COUNT, 0);
+        this.buffer.putInt(OFFSET_TEMPLATE_BYTES, 0);
+    }
+
+    /**
+     * Writes a record that marks the start of a new session, such as a new run of the app.
+     *
+     * @param time the wall-clock time, in milliseconds.
+     */
+    public void writeSession(long time) {
+        int position = this.reserve(RECORD_HEADER_SIZE);
+        this.putRecordHeader(position, RECORD_HEADER_SIZE, TYPE_SESSION, 0, 0, time, 0, -1);
+        this.publish(RECORD_HEADER_SIZE);
+    }
+
+    /**
+     * Writes a log record. Templates that contain placeholders are interned, and other messages
+     * are stored as text, so that one-off messages do not fill the template area.
+     *
+     * @param level the priority of the record.
+     * @param time the wall-clock time, in milliseconds.
+     * @param threadId the id of the thread that logged the record.
+     * @param template the message template.
+     * @param args the arguments of the message.
+     * @param argCount the number of arguments.
+     * @param throwable the exception of the record, or {@code null} if there is none.
+     */
+    public void write(int level, long time, long threadId, String template, Object[] args,
+            int argCount, Throwable throwable) {
+        int templateId = argCount > 0 || template.contains("{}") ? this.intern(template) : -1;
+        int valueCount = argCount + (templateId < 0 ? 1 : 0) + (throwable != null ? 1 : 0);
+        byte[][] strings = new byte[valueCount][];
+        int length = RECORD_HEADER_SIZE;
+        int v = 0;
+        if (templateId < 0) {
+            strings[v] = truncate(encode(template));
+            length += 3 + strings[v++].length;
+        }
+        for (int i = 0; i < argCount; i++, v++) {
+            length += 1 + this.getValueSize(args[i], strings, v);
+        }
+        if (throwable != null) {
+            strings[v] = truncate(encode(describe(throwable)));
+            length += 3 + strings[v].length;
+        }
+        if (length > this.dataSize / 2) {
+            return;
+        }
+        int position = this.reserve(length);
+        this.putRecordHeader(position, length, TYPE_EVENT, level, valueCount, time, threadId,
+                templateId);
+        int p = position + RECORD_HEADER_SIZE;
+        v = 0;
+        if (templateId < 0) {
+            p = this.putString(p, TAG_STRING, strings[v++]);
+        }
+        for (int i = 0; i < argCount; i++, v++) {
+            p = this.putValue(p, args[i], strings[v]);
+        }
+        if (throwable != null) {
+            this.putString(p, TAG_THROWABLE, strings[v]);
+        }
+        this.publish(length);
+    }
+
+    /**
+     * Writes any changes to the file to storage. Changes to a mapped file survive the app
+     * crashing without this, but not the phone losing power.
+     */
+    public void force() {
+        this.buffer.force();
+    }
+
+    /**
+     * Gets the id of a template, interning it if it has not been seen before.
+     *
+     * @param template the template.
+     * @return the id of the template, or {@code -1} if the template area is full.
+     */
+    private int intern(String template) {
+        Integer id = this.templates.get(template);
+        if (id != null) {
+            return id;
+        }
+        byte[] bytes = truncate(encode(template));
+        int used = this.buffer.getInt(OFFSET_TEMPLATE_BYTES);
+        if (used + 2 + bytes.length > TEMPLATE_AREA_SIZE) {
+            return -1;
+        }
+        int position = HEADER_SIZE + used;
+        this.buffer.putShort(position, (short) bytes.length);
+        for (int i = 0; i < bytes.length; i++) {
+            this.buffer.put(position + 2 + i, bytes[i]);
+        }
+        int newId = this.templates.size();
+        this.templates.put(template, newId);
+        // the template is complete before it is counted, so a crash cannot leave half of one
+        this.buffer.putInt(OFFSET_TEMPLATE_BYTES, used + 2 + bytes.length);
+        this.buffer.putInt(OFFSET_TEMPLATE_COUNT, newId + 1);
+        return newId;
+    }
+
+    /**
+     * Makes room for a record at the head of the ring, wrapping to the start of the data area if
+     * the record does not fit at the end, and moving the tail past every record that will be
+     * overwritten.
+     *
+     * @param length the length of the record.
+     * @return the offset in the file at which the record should be written.
+     */
+    private int reserve(int length) {
+        int remaining = this.dataSize - (int) (this.head % this.dataSize);
+        if (remaining < length) {
+            this.makeRoom(remaining);
+            if (remaining >= MIN_PADDING) {
+                int position = this.dataStart + (int) (this.head % this.dataSize);
+                this.buffer.putInt(position, remaining);
+                this.buffer.put(position + 4, TYPE_PADDING);
+            }
+            this.publish(remaining);
+        }
+        this.makeRoom(length);
+        return this.dataStart + (int) (this.head % this.dataSize);
+    }
+
+    /**
+     * Moves the tail past every record that would be overwritten by writing the given number of
+     * bytes at the head. The new tail is saved before anything is overwritten.
+     *
+     * @param length the number of bytes that will be written.
+     */
+    private void makeRoom(int length) {
+        long newTail = this.tail;
+        while (this.head + length - newTail > this.dataSize) {
+            int physical = (int) (newTail % this.dataSize);
+            int remaining = this.dataSize - physical;
+            int recordLength = remaining < MIN_PADDING ? remaining
+                    : this.buffer.getInt(this.dataStart + physical);
+            if (recordLength <= 0 || recordLength > remaining) {
+                // the ring is corrupt; drop everything that was in it
+                newTail = this.head;
+                break;
+            }
+            newTail += recordLength;
+        }
+        if (newTail != this.tail) {
+            this.tail = newTail;
+            this.buffer.putLong(OFFSET_TAIL, newTail);
+        }
+    }
+
+    /**
+     * Moves the head past a record that has been completely written.
+     *
+     * @param length the length of the record.
+     */
+    private void publish(int length) {
+        this.head += length;
+        this.buffer.putLong(OFFSET_HEAD, this.head);
+    }
+
+    /**
+     * Writes the fixed part of a record.
+     *
+     * @param position the offset of the record in the file.
+     * @param length the length of the record.
+     * @param type the type of the record.
+     * @param level the priority of the record.
+     * @param valueCount the number of values that follow the fixed part.
+     * @param time the wall-clock time, in milliseconds.
+     * @param threadId the id of the thread that logged the record.
+     * @param templateId the id of the template, or {@code -1} if there is none.
+     */
+    private void putRecordHeader(int position, int length, byte type, int level, int valueCount,
+            long time, long threadId, int templateId) {
+        this.buffer.putInt(position, length);
+        this.buffer.put(position + 4, type);
+        this.buffer.put(position + 5, (byte) level);
+        this.buffer.putShort(position + 6, (short) valueCount);
+        this.buffer.putLong(position + 8, time);
+        this.buffer.putLong(position + 16, threadId);
+        this.buffer.putInt(position + 24, templateId);
+    }
+
+    /**
+     * Gets the size of an argument's value, not including its tag. Arguments that are stored as
+     * strings are encoded into the given array.
+     *
+     * @param arg the argument.
+     * @param strings the array of encoded strings.
+     * @param index the index of the argument's slot in the array.
+     * @return the size of the value, in bytes.
+     */
+    private int getValueSize(Object arg, byte[][] strings, int index) {
+        if (arg == null) {
+            return 0;
+        } else if (arg instanceof Integer || arg instanceof Short || arg instanceof Byte) {
+            return 4;
+        } else if (arg instanceof Long || arg instanceof Double || arg instanceof Float) {
+            return 8;
+        } else if (arg instanceof Boolean) {
+            return 1;
+        }
+        strings[index] = truncate(encode(arg instanceof Throwable
+                ? describe((Throwable) arg) : String.valueOf(arg)));
+        return 2 + strings[index].length;
+    }
+
+    /**
+     * Writes an argument, with its tag.
+     *
+     * @param position the offset to write at.
+     * @param arg the argument.
+     * @param string the encoded argument, if it is stored as a string.
+     * @return the offset after the argument.
+     */
+    private int putValue(int position, Object arg, byte[] string) {
+        if (arg == null) {
+            this.buffer.put(position, TAG_NULL);
+            return position + 1;
+        } else if (arg instanceof Integer || arg instanceof Short || arg instanceof Byte) {
+            this.buffer.put(position, TAG_INT);
+            this.buffer.putInt(position + 1, ((Number) arg).intValue());
+            return position + 5;
+        } else if (arg instanceof Long) {
+            this.buffer.put(position, TAG_LONG);
+            this.buffer.putLong(position + 1, (Long) arg);
+            return position + 9;
+        } else if (arg instanceof Double || arg instanceof Float) {
+            this.buffer.put(position, TAG_DOUBLE);
+            this.buffer.putDouble(position + 1, ((Number) arg).doubleValue());
+            return position + 9;
+        } else if (arg instanceof Boolean) {
+            this.buffer.put(position, TAG_BOOLEAN);
+            this.buffer.put(position + 1, (byte) ((Boolean) arg ? 1 : 0));
+            return position + 2;
+        }
+        return this.putString(position, TAG_STRING, string);
+    }
+
+    /**
+     * Writes an encoded string, with its tag and length.
+     *
+     * @param position the offset to write at.
+     * @param tag the tag of the value.
+     * @param bytes the encoded string.
+     * @return the offset after the string.
+     */
+    private int putString(int position, byte tag, byte[] bytes) {
+        this.buffer.put(position, tag);
+        this.buffer.putShort(position + 1, (short) bytes.length);
+        for (int i = 0; i < bytes.length; i++) {
+            this.buffer.put(position + 3 + i, bytes[i]);
+        }
+        return position + 3 + bytes.length;
+    }
+
+    /**
+     * Describes an exception and the top of its stack.
+     *
+     * @param throwable the exception.
+     * @return the description.
+     */
+    private static String describe(Throwable throwable) {
+        StringBuilder description = new StringBuilder(throwable.toString());
+        StackTraceElement[] stack = throwable.getStackTrace();
+        for (int i = 0; i < stack.length && i < MAX_STACK_FRAMES; i++) {
+            description.append("\n\tat ").append(stack[i]);
+        }
+        return description.toString();
+    }
+
+    /**
+     * Limits an encoded string to {@link #MAX_STRING_BYTES}.
+     *
+     * @param bytes the encoded string.
+     * @return the string, or its first {@link #MAX_STRING_BYTES} bytes.
+     */
+    private static byte[] truncate(byte[] bytes) {
+        if (bytes.length <= MAX_STRING_BYTES) {
+            return bytes;
+        }
+        byte[] truncated = new byte[MAX_STRING_BYTES];
+        System.arraycopy(bytes, 0, truncated, 0, MAX_STRING_BYTES);
+        return truncated;
+    }
+
+    /**
+     * Encodes a string as UTF-8.
+     *
+     * @param s the string.
+     * @return the encoded string.
+     */
+    static byte[] encode(String s) {
+        try {
+            return s.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Decodes a UTF-8 string.
+     *
+     * @param bytes the encoded string.
+     * @return the string.
+     */
+    static String decode(byte[] bytes) {
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
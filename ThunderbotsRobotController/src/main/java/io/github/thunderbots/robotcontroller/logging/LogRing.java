@@ -0,0 +1,394 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller.logging;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@code LogRing} is a fixed-size ring of log records that any number of threads may write to,
+ * and a single thread reads from. Every slot is allocated up front, and writing never blocks or
+ * takes a lock: a writer claims a slot with a compare-and-set, fills it in, and then publishes
+ * it. If the ring is full, the record is dropped and counted instead of waiting for space.
+ * <p>
+ * Records hold the message format and its arguments, not the formatted message, so that the cost
+ * of formatting is paid by the reading thread. A record that repeats the last unread record, with
+ * the same format and argument objects, is counted against that record instead of taking another
+ * slot, so a tight loop that logs the same message cannot fill the ring by itself. The count is
+ * approximate, since a repeat that races with the reading thread may be lost.
+ */
+class LogRing {
+
+    /**
+     * The number of slots in the ring, which is always a power of two.
+     */
+    private final int capacity;
+
+    /**
+     * The mask that converts a sequence number into a slot index.
+     */
+    private final int mask;
+
+    /**
+     * The priority of the record in each slot.
+     */
+    private final int[] levels;
+
+    /**
+     * The wall-clock time, in milliseconds, at which the record in each slot was logged.
+     */
+    private final long[] times;
+
+    /**
+     * The id of the thread that logged the record in each slot.
+     */
+    private final long[] threadIds;
+
+    /**
+     * The message format of the record in each slot.
+     */
+    private final String[] formats;
+
+    /**
+     * The number of arguments of the record in each slot, if they are held in
+     * {@link #firstArgs} and {@link #secondArgs}.
+     */
+    private final int[] argCounts;
+
+    /**
+     * The first argument of the record in each slot.
+     */
+    private final Object[] firstArgs;
+
+    /**
+     * The second argument of the record in each slot.
+     */
+    private final Object[] secondArgs;
+
+    /**
+     * The argument array of the record in each slot, if it was logged with more than two
+     * arguments, or {@code null} otherwise.
+     */
+    private final Object[][] moreArgs;
+
+    /**
+     * The exception of the record in each slot, or {@code null} if there is none.
+     */
+    private final Throwable[] throwables;
+
+    /**
+     * The number of times the record in each slot was repeated after it was added.
+     */
+    private final AtomicIntegerArray repeats;
+
+    /**
+     * The sequence number of the record that was last published in each slot, or {@code -1} if
+     * no record has been published in the slot yet.
+     */
+    private final AtomicLongArray published;
+
+    /**
+     * The sequence number that will be given to the next claimed slot.
+     */
+    private final AtomicLong head;
+
+    /**
+     * The sequence number of the next record to be read. Only the reading thread changes this.
+     */
+    private volatile long tail;
+
+    /**
+     * The number of records that were dropped because the ring was full.
+     */
+    private final AtomicLong dropped;
+
+    /**
+     * Constructs an empty ring with at least the given number of slots.
+     *
+     * @param minCapacity the minimum number of slots.
+     */
+    LogRing(int minCapacity) {
+        int size = Integer.highestOneBit(Math.max(minCapacity, 2) - 1) << 1;
+        this.capacity = size;
+        this.mask = size - 1;
+        this.levels = new int[size];
+        this.times = new long[size];
+        this.threadIds = new long[size];
+        this.formats = new String[size];
+        this.argCounts = new int[size];
+        this.firstArgs = new Object[size];
+        this.secondArgs = new Object[size];
+        this.moreArgs = new Object[size][];
+        this.throwables = new Throwable[size];
+        this.repeats = new AtomicIntegerArray(size);
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            this.published.set(i, -1);
+        }
+        this.head = new AtomicLong();
+        this.dropped = new AtomicLong();
+    }
+
+    /**
+     * Adds a record to the ring, unless the ring is full. This never blocks.
+     *
+     * @param level the priority of the record.
+     * @param format the message format.
+     * @param argCount the number of arguments given in {@code arg1} and {@code arg2}.
+     * @param arg1 the first argument.
+     * @param arg2 the second argument.
+     * @param args every argument, if there are more than two, or {@code null} otherwise.
+     * @param throwable the exception to log, or {@code null} if there is none.
+     * @return {@code true} if the record was added, or {@code false} if it was dropped.
+     */
+    boolean offer(int level, String format, int argCount, Object arg1, Object arg2,
+            Object[] args, Throwable throwable) {
+        if (throwable == null && this.repeatLast(level, format, argCount, arg1, arg2, args)) {
+            return true;
+        }
+        long sequence;
+        do {
+            sequence = this.head.get();
+            if (sequence - this.tail >= this.capacity) {
+                this.dropped.incrementAndGet();
+                return false;
+            }
+        } while (!this.head.compareAndSet(sequence, sequence + 1));
+        int i = (int) sequence & this.mask;
+        this.levels[i] = level;
+        this.times[i] = System.currentTimeMillis();
+        this.threadIds[i] = Thread.currentThread().getId();
+        this.formats[i] = format;
+        this.argCounts[i] = argCount;
+        this.firstArgs[i] = arg1;
+        this.secondArgs[i] = arg2;
+        this.moreArgs[i] = args;
+        this.throwables[i] = throwable;
+        this.repeats.set(i, 0);
+        this.published.lazySet(i, sequence);
+        return true;
+    }
+
+    /**
+     * Counts a repeat of the last added record, if the given record is the same and the last
+     * record has not been read yet. The fields of the last record are read without
+     * synchronization, so this may miss a repeat, but it can only count a record that is equal.
+     *
+     * @param level the priority of the record.
+     * @param format the message format.
+     * @param argCount the number of arguments given in {@code arg1} and {@code arg2}.
+     * @param arg1 the first argument.
+     * @param arg2 the second argument.
+     * @param args every argument, if there are more than two, or {@code null} otherwise.
+     * @return {@code true} if the record was counted as a repeat, or {@code false} otherwise.
+     */
+    private boolean repeatLast(int level, String format, int argCount, Object arg1, Object arg2,
+            Object[] args) {
+        long last = this.head.get() - 1;
+        if (last < this.tail) {
+            return false;
+        }
+        int i = (int) last & this.mask;
+        if (this.published.get(i) != last || this.levels[i] != level
+                || this.formats[i] != format || this.throwables[i] != null
+                || this.argCounts[i] != argCount || this.firstArgs[i] != arg1
+                || this.secondArgs[i] != arg2 || !sameElements(this.moreArgs[i], args)) {
+            return false;
+        }
+        this.repeats.incrementAndGet(i);
+        return true;
+    }
+
+    /**
+     * Determines if two argument arrays hold the same objects.
+     *
+     * @param a the first array, or {@code null}.
+     * @param b the second array, or {@code null}.
+     * @return {@code true} if both arrays are {@code null}, or hold the same objects in the same
+     * order.
+     */
+    private static boolean sameElements(Object[] a, Object[] b) {
+        if (a == null || b == null || a.length != b.length) {
+            return a == b;
+        }
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes the oldest record from the ring, and copies it into the given entry. This must only
+     * be called from the reading thread.
+     *
+     * @param entry the entry to copy the record into.
+     * @return {@code true} if a record was read, or {@code false} if no record is ready.
+     */
+    boolean poll(Entry entry) {
+        long sequence = this.tail;
+        int i = (int) sequence & this.mask;
+        if (this.published.get(i) != sequence) {
+            return false;
+        }
+        entry.level = this.levels[i];
+        entry.time = this.times[i];
+        entry.threadId = this.threadIds[i];
+        entry.format = this.formats[i];
+        entry.argCount = this.argCounts[i];
+        entry.arg1 = this.firstArgs[i];
+        entry.arg2 = this.secondArgs[i];
+        entry.args = this.moreArgs[i];
+        entry.throwable = this.throwables[i];
+        entry.repeats = this.repeats.getAndSet(i, 0);
+        // release the references, so that logged objects are not kept alive by the ring
+        this.formats[i] = null;
+        this.firstArgs[i] = null;
+        this.secondArgs[i] = null;
+        this.moreArgs[i] = null;
+        this.throwables[i] = null;
+        this.tail = sequence + 1;
+        return true;
+    }
+
+    /**
+     * Gets the sequence number that will be given to the next record.
+     *
+     * @return the number of records that have been added.
+     */
+    long getHead() {
+        return this.head.get();
+    }
+
+    /**
+     * Gets the sequence number of the next record to be read.
+     *
+     * @return the number of records that have been read.
+     */
+    long getTail() {
+        return this.tail;
+    }
+
+    /**
+     * Gets the number of records that were dropped because the ring was full.
+     *
+     * @return the number of dropped records.
+     */
+    long getDropped() {
+        return this.dropped.get();
+    }
+
+    /**
+     * An {@code Entry} holds one record that has been read from the ring. A single entry is
+     * reused by the reading thread for every record.
+     */
+    static class Entry {
+
+        /**
+         * The priority of the record.
+         */
+        int level;
+
+        /**
+         * The wall-clock time, in milliseconds, at which the record was logged.
+         */
+        long time;
+
+        /**
+         * The id of the thread that logged the record.
+         */
+        long threadId;
+
+        /**
+         * The message format of the record.
+         */
+        String format;
+
+        /**
+         * The number of arguments in {@link #arg1} and {@link #arg2}.
+         */
+        int argCount;
+
+        /**
+         * The first argument of the record.
+         */
+        Object arg1;
+
+        /**
+         * The second argument of the record.
+         */
+        Object arg2;
+
+        /**
+         * Every argument of the record, if it has more than two, or {@code null} otherwise.
+         */
+        Object[] args;
+
+        /**
+         * The exception of the record, or {@code null} if there is none.
+         */
+        Throwable throwable;
+
+        /**
+         * The number of times the record was repeated after it was added.
+         */
+        int repeats;
+
+        /**
+         * Whether {@link #throwable} was taken from the last argument.
+         */
+        boolean throwableFromArgs;
+
+        /**
+         * Gets the number of arguments in this record.
+         *
+         * @return the number of arguments.
+         */
+        int getArgCount() {
+            return this.args != null ? this.args.length : this.argCount;
+        }
+
+        /**
+         * Gets an argument of this record.
+         *
+         * @param index the index of the argument.
+         * @return the argument.
+         */
+        Object getArg(int index) {
+            if (this.args != null) {
+                return this.args[index];
+            }
+            return index == 0 ? this.arg1 : this.arg2;
+        }
+
+        /**
+         * Releases the references held by this entry.
+         */
+        void clear() {
+            this.format = null;
+            this.arg1 = null;
+            this.arg2 = null;
+            this.args = null;
+            this.throwable = null;
+            this.throwableFromArgs = false;
+        }
+
+    }
+
+}
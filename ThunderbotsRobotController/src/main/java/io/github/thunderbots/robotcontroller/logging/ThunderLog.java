@@ -16,61 +16,715 @@
 
 package io.github.thunderbots.robotcontroller.logging;
 
-import android.util.Log;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+import io.github.thunderbots.robotcontroller.platform.Platform;
 
 /**
  * Contains delegates to Android's standard Log methods, but inserts necessary tag information.
+ * On a computer, messages are written to the platform's {@link
+ * io.github.thunderbots.robotcontroller.platform.LogOutput LogOutput} instead.
+ * <p>
+ * Messages below the current level ({@link #setLevel(int)}) are discarded before anything else
+ * is done. Other messages are placed in a preallocated ring buffer and written to the Android log
+ * by a background thread, so that logging never blocks the calling thread. If the buffer is full,
+ * messages are dropped, and the number of dropped messages is logged later.
+ * <p>
+ * Messages may contain {@code {}} placeholders, which are replaced by the following arguments,
+ * in order. The message is only formatted on the background thread, and only if it passes the
+ * level check, so a disabled message costs no more than a method call:
+ *
+ * <pre>
+ * ThunderLog.d("Loaded {} in {} ms", name, time);
+ * </pre>
+ *
+ * If the last argument is an exception and there is no placeholder left for it, it is logged as
+ * the message's exception. Arguments are converted to strings on the background thread, so they
+ * should not be changed after they are logged. When the same message is logged many times in a
+ * row, only the first one is written, followed by a count of the repeats.
+ * <p>
+ * Messages can also be written to a {@link BinaryLogFile}, which keeps the most recent messages
+ * across crashes and reboots, with {@link #enableBinaryLog(File, int)}.
  */
 public class ThunderLog {
 
     public static final String THUNDERBOTS_TAG = "Thunderbots";
 
+    /**
+     * The priority of verbose messages, which is the same as {@code android.util.Log.VERBOSE}.
+     */
+    public static final int VERBOSE = 2;
+
+    /**
+     * The priority of debug messages, which is the same as {@code android.util.Log.DEBUG}.
+     */
+    public static final int DEBUG = 3;
+
+    /**
+     * The priority of info messages, which is the same as {@code android.util.Log.INFO}.
+     */
+    public static final int INFO = 4;
+
+    /**
+     * The priority of warnings, which is the same as {@code android.util.Log.WARN}.
+     */
+    public static final int WARN = 5;
+
+    /**
+     * The priority of errors, which is the same as {@code android.util.Log.ERROR}.
+     */
+    public static final int ERROR = 6;
+
+    /**
+     * The priority of failures that should never happen, which is the same as
+     * {@code android.util.Log.ASSERT}.
+     */
+    public static final int ASSERT = 7;
+
+    /**
+     * The number of messages that the ring buffer can hold.
+     */
+    private static final int BUFFER_SIZE = 1024;
+
+    /**
+     * The longest time, in nanoseconds, that the background thread sleeps when there are no
+     * messages to write.
+     */
+    private static final long MAX_IDLE_WAIT = 50000000L;
+
+    /**
+     * The shortest time, in nanoseconds, that the background thread sleeps when there are no
+     * messages to write.
+     */
+    private static final long MIN_IDLE_WAIT = 1000000L;
+
+    /**
+     * How often, in nanoseconds, the number of suppressed repeats of a message is written while
+     * the message keeps being repeated.
+     */
+    private static final long REPEAT_REPORT_INTERVAL = 1000000000L;
+
+    /**
+     * How often, in nanoseconds, the binary log is written to storage while it is idle.
+     */
+    private static final long BINARY_LOG_FORCE_INTERVAL = 1000000000L;
+
+    /**
+     * The lowest priority that is logged, as one of the priority constants in this class.
+     */
+    private static volatile int level = DEBUG;
+
+    /**
+     * The buffer that messages wait in until they are written.
+     */
+    private static final LogRing ring = new LogRing(BUFFER_SIZE);
+
+    /**
+     * The binary log file that messages are written to, or {@code null} if there is none. This is
+     * only used by the threads that enable and disable the binary log; the log itself is only
+     * used by the writer thread.
+     */
+    private static File binaryLogFile;
+
+    /**
+     * The change to the binary log that the writer thread has not made yet, or {@code null} if
+     * there is none.
+     */
+    private static volatile BinaryLogRequest binaryLogRequest;
+
+    /**
+     * The background thread that writes messages from the buffer to the Android log.
+     */
+    private static final Thread writer = startWriter();
+
+    /**
+     * Starts writing every logged message to a binary log file, as well as the Android log. If
+     * the file already holds a binary log, new messages are added to it, and the oldest messages
+     * are overwritten once the file is full. Nothing is done if messages are already being
+     * written to the file, so this may be called every time the activity is created.
+     * <p>
+     * The file is opened, and any other binary log is written to storage and dropped, by the
+     * writer thread, and this waits until it has done so.
+     *
+     * @param file the binary log file.
+     * @param size the size of the file, in bytes.
+     * @return {@code true} if the binary log was opened, or {@code false} if it cannot be.
+     * @see BinaryLogDecoder
+     */
+    public static synchronized boolean enableBinaryLog(File file, int size) {
+        File canonical;
+        try {
+            canonical = file.getCanonicalFile();
+        } catch (IOException e) {
+            canonical = file.getAbsoluteFile();
+        }
+        if (canonical.equals(binaryLogFile)) {
+            // mapping the file a second time would let two logs overwrite each other's records
+            return true;
+        }
+        BinaryLogRequest request = new BinaryLogRequest(canonical, size);
+        request.submit();
+        if (request.error instanceof RuntimeException) {
+            throw (RuntimeException) request.error;
+        } else if (request.error != null) {
+            w("The binary log {} cannot be opened", file, request.error);
+            return false;
+        }
+        binaryLogFile = canonical;
+        return true;
+    }
+
+    /**
+     * Stops writing messages to the binary log, and writes it to storage.
+     */
+    public static synchronized void disableBinaryLog() {
+        if (binaryLogFile != null) {
+            new BinaryLogRequest(null, 0).submit();
+            binaryLogFile = null;
+        }
+    }
+
+    /**
+     * Sets the lowest priority that will be logged. Messages with a lower priority are discarded
+     * without being formatted.
+     *
+     * @param priority one of the priority constants in this class, such as {@link #INFO}.
+     */
+    public static void setLevel(int priority) {
+        ThunderLog.level = priority;
+    }
+
+    /**
+     * Determines if messages with the given priority will be logged. This can be used to skip
+     * work that is only needed to build a message.
+     *
+     * @param priority one of the priority constants in this class.
+     * @return {@code true} if messages with the priority will be logged, or {@code false}
+     * otherwise.
+     */
+    public static boolean isLoggable(int priority) {
+        return priority >= level;
+    }
+
+    /**
+     * Waits for every message that has already been logged to be written, or for the given time
+     * to pass.
+     *
+     * @param timeoutMillis the longest time to wait, in milliseconds.
+     * @return {@code true} if every message was written, or {@code false} if the time ran out.
+     */
+    public static boolean flush(long timeoutMillis) {
+        long target = ring.getHead();
+        long deadline = System.nanoTime() + timeoutMillis * 1000000L;
+        while (ring.getTail() < target) {
+            if (System.nanoTime() >= deadline || Thread.currentThread() == writer) {
+                return false;
+            }
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(MIN_IDLE_WAIT);
+        }
+        return true;
+    }
+
     public static void d(String msg) {
-        Log.d(THUNDERBOTS_TAG, msg);
+        log(DEBUG, msg, 0, null, null, null, null);
     }
 
     public static void w(String msg) {
-        Log.w(THUNDERBOTS_TAG, msg);
+        log(WARN, msg, 0, null, null, null, null);
     }
 
     public static void e(String msg) {
-        Log.e(THUNDERBOTS_TAG, msg);
+        log(ERROR, msg, 0, null, null, null, null);
     }
 
     public static void i(String msg) {
-        Log.i(THUNDERBOTS_TAG, msg);
+        log(INFO, msg, 0, null, null, null, null);
     }
 
     public static void v(String msg) {
-        Log.v(THUNDERBOTS_TAG, msg);
+        log(VERBOSE, msg, 0, null, null, null, null);
     }
 
     public static void wtf(String msg) {
-        Log.wtf(THUNDERBOTS_TAG, msg);
+        log(ASSERT, msg, 0, null, null, null, null);
     }
 
     public static void d(String msg, Throwable ex) {
-        Log.d(THUNDERBOTS_TAG, msg, ex);
+        log(DEBUG, msg, 0, null, null, null, ex);
     }
 
     public static void w(String msg, Throwable ex) {
-        Log.w(THUNDERBOTS_TAG, msg, ex);
+        log(WARN, msg, 0, null, null, null, ex);
     }
 
     public static void e(String msg, Throwable ex) {
-        Log.e(THUNDERBOTS_TAG, msg, ex);
+        log(ERROR, msg, 0, null, null, null, ex);
     }
 
     public static void i(String msg, Throwable ex) {
-        Log.i(THUNDERBOTS_TAG, msg, ex);
+        log(INFO, msg, 0, null, null, null, ex);
     }
 
     public static void v(String msg, Throwable ex) {
-        Log.v(THUNDERBOTS_TAG, msg, ex);
+        log(VERBOSE, msg, 0, null, null, null, ex);
     }
 
     public static void wtf(String msg, Throwable ex) {
-        Log.wtf(THUNDERBOTS_TAG, msg, ex);
+        log(ASSERT, msg, 0, null, null, null, ex);
+    }
+
+    public static void d(String format, Object arg) {
+        log(DEBUG, format, 1, arg, null, null, null);
+    }
+
+    public static void w(String format, Object arg) {
+        log(WARN, format, 1, arg, null, null, null);
+    }
+
+    public static void e(String format, Object arg) {
+        log(ERROR, format, 1, arg, null, null, null);
+    }
+
+    public static void i(String format, Object arg) {
+        log(INFO, format, 1, arg, null, null, null);
+    }
+
+    public static void v(String format, Object arg) {
+        log(VERBOSE, format, 1, arg, null, null, null);
+    }
+
+    public static void d(String format, Object arg1, Object arg2) {
+        log(DEBUG, format, 2, arg1, arg2, null, null);
+    }
+
+    public static void w(String format, Object arg1, Object arg2) {
+        log(WARN, format, 2, arg1, arg2, null, null);
+    }
+
+    public static void e(String format, Object arg1, Object arg2) {
+        log(ERROR, format, 2, arg1, arg2, null, null);
+    }
+
+    public static void i(String format, Object arg1, Object arg2) {
+        log(INFO, format, 2, arg1, arg2, null, null);
+    }
+
+    public static void v(String format, Object arg1, Object arg2) {
+        log(VERBOSE, format, 2, arg1, arg2, null, null);
+    }
+
+    public static void d(String format, Object... args) {
+        log(DEBUG, format, 0, null, null, args, null);
+    }
+
+    public static void w(String format, Object... args) {
+        log(WARN, format, 0, null, null, args, null);
+    }
+
+    public static void e(String format, Object... args) {
+        log(ERROR, format, 0, null, null, args, null);
+    }
+
+    public static void i(String format, Object... args) {
+        log(INFO, format, 0, null, null, args, null);
+    }
+
+    public static void v(String format, Object... args) {
+        log(VERBOSE, format, 0, null, null, args, null);
+    }
+
+    /**
+     * Places a message in the ring buffer, if its priority is high enough.
+     *
+     * @param priority the priority of the message.
+     * @param format the message format.
+     * @param argCount the number of arguments given in {@code arg1} and {@code arg2}.
+     * @param arg1 the first argument.
+     * @param arg2 the second argument.
+     * @param args every argument, or {@code null} if the arguments are given in {@code arg1} and
+     * {@code arg2}.
+     * @param ex the exception to log, or {@code null} if there is none.
+     */
+    private static void log(int priority, String format, int argCount, Object arg1, Object arg2,
+            Object[] args, Throwable ex) {
+        if (priority < level) {
+            return;
+        }
+        if (!ring.offer(priority, format, argCount, arg1, arg2, args, ex)
+                && priority == ASSERT) {
+            // a failure that should never happen is worth blocking for
+            Platform.getLogOutput().write(ASSERT, THUNDERBOTS_TAG, format, ex);
+        }
+    }
+
+    /**
+     * Starts the background thread that writes messages to the Android log.
+     *
+     * @return the started thread.
+     */
+    private static Thread startWriter() {
+        Thread thread = new Thread(new Writer(), "ThunderLog");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Replaces the placeholders in a message with its arguments. If the last argument is an
+     * exception without a placeholder, it is set as the entry's exception.
+     *
+     * @param entry the message to format.
+     * @return the formatted message.
+     */
+    static String format(LogRing.Entry entry) {
+        String format = String.valueOf(entry.format);
+        int argCount = entry.getArgCount();
+        if (argCount == 0) {
+            return format;
+        }
+        StringBuilder message = new StringBuilder(format.length() + 16 * argCount);
+        int used = 0;
+        int start = 0;
+        int placeholder;
+        while (used < argCount && (placeholder = format.indexOf("{}", start)) >= 0) {
+            message.append(format, start, placeholder).append(entry.getArg(used++));
+            start = placeholder + 2;
+        }
+        message.append(format, start, format.length());
+        Object last = entry.getArg(argCount - 1);
+        if (used < argCount && last instanceof Throwable && entry.throwable == null) {
+            entry.throwable = (Throwable) last;
+            entry.throwableFromArgs = true;
+        }
+        return message.toString();
+    }
+
+    /**
+     * A {@code BinaryLogRequest} asks the writer thread to change the binary log, and lets the
+     * calling thread wait until it has.
+     */
+    private static class BinaryLogRequest {
+
+        /**
+         * The binary log file to change to, or {@code null} to stop writing a binary log.
+         */
+        final File file;
+
+        /**
+         * The size of the binary log file, in bytes.
+         */
+        final int size;
+
+        /**
+         * Whether the writer thread has handled the request.
+         */
+        private boolean done;
+
+        /**
+         * The reason the binary log could not be opened, or {@code null} if it was.
+         */
+        Exception error;
+
+        /**
+         * Constructs a request to change the binary log.
+         *
+         * @param file the binary log file to change to, or {@code null} to stop writing a binary
+         * log.
+         * @param size the size of the binary log file, in bytes.
+         */
+        BinaryLogRequest(File file, int size) {
+            this.file = file;
+            this.size = size;
+        }
+
+        /**
+         * Hands the request to the writer thread, and waits until it has been handled.
+         */
+        synchronized void submit() {
+            binaryLogRequest = this;
+            LockSupport.unpark(writer);
+            boolean interrupted = false;
+            while (!this.done) {
+                try {
+                    this.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Marks the request as handled, and wakes the thread that submitted it.
+         *
+         * @param error the reason the binary log could not be opened, or {@code null} if it was.
+         */
+        synchronized void complete(Exception error) {
+            this.error = error;
+            this.done = true;
+            this.notifyAll();
+        }
+
+    }
+
+    /**
+     * The {@code Writer} drains the ring buffer into the Android log and the binary log, and
+     * suppresses repeated messages.
+     */
+    private static class Writer implements Runnable {
+
+        /**
+         * The array that the first two arguments of a message are copied into, for the binary log.
+         */
+        private final Object[] binaryArgs = new Object[2];
+
+        /**
+         * Whether the binary log has been written to since it was last written to storage.
+         */
+        private boolean binaryLogDirty;
+
+        /**
+         * The time at which the binary log was last written to storage.
+         */
+        private long lastBinaryLogForce;
+
+        /**
+         * The priority of the last message that was written.
+         */
+        private int lastPriority;
+
+        /**
+         * The last message that was written, or {@code null} if there was none.
+         */
+        private String lastMessage;
+
+        /**
+         * The number of times the last message has been repeated, and not written.
+         */
+        private int repeats;
+
+        /**
+         * The time at which the repeats were last reported.
+         */
+        private long lastRepeatReport;
+
+        /**
+         * The number of dropped messages that have been reported.
+         */
+        private long reportedDrops;
+
+        /**
+         * The binary log that messages are also written to, or {@code null} if there is none.
+         */
+        private BinaryLogFile binaryLog;
+
+        @Override
+        public void run() {
+            LogRing.Entry entry = new LogRing.Entry();
+            long idleWait = MIN_IDLE_WAIT;
+            while (true) {
+                BinaryLogRequest request = binaryLogRequest;
+                if (request != null) {
+                    binaryLogRequest = null;
+                    this.changeBinaryLog(request);
+                }
+                if (ring.poll(entry)) {
+                    try {
+                        this.handle(entry);
+                    } catch (RuntimeException e) {
+                        // an argument's toString() or a log output failed; keep draining
+                        this.writeFailure("the message \"" + entry.format + "\"", e);
+                    } finally {
+                        entry.clear();
+                    }
+                    idleWait = MIN_IDLE_WAIT;
+                } else {
+                    try {
+                        long sinceReport = System.nanoTime() - this.lastRepeatReport;
+                        if (this.repeats > 0 && sinceReport >= REPEAT_REPORT_INTERVAL) {
+                            this.reportRepeats();
+                        }
+                        this.reportDrops();
+                        this.forceBinaryLog();
+                    } catch (RuntimeException e) {
+                        this.writeFailure("the log reports", e);
+                    }
+                    LockSupport.parkNanos(idleWait);
+                    idleWait = Math.min(idleWait * 2, MAX_IDLE_WAIT);
+                }
+            }
+        }
+
+        /**
+         * Writes a message, unless it repeats the last message.
+         *
+         * @param entry the message to write.
+         */
+        private void handle(LogRing.Entry entry) {
+            String message = format(entry);
+            int repeatsBefore = this.repeats;
+            if (entry.throwable == null && entry.level == this.lastPriority
+                    && message.equals(this.lastMessage)) {
+                this.repeats++;
+            } else {
+                if (this.repeats > 0) {
+                    this.reportRepeats();
+                    repeatsBefore = 0;
+                }
+                writeAndroid(entry.level, message, entry.throwable);
+                this.writeBinary(entry);
+                this.lastPriority = entry.level;
+                this.lastMessage = entry.throwable == null ? message : null;
+            }
+            this.repeats += entry.repeats;
+            long now = System.nanoTime();
+            if (repeatsBefore == 0 && this.repeats > 0) {
+                this.lastRepeatReport = now;
+            } else if (this.repeats > 0 && now - this.lastRepeatReport >= REPEAT_REPORT_INTERVAL) {
+                this.reportRepeats();
+            }
+        }
+
+        /**
+         * Writes a line to the Android log in place of something that could not be written. The
+         * binary log is not used, since it may be what failed. If even this line cannot be
+         * written, it is lost, so that the writer thread keeps running.
+         *
+         * @param what a description of what could not be written.
+         * @param e the exception that prevented it from being written.
+         */
+        private void writeFailure(String what, RuntimeException e) {
+            try {
+                writeAndroid(ERROR, "Cannot write " + what + ": " + e, null);
+            } catch (RuntimeException ignored) {
+                // the Android log itself is failing, and there is nowhere else to report it
+            }
+        }
+
+        /**
+         * Writes the number of times the last message was repeated.
+         */
+        private void reportRepeats() {
+            this.write(this.lastPriority, "(the previous message was repeated " + this.repeats
+                    + " more times)");
+            this.repeats = 0;
+            this.lastRepeatReport = System.nanoTime();
+        }
+
+        /**
+         * Writes the number of messages that were dropped since the last report.
+         */
+        private void reportDrops() {
+            long dropped = ring.getDropped();
+            if (dropped > this.reportedDrops) {
+                this.write(WARN, (dropped - this.reportedDrops)
+                        + " log messages were dropped because the log buffer was full");
+                this.reportedDrops = dropped;
+            }
+        }
+
+        /**
+         * Writes a message from the writer itself to the Android log and the binary log.
+         *
+         * @param priority the priority of the message.
+         * @param message the message.
+         */
+        private void write(int priority, String message) {
+            writeAndroid(priority, message, null);
+            BinaryLogFile log = this.binaryLog;
+            if (log != null) {
+                log.write(priority, System.currentTimeMillis(), Thread.currentThread().getId(),
+                        message, this.binaryArgs, 0, null);
+                this.binaryLogDirty = true;
+            }
+        }
+
+        /**
+         * Writes a message to the binary log, if there is one. The template and arguments are
+         * written, rather than the formatted message.
+         *
+         * @param entry the message to write.
+         */
+        private void writeBinary(LogRing.Entry entry) {
+            BinaryLogFile log = this.binaryLog;
+            if (log == null) {
+                return;
+            }
+            Object[] args = entry.args;
+            if (args == null) {
+                args = this.binaryArgs;
+                args[0] = entry.arg1;
+                args[1] = entry.arg2;
+            }
+            int argCount = entry.getArgCount() - (entry.throwableFromArgs ? 1 : 0);
+            log.write(entry.level, entry.time, entry.threadId, String.valueOf(entry.format), args,
+                    argCount, entry.throwable);
+            this.binaryArgs[0] = null;
+            this.binaryArgs[1] = null;
+            this.binaryLogDirty = true;
+        }
+
+        /**
+         * Replaces the binary log. The old log is written to storage before it is dropped, and the
+         * new log is opened here, so that only this thread ever writes to either of them.
+         *
+         * @param request the binary log to change to.
+         */
+        private void changeBinaryLog(BinaryLogRequest request) {
+            BinaryLogFile next = null;
+            if (request.file != null) {
+                try {
+                    next = new BinaryLogFile(request.file, request.size);
+                    next.writeSession(System.currentTimeMillis());
+                } catch (IOException e) {
+                    // the current log is kept if the new one cannot be opened
+                    request.complete(e);
+                    return;
+                } catch (RuntimeException e) {
+                    // thrown again by the thread that asked for the log
+                    request.complete(e);
+                    return;
+                }
+            }
+            if (this.binaryLog != null) {
+                this.binaryLog.force();
+            }
+            this.binaryLog = next;
+            this.binaryLogDirty = false;
+            request.complete(null);
+        }
+
+        /**
+         * Writes the binary log to storage, if it has changed and has not been written recently.
+         */
+        private void forceBinaryLog() {
+            BinaryLogFile log = this.binaryLog;
+            long now = System.nanoTime();
+            if (log != null && this.binaryLogDirty
+                    && now - this.lastBinaryLogForce >= BINARY_LOG_FORCE_INTERVAL) {
+                log.force();
+                this.binaryLogDirty = false;
+                this.lastBinaryLogForce = now;
+            }
+        }
+
+        /**
+         * Writes a message to the Android log.
+         *
+         * @param priority the priority of the message.
+         * @param message the formatted message.
+         * @param ex the exception to log, or {@code null} if there is none.
+         */
+        private static void writeAndroid(int priority, String message, Throwable ex) {
+            Platform.getLogOutput().write(priority, THUNDERBOTS_TAG, message, ex);
+        }
+
     }
 
 }
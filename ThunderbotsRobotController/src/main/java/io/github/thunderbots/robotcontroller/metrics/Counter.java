@@ -0,0 +1,64 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@code Counter} counts the number of times something happens. It may be incremented from any
+ * thread.
+ */
+public class Counter {
+
+    /**
+     * The current value of the counter.
+     */
+    private final AtomicLong value;
+
+    /**
+     * Constructs a counter with a value of zero.
+     */
+    public Counter() {
+        this.value = new AtomicLong();
+    }
+
+    /**
+     * Adds one to the counter.
+     */
+    public void increment() {
+        this.value.incrementAndGet();
+    }
+
+    /**
+     * Adds the given amount to the counter.
+     *
+     * @param amount the amount to add.
+     */
+    public void add(long amount) {
+        this.value.addAndGet(amount);
+    }
+
+    /**
+     * Gets the current value of the counter.
+     *
+     * @return the current value.
+     */
+    public long get() {
+        return this.value.get();
+    }
+
+}
@@ -0,0 +1,155 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@code Histogram} records the distribution of a set of non-negative values. Values are counted
+ * in buckets whose bounds are powers of two, so recording a value never allocates, and the
+ * percentiles reported by the histogram are accurate to within a factor of two. The exact count,
+ * sum, minimum and maximum are also kept. Values may be recorded from any thread.
+ */
+public class Histogram {
+
+    /**
+     * The number of buckets. Bucket {@code i} counts the values whose highest set bit is bit
+     * {@code i - 1}, and bucket {@code 0} counts zero.
+     */
+    private static final int BUCKET_COUNT = 64;
+
+    /**
+     * The number of values in each bucket.
+     */
+    private final AtomicLongArray buckets;
+
+    /**
+     * The number of values that have been recorded.
+     */
+    private final AtomicLong count;
+
+    /**
+     * The sum of every value that has been recorded.
+     */
+    private final AtomicLong sum;
+
+    /**
+     * The smallest value that has been recorded.
+     */
+    private final AtomicLong min;
+
+    /**
+     * The largest value that has been recorded.
+     */
+    private final AtomicLong max;
+
+    /**
+     * Constructs an empty histogram.
+     */
+    public Histogram() {
+        this.buckets = new AtomicLongArray(BUCKET_COUNT);
+        this.count = new AtomicLong();
+        this.sum = new AtomicLong();
+        this.min = new AtomicLong(Long.MAX_VALUE);
+        this.max = new AtomicLong(Long.MIN_VALUE);
+    }
+
+    /**
+     * Records a value. Negative values are recorded as zero.
+     *
+     * @param value the value to record.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        this.buckets.incrementAndGet(Math.min(64 - Long.numberOfLeadingZeros(value),
+                BUCKET_COUNT - 1));
+        this.count.incrementAndGet();
+        this.sum.addAndGet(value);
+        long current;
+        while (value < (current = this.min.get()) && !this.min.compareAndSet(current, value)) {
+            // another thread changed the minimum; try again
+        }
+        while (value > (current = this.max.get()) && !this.max.compareAndSet(current, value)) {
+            // another thread changed the maximum; try again
+        }
+    }
+
+    /**
+     * Gets the number of values that have been recorded.
+     *
+     * @return the number of values.
+     */
+    public long getCount() {
+        return this.count.get();
+    }
+
+    /**
+     * Gets the sum of every value that has been recorded.
+     *
+     * @return the sum of the values.
+     */
+    public long getSum() {
+        return this.sum.get();
+    }
+
+    /**
+     * Gets the smallest value that has been recorded.
+     *
+     * @return the smallest value, or {@code 0} if no values have been recorded.
+     */
+    public long getMin() {
+        return this.getCount() == 0 ? 0 : this.min.get();
+    }
+
+    /**
+     * Gets the largest value that has been recorded.
+     *
+     * @return the largest value, or {@code 0} if no values have been recorded.
+     */
+    public long getMax() {
+        return this.getCount() == 0 ? 0 : this.max.get();
+    }
+
+    /**
+     * Estimates the value below which the given fraction of the recorded values fall. The
+     * estimate is the upper bound of the bucket that contains the percentile, limited to the
+     * largest recorded value.
+     *
+     * @param fraction the fraction of values, between {@code 0} and {@code 1}.
+     * @return the estimated percentile, or {@code 0} if no values have been recorded.
+     */
+    public long getPercentile(double fraction) {
+        long total = this.getCount();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(fraction * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += this.buckets.get(i);
+            if (seen >= rank && seen > 0) {
+                long upperBound = i == 0 ? 0 : (i >= 63 ? Long.MAX_VALUE : (1L << i) - 1);
+                return Math.min(upperBound, this.getMax());
+            }
+        }
+        return this.getMax();
+    }
+
+}
@@ -0,0 +1,81 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller.metrics;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+
+/**
+ * {@code MemoryUsage} records how much memory the app is using, so that the memory cost of a
+ * change can be compared across boots along with its time cost. Both Android and desktop Linux
+ * report the resident set size of a process in {@code /proc/self/status}.
+ */
+public class MemoryUsage {
+
+    /**
+     * The file that the resident set size is read from.
+     */
+    private static final String STATUS_FILE = "/proc/self/status";
+
+    /**
+     * The label of the resident set size in {@link #STATUS_FILE}.
+     */
+    private static final String RESIDENT_LABEL = "VmRSS:";
+
+    /**
+     * Records the current resident set size and Java heap usage, in kilobytes, in the counters
+     * {@code memory.residentKb} and {@code memory.heapKb}. The resident set size is left out if
+     * it cannot be read.
+     */
+    public static void record() {
+        Runtime runtime = Runtime.getRuntime();
+        Metrics.counter("memory.heapKb").add((runtime.totalMemory() - runtime.freeMemory()) / 1024);
+        long resident = getResidentKilobytes();
+        if (resident >= 0) {
+            Metrics.counter("memory.residentKb").add(resident);
+        }
+    }
+
+    /**
+     * Reads the resident set size of this process.
+     *
+     * @return the resident set size in kilobytes, or {@code -1} if it cannot be read.
+     */
+    public static long getResidentKilobytes() {
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader(STATUS_FILE));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith(RESIDENT_LABEL)) {
+                        String value = line.substring(RESIDENT_LABEL.length()).trim();
+                        return Long.parseLong(value.split("\\s+")[0]);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            return -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,129 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * {@code Metrics} is the registry of every counter, timer and histogram in the robot controller.
+ * A metric is created the first time it is requested by name, and the same instance is returned
+ * for every later request, so callers do not need to keep references to their metrics. The
+ * registry is cleared at the start of every boot by {@link #reset()}.
+ * <p>
+ * Names are dotted paths that start with the pipeline stage, such as {@code convert.dx}.
+ */
+public class Metrics {
+
+    /**
+     * Every counter, mapped by name.
+     */
+    private static Map<String, Counter> counters = new TreeMap<String, Counter>();
+
+    /**
+     * Every timer, mapped by name.
+     */
+    private static Map<String, Timer> timers = new TreeMap<String, Timer>();
+
+    /**
+     * Every histogram, mapped by name.
+     */
+    private static Map<String, Histogram> histograms = new TreeMap<String, Histogram>();
+
+    /**
+     * Gets the counter with the given name, creating it if it does not exist.
+     *
+     * @param name the name of the counter.
+     * @return the counter.
+     */
+    public static synchronized Counter counter(String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            counter = new Counter();
+            counters.put(name, counter);
+        }
+        return counter;
+    }
+
+    /**
+     * Gets the timer with the given name, creating it if it does not exist.
+     *
+     * @param name the name of the timer.
+     * @return the timer.
+     */
+    public static synchronized Timer timer(String name) {
+        Timer timer = timers.get(name);
+        if (timer == null) {
+            timer = new Timer();
+            timers.put(name, timer);
+        }
+        return timer;
+    }
+
+    /**
+     * Gets the histogram with the given name, creating it if it does not exist.
+     *
+     * @param name the name of the histogram.
+     * @return the histogram.
+     */
+    public static synchronized Histogram histogram(String name) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            histogram = new Histogram();
+            histograms.put(name, histogram);
+        }
+        return histogram;
+    }
+
+    /**
+     * Gets a copy of every counter, sorted by name.
+     *
+     * @return the counters, mapped by name.
+     */
+    public static synchronized Map<String, Counter> getCounters() {
+        return new TreeMap<String, Counter>(counters);
+    }
+
+    /**
+     * Gets a copy of every timer, sorted by name.
+     *
+     * @return the timers, mapped by name.
+     */
+    public static synchronized Map<String, Timer> getTimers() {
+        return new TreeMap<String, Timer>(timers);
+    }
+
+    /**
+     * Gets a copy of every histogram, sorted by name.
+     *
+     * @return the histograms, mapped by name.
+     */
+    public static synchronized Map<String, Histogram> getHistograms() {
+        return new TreeMap<String, Histogram>(histograms);
+    }
+
+    /**
+     * Removes every metric from the registry. Metrics that are still referenced elsewhere keep
+     * working, but are no longer reported.
+     */
+    public static synchronized void reset() {
+        counters.clear();
+        timers.clear();
+        histograms.clear();
+    }
+
+}
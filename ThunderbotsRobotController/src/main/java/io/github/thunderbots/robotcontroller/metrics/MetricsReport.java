@@ -0,0 +1,312 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller.metrics;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * {@code MetricsReport} writes a compact summary of the {@link Metrics} registry at the end of
+ * every boot, and compares summaries from different boots. One summary file is written per boot,
+ * and only the most recent {@link #HISTORY_LENGTH} are kept.
+ * <p>
+ * Each line of a summary describes one metric. Timer values are in milliseconds:
+ *
+ * <pre>
+ * C name value
+ * T name count total p50 p90 max
+ * H name count sum p50 p90 max
+ * </pre>
+ *
+ * This class does not depend on Android, so summaries that are pulled off the phone can be
+ * compared on a computer with {@link #main(String[])}.
+ */
+public class MetricsReport {
+
+    /**
+     * The first line of every summary file.
+     */
+    private static final String HEADER = "# boot metrics 1";
+
+    /**
+     * The prefix of the name of every summary file.
+     */
+    private static final String PREFIX = "boot-";
+
+    /**
+     * The file extension of every summary file.
+     */
+    private static final String EXTENSION = ".txt";
+
+    /**
+     * The number of summary files that are kept.
+     */
+    private static final int HISTORY_LENGTH = 20;
+
+    /**
+     * The smallest change in a timer's total, in milliseconds, that will be reported by
+     * {@link #compare(File, File, double)}. Smaller changes are usually just noise.
+     */
+    private static final double MIN_TIMER_CHANGE = 5;
+
+    /**
+     * The number of nanoseconds in a millisecond.
+     */
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    /**
+     * Writes a summary of the current metrics to a new file in the given directory, and deletes
+     * the oldest summaries if there are too many.
+     *
+     * @param directory the directory to write the summary to.
+     * @return the summary file that was written.
+     * @throws IOException if the summary cannot be written.
+     */
+    public static File write(File directory) throws IOException {
+        directory.mkdirs();
+        File file = new File(directory, PREFIX + System.currentTimeMillis() + EXTENSION);
+        PrintWriter writer = new PrintWriter(new FileWriter(file));
+        try {
+            writer.print(format());
+        } finally {
+            writer.close();
+        }
+        File[] reports = getReports(directory);
+        for (int i = 0; i < reports.length - HISTORY_LENGTH; i++) {
+            reports[i].delete();
+        }
+        return file;
+    }
+
+    /**
+     * Builds a summary of the current metrics.
+     *
+     * @return the summary, in the format described above.
+     */
+    public static String format() {
+        StringBuilder summary = new StringBuilder(HEADER).append('\n');
+        for (Map.Entry<String, Counter> entry : Metrics.getCounters().entrySet()) {
+            summary.append("C ").append(escape(entry.getKey())).append(' ')
+                    .append(entry.getValue().get()).append('\n');
+        }
+        for (Map.Entry<String, Timer> entry : Metrics.getTimers().entrySet()) {
+            Histogram h = entry.getValue().getDurations();
+            summary.append(String.format(Locale.US, "T %s %d %.3f %.3f %.3f %.3f%n",
+                    escape(entry.getKey()), h.getCount(), h.getSum() / NANOS_PER_MILLI,
+                    h.getPercentile(0.5) / NANOS_PER_MILLI, h.getPercentile(0.9) / NANOS_PER_MILLI,
+                    h.getMax() / NANOS_PER_MILLI));
+        }
+        for (Map.Entry<String, Histogram> entry : Metrics.getHistograms().entrySet()) {
+            Histogram h = entry.getValue();
+            summary.append(String.format(Locale.US, "H %s %d %d %d %d %d%n",
+                    escape(entry.getKey()), h.getCount(), h.getSum(), h.getPercentile(0.5),
+                    h.getPercentile(0.9), h.getMax()));
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Replaces the whitespace in a metric name, so that the name is a single field of a summary
+     * line. Names that include a file name may contain spaces.
+     *
+     * @param name the name of the metric.
+     * @return the name, with every whitespace character replaced by an underscore.
+     */
+    private static String escape(String name) {
+        return name.replaceAll("\\s", "_");
+    }
+
+    /**
+     * Gets every summary file in the given directory, oldest first.
+     *
+     * @param directory the directory that summaries are written to.
+     * @return the summary files.
+     */
+    public static File[] getReports(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return new File[0];
+        }
+        List<File> reports = new ArrayList<File>();
+        for (File f : files) {
+            if (f.getName().startsWith(PREFIX) && f.getName().endsWith(EXTENSION)) {
+                reports.add(f);
+            }
+        }
+        File[] sorted = reports.toArray(new File[reports.size()]);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Compares two summaries, and describes every metric that changed by more than the given
+     * fraction. Counters are compared by value, timers by their total time, and histograms by
+     * their sum. Metrics that only appear in one of the summaries are also described.
+     *
+     * @param older the older summary file.
+     * @param newer the newer summary file.
+     * @param threshold the smallest fractional change that is reported, such as {@code 0.1}.
+     * @return a description of each change, or an empty list if nothing changed.
+     * @throws IOException if either summary cannot be read.
+     */
+    public static List<String> compare(File older, File newer, double threshold)
+            throws IOException {
+        Map<String, double[]> before = read(older);
+        Map<String, double[]> after = read(newer);
+        List<String> changes = new ArrayList<String>();
+        for (Map.Entry<String, double[]> entry : after.entrySet()) {
+            String metric = entry.getKey();
+            double now = getComparedValue(entry.getValue());
+            if (!before.containsKey(metric)) {
+                changes.add(metric + ": new, " + formatValue(metric, now));
+                continue;
+            }
+            double then = getComparedValue(before.get(metric));
+            double difference = now - then;
+            if (metric.startsWith("T ") && Math.abs(difference) < MIN_TIMER_CHANGE) {
+                continue;
+            }
+            if (then == 0 ? now != 0 : Math.abs(difference / then) > threshold) {
+                String percent = then == 0 ? "" : String.format(Locale.US, " (%+.0f%%)",
+                        100 * difference / then);
+                changes.add(metric + ": " + formatValue(metric, then) + " -> "
+                        + formatValue(metric, now) + percent);
+            }
+        }
+        for (String metric : before.keySet()) {
+            if (!after.containsKey(metric)) {
+                changes.add(metric + ": gone");
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Compares the two most recent summaries in the given directory.
+     *
+     * @param directory the directory that summaries are written to.
+     * @param threshold the smallest fractional change that is reported.
+     * @return a description of each change, or an empty list if there are fewer than two
+     * summaries.
+     * @throws IOException if either summary cannot be read.
+     * @see #compare(File, File, double)
+     */
+    public static List<String> compareLatest(File directory, double threshold)
+            throws IOException {
+        File[] reports = getReports(directory);
+        if (reports.length < 2) {
+            return new ArrayList<String>();
+        }
+        return compare(reports[reports.length - 2], reports[reports.length - 1], threshold);
+    }
+
+    /**
+     * Reads a summary file.
+     *
+     * @param file the summary file.
+     * @return the numbers on each line, mapped by the type and name of the metric.
+     * @throws IOException if the file cannot be read.
+     */
+    private static Map<String, double[]> read(File file) throws IOException {
+        Map<String, double[]> metrics = new LinkedHashMap<String, double[]>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(" ");
+                if (line.startsWith("#") || parts.length < 3) {
+                    continue;
+                }
+                double[] values = new double[parts.length - 2];
+                try {
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = Double.parseDouble(parts[i + 2]);
+                    }
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                metrics.put(parts[0] + " " + parts[1], values);
+            }
+        } finally {
+            reader.close();
+        }
+        return metrics;
+    }
+
+    /**
+     * Gets the number that a metric is compared by: the value of a counter, or the total of a
+     * timer or histogram.
+     *
+     * @param values the numbers on the metric's line.
+     * @return the compared value.
+     */
+    private static double getComparedValue(double[] values) {
+        return values.length > 1 ? values[1] : values[0];
+    }
+
+    /**
+     * Formats a compared value for display.
+     *
+     * @param metric the type and name of the metric.
+     * @param value the compared value.
+     * @return the formatted value.
+     */
+    private static String formatValue(String metric, double value) {
+        if (metric.startsWith("T ")) {
+            return String.format(Locale.US, "%.1f ms", value);
+        }
+        return String.format(Locale.US, "%.0f", value);
+    }
+
+    /**
+     * Compares boot summaries from the command line. Given two summary files, they are compared
+     * directly; given a directory, its two most recent summaries are compared. An optional last
+     * argument sets the threshold, which is {@code 0.1} by default.
+     *
+     * @param args the summary files or directory, and an optional threshold.
+     * @throws IOException if a summary cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("usage: MetricsReport <directory> | <older> <newer> [threshold]");
+            return;
+        }
+        File first = new File(args[0]);
+        List<String> changes;
+        if (first.isDirectory()) {
+            double threshold = args.length > 1 ? Double.parseDouble(args[1]) : 0.1;
+            changes = compareLatest(first, threshold);
+        } else {
+            double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 0.1;
+            changes = compare(first, new File(args[1]), threshold);
+        }
+        for (String change : changes) {
+            System.out.println(change);
+        }
+    }
+
+}
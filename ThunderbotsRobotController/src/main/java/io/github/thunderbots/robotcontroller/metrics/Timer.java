@@ -0,0 +1,85 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller.metrics;
+
+/**
+ * A {@code Timer} records how long something takes, each time it happens. The durations are kept
+ * in a {@link Histogram}, in nanoseconds. A timing is taken like this:
+ *
+ * <pre>
+ * long start = timer.start();
+ * try {
+ *     ...
+ * } finally {
+ *     timer.stop(start);
+ * }
+ * </pre>
+ */
+public class Timer {
+
+    /**
+     * The recorded durations, in nanoseconds.
+     */
+    private final Histogram durations;
+
+    /**
+     * Constructs a timer with no recorded durations.
+     */
+    public Timer() {
+        this.durations = new Histogram();
+    }
+
+    /**
+     * Gets the time to pass to {@link #stop(long)} when the timed work is finished.
+     *
+     * @return the current time, in nanoseconds.
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the time that has passed since the given start time.
+     *
+     * @param start the time that was returned by {@link #start()}.
+     * @return the recorded duration, in nanoseconds.
+     */
+    public long stop(long start) {
+        long duration = System.nanoTime() - start;
+        this.durations.record(duration);
+        return duration;
+    }
+
+    /**
+     * Records a duration that was measured elsewhere.
+     *
+     * @param nanos the duration, in nanoseconds.
+     */
+    public void record(long nanos) {
+        this.durations.record(nanos);
+    }
+
+    /**
+     * Gets the recorded durations, in nanoseconds.
+     *
+     * @return the histogram of durations.
+     */
+    public Histogram getDurations() {
+        return this.durations;
+    }
+
+}
@@ -0,0 +1,77 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller.platform;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+
+import dalvik.system.DexClassLoader;
+import dalvik.system.DexFile;
+
+/**
+ * {@code AndroidCodeLoader} loads converted dex files with {@link DexClassLoader}.
+ */
+public class AndroidCodeLoader implements CodeLoader {
+
+    @Override
+    public boolean loadsDexFiles() {
+        return true;
+    }
+
+    @Override
+    public ClassLoader createClassLoader(List<URL> files, File optimizedDirectory,
+            ClassLoader parent) {
+        return new DexClassLoader(getDelimitedPathString(files), optimizedDirectory.toString(),
+                null, parent);
+    }
+
+    @Override
+    public List<String> getClassNames(File file, File optimizedFile) throws IOException {
+        DexFile dex = DexFile.loadDex(file.getAbsolutePath(), optimizedFile.getAbsolutePath(), 0);
+        try {
+            List<String> names = new ArrayList<String>();
+            Enumeration<String> entries = dex.entries();
+            while (entries.hasMoreElements()) {
+                names.add(entries.nextElement());
+            }
+            return names;
+        } finally {
+            dex.close();
+        }
+    }
+
+    /**
+     * Gets a string representation of the given list, with each entry in the list being delimited
+     * by the system path separator.
+     *
+     * @param list the list to convert to a string.
+     * @return a string representation of the given list.
+     */
+    private static String getDelimitedPathString(List<?> list) {
+        String result = "";
+        for (Object o : list) {
+            result += File.pathSeparator;
+            result += o.toString();
+        }
+        return result.substring(1);
+    }
+
+}
@@ -0,0 +1,39 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller.platform;
+
+import android.util.Log;
+
+import io.github.thunderbots.robotcontroller.logging.ThunderLog;
+
+/**
+ * {@code AndroidLogOutput} writes messages to the Android log.
+ */
+public class AndroidLogOutput implements LogOutput {
+
+    @Override
+    public void write(int priority, String tag, String message, Throwable throwable) {
+        if (priority == ThunderLog.ASSERT) {
+            Log.wtf(tag, message, throwable);
+        } else if (throwable != null) {
+            Log.println(priority, tag, message + '\n' + Log.getStackTraceString(throwable));
+        } else {
+            Log.println(priority, tag, message);
+        }
+    }
+
+}
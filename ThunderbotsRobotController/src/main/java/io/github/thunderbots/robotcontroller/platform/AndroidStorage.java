@@ -0,0 +1,41 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller.platform;
+
+import android.os.Environment;
+
+import com.qualcomm.ftcrobotcontroller.FtcRobotControllerActivity;
+
+import java.io.File;
+
+/**
+ * {@code AndroidStorage} uses the phone's SD card, and the private files directory of the robot
+ * controller app.
+ */
+public class AndroidStorage implements Storage {
+
+    @Override
+    public File getExternalStorageDirectory() {
+        return Environment.getExternalStorageDirectory();
+    }
+
+    @Override
+    public File getPrivateFilesDirectory() {
+        return FtcRobotControllerActivity.getPrivateFilesDirectory();
+    }
+
+}
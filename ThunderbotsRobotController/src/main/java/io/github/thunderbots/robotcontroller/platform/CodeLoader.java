@@ -0,0 +1,58 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller.platform;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.List;
+
+/**
+ * A {@code CodeLoader} loads classes from files on the file system.
+ */
+public interface CodeLoader {
+
+    /**
+     * Determines if this loader loads converted dex files, or standard Java JAR files.
+     *
+     * @return {@code true} if the files that are given to this loader must have been converted
+     * by {@code DalvikConverter}, or {@code false} if they must be the source JAR files.
+     */
+    boolean loadsDexFiles();
+
+    /**
+     * Constructs a class loader for the given files.
+     *
+     * @param files the files to load classes from.
+     * @param optimizedDirectory the directory that optimized files may be written to.
+     * @param parent the parent class loader.
+     * @return the class loader.
+     */
+    ClassLoader createClassLoader(List<URL> files, File optimizedDirectory, ClassLoader parent);
+
+    /**
+     * Gets the binary name of every class in a file.
+     *
+     * @param file the file to list.
+     * @param optimizedFile the optimized file that may be written for the file. This is the same
+     * file that a class loader for the file writes, so that the file is only optimized once.
+     * @return the names of the classes in the file.
+     * @throws IOException if the file cannot be read.
+     */
+    List<String> getClassNames(File file, File optimizedFile) throws IOException;
+
+}
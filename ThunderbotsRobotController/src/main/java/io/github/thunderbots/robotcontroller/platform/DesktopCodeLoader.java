@@ -0,0 +1,70 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller.platform;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * {@code DesktopCodeLoader} loads standard Java JAR files with {@link URLClassLoader}. A desktop
+ * JVM cannot load dex files, so the source JAR files are loaded instead of the converted ones.
+ */
+public class DesktopCodeLoader implements CodeLoader {
+
+    /**
+     * The file extension of class files.
+     */
+    private static final String CLASS_EXTENSION = ".class";
+
+    @Override
+    public boolean loadsDexFiles() {
+        return false;
+    }
+
+    @Override
+    public ClassLoader createClassLoader(List<URL> files, File optimizedDirectory,
+            ClassLoader parent) {
+        return new URLClassLoader(files.toArray(new URL[files.size()]), parent);
+    }
+
+    @Override
+    public List<String> getClassNames(File file, File optimizedFile) throws IOException {
+        List<String> names = new ArrayList<String>();
+        ZipFile zip = new ZipFile(file);
+        try {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                String name = entries.nextElement().getName();
+                if (name.endsWith(CLASS_EXTENSION) && !name.startsWith("META-INF/")) {
+                    names.add(name.substring(0, name.length() - CLASS_EXTENSION.length())
+                            .replace('/', '.'));
+                }
+            }
+        } finally {
+            zip.close();
+        }
+        return names;
+    }
+
+}
@@ -0,0 +1,61 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller.platform;
+
+import java.io.PrintStream;
+
+/**
+ * {@code DesktopLogOutput} writes messages to a stream, in the same brief format as logcat:
+ *
+ * <pre>
+ * I/Thunderbots: Registered TankDrive
+ * </pre>
+ */
+public class DesktopLogOutput implements LogOutput {
+
+    /**
+     * The letter that logcat uses for each priority, indexed by priority.
+     */
+    private static final String PRIORITY_LETTERS = "??VDIWEA";
+
+    /**
+     * The stream that messages are written to.
+     */
+    private final PrintStream out;
+
+    /**
+     * Constructs a log output that writes to the given stream.
+     *
+     * @param out the stream to write to.
+     */
+    public DesktopLogOutput(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(int priority, String tag, String message, Throwable throwable) {
+        char letter = priority >= 0 && priority < PRIORITY_LETTERS.length()
+                ? PRIORITY_LETTERS.charAt(priority) : '?';
+        synchronized (this.out) {
+            this.out.println(letter + "/" + tag + ": " + message);
+            if (throwable != null) {
+                throwable.printStackTrace(this.out);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,92 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller.platform;
+
+import com.qualcomm.robotcore.eventloop.opmode.OpModeManager;
+import com.qualcomm.robotcore.hardware.HardwareMap;
+
+import java.io.File;
+
+import io.github.thunderbots.robotcontroller.DalvikConverter;
+import io.github.thunderbots.robotcontroller.OpModeRegister;
+import io.github.thunderbots.robotcontroller.logging.ThunderLog;
+import io.github.thunderbots.robotcontroller.metrics.MemoryUsage;
+
+/**
+ * {@code DesktopRunner} runs {@link OpModeRegister#register(OpModeManager)} on a computer, so that
+ * the op mode loading system can be profiled with standard tools. Put JAR files in
+ * {@code <root>/sdcard/FIRST}, and run this class with the app's classes, the RobotCore classes,
+ * dx and the annotations on the class path:
+ *
+ * <pre>
+ * java -cp ... io.github.thunderbots.robotcontroller.platform.DesktopRunner &lt;root&gt; [boots]
+ *         [setup ms] [merged]
+ * </pre>
+ *
+ * Each boot registers into a new op mode manager, just as a restart of the robot does, so later
+ * boots use the conversion cache and op mode indexes that the first one wrote. If a setup time is
+ * given, each boot starts a pre-conversion and waits that long before registering, as the app
+ * does while the robot controller service is bound and the hardware is set up; a setup time of
+ * {@code -1} skips the pre-conversion.
+ * <p>
+ * If the last argument is {@code merged}, the JAR files are converted into a single merged file,
+ * as described in {@link DalvikConverter#setMerge(boolean)}. To compare the two modes, run the
+ * same JAR files with and without it, each time from a copy of the root directory with an empty
+ * cache, and compare the boot times and resident memory that are printed for every boot after
+ * the first.
+ */
+public class DesktopRunner {
+
+    /**
+     * The longest time, in milliseconds, to wait for log messages to be written before exiting.
+     */
+    private static final long LOG_FLUSH_TIMEOUT = 5000;
+
+    /**
+     * Registers the op modes in the JAR directory one or more times, and prints the names that
+     * were registered.
+     *
+     * @param args the root directory, an optional number of boots, an optional setup time, and
+     * an optional {@code merged} mode.
+     * @throws InterruptedException if the thread is interrupted during the setup time.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length == 0) {
+            System.err.println("usage: DesktopRunner <root directory> [boots] [setup ms] "
+                    + "[merged]");
+            return;
+        }
+        Platform.useDesktop(new File(args[0]));
+        int boots = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        long setupMillis = args.length > 2 ? Long.parseLong(args[2]) : -1;
+        DalvikConverter.setMerge(args.length > 3 && args[3].equals("merged"));
+        for (int boot = 1; boot <= boots; boot++) {
+            long start = System.nanoTime();
+            if (setupMillis >= 0) {
+                OpModeRegister.startPreConversion();
+                Thread.sleep(setupMillis);
+            }
+            OpModeManager manager = new OpModeManager(new HardwareMap());
+            OpModeRegister.register(manager);
+            ThunderLog.flush(LOG_FLUSH_TIMEOUT);
+            System.out.println("Boot " + boot + " took " + (System.nanoTime() - start) / 1000000
+                    + " ms, used " + MemoryUsage.getResidentKilobytes() + " kB and registered "
+                    + manager.getOpModes());
+        }
+    }
+
+}
@@ -0,0 +1,58 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller.platform;
+
+import java.io.File;
+
+/**
+ * {@code DesktopStorage} uses two plain directories under a root directory in place of the SD
+ * card and the app's private files: {@code sdcard} and {@code files}. JAR files are therefore
+ * read from {@code <root>/sdcard/FIRST}.
+ */
+public class DesktopStorage implements Storage {
+
+    /**
+     * The directory that stands in for the SD card.
+     */
+    private final File externalStorage;
+
+    /**
+     * The directory that stands in for the app's private files.
+     */
+    private final File privateFiles;
+
+    /**
+     * Constructs a storage under the given root directory.
+     *
+     * @param root the root directory.
+     */
+    public DesktopStorage(File root) {
+        this.externalStorage = new File(root, "sdcard");
+        this.privateFiles = new File(root, "files");
+    }
+
+    @Override
+    public File getExternalStorageDirectory() {
+        return this.externalStorage;
+    }
+
+    @Override
+    public File getPrivateFilesDirectory() {
+        return this.privateFiles;
+    }
+
+}
@@ -0,0 +1,37 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller.platform;
+
+/**
+ * A {@code LogOutput} writes formatted log messages. Messages are only ever written from the
+ * {@code ThunderLog} writer thread, or from a thread that has to log an assertion failure that
+ * could not be buffered.
+ */
+public interface LogOutput {
+
+    /**
+     * Writes a message.
+     *
+     * @param priority the priority of the message, as one of the priority constants in
+     * {@code ThunderLog}.
+     * @param tag the tag of the message.
+     * @param message the formatted message.
+     * @param throwable the exception to log with the message, or {@code null} if there is none.
+     */
+    void write(int priority, String tag, String message, Throwable throwable);
+
+}
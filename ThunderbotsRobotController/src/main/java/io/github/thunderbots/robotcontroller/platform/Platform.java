@@ -0,0 +1,132 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller.platform;
+
+import java.io.File;
+
+/**
+ * {@code Platform} holds the implementations of the platform interfaces that the op mode loading
+ * system uses in place of Android classes. On Android, the Android implementations are used. On
+ * any other JVM, the desktop implementations are used, with the directory given by the
+ * {@code thunderbots.root} system property (or {@code ~/thunderbots}) in place of the phone's
+ * storage, so that the same code path can be run and profiled on a computer.
+ *
+ * @see DesktopRunner
+ */
+public class Platform {
+
+    /**
+     * The system property that sets the root directory of the desktop storage.
+     */
+    public static final String ROOT_PROPERTY = "thunderbots.root";
+
+    /**
+     * The storage in use.
+     */
+    private static volatile Storage storage;
+
+    /**
+     * The code loader in use.
+     */
+    private static volatile CodeLoader codeLoader;
+
+    /**
+     * The log output in use.
+     */
+    private static volatile LogOutput logOutput;
+
+    static {
+        if (isAndroid()) {
+            useAndroid();
+        } else {
+            File root = new File(System.getProperty(ROOT_PROPERTY,
+                    new File(System.getProperty("user.home"), "thunderbots").getPath()));
+            useDesktop(root);
+        }
+    }
+
+    /**
+     * Determines if this JVM is an Android runtime. Both Dalvik and ART report themselves as
+     * Dalvik.
+     *
+     * @return {@code true} if this is running on Android, or {@code false} otherwise.
+     */
+    public static boolean isAndroid() {
+        String vm = System.getProperty("java.vm.name");
+        return vm != null && vm.startsWith("Dalvik");
+    }
+
+    /**
+     * Uses the Android implementations.
+     */
+    public static void useAndroid() {
+        use(new AndroidStorage(), new AndroidCodeLoader(), new AndroidLogOutput());
+    }
+
+    /**
+     * Uses the desktop implementations, with storage under the given directory and log messages
+     * written to standard output.
+     *
+     * @param root the root directory of the storage.
+     * @see DesktopStorage
+     */
+    public static void useDesktop(File root) {
+        use(new DesktopStorage(root), new DesktopCodeLoader(), new DesktopLogOutput(System.out));
+    }
+
+    /**
+     * Uses the given implementations. This should be done before anything is loaded, since files
+     * that were found or loaded through the previous implementations are not moved.
+     *
+     * @param storage the storage to use.
+     * @param codeLoader the code loader to use.
+     * @param logOutput the log output to use.
+     */
+    public static void use(Storage storage, CodeLoader codeLoader, LogOutput logOutput) {
+        Platform.storage = storage;
+        Platform.codeLoader = codeLoader;
+        Platform.logOutput = logOutput;
+    }
+
+    /**
+     * Gets the storage in use.
+     *
+     * @return the storage.
+     */
+    public static Storage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Gets the code loader in use.
+     *
+     * @return the code loader.
+     */
+    public static CodeLoader getCodeLoader() {
+        return codeLoader;
+    }
+
+    /**
+     * Gets the log output in use.
+     *
+     * @return the log output.
+     */
+    public static LogOutput getLogOutput() {
+        return logOutput;
+    }
+
+}
@@ -0,0 +1,43 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.robotcontroller.platform;
+
+import java.io.File;
+
+/**
+ * A {@code Storage} provides the directories that the op mode loading system reads from and
+ * writes to.
+ */
+public interface Storage {
+
+    /**
+     * Gets the directory that is shared with the user, which the JAR directory is inside of. On a
+     * phone, this is the SD card.
+     *
+     * @return the shared storage directory.
+     */
+    File getExternalStorageDirectory();
+
+    /**
+     * Gets the directory that is private to the app, which converted files, indexes and metrics
+     * are written to.
+     *
+     * @return the private storage directory.
+     */
+    File getPrivateFilesDirectory();
+
+}
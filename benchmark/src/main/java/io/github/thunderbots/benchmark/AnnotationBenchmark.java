@@ -0,0 +1,118 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.benchmark;
+
+import java.io.IOException;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.github.thunderbots.robotcontroller.AnnotationReader;
+
+/**
+ * {@code AnnotationBenchmark} measures reading the {@code OpMode} and {@code Active} annotations
+ * of op modes with {@link AnnotationReader}. A class caches its annotations once they have been
+ * read, so reading them from classes that are already loaded is measured separately from loading
+ * the classes with a new class loader and reading them for the first time, which is what happens
+ * during a boot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AnnotationBenchmark {
+
+    /**
+     * The class loader that loaded {@link #opModes}.
+     */
+    private URLClassLoader loader;
+
+    /**
+     * The op modes, already loaded.
+     */
+    private List<Class<?>> opModes;
+
+    /**
+     * Loads the op modes.
+     *
+     * @param state the synthetic JAR file.
+     * @throws Exception if an op mode cannot be loaded.
+     */
+    @Setup
+    public void setUp(SyntheticJarState state) throws Exception {
+        this.loader = state.newClassLoader();
+        this.opModes = new ArrayList<Class<?>>();
+        for (String name : state.opModeNames) {
+            this.opModes.add(Class.forName(name, false, this.loader));
+        }
+    }
+
+    /**
+     * Reads the annotations of op modes that are already loaded.
+     *
+     * @param blackhole consumes the results.
+     */
+    @Benchmark
+    public void readLoaded(Blackhole blackhole) {
+        for (Class<?> c : this.opModes) {
+            blackhole.consume(AnnotationReader.isActive(c));
+            blackhole.consume(AnnotationReader.getOpModeName(c));
+        }
+    }
+
+    /**
+     * Loads the op modes with a new class loader, and reads their annotations.
+     *
+     * @param state the synthetic JAR file.
+     * @param blackhole consumes the results.
+     * @throws Exception if an op mode cannot be loaded.
+     */
+    @Benchmark
+    public void loadAndRead(SyntheticJarState state, Blackhole blackhole) throws Exception {
+        URLClassLoader freshLoader = state.newClassLoader();
+        try {
+            for (String name : state.opModeNames) {
+                Class<?> c = Class.forName(name, false, freshLoader);
+                blackhole.consume(AnnotationReader.isActive(c));
+                blackhole.consume(AnnotationReader.getOpModeName(c));
+            }
+        } finally {
+            freshLoader.close();
+        }
+    }
+
+    /**
+     * Closes the class loader.
+     *
+     * @throws IOException if the class loader cannot be closed.
+     */
+    @TearDown
+    public void tearDown() throws IOException {
+        this.loader.close();
+    }
+
+}
@@ -0,0 +1,445 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code ClassFileBuilder} writes small class files directly, without a compiler. The classes it
+ * writes only contain straight-line methods, so they need no stack map frames, and they are
+ * written with class version 50 (Java 6) so that they can be converted by dx.
+ */
+public class ClassFileBuilder {
+
+    /**
+     * The class file version that is written.
+     */
+    public static final int VERSION = 50;
+
+    public static final int ACC_PUBLIC = 0x0001;
+    public static final int ACC_PRIVATE = 0x0002;
+    public static final int ACC_SUPER = 0x0020;
+    public static final int ACC_ABSTRACT = 0x0400;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ILOAD_1 = 0x1b;
+    private static final int BIPUSH = 0x10;
+    private static final int IADD = 0x60;
+    private static final int IRETURN = 0xac;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKESPECIAL = 0xb7;
+
+    /**
+     * The internal name of the class, such as {@code java/lang/Object}.
+     */
+    private final String name;
+
+    /**
+     * The internal name of the superclass.
+     */
+    private final String superName;
+
+    /**
+     * The access flags of the class.
+     */
+    private final int access;
+
+    /**
+     * The encoded constant pool entries, in order.
+     */
+    private final ByteArrayOutputStream pool;
+
+    /**
+     * The index of every constant pool entry that has been added, mapped by a key that
+     * identifies its contents.
+     */
+    private final Map<String, Integer> poolIndexes;
+
+    /**
+     * The number of constant pool slots that have been used, plus one.
+     */
+    private int poolSize;
+
+    /**
+     * The encoded fields.
+     */
+    private final List<byte[]> fields;
+
+    /**
+     * The encoded methods.
+     */
+    private final List<byte[]> methods;
+
+    /**
+     * The encoded annotations, which are written as one {@code RuntimeVisibleAnnotations}
+     * attribute.
+     */
+    private final List<byte[]> annotations;
+
+    /**
+     * Constructs a builder for a class.
+     *
+     * @param name the internal name of the class.
+     * @param superName the internal name of the superclass.
+     * @param access the access flags of the class.
+     */
+    public ClassFileBuilder(String name, String superName, int access) {
+        this.name = name;
+        this.superName = superName;
+        this.access = access | ACC_SUPER;
+        this.pool = new ByteArrayOutputStream();
+        this.poolIndexes = new HashMap<String, Integer>();
+        this.poolSize = 1;
+        this.fields = new ArrayList<byte[]>();
+        this.methods = new ArrayList<byte[]>();
+        this.annotations = new ArrayList<byte[]>();
+    }
+
+    /**
+     * Adds an instance field.
+     *
+     * @param fieldName the name of the field.
+     * @param descriptor the type descriptor of the field, such as {@code I}.
+     * @param fieldAccess the access flags of the field.
+     * @return this builder.
+     */
+    public ClassFileBuilder addField(String fieldName, String descriptor, int fieldAccess) {
+        Encoder out = new Encoder();
+        out.u2(fieldAccess);
+        out.u2(this.utf8(fieldName));
+        out.u2(this.utf8(descriptor));
+        out.u2(0);
+        this.fields.add(out.toByteArray());
+        return this;
+    }
+
+    /**
+     * Adds a public no-arg constructor that calls the constructor of the superclass.
+     *
+     * @return this builder.
+     */
+    public ClassFileBuilder addConstructor() {
+        int superInit = this.methodref(this.superName, "<init>", "()V");
+        byte[] code = {
+                (byte) ALOAD_0,
+                (byte) INVOKESPECIAL, (byte) (superInit >> 8), (byte) superInit,
+                (byte) RETURN,
+        };
+        return this.addMethod("<init>", "()V", ACC_PUBLIC, 1, 1, code);
+    }
+
+    /**
+     * Adds a public method that takes no arguments and does nothing.
+     *
+     * @param methodName the name of the method.
+     * @return this builder.
+     */
+    public ClassFileBuilder addEmptyMethod(String methodName) {
+        return this.addMethod(methodName, "()V", ACC_PUBLIC, 0, 1, new byte[] {(byte) RETURN});
+    }
+
+    /**
+     * Adds a public method that adds a constant to its {@code int} argument and returns the sum.
+     *
+     * @param methodName the name of the method.
+     * @param constant the constant to add, between {@code -128} and {@code 127}.
+     * @return this builder.
+     */
+    public ClassFileBuilder addArithmeticMethod(String methodName, int constant) {
+        byte[] code = {
+                (byte) ILOAD_1,
+                (byte) BIPUSH, (byte) constant,
+                (byte) IADD,
+                (byte) IRETURN,
+        };
+        return this.addMethod(methodName, "(I)I", ACC_PUBLIC, 2, 2, code);
+    }
+
+    /**
+     * Adds a public abstract method that takes no arguments.
+     *
+     * @param methodName the name of the method.
+     * @return this builder.
+     */
+    public ClassFileBuilder addAbstractMethod(String methodName) {
+        Encoder out = new Encoder();
+        out.u2(ACC_PUBLIC | ACC_ABSTRACT);
+        out.u2(this.utf8(methodName));
+        out.u2(this.utf8("()V"));
+        out.u2(0);
+        this.methods.add(out.toByteArray());
+        return this;
+    }
+
+    /**
+     * Adds a runtime-visible annotation whose elements are all strings.
+     *
+     * @param type the internal name of the annotation type.
+     * @param elements the names and values of the elements, alternating.
+     * @return this builder.
+     */
+    public ClassFileBuilder addAnnotation(String type, String... elements) {
+        Encoder out = new Encoder();
+        out.u2(this.utf8("L" + type + ";"));
+        out.u2(elements.length / 2);
+        for (int i = 0; i + 1 < elements.length; i += 2) {
+            out.u2(this.utf8(elements[i]));
+            out.u1('s');
+            out.u2(this.utf8(elements[i + 1]));
+        }
+        this.annotations.add(out.toByteArray());
+        return this;
+    }
+
+    /**
+     * Writes the class file.
+     *
+     * @return the contents of the class file.
+     */
+    public byte[] build() {
+        int thisIndex = this.classref(this.name);
+        int superIndex = this.classref(this.superName);
+        int attributeCount = 0;
+        Encoder attributes = new Encoder();
+        if (!this.annotations.isEmpty()) {
+            attributes.u2(this.utf8("RuntimeVisibleAnnotations"));
+            attributes.u4(2 + totalLength(this.annotations));
+            attributes.u2(this.annotations.size());
+            attributes.all(this.annotations);
+            attributeCount++;
+        }
+        Encoder out = new Encoder();
+        out.u4(0xCAFEBABE);
+        out.u2(0);
+        out.u2(VERSION);
+        out.u2(this.poolSize);
+        out.bytes(this.pool.toByteArray());
+        out.u2(this.access);
+        out.u2(thisIndex);
+        out.u2(superIndex);
+        out.u2(0);
+        out.u2(this.fields.size());
+        out.all(this.fields);
+        out.u2(this.methods.size());
+        out.all(this.methods);
+        out.u2(attributeCount);
+        out.bytes(attributes.toByteArray());
+        return out.toByteArray();
+    }
+
+    /**
+     * Adds a method with a {@code Code} attribute.
+     *
+     * @param methodName the name of the method.
+     * @param descriptor the method descriptor.
+     * @param methodAccess the access flags of the method.
+     * @param maxStack the maximum depth of the operand stack.
+     * @param maxLocals the number of local variable slots.
+     * @param code the bytecode of the method.
+     * @return this builder.
+     */
+    private ClassFileBuilder addMethod(String methodName, String descriptor, int methodAccess,
+            int maxStack, int maxLocals, byte[] code) {
+        Encoder out = new Encoder();
+        out.u2(methodAccess);
+        out.u2(this.utf8(methodName));
+        out.u2(this.utf8(descriptor));
+        out.u2(1);
+        out.u2(this.utf8("Code"));
+        out.u4(12 + code.length);
+        out.u2(maxStack);
+        out.u2(maxLocals);
+        out.u4(code.length);
+        out.bytes(code);
+        out.u2(0);
+        out.u2(0);
+        this.methods.add(out.toByteArray());
+        return this;
+    }
+
+    /**
+     * Gets the index of a {@code CONSTANT_Utf8} entry, adding it if necessary.
+     *
+     * @param value the string.
+     * @return the index of the entry.
+     */
+    private int utf8(String value) {
+        String key = "U" + value;
+        Integer index = this.poolIndexes.get(key);
+        if (index == null) {
+            Encoder out = new Encoder();
+            out.u1(CONSTANT_UTF8);
+            out.utf(value);
+            index = this.addConstant(key, out);
+        }
+        return index;
+    }
+
+    /**
+     * Gets the index of a {@code CONSTANT_Class} entry, adding it if necessary.
+     *
+     * @param internalName the internal name of the class.
+     * @return the index of the entry.
+     */
+    private int classref(String internalName) {
+        String key = "C" + internalName;
+        Integer index = this.poolIndexes.get(key);
+        if (index == null) {
+            int nameIndex = this.utf8(internalName);
+            Encoder out = new Encoder();
+            out.u1(CONSTANT_CLASS);
+            out.u2(nameIndex);
+            index = this.addConstant(key, out);
+        }
+        return index;
+    }
+
+    /**
+     * Gets the index of a {@code CONSTANT_Methodref} entry, adding it if necessary.
+     *
+     * @param owner the internal name of the class that declares the method.
+     * @param methodName the name of the method.
+     * @param descriptor the method descriptor.
+     * @return the index of the entry.
+     */
+    private int methodref(String owner, String methodName, String descriptor) {
+        String key = "M" + owner + "." + methodName + descriptor;
+        Integer index = this.poolIndexes.get(key);
+        if (index == null) {
+            int classIndex = this.classref(owner);
+            int nameIndex = this.utf8(methodName);
+            int typeIndex = this.utf8(descriptor);
+            Encoder nameAndType = new Encoder();
+            nameAndType.u1(CONSTANT_NAME_AND_TYPE);
+            nameAndType.u2(nameIndex);
+            nameAndType.u2(typeIndex);
+            int nameAndTypeIndex = this.addConstant("N" + methodName + descriptor, nameAndType);
+            Encoder out = new Encoder();
+            out.u1(CONSTANT_METHODREF);
+            out.u2(classIndex);
+            out.u2(nameAndTypeIndex);
+            index = this.addConstant(key, out);
+        }
+        return index;
+    }
+
+    /**
+     * Appends an entry to the constant pool.
+     *
+     * @param key the key that identifies the entry.
+     * @param entry the encoded entry.
+     * @return the index of the entry.
+     */
+    private int addConstant(String key, Encoder entry) {
+        Integer existing = this.poolIndexes.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        byte[] bytes = entry.toByteArray();
+        this.pool.write(bytes, 0, bytes.length);
+        int index = this.poolSize++;
+        this.poolIndexes.put(key, index);
+        return index;
+    }
+
+    /**
+     * Adds up the lengths of some byte arrays.
+     *
+     * @param parts the byte arrays.
+     * @return the total length.
+     */
+    private static int totalLength(List<byte[]> parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        return length;
+    }
+
+    /**
+     * An {@code Encoder} writes big-endian values to a byte array. A {@code DataOutputStream} over
+     * a {@code ByteArrayOutputStream} never actually throws an {@code IOException}, so the
+     * exceptions are rethrown unchecked.
+     */
+    private static class Encoder {
+
+        /**
+         * The bytes that have been written.
+         */
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        /**
+         * The stream that writes to {@link #bytes}.
+         */
+        private final DataOutputStream out = new DataOutputStream(this.bytes);
+
+        void u1(int value) {
+            this.bytes.write(value);
+        }
+
+        void u2(int value) {
+            try {
+                this.out.writeShort(value);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void u4(int value) {
+            try {
+                this.out.writeInt(value);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void utf(String value) {
+            try {
+                this.out.writeUTF(value);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void bytes(byte[] value) {
+            this.bytes.write(value, 0, value.length);
+        }
+
+        void all(List<byte[]> values) {
+            for (byte[] value : values) {
+                this.bytes(value);
+            }
+        }
+
+        byte[] toByteArray() {
+            return this.bytes.toByteArray();
+        }
+
+    }
+
+}
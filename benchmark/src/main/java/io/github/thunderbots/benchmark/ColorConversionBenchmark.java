@@ -0,0 +1,334 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import io.github.thunderbots.camera.ColorConverter;
+import io.github.thunderbots.camera.Region;
+import io.github.thunderbots.camera.TileExecutor;
+
+/**
+ * {@code ColorConversionBenchmark} measures the conversion of a {@link SyntheticFrame} from NV21
+ * to grayscale, RGB, and HSV with a {@link ColorConverter}, on different numbers of threads. The
+ * HSV conversion is also measured for a {@link Region} in the middle of the frame, decimated by a
+ * step of two, which is what a typical beacon or line detector would look at.
+ * Before anything is measured, the output of the converter is checked against a floating-point
+ * form of the same conversion, and against the same conversion on a single thread, so a kernel
+ * that is fast but wrong fails the run instead of reporting a result.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ColorConversionBenchmark {
+
+    /**
+     * The largest difference that is allowed between the integer conversion and the
+     * floating-point conversion, for each color component.
+     */
+    private static final int TOLERANCE = 2;
+
+    /**
+     * The width of the frame, in pixels.
+     */
+    @Param({"320", "640"})
+    public int width;
+
+    /**
+     * The number of threads that the conversion runs on.
+     */
+    @Param({"1", "2", "4"})
+    public int threads;
+
+    /**
+     * The height of the frame, in pixels. Frames have the 4:3 shape of a phone camera preview.
+     */
+    private int height;
+
+    /**
+     * The frame to convert.
+     */
+    private byte[] nv21;
+
+    /**
+     * The executor that the conversion runs on.
+     */
+    private TileExecutor executor;
+
+    /**
+     * The converter being measured.
+     */
+    private ColorConverter converter;
+
+    /**
+     * The region that is converted by {@link #toHsvRegion()}: the middle half of the frame in
+     * each direction, with every other pixel kept.
+     */
+    private Region region;
+
+    /**
+     * The grayscale output buffer.
+     */
+    private byte[] gray;
+
+    /**
+     * The RGB output buffer.
+     */
+    private int[] argb;
+
+    /**
+     * The HSV output buffer.
+     */
+    private byte[] hsv;
+
+    /**
+     * Generates the frame, creates the converter, and checks its output.
+     */
+    @Setup
+    public void setUp() {
+        this.height = this.width * 3 / 4;
+        this.nv21 = SyntheticFrame.generate(this.width, this.height);
+        this.executor = new TileExecutor(this.threads);
+        this.converter = new ColorConverter(this.executor);
+        int pixels = this.width * this.height;
+        this.gray = new byte[pixels];
+        this.argb = new int[pixels];
+        this.hsv = new byte[3 * pixels];
+        this.region = new Region(this.width / 4, this.height / 4, this.width / 2,
+                this.height / 2, 2);
+        this.check();
+    }
+
+    /**
+     * Converts the frame to grayscale.
+     *
+     * @return the grayscale buffer, so that the conversion is not optimized away.
+     */
+    @Benchmark
+    public byte[] toGray() {
+        this.converter.toGray(this.nv21, this.width, this.height, this.gray);
+        return this.gray;
+    }
+
+    /**
+     * Converts the frame to RGB.
+     *
+     * @return the RGB buffer, so that the conversion is not optimized away.
+     */
+    @Benchmark
+    public int[] toRgb() {
+        this.converter.toRgb(this.nv21, this.width, this.height, this.argb);
+        return this.argb;
+    }
+
+    /**
+     * Converts the frame to HSV.
+     *
+     * @return the HSV buffer, so that the conversion is not optimized away.
+     */
+    @Benchmark
+    public byte[] toHsv() {
+        this.converter.toHsv(this.nv21, this.width, this.height, this.hsv);
+        return this.hsv;
+    }
+
+    /**
+     * Converts the region of the frame to HSV.
+     *
+     * @return the HSV buffer, so that the conversion is not optimized away.
+     */
+    @Benchmark
+    public byte[] toHsvRegion() {
+        this.converter.toHsv(this.nv21, this.width, this.height, this.region, this.hsv);
+        return this.hsv;
+    }
+
+    /**
+     * Stops the threads of the executor.
+     */
+    @TearDown
+    public void tearDown() {
+        this.executor.shutdown();
+    }
+
+    /**
+     * Checks every conversion of the frame.
+     *
+     * @throws IllegalStateException if any pixel is converted incorrectly.
+     */
+    private void check() {
+        int pixels = this.width * this.height;
+        this.converter.toGray(this.nv21, this.width, this.height, this.gray);
+        this.converter.toRgb(this.nv21, this.width, this.height, this.argb);
+        this.converter.toHsv(this.nv21, this.width, this.height, this.hsv);
+        int[] serialArgb = new int[pixels];
+        byte[] serialHsv = new byte[3 * pixels];
+        Region full = Region.full(this.width, this.height);
+        ColorConverter.toRgb(this.nv21, this.width, this.height, full, 0, this.height,
+                serialArgb);
+        ColorConverter.toHsv(this.nv21, this.width, this.height, full, 0, this.height,
+                serialHsv);
+        for (int y = 0; y < this.height; y++) {
+            for (int x = 0; x < this.width; x++) {
+                int i = y * this.width + x;
+                if (this.gray[i] != this.nv21[i]) {
+                    fail("gray", x, y);
+                }
+                if (this.argb[i] != serialArgb[i]) {
+                    fail("RGB differs from a single thread", x, y);
+                }
+                for (int c = 0; c < 3; c++) {
+                    if (this.hsv[3 * i + c] != serialHsv[3 * i + c]) {
+                        fail("HSV differs from a single thread", x, y);
+                    }
+                }
+                int[] expected = this.referenceRgb(x, y);
+                int actual = this.argb[i];
+                if ((actual >>> 24) != 0xFF
+                        || Math.abs(((actual >> 16) & 0xFF) - expected[0]) > TOLERANCE
+                        || Math.abs(((actual >> 8) & 0xFF) - expected[1]) > TOLERANCE
+                        || Math.abs((actual & 0xFF) - expected[2]) > TOLERANCE) {
+                    fail("RGB", x, y);
+                }
+                if (!isHsvClose(this.hsv, 3 * i, referenceHsv(actual))) {
+                    fail("HSV", x, y);
+                }
+            }
+        }
+        this.checkRegion(serialHsv);
+    }
+
+    /**
+     * Checks that converting the region gives the same pixels as converting the whole frame.
+     *
+     * @param fullHsv the whole frame, converted to HSV.
+     * @throws IllegalStateException if any pixel of the region is converted incorrectly.
+     */
+    private void checkRegion(byte[] fullHsv) {
+        byte[] regionHsv = new byte[3 * this.width * this.height];
+        this.converter.toHsv(this.nv21, this.width, this.height, this.region, regionHsv);
+        int outWidth = this.region.getOutputWidth();
+        for (int row = 0; row < this.region.getOutputHeight(); row++) {
+            for (int column = 0; column < outWidth; column++) {
+                int x = (int) this.region.toFrameX(column);
+                int y = (int) this.region.toFrameY(row);
+                for (int c = 0; c < 3; c++) {
+                    if (regionHsv[3 * (row * outWidth + column) + c]
+                            != fullHsv[3 * (y * this.width + x) + c]) {
+                        fail("region HSV", x, y);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts a single pixel of the frame to RGB with floating-point arithmetic.
+     *
+     * @param x the column of the pixel.
+     * @param y the row of the pixel.
+     * @return the red, green, and blue components of the pixel.
+     */
+    private int[] referenceRgb(int x, int y) {
+        int chroma = this.width * this.height + (y / 2) * 2 * ((this.width + 1) / 2) + (x & ~1);
+        double luma = 1.164 * Math.max((this.nv21[y * this.width + x] & 0xFF) - 16, 0);
+        double v = (this.nv21[chroma] & 0xFF) - 128;
+        double u = (this.nv21[chroma + 1] & 0xFF) - 128;
+        return new int[] {
+            clamp(luma + 1.596 * v),
+            clamp(luma - 0.391 * u - 0.813 * v),
+            clamp(luma + 2.018 * u),
+        };
+    }
+
+    /**
+     * Converts an RGB color to HSV with floating-point arithmetic.
+     *
+     * @param argb the color, packed as {@code 0xAARRGGBB}.
+     * @return the hue, saturation, and value of the color, on the scale of the converter.
+     */
+    private static double[] referenceHsv(int argb) {
+        double r = (argb >> 16) & 0xFF;
+        double g = (argb >> 8) & 0xFF;
+        double b = argb & 0xFF;
+        double max = Math.max(r, Math.max(g, b));
+        double delta = max - Math.min(r, Math.min(g, b));
+        double hue = 0;
+        if (delta > 0) {
+            if (max == r) {
+                hue = 60 * (g - b) / delta;
+            } else if (max == g) {
+                hue = 120 + 60 * (b - r) / delta;
+            } else {
+                hue = 240 + 60 * (r - g) / delta;
+            }
+        }
+        hue = ((hue % 360) + 360) % 360 / 2;
+        return new double[] {hue, max == 0 ? 0 : 255 * delta / max, max};
+    }
+
+    /**
+     * Determines if an HSV pixel is within the tolerance of a reference color. The hue wraps
+     * around, so a hue of {@code 179} is close to a hue of {@code 0}.
+     *
+     * @param hsv the HSV image.
+     * @param offset the index of the hue of the pixel.
+     * @param expected the reference color.
+     * @return {@code true} if the pixel is close to the reference color, or {@code false}
+     * otherwise.
+     */
+    private static boolean isHsvClose(byte[] hsv, int offset, double[] expected) {
+        double hueError = Math.abs((hsv[offset] & 0xFF) - expected[0]);
+        hueError = Math.min(hueError, ColorConverter.HUE_RANGE - hueError);
+        return hueError <= 1 && Math.abs((hsv[offset + 1] & 0xFF) - expected[1]) <= 1
+                && Math.abs((hsv[offset + 2] & 0xFF) - expected[2]) <= 1;
+    }
+
+    /**
+     * Rounds a color component, and limits it to the range of a byte.
+     *
+     * @param value the color component.
+     * @return the component, from {@code 0} to {@code 255}.
+     */
+    private static int clamp(double value) {
+        return (int) Math.max(0, Math.min(255, Math.round(value)));
+    }
+
+    /**
+     * Reports an incorrectly converted pixel.
+     *
+     * @param conversion the conversion that was incorrect.
+     * @param x the column of the pixel.
+     * @param y the row of the pixel.
+     * @throws IllegalStateException always.
+     */
+    private static void fail(String conversion, int x, int y) {
+        throw new IllegalStateException("Incorrect " + conversion + " conversion at (" + x
+                + ", " + y + ")");
+    }
+
+}
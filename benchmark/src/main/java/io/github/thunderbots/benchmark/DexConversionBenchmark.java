@@ -0,0 +1,78 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.android.dx.command.dexer.Main;
+
+/**
+ * {@code DexConversionBenchmark} measures the conversion of a JAR file to a dex file by dx, with
+ * the same options that {@code DalvikConverter} uses. dx is run through
+ * {@link Main#run(Main.Arguments)} instead of {@code main}, so that a failure is thrown instead of
+ * exiting the JVM. The converter is much slower than the other stages, so fewer iterations are
+ * run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class DexConversionBenchmark {
+
+    /**
+     * The number of threads that dx uses.
+     */
+    @Param({"1", "4"})
+    public int threads;
+
+    /**
+     * Converts the synthetic JAR file.
+     *
+     * @param state the synthetic JAR file.
+     * @return the size of the converted file.
+     * @throws IOException if the JAR file cannot be converted.
+     */
+    @Benchmark
+    public long convert(SyntheticJarState state) throws IOException {
+        File output = new File(state.directory, "classes.jar");
+        Main.Arguments arguments = new Main.Arguments();
+        arguments.parse(new String[] {
+                "--num-threads=" + this.threads,
+                "--output=" + output.getAbsolutePath(),
+                state.jar.getAbsolutePath(),
+        });
+        int result = Main.run(arguments);
+        if (result != 0) {
+            throw new IOException("dx failed with exit code " + result);
+        }
+        return output.length();
+    }
+
+}
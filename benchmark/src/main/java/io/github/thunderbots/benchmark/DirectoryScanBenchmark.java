@@ -0,0 +1,123 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import io.github.thunderbots.robotcontroller.DirectorySnapshot;
+import io.github.thunderbots.robotcontroller.DirectoryWalker;
+
+/**
+ * {@code DirectoryScanBenchmark} measures the scan of the JAR directory for JAR files, with the
+ * same filters that {@code FileLoader} uses. The scanned tree holds JAR files spread across a
+ * few top-level directories at the given nesting depth, a text file next to every JAR file, and
+ * a hidden directory that should be pruned. The files are empty, since only their names are read.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DirectoryScanBenchmark {
+
+    /**
+     * The number of top-level directories that the JAR files are spread across.
+     */
+    private static final int TOP_LEVEL_DIRECTORIES = 4;
+
+    /**
+     * The number of files in the hidden directory.
+     */
+    private static final int HIDDEN_FILES = 100;
+
+    /**
+     * The number of JAR files in the tree.
+     */
+    @Param({"20", "200"})
+    public int jarCount;
+
+    /**
+     * The number of directories between the root and each JAR file.
+     */
+    @Param({"1", "4"})
+    public int depth;
+
+    /**
+     * The number of threads that walk the tree.
+     */
+    @Param({"1", "4"})
+    public int parallelism;
+
+    /**
+     * The root of the scanned tree.
+     */
+    private File root;
+
+    /**
+     * Creates the scanned tree.
+     *
+     * @throws IOException if a file cannot be created.
+     */
+    @Setup
+    public void setUp() throws IOException {
+        this.root = TemporaryFiles.createDirectory("scan");
+        for (int i = 0; i < this.jarCount; i++) {
+            File directory = new File(this.root, "team" + (i % TOP_LEVEL_DIRECTORIES));
+            for (int level = 1; level < this.depth; level++) {
+                directory = new File(directory, "level" + level);
+            }
+            directory.mkdirs();
+            new File(directory, "opmodes" + i + ".jar").createNewFile();
+            new File(directory, "notes" + i + ".txt").createNewFile();
+        }
+        File hidden = new File(this.root, ".git");
+        hidden.mkdirs();
+        for (int i = 0; i < HIDDEN_FILES; i++) {
+            new File(hidden, "object" + i + ".jar").createNewFile();
+        }
+    }
+
+    /**
+     * Scans the tree for JAR files.
+     *
+     * @return the JAR files that were found.
+     */
+    @Benchmark
+    public DirectorySnapshot walk() {
+        return new DirectoryWalker(this.root).include("*.jar").exclude(".*")
+                .setParallelism(this.parallelism).walk();
+    }
+
+    /**
+     * Deletes the scanned tree.
+     */
+    @TearDown
+    public void tearDown() {
+        TemporaryFiles.delete(this.root);
+    }
+
+}
@@ -0,0 +1,111 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.benchmark;
+
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.net.URLClassLoader;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import io.github.thunderbots.robotcontroller.ClassFileInfo;
+import io.github.thunderbots.robotcontroller.OpModeDiscovery;
+
+/**
+ * {@code DiscoveryBenchmark} measures finding the op modes in a JAR file by reading its class
+ * files, as {@code OpModeIndex} does the first time it sees a JAR file, against the reflective
+ * scan that it replaced, which loads every class in the JAR file with a new class loader and
+ * checks if it extends the op mode class. Both run on the same {@link SyntheticJarState}, so
+ * their results can be compared directly.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DiscoveryBenchmark {
+
+    /**
+     * The file extension of a class file.
+     */
+    private static final String CLASS_EXTENSION = ".class";
+
+    /**
+     * Finds the op modes in the synthetic JAR file.
+     *
+     * @param state the synthetic JAR file.
+     * @return the op modes that were found.
+     * @throws IOException if the JAR file cannot be read.
+     */
+    @Benchmark
+    public List<ClassFileInfo> discover(SyntheticJarState state) throws IOException {
+        OpModeDiscovery discovery = new OpModeDiscovery(state.robotCoreLoader);
+        discovery.addJar(state.jar);
+        List<ClassFileInfo> opModes = discovery.getOpModes(state.jar);
+        if (opModes.size() != state.opModeCount) {
+            throw new IllegalStateException("Found " + opModes.size() + " op modes, but "
+                    + state.opModeCount + " were generated");
+        }
+        return opModes;
+    }
+
+    /**
+     * Finds the op modes in the synthetic JAR file by loading every class in it, as the op mode
+     * loader does when a JAR file has no index.
+     *
+     * @param state the synthetic JAR file.
+     * @return the number of op modes that were found.
+     * @throws Exception if the JAR file cannot be read, or a class cannot be loaded.
+     */
+    @Benchmark
+    public int reflectiveScan(SyntheticJarState state) throws Exception {
+        Class<?> opModeClass = Class.forName(OpModeDiscovery.OP_MODE_CLASS, false,
+                state.robotCoreLoader);
+        int opModes = 0;
+        URLClassLoader loader = state.newClassLoader();
+        ZipFile zip = new ZipFile(state.jar);
+        try {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                String name = entries.nextElement().getName();
+                if (!name.endsWith(CLASS_EXTENSION)) {
+                    continue;
+                }
+                String className = name.substring(0, name.length() - CLASS_EXTENSION.length())
+                        .replace('/', '.');
+                Class<?> c = loader.loadClass(className);
+                if (opModeClass.isAssignableFrom(c) && !Modifier.isAbstract(c.getModifiers())) {
+                    opModes++;
+                }
+            }
+        } finally {
+            zip.close();
+            loader.close();
+        }
+        if (opModes != state.opModeCount) {
+            throw new IllegalStateException("Found " + opModes + " op modes, but "
+                    + state.opModeCount + " were generated");
+        }
+        return opModes;
+    }
+
+}
@@ -0,0 +1,54 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import io.github.thunderbots.robotcontroller.JarInspector;
+
+/**
+ * {@code JarVersionBenchmark} measures the class version check that {@code DalvikConverter} runs
+ * on every JAR file before it is converted.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JarVersionBenchmark {
+
+    /**
+     * The maximum class version that dx can convert, as in {@code DalvikConverter}.
+     */
+    private static final int MAX_JAR_VERSION = 51;
+
+    /**
+     * Checks the version of every class file in the synthetic JAR file.
+     *
+     * @param state the synthetic JAR file.
+     * @return whether the JAR file can be converted.
+     * @throws IOException if the JAR file cannot be read.
+     */
+    @Benchmark
+    public boolean checkJarVersion(SyntheticJarState state) throws IOException {
+        return JarInspector.getVersionReport(state.jar).isCompatible(MAX_JAR_VERSION);
+    }
+
+}
@@ -0,0 +1,241 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import io.github.thunderbots.camera.BlobDetector;
+import io.github.thunderbots.camera.BlobList;
+import io.github.thunderbots.camera.BoxBlur;
+import io.github.thunderbots.camera.ColorConversion;
+import io.github.thunderbots.camera.ColorConverter;
+import io.github.thunderbots.camera.ColorThreshold;
+import io.github.thunderbots.camera.Downsample;
+import io.github.thunderbots.camera.Frame;
+import io.github.thunderbots.camera.FrameRecorder;
+import io.github.thunderbots.camera.FrameReplay;
+import io.github.thunderbots.camera.FrameRing;
+import io.github.thunderbots.camera.PipelineResult;
+import io.github.thunderbots.camera.StageChain;
+import io.github.thunderbots.camera.TileExecutor;
+import io.github.thunderbots.camera.VisionPipeline;
+
+/**
+ * {@code ReplayPipelineBenchmark} measures a whole {@link VisionPipeline}, from the HSV
+ * conversion to blob detection, over the frames of a recording that is played back by a
+ * {@link FrameReplay} as fast as the pipeline can take them. A recording from the robot can be
+ * profiled by passing its path with {@code -p recording=<file>}; otherwise, a short recording of
+ * a {@link SyntheticFrame} is made for the run. The time spent in each stage of the pipeline is
+ * printed when each trial ends.
+ * <p>
+ * Before anything is measured, the first frame of the recording is run through the pipeline,
+ * and the run fails if the pipeline throws an exception, or finds nothing in a synthetic frame.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReplayPipelineBenchmark {
+
+    /**
+     * The width of a synthetic recording, in pixels.
+     */
+    private static final int SYNTHETIC_WIDTH = 640;
+
+    /**
+     * The height of a synthetic recording, in pixels.
+     */
+    private static final int SYNTHETIC_HEIGHT = 480;
+
+    /**
+     * The number of frames in a synthetic recording.
+     */
+    private static final int SYNTHETIC_FRAMES = 30;
+
+    /**
+     * The time between the frames of a synthetic recording, in nanoseconds, which is the frame
+     * rate of a typical phone camera preview.
+     */
+    private static final long SYNTHETIC_INTERVAL = TimeUnit.MILLISECONDS.toNanos(33);
+
+    /**
+     * The longest time to wait for a frame from the recording, in seconds.
+     */
+    private static final long FRAME_TIMEOUT = 5;
+
+    /**
+     * The recording to play back, or an empty string to make a synthetic recording.
+     */
+    @Param({""})
+    public String recording;
+
+    /**
+     * The number of threads that the color conversion runs on.
+     */
+    @Param({"1", "2"})
+    public int threads;
+
+    /**
+     * The directory that the synthetic recording is written to, or {@code null} if a recording
+     * was given.
+     */
+    private File directory;
+
+    /**
+     * The executor that the color conversion runs on.
+     */
+    private TileExecutor executor;
+
+    /**
+     * The recording being played back.
+     */
+    private FrameReplay replay;
+
+    /**
+     * The pipeline being measured. It is never started, so every frame is processed on the
+     * benchmark thread.
+     */
+    private VisionPipeline<BlobList> pipeline;
+
+    /**
+     * Opens the recording, creates the pipeline, and checks its output.
+     *
+     * @throws IOException if the recording cannot be written or read.
+     * @throws InterruptedException if the thread is interrupted while waiting for a frame.
+     */
+    @Setup
+    public void setUp() throws IOException, InterruptedException {
+        File file;
+        if (this.recording.isEmpty()) {
+            this.directory = TemporaryFiles.createDirectory("replay");
+            file = new File(this.directory, "synthetic.tbfr");
+            record(file);
+        } else {
+            file = new File(this.recording);
+        }
+        this.replay = new FrameReplay(file, FrameReplay.Pacing.UNTHROTTLED, true);
+        if (this.replay.getRecordedFrameCount() == 0) {
+            throw new IllegalStateException(file + " has no frames");
+        }
+        this.executor = new TileExecutor(this.threads);
+        ColorConverter converter = new ColorConverter(this.executor);
+        StageChain<BlobList> chain = StageChain
+                .start(new ColorConversion(converter, ColorConversion.Format.HSV))
+                .then(new ColorThreshold(new int[] {170, 100, 50}, new int[] {10, 255, 255}))
+                .then(new BoxBlur(2))
+                .then(new Downsample(2))
+                .then(new ColorThreshold(new int[] {128}, new int[] {255}))
+                .then(new BlobDetector(20, 8));
+        this.pipeline = new VisionPipeline<BlobList>(this.replay, chain);
+        this.replay.start();
+        this.processFrame();
+        this.check();
+    }
+
+    /**
+     * Writes a recording of a synthetic frame.
+     *
+     * @param file the file to write the recording to.
+     * @throws IOException if the recording cannot be written.
+     */
+    private static void record(File file) throws IOException {
+        FrameRing ring = new FrameRing(SYNTHETIC_WIDTH, SYNTHETIC_HEIGHT);
+        Frame frame = ring.obtain();
+        byte[] image = SyntheticFrame.generate(SYNTHETIC_WIDTH, SYNTHETIC_HEIGHT);
+        System.arraycopy(image, 0, frame.getData(), 0, image.length);
+        FrameRecorder recorder = new FrameRecorder(file, SYNTHETIC_WIDTH, SYNTHETIC_HEIGHT);
+        try {
+            for (int i = 0; i < SYNTHETIC_FRAMES; i++) {
+                ring.publish(frame, i * SYNTHETIC_INTERVAL);
+                recorder.record(ring.poll());
+                ring.release(frame);
+                frame = ring.obtain();
+            }
+        } finally {
+            recorder.close();
+        }
+    }
+
+    /**
+     * Takes the next frame of the recording, and runs the pipeline on it.
+     *
+     * @return the sequence number of the frame, so that the pipeline is not optimized away.
+     * @throws InterruptedException if the thread is interrupted while waiting for a frame.
+     */
+    @Benchmark
+    public long processFrame() throws InterruptedException {
+        Frame frame = this.replay.acquire(FRAME_TIMEOUT, TimeUnit.SECONDS);
+        if (frame == null) {
+            throw new IllegalStateException("The recording did not deliver a frame");
+        }
+        try {
+            this.pipeline.process(frame);
+            return frame.getSequence();
+        } finally {
+            this.replay.release(frame);
+        }
+    }
+
+    /**
+     * Prints the time spent in each stage of the pipeline during the trial, and stops the
+     * playback.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting for the playback
+     * to stop.
+     */
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        System.out.println();
+        System.out.print(this.pipeline.getTimingReport());
+        this.replay.stop();
+        this.executor.shutdown();
+        if (this.directory != null) {
+            TemporaryFiles.delete(this.directory);
+        }
+    }
+
+    /**
+     * Checks the result of the frame that was processed during setup.
+     *
+     * @throws IllegalStateException if the pipeline failed, or found nothing in a synthetic
+     * frame.
+     */
+    private void check() {
+        if (this.pipeline.getErrorCount() > 0) {
+            throw new IllegalStateException("The pipeline failed", this.pipeline.getLastError());
+        }
+        PipelineResult<BlobList> result = this.pipeline.getLatest();
+        if (result == null) {
+            throw new IllegalStateException("The pipeline did not publish a result");
+        }
+        if (this.directory != null && result.getValue().size() == 0) {
+            throw new IllegalStateException("No blobs were found in the synthetic recording");
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.benchmark;
+
+import java.util.Random;
+
+import io.github.thunderbots.camera.Frame;
+
+/**
+ * {@code SyntheticFrame} generates NV21 images that look enough like camera frames to exercise
+ * the vision code: smooth gradients of luminance and color, with noise on top, and a few solid
+ * blocks of saturated color that a color threshold can find. The images are generated from a
+ * fixed seed, so every run of a benchmark sees the same pixels.
+ */
+public class SyntheticFrame {
+
+    /**
+     * The seed of the noise in every image.
+     */
+    private static final long SEED = 5604;
+
+    /**
+     * The amount of noise that is added to each sample, in either direction.
+     */
+    private static final int NOISE = 12;
+
+    /**
+     * Generates an NV21 image of the given size.
+     *
+     * @param width the width of the image, in pixels.
+     * @param height the height of the image, in pixels.
+     * @return the image.
+     */
+    public static byte[] generate(int width, int height) {
+        byte[] nv21 = new byte[Frame.getBufferSize(width, height)];
+        Random random = new Random(SEED);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int luma = 32 + 192 * (x + y) / (width + height);
+                nv21[y * width + x] = sample(luma, random);
+            }
+        }
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        int chromaStart = width * height;
+        for (int y = 0; y < chromaHeight; y++) {
+            for (int x = 0; x < chromaWidth; x++) {
+                int v = 128 + 96 * x / chromaWidth - 48;
+                int u = 128 + 96 * y / chromaHeight - 48;
+                if (isBlock(x, y, chromaWidth, chromaHeight)) {
+                    // a saturated red block
+                    v = 240;
+                    u = 90;
+                }
+                int offset = chromaStart + 2 * (y * chromaWidth + x);
+                nv21[offset] = sample(v, random);
+                nv21[offset + 1] = sample(u, random);
+            }
+        }
+        return nv21;
+    }
+
+    /**
+     * Determines if a chroma sample is inside one of the solid blocks of color. The blocks are
+     * placed in a grid of eight by six cells, in every third cell.
+     *
+     * @param x the column of the chroma sample.
+     * @param y the row of the chroma sample.
+     * @param chromaWidth the width of the chroma plane.
+     * @param chromaHeight the height of the chroma plane.
+     * @return {@code true} if the sample is in a block, or {@code false} otherwise.
+     */
+    private static boolean isBlock(int x, int y, int chromaWidth, int chromaHeight) {
+        int column = x * 8 / chromaWidth;
+        int row = y * 6 / chromaHeight;
+        return (row * 8 + column) % 3 == 0;
+    }
+
+    /**
+     * Adds noise to a sample, and limits it to the range of a byte.
+     *
+     * @param value the sample.
+     * @param random the source of the noise.
+     * @return the noisy sample.
+     */
+    private static byte sample(int value, Random random) {
+        int noisy = value + random.nextInt(2 * NOISE + 1) - NOISE;
+        return (byte) Math.max(0, Math.min(255, noisy));
+    }
+
+}
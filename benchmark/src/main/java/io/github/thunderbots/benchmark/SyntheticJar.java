@@ -0,0 +1,285 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import io.github.thunderbots.robotcontroller.OpModeDiscovery;
+
+/**
+ * A {@code SyntheticJar} describes a JAR file of generated classes that looks like a team's op
+ * mode JAR file, and writes it. Its size is set by three numbers:
+ * <ul>
+ * <li>the total number of classes,</li>
+ * <li>the number of those classes that are op modes, and</li>
+ * <li>the nesting depth, which is the number of abstract base classes between every op mode and
+ * {@link OpModeDiscovery#OP_MODE_CLASS}. The other classes are also arranged in superclass chains
+ * of this length, so that discovery has to follow chains that do not end at an op mode.</li>
+ * </ul>
+ * Every op mode is annotated with {@code OpMode} and {@code Active}, just as a team's op modes
+ * would be. The classes refer to the op mode class by name only, so a stand-in op mode class is
+ * written to a separate JAR file by {@link #writeRobotCore(File)} for benchmarks that load them.
+ * The same description always produces the same bytes.
+ */
+public class SyntheticJar {
+
+    /**
+     * The internal name of the op mode class.
+     */
+    private static final String OP_MODE = OpModeDiscovery.OP_MODE_CLASS.replace('.', '/');
+
+    /**
+     * The internal name of the {@code OpMode} annotation.
+     */
+    private static final String OP_MODE_ANNOTATION = "io/github/thunderbots/annotation/OpMode";
+
+    /**
+     * The internal name of the {@code Active} annotation.
+     */
+    private static final String ACTIVE_ANNOTATION = "io/github/thunderbots/annotation/Active";
+
+    /**
+     * The package that the generated classes are in, as a path.
+     */
+    private static final String PACKAGE = "org/example/synthetic/";
+
+    /**
+     * The number of classes in each generated subpackage.
+     */
+    private static final int CLASSES_PER_PACKAGE = 50;
+
+    /**
+     * The number of fields in each generated class.
+     */
+    private static final int FIELDS_PER_CLASS = 2;
+
+    /**
+     * The number of methods in each generated class, besides its constructor.
+     */
+    private static final int METHODS_PER_CLASS = 4;
+
+    /**
+     * The modification time of every entry, so that the JAR file is the same every time it is
+     * written.
+     */
+    private static final long ENTRY_TIME = 1451606400000L;
+
+    /**
+     * The total number of classes in the JAR file.
+     */
+    private final int classCount;
+
+    /**
+     * The number of op modes in the JAR file.
+     */
+    private final int opModeCount;
+
+    /**
+     * The number of abstract base classes between every op mode and the op mode class.
+     */
+    private final int depth;
+
+    /**
+     * Describes a synthetic JAR file.
+     *
+     * @param classCount the total number of classes.
+     * @param opModeCount the number of classes that are op modes.
+     * @param depth the nesting depth.
+     * @throws IllegalArgumentException if there are not enough classes for the op modes and
+     * their base classes.
+     */
+    public SyntheticJar(int classCount, int opModeCount, int depth) {
+        if (opModeCount < 0 || depth < 0 || opModeCount + depth > classCount) {
+            throw new IllegalArgumentException("A JAR file with " + opModeCount
+                    + " op modes at depth " + depth + " needs at least " + (opModeCount + depth)
+                    + " classes, but only " + classCount + " were requested");
+        }
+        this.classCount = classCount;
+        this.opModeCount = opModeCount;
+        this.depth = depth;
+    }
+
+    /**
+     * Gets the binary names of the op modes in the JAR file.
+     *
+     * @return the names of the op modes.
+     */
+    public List<String> getOpModeNames() {
+        List<String> names = new ArrayList<String>(this.opModeCount);
+        for (int i = 0; i < this.opModeCount; i++) {
+            names.add(this.getClassName(i, "OpMode").replace('/', '.'));
+        }
+        return names;
+    }
+
+    /**
+     * Writes the JAR file.
+     *
+     * @param file the file to write.
+     * @throws IOException if the file cannot be written.
+     */
+    public void write(File file) throws IOException {
+        JarOutputStream out = open(file);
+        try {
+            String superName = OP_MODE;
+            for (int level = 0; level < this.depth; level++) {
+                String name = this.getClassName(this.opModeCount + level, "Base");
+                ClassFileBuilder base = new ClassFileBuilder(name, superName,
+                        ClassFileBuilder.ACC_PUBLIC | ClassFileBuilder.ACC_ABSTRACT);
+                addMembers(base.addConstructor(), level);
+                putClass(out, name, base.build());
+                superName = name;
+            }
+            for (int i = 0; i < this.opModeCount; i++) {
+                String name = this.getClassName(i, "OpMode");
+                ClassFileBuilder opMode = new ClassFileBuilder(name, superName,
+                        ClassFileBuilder.ACC_PUBLIC);
+                opMode.addConstructor().addEmptyMethod("init").addEmptyMethod("loop");
+                opMode.addAnnotation(OP_MODE_ANNOTATION, "name", "Synthetic " + i,
+                        "type", "TeleOp");
+                opMode.addAnnotation(ACTIVE_ANNOTATION);
+                putClass(out, name, addMembers(opMode, i).build());
+            }
+            String helperSuper = "java/lang/Object";
+            int chainLength = Math.max(this.depth, 1);
+            for (int i = this.opModeCount + this.depth; i < this.classCount; i++) {
+                if ((i - this.opModeCount - this.depth) % chainLength == 0) {
+                    helperSuper = "java/lang/Object";
+                }
+                String name = this.getClassName(i, "Helper");
+                ClassFileBuilder helper = new ClassFileBuilder(name, helperSuper,
+                        ClassFileBuilder.ACC_PUBLIC);
+                putClass(out, name, addMembers(helper.addConstructor(), i).build());
+                helperSuper = name;
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Gets the internal name of a generated class.
+     *
+     * @param index the index of the class in the JAR file.
+     * @param kind the kind of class, which begins its simple name.
+     * @return the internal name of the class.
+     */
+    private String getClassName(int index, String kind) {
+        return PACKAGE + "group" + (index / CLASSES_PER_PACKAGE) + "/" + kind + index;
+    }
+
+    /**
+     * Adds the usual fields and methods to a generated class.
+     *
+     * @param builder the builder of the class.
+     * @param seed a number that makes the methods of different classes differ.
+     * @return the builder.
+     */
+    private static ClassFileBuilder addMembers(ClassFileBuilder builder, int seed) {
+        for (int i = 0; i < FIELDS_PER_CLASS; i++) {
+            builder.addField("field" + i, "I", ClassFileBuilder.ACC_PRIVATE);
+        }
+        for (int i = 0; i < METHODS_PER_CLASS; i++) {
+            builder.addArithmeticMethod("compute" + i, (seed + i) % 128);
+        }
+        return builder;
+    }
+
+    /**
+     * Writes a JAR file that contains a stand-in for the op mode class, so that the classes in a
+     * synthetic JAR file can be loaded on a computer.
+     *
+     * @param file the file to write.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void writeRobotCore(File file) throws IOException {
+        JarOutputStream out = open(file);
+        try {
+            ClassFileBuilder opMode = new ClassFileBuilder(OP_MODE, "java/lang/Object",
+                    ClassFileBuilder.ACC_PUBLIC | ClassFileBuilder.ACC_ABSTRACT);
+            opMode.addConstructor().addAbstractMethod("init").addAbstractMethod("loop");
+            putClass(out, OP_MODE, opMode.build());
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Opens a JAR file for writing, and writes its manifest.
+     *
+     * @param file the file to write.
+     * @return the stream to write the classes to.
+     * @throws IOException if the file cannot be written.
+     */
+    private static JarOutputStream open(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(file));
+        ZipEntry entry = new ZipEntry("META-INF/MANIFEST.MF");
+        entry.setTime(ENTRY_TIME);
+        out.putNextEntry(entry);
+        manifest.write(out);
+        out.closeEntry();
+        return out;
+    }
+
+    /**
+     * Writes a class file to a JAR file.
+     *
+     * @param out the JAR file.
+     * @param name the internal name of the class.
+     * @param classFile the contents of the class file.
+     * @throws IOException if the class file cannot be written.
+     */
+    private static void putClass(JarOutputStream out, String name, byte[] classFile)
+            throws IOException {
+        ZipEntry entry = new ZipEntry(name + ".class");
+        entry.setTime(ENTRY_TIME);
+        out.putNextEntry(entry);
+        out.write(classFile);
+        out.closeEntry();
+    }
+
+    /**
+     * Writes a synthetic JAR file from the command line, so that it can be copied to the phone.
+     *
+     * @param args the output file, the number of classes, the number of op modes, and the
+     * nesting depth.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4) {
+            System.err.println("usage: SyntheticJar <output.jar> <classes> <op modes> <depth>");
+            return;
+        }
+        new SyntheticJar(Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+                Integer.parseInt(args[3])).write(new File(args[0]));
+    }
+
+}
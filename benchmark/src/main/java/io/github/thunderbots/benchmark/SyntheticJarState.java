@@ -0,0 +1,118 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * A {@code SyntheticJarState} writes a {@link SyntheticJar} once for every combination of its
+ * parameters, and is shared by the benchmarks that read a JAR file. The parameters can be
+ * changed from the command line, such as with {@code -p classCount=5000}.
+ */
+@State(Scope.Benchmark)
+public class SyntheticJarState {
+
+    /**
+     * The total number of classes in the JAR file.
+     */
+    @Param({"100", "1000"})
+    public int classCount;
+
+    /**
+     * The number of op modes in the JAR file.
+     */
+    @Param({"20"})
+    public int opModeCount;
+
+    /**
+     * The nesting depth of the classes in the JAR file.
+     */
+    @Param({"1", "4"})
+    public int depth;
+
+    /**
+     * The directory that the JAR files are written to.
+     */
+    public File directory;
+
+    /**
+     * The synthetic JAR file.
+     */
+    public File jar;
+
+    /**
+     * The binary names of the op modes in {@link #jar}.
+     */
+    public List<String> opModeNames;
+
+    /**
+     * A class loader that can load the op mode class, and that can be used as the parent of a
+     * class loader for {@link #jar}.
+     */
+    public URLClassLoader robotCoreLoader;
+
+    /**
+     * Writes the JAR files.
+     *
+     * @throws IOException if the JAR files cannot be written.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.directory = TemporaryFiles.createDirectory("synthetic");
+        SyntheticJar synthetic = new SyntheticJar(this.classCount, this.opModeCount, this.depth);
+        this.jar = new File(this.directory, "opmodes.jar");
+        synthetic.write(this.jar);
+        this.opModeNames = synthetic.getOpModeNames();
+        File robotCore = new File(this.directory, "robotcore.jar");
+        SyntheticJar.writeRobotCore(robotCore);
+        this.robotCoreLoader = new URLClassLoader(new URL[] {robotCore.toURI().toURL()},
+                SyntheticJarState.class.getClassLoader());
+    }
+
+    /**
+     * Creates a new class loader for the synthetic JAR file.
+     *
+     * @return the class loader.
+     * @throws IOException if the location of the JAR file cannot be converted to a URL.
+     */
+    public URLClassLoader newClassLoader() throws IOException {
+        return new URLClassLoader(new URL[] {this.jar.toURI().toURL()}, this.robotCoreLoader);
+    }
+
+    /**
+     * Deletes the JAR files.
+     *
+     * @throws IOException if the class loader cannot be closed.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        this.robotCoreLoader.close();
+        TemporaryFiles.delete(this.directory);
+    }
+
+}
@@ -0,0 +1,58 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * {@code TemporaryFiles} creates and deletes the directories that benchmarks write their inputs
+ * and outputs to.
+ */
+public class TemporaryFiles {
+
+    /**
+     * Creates a new, empty temporary directory.
+     *
+     * @param prefix the prefix of the name of the directory.
+     * @return the directory.
+     * @throws IOException if the directory cannot be created.
+     */
+    public static File createDirectory(String prefix) throws IOException {
+        File directory = File.createTempFile(prefix, "");
+        if (!directory.delete() || !directory.mkdir()) {
+            throw new IOException("Cannot create the temporary directory " + directory);
+        }
+        return directory;
+    }
+
+    /**
+     * Deletes a file, or a directory and everything in it.
+     *
+     * @param file the file or directory to delete.
+     */
+    public static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+}
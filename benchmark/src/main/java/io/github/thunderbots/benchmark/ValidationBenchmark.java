@@ -0,0 +1,152 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.benchmark;
+
+import java.io.IOException;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.github.thunderbots.robotcontroller.OpModeValidator;
+
+/**
+ * {@code ValidationBenchmark} measures checking that op modes can be instantiated with
+ * {@link OpModeValidator}, against creating an instance of each one with {@code newInstance()},
+ * which is how they used to be checked. Classes that are already loaded are measured separately
+ * from classes that are loaded with a new class loader, which is what happens during a boot; an
+ * instance also initializes its class, and a validation does not. Run with {@code -prof gc} to
+ * compare the memory that each one allocates. The synthetic op modes have empty constructors, so
+ * a team's op modes, which set up their fields as they are created, cost more to instantiate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ValidationBenchmark {
+
+    /**
+     * The class loader that loaded {@link #opModes}.
+     */
+    private URLClassLoader loader;
+
+    /**
+     * The op modes, already loaded.
+     */
+    private List<Class<?>> opModes;
+
+    /**
+     * Loads the op modes.
+     *
+     * @param state the synthetic JAR file.
+     * @throws Exception if an op mode cannot be loaded.
+     */
+    @Setup
+    public void setUp(SyntheticJarState state) throws Exception {
+        this.loader = state.newClassLoader();
+        this.opModes = new ArrayList<Class<?>>();
+        for (String name : state.opModeNames) {
+            this.opModes.add(Class.forName(name, false, this.loader));
+        }
+    }
+
+    /**
+     * Validates op modes that are already loaded.
+     *
+     * @param blackhole consumes the results.
+     */
+    @Benchmark
+    public void validateLoaded(Blackhole blackhole) {
+        for (Class<?> c : this.opModes) {
+            blackhole.consume(OpModeValidator.validate(c));
+        }
+    }
+
+    /**
+     * Creates an instance of each op mode that is already loaded.
+     *
+     * @param blackhole consumes the results.
+     * @throws Exception if an op mode cannot be instantiated.
+     */
+    @Benchmark
+    public void instantiateLoaded(Blackhole blackhole) throws Exception {
+        for (Class<?> c : this.opModes) {
+            blackhole.consume(c.newInstance());
+        }
+    }
+
+    /**
+     * Loads the op modes with a new class loader, and validates them.
+     *
+     * @param state the synthetic JAR file.
+     * @param blackhole consumes the results.
+     * @throws Exception if an op mode cannot be loaded.
+     */
+    @Benchmark
+    public void loadAndValidate(SyntheticJarState state, Blackhole blackhole) throws Exception {
+        URLClassLoader freshLoader = state.newClassLoader();
+        try {
+            for (String name : state.opModeNames) {
+                Class<?> c = Class.forName(name, false, freshLoader);
+                blackhole.consume(OpModeValidator.validate(c));
+            }
+        } finally {
+            freshLoader.close();
+        }
+    }
+
+    /**
+     * Loads the op modes with a new class loader, and creates an instance of each one.
+     *
+     * @param state the synthetic JAR file.
+     * @param blackhole consumes the results.
+     * @throws Exception if an op mode cannot be loaded or instantiated.
+     */
+    @Benchmark
+    public void loadAndInstantiate(SyntheticJarState state, Blackhole blackhole)
+            throws Exception {
+        URLClassLoader freshLoader = state.newClassLoader();
+        try {
+            for (String name : state.opModeNames) {
+                Class<?> c = Class.forName(name, false, freshLoader);
+                blackhole.consume(c.newInstance());
+            }
+        } finally {
+            freshLoader.close();
+        }
+    }
+
+    /**
+     * Closes the class loader.
+     *
+     * @throws IOException if the class loader cannot be closed.
+     */
+    @TearDown
+    public void tearDown() throws IOException {
+        this.loader.close();
+    }
+
+}
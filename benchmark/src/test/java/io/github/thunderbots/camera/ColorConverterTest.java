@@ -0,0 +1,314 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.camera;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the NV21 conversion kernels of {@link ColorConverter}: solid colors with known results,
+ * images with odd sizes, regions with every step, the wrapping of the hue, and the same
+ * conversion on one thread and on several threads.
+ */
+public class ColorConverterTest {
+
+    /**
+     * The largest difference that is allowed between a converted color component and its
+     * expected value.
+     */
+    private static final int TOLERANCE = 2;
+
+    /**
+     * The seed of the random images, so that a failure can be reproduced.
+     */
+    private static final long SEED = 5604;
+
+    /**
+     * The executor with one thread.
+     */
+    private TileExecutor serialExecutor;
+
+    /**
+     * The executor with several threads.
+     */
+    private TileExecutor parallelExecutor;
+
+    /**
+     * The converter that runs on one thread.
+     */
+    private ColorConverter serial;
+
+    /**
+     * The converter that runs on several threads.
+     */
+    private ColorConverter parallel;
+
+    /**
+     * Creates the converters.
+     */
+    @Before
+    public void setUp() {
+        this.serialExecutor = new TileExecutor(1);
+        this.parallelExecutor = new TileExecutor(4);
+        this.serial = new ColorConverter(this.serialExecutor);
+        this.parallel = new ColorConverter(this.parallelExecutor);
+    }
+
+    /**
+     * Stops the threads of the executors.
+     */
+    @After
+    public void tearDown() {
+        this.serialExecutor.shutdown();
+        this.parallelExecutor.shutdown();
+    }
+
+    @Test
+    public void convertsKnownColors() {
+        int[][] colors = {
+            {255, 0, 0}, {0, 255, 0}, {0, 0, 255}, {255, 255, 0},
+            {255, 255, 255}, {0, 0, 0}, {128, 128, 128},
+        };
+        int[] hues = {0, 60, 120, 30, 0, 0, 0};
+        int[] saturations = {255, 255, 255, 255, 0, 0, 0};
+        for (int i = 0; i < colors.length; i++) {
+            int[] color = colors[i];
+            byte[] nv21 = solid(7, 5, color[0], color[1], color[2]);
+            int[] argb = new int[7 * 5];
+            byte[] hsv = new byte[3 * 7 * 5];
+            this.serial.toRgb(nv21, 7, 5, argb);
+            this.serial.toHsv(nv21, 7, 5, hsv);
+            for (int p = 0; p < argb.length; p++) {
+                assertColor("color " + i, color, argb[p]);
+                assertEquals("hue of color " + i, hues[i], hsv[3 * p] & 0xFF, 1);
+                assertEquals("saturation of color " + i, saturations[i], hsv[3 * p + 1] & 0xFF,
+                        TOLERANCE);
+                assertEquals("value of color " + i,
+                        Math.max(color[0], Math.max(color[1], color[2])), hsv[3 * p + 2] & 0xFF,
+                        TOLERANCE);
+            }
+        }
+    }
+
+    @Test
+    public void convertsOddSizes() {
+        Random random = new Random(SEED);
+        int[] sizes = {1, 2, 3, 7, 33};
+        for (int width : sizes) {
+            for (int height : sizes) {
+                byte[] nv21 = randomImage(random, width, height);
+                byte[] gray = new byte[width * height];
+                int[] argb = new int[width * height];
+                this.serial.toGray(nv21, width, height, gray);
+                this.serial.toRgb(nv21, width, height, argb);
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        int i = y * width + x;
+                        String pixel = width + "x" + height + " at (" + x + ", " + y + ")";
+                        assertEquals("gray " + pixel, nv21[i], gray[i]);
+                        assertColor("RGB " + pixel, referenceRgb(nv21, width, height, x, y),
+                                argb[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void convertsRegionsWithEveryStep() {
+        int width = 41;
+        int height = 31;
+        byte[] nv21 = randomImage(new Random(SEED), width, height);
+        byte[] fullGray = new byte[width * height];
+        int[] fullArgb = new int[width * height];
+        byte[] fullHsv = new byte[3 * width * height];
+        this.serial.toGray(nv21, width, height, fullGray);
+        this.serial.toRgb(nv21, width, height, fullArgb);
+        this.serial.toHsv(nv21, width, height, fullHsv);
+        Region[] regions = {
+            new Region(0, 0, width, height, 2),
+            new Region(3, 5, 17, 9, 1),
+            new Region(1, 1, 40, 30, 3),
+            new Region(11, 4, 7, 13, 4),
+            new Region(40, 30, 1, 1, 5),
+        };
+        for (Region region : regions) {
+            int outWidth = region.getOutputWidth();
+            int pixels = outWidth * region.getOutputHeight();
+            byte[] gray = new byte[pixels];
+            int[] argb = new int[pixels];
+            byte[] hsv = new byte[3 * pixels];
+            this.parallel.toGray(nv21, width, height, region, gray);
+            this.parallel.toRgb(nv21, width, height, region, argb);
+            this.parallel.toHsv(nv21, width, height, region, hsv);
+            for (int row = 0; row < region.getOutputHeight(); row++) {
+                for (int column = 0; column < outWidth; column++) {
+                    int i = row * outWidth + column;
+                    int f = (int) region.toFrameY(row) * width + (int) region.toFrameX(column);
+                    String pixel = "(" + column + ", " + row + ") of a region with a step of "
+                            + region.getStep();
+                    assertEquals("gray " + pixel, fullGray[f], gray[i]);
+                    assertEquals("RGB " + pixel, fullArgb[f], argb[i]);
+                    for (int c = 0; c < 3; c++) {
+                        assertEquals("HSV " + pixel, fullHsv[3 * f + c], hsv[3 * i + c]);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void wrapsHue() {
+        byte[] hsv = new byte[3];
+        // just below red, the hue is negative before it wraps
+        ColorConverter.writeHsv(255, 0, 10, hsv, 0);
+        assertEquals(ColorConverter.HUE_RANGE - 1, hsv[0] & 0xFF);
+        ColorConverter.writeHsv(255, 0, 1, hsv, 0);
+        assertEquals(0, hsv[0] & 0xFF);
+        ColorConverter.writeHsv(255, 10, 0, hsv, 0);
+        assertEquals(1, hsv[0] & 0xFF);
+        ColorConverter.writeHsv(255, 0, 255, hsv, 0);
+        assertEquals(150, hsv[0] & 0xFF);
+        for (int b = 0; b <= 255; b++) {
+            ColorConverter.writeHsv(255, 0, b, hsv, 0);
+            int hue = hsv[0] & 0xFF;
+            assertTrue("hue " + hue + " for blue " + b,
+                    hue < ColorConverter.HUE_RANGE && (hue == 0 || hue >= 150));
+        }
+    }
+
+    @Test
+    public void convertsTheSameOnEveryThreadCount() {
+        int width = 641;
+        int height = 481;
+        byte[] nv21 = randomImage(new Random(SEED), width, height);
+        int pixels = width * height;
+        byte[] serialGray = new byte[pixels];
+        byte[] parallelGray = new byte[pixels];
+        int[] serialArgb = new int[pixels];
+        int[] parallelArgb = new int[pixels];
+        byte[] serialHsv = new byte[3 * pixels];
+        byte[] parallelHsv = new byte[3 * pixels];
+        this.serial.toGray(nv21, width, height, serialGray);
+        this.parallel.toGray(nv21, width, height, parallelGray);
+        this.serial.toRgb(nv21, width, height, serialArgb);
+        this.parallel.toRgb(nv21, width, height, parallelArgb);
+        this.serial.toHsv(nv21, width, height, serialHsv);
+        this.parallel.toHsv(nv21, width, height, parallelHsv);
+        assertArrayEquals(serialGray, parallelGray);
+        assertArrayEquals(serialArgb, parallelArgb);
+        assertArrayEquals(serialHsv, parallelHsv);
+        Region region = new Region(101, 77, 400, 300, 3);
+        this.serial.toHsv(nv21, width, height, region, serialHsv);
+        this.parallel.toHsv(nv21, width, height, region, parallelHsv);
+        assertArrayEquals(serialHsv, parallelHsv);
+    }
+
+    /**
+     * Checks that an RGB pixel is opaque and within the tolerance of an expected color.
+     *
+     * @param message the description of the pixel.
+     * @param expected the red, green and blue components of the expected color.
+     * @param actual the converted pixel.
+     */
+    private static void assertColor(String message, int[] expected, int actual) {
+        assertEquals(message + " alpha", 0xFF, actual >>> 24);
+        assertEquals(message + " red", expected[0], (actual >> 16) & 0xFF, TOLERANCE);
+        assertEquals(message + " green", expected[1], (actual >> 8) & 0xFF, TOLERANCE);
+        assertEquals(message + " blue", expected[2], actual & 0xFF, TOLERANCE);
+    }
+
+    /**
+     * Creates an NV21 image of a single color, with the BT.601 video-range matrix that the
+     * camera uses.
+     *
+     * @param width the width of the image, in pixels.
+     * @param height the height of the image, in pixels.
+     * @param r the red component of the color.
+     * @param g the green component of the color.
+     * @param b the blue component of the color.
+     * @return the image.
+     */
+    private static byte[] solid(int width, int height, int r, int g, int b) {
+        byte[] nv21 = new byte[Frame.getBufferSize(width, height)];
+        int y = (int) Math.round(16 + (65.738 * r + 129.057 * g + 25.064 * b) / 256);
+        int u = (int) Math.round(128 + (-37.945 * r - 74.494 * g + 112.439 * b) / 256);
+        int v = (int) Math.round(128 + (112.439 * r - 94.154 * g - 18.285 * b) / 256);
+        int luma = width * height;
+        for (int i = 0; i < luma; i++) {
+            nv21[i] = (byte) y;
+        }
+        for (int i = luma; i < nv21.length; i += 2) {
+            nv21[i] = (byte) v;
+            nv21[i + 1] = (byte) u;
+        }
+        return nv21;
+    }
+
+    /**
+     * Creates an NV21 image of random pixels.
+     *
+     * @param random the source of the pixels.
+     * @param width the width of the image, in pixels.
+     * @param height the height of the image, in pixels.
+     * @return the image.
+     */
+    private static byte[] randomImage(Random random, int width, int height) {
+        byte[] nv21 = new byte[Frame.getBufferSize(width, height)];
+        random.nextBytes(nv21);
+        return nv21;
+    }
+
+    /**
+     * Converts one pixel of an NV21 image to RGB in floating point, as a reference for the
+     * integer kernels.
+     *
+     * @param nv21 the image.
+     * @param width the width of the image, in pixels.
+     * @param height the height of the image, in pixels.
+     * @param x the column of the pixel.
+     * @param y the row of the pixel.
+     * @return the red, green and blue components of the pixel.
+     */
+    private static int[] referenceRgb(byte[] nv21, int width, int height, int x, int y) {
+        int chroma = width * height + (y / 2) * 2 * ((width + 1) / 2) + (x / 2) * 2;
+        double luma = 1.164 * Math.max((nv21[y * width + x] & 0xFF) - 16, 0);
+        double v = (nv21[chroma] & 0xFF) - 128;
+        double u = (nv21[chroma + 1] & 0xFF) - 128;
+        return new int[] {
+            clamp(luma + 1.596 * v), clamp(luma - 0.391 * u - 0.813 * v), clamp(luma + 2.018 * u),
+        };
+    }
+
+    /**
+     * Rounds a color component, and limits it to the range of a byte.
+     *
+     * @param value the color component.
+     * @return the component, from {@code 0} to {@code 255}.
+     */
+    private static int clamp(double value) {
+        return (int) Math.max(0, Math.min(255, Math.round(value)));
+    }
+
+}
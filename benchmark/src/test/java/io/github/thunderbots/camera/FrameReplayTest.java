@@ -0,0 +1,178 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.camera;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests that a recording written by {@link FrameRecorder} is played back by {@link FrameReplay}
+ * with the same images and timestamps, that a looped recording of one frame keeps moving forward
+ * in time, and that a recording with an invalid frame size is rejected.
+ */
+public class FrameReplayTest {
+
+    /**
+     * The width of the recorded frames.
+     */
+    private static final int WIDTH = 8;
+
+    /**
+     * The height of the recorded frames.
+     */
+    private static final int HEIGHT = 6;
+
+    /**
+     * The time between the recorded frames, in nanoseconds.
+     */
+    private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(5);
+
+    /**
+     * The longest time to wait for a frame to be played back, in seconds.
+     */
+    private static final long TIMEOUT = 5;
+
+    /**
+     * The directory that the recordings are written to.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Checks that every frame is played back once, in order, with its recorded image and
+     * timestamp.
+     *
+     * @throws Exception if the recording cannot be written or played back.
+     */
+    @Test
+    public void playsBackRecordedFrames() throws Exception {
+        File file = this.record(5);
+        FrameReplay replay = new FrameReplay(file, FrameReplay.Pacing.UNTHROTTLED, false);
+        assertEquals(5, replay.getRecordedFrameCount());
+        replay.start();
+        try {
+            for (int i = 0; i < 5; i++) {
+                Frame frame = replay.acquire(TIMEOUT, TimeUnit.SECONDS);
+                assertNotNull("Frame " + i + " was not played back", frame);
+                assertEquals(i * INTERVAL, frame.getTimestamp());
+                assertArrayEquals(getImage(i), frame.getData());
+                replay.release(frame);
+            }
+        } finally {
+            replay.stop();
+        }
+        assertEquals(0, replay.getDroppedFrameCount());
+    }
+
+    /**
+     * Checks that a looped recording of a single frame is delivered at a steady rate, with
+     * timestamps that keep increasing.
+     *
+     * @throws Exception if the recording cannot be written or played back.
+     */
+    @Test
+    public void loopsSingleFrame() throws Exception {
+        File file = this.record(1);
+        FrameReplay replay = new FrameReplay(file, FrameReplay.Pacing.RECORDED, true);
+        replay.start();
+        try {
+            long lastTimestamp = -1;
+            for (int i = 0; i < 3; i++) {
+                Frame frame = replay.acquire(TIMEOUT, TimeUnit.SECONDS);
+                assertNotNull("Pass " + i + " was not played back", frame);
+                assertTrue(frame.getTimestamp() > lastTimestamp);
+                lastTimestamp = frame.getTimestamp();
+                replay.release(frame);
+            }
+            // a loop without a frame interval would deliver thousands of frames by now
+            assertTrue(replay.getFrameCount() < 10);
+        } finally {
+            replay.stop();
+        }
+    }
+
+    /**
+     * Checks that recordings whose header has a frame size that is not positive, or too large
+     * for any camera, are rejected.
+     *
+     * @throws Exception if the recording cannot be written.
+     */
+    @Test
+    public void rejectsInvalidFrameSizes() throws Exception {
+        int[][] sizes = {{0, HEIGHT}, {WIDTH, -1}, {100000, 100000}};
+        for (int[] size : sizes) {
+            File file = this.folder.newFile();
+            new FrameRecorder(file, size[0], size[1]).close();
+            try {
+                new FrameReplay(file, FrameReplay.Pacing.UNTHROTTLED, false);
+                throw new AssertionError("A " + size[0] + "x" + size[1] + " recording was opened");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Writes a recording of the given number of frames, each filled with its own index.
+     *
+     * @param frames the number of frames to record.
+     * @return the recording.
+     * @throws Exception if the recording cannot be written.
+     */
+    private File record(int frames) throws Exception {
+        File file = this.folder.newFile();
+        FrameRing ring = new FrameRing(WIDTH, HEIGHT);
+        FrameRecorder recorder = new FrameRecorder(file, WIDTH, HEIGHT);
+        try {
+            for (int i = 0; i < frames; i++) {
+                Frame frame = ring.obtain();
+                System.arraycopy(getImage(i), 0, frame.getData(), 0, frame.getData().length);
+                ring.publish(frame, i * INTERVAL);
+                frame = ring.poll();
+                recorder.record(frame);
+                ring.release(frame);
+            }
+        } finally {
+            recorder.close();
+        }
+        return file;
+    }
+
+    /**
+     * Gets the image of a recorded frame.
+     *
+     * @param index the index of the frame.
+     * @return an image filled with the index of the frame.
+     */
+    private static byte[] getImage(int index) {
+        byte[] image = new byte[Frame.getBufferSize(WIDTH, HEIGHT)];
+        Arrays.fill(image, (byte) index);
+        return image;
+    }
+
+}
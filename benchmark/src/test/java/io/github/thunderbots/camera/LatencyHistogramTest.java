@@ -0,0 +1,139 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.camera;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests the percentiles of {@link LatencyHistogram} against the exact percentiles of the same
+ * values, for small values, values that span many powers of two, and the largest values.
+ */
+public class LatencyHistogramTest {
+
+    /**
+     * The largest relative error that is allowed between an estimated percentile and the exact
+     * one.
+     */
+    private static final double TOLERANCE = 1.0 / 16;
+
+    /**
+     * The seed of the random values, so that a failure can be reproduced.
+     */
+    private static final long SEED = 2316;
+
+    /**
+     * The fractions whose percentiles are checked.
+     */
+    private static final double[] FRACTIONS = {0.01, 0.1, 0.5, 0.9, 0.99, 0.999, 1};
+
+    /**
+     * Checks that an empty histogram reports zero for everything.
+     */
+    @Test
+    public void reportsZeroWhenEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(0.5));
+    }
+
+    /**
+     * Checks that small values, which each have their own bucket, are reported exactly.
+     */
+    @Test
+    public void reportsSmallValuesExactly() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 0; value < 10; value++) {
+            histogram.record(value);
+        }
+        assertEquals(0, histogram.getPercentile(0.1));
+        assertEquals(4, histogram.getPercentile(0.5));
+        assertEquals(9, histogram.getPercentile(1));
+    }
+
+    /**
+     * Checks the percentiles of values that span many powers of two, such as the times of a
+     * stage that is usually fast, but sometimes waits.
+     */
+    @Test
+    public void estimatesPercentilesOfSpreadValues() {
+        Random random = new Random(SEED);
+        long[] values = new long[10000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextDouble() * 20);
+        }
+        this.checkPercentiles(values);
+    }
+
+    /**
+     * Checks the percentiles of values that are all within one power of two, where buckets
+     * bounded by powers of two would report the same value for every percentile.
+     */
+    @Test
+    public void estimatesPercentilesOfCloseValues() {
+        Random random = new Random(SEED);
+        long[] values = new long[10000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 5000000 + random.nextInt(3000000);
+        }
+        this.checkPercentiles(values);
+    }
+
+    /**
+     * Checks that the largest values are counted without overflowing, and that negative values
+     * are recorded as zero.
+     */
+    @Test
+    public void recordsExtremeValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(0, histogram.getMin());
+        assertEquals(Long.MAX_VALUE, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(0.5));
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(1));
+    }
+
+    /**
+     * Records the given values, and checks every percentile in {@link #FRACTIONS} against the
+     * exact percentile of the values.
+     *
+     * @param values the values to record.
+     */
+    private void checkPercentiles(long[] values) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value : values) {
+            histogram.record(value);
+        }
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        for (double fraction : FRACTIONS) {
+            long exact = sorted[(int) Math.ceil(fraction * sorted.length) - 1];
+            long estimate = histogram.getPercentile(fraction);
+            assertTrue("The " + fraction + " percentile is " + estimate + ", not " + exact,
+                    Math.abs(estimate - exact) <= exact * TOLERANCE);
+        }
+    }
+
+}
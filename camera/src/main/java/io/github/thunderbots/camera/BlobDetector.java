@@ -0,0 +1,288 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.camera;
+
+/**
+ * {@code BlobDetector} finds the connected groups of pixels in a mask, such as the output of a
+ * {@link ColorThreshold}, and describes each one by its area, centroid, and bounding box. A pixel
+ * is part of a blob if it is not zero, and pixels are connected if they touch along an edge or at
+ * a corner.
+ * <p>
+ * The blobs are labelled in two passes over the mask, with a union-find forest that joins labels
+ * that turn out to be the same blob. All of the working arrays are kept between frames, so a
+ * detector stops allocating once it has seen the largest mask.
+ */
+public class BlobDetector implements Stage<Image, BlobList> {
+
+    /**
+     * The smallest area of a blob that is reported, in pixels.
+     */
+    private final int minArea;
+
+    /**
+     * The largest number of blobs that are reported.
+     */
+    private final int maxBlobs;
+
+    /**
+     * The label of every pixel, or {@code 0} for pixels that are not part of a blob.
+     */
+    private int[] labels;
+
+    /**
+     * The parent of every label in the union-find forest. A label is the root of its blob if it
+     * is its own parent.
+     */
+    private int[] parents;
+
+    /**
+     * The area of the blob of each root label.
+     */
+    private int[] areas;
+
+    /**
+     * The sum of the columns of the pixels in the blob of each root label.
+     */
+    private long[] sumX;
+
+    /**
+     * The sum of the rows of the pixels in the blob of each root label.
+     */
+    private long[] sumY;
+
+    /**
+     * The bounding box of the blob of each root label, as the left, top, right, and bottom edges
+     * of each label, one after another.
+     */
+    private int[] boxes;
+
+    /**
+     * The output list, which is reused for every frame.
+     */
+    private final BlobList output;
+
+    /**
+     * Constructs a blob detector.
+     *
+     * @param minArea the smallest area of a blob that is reported, in pixels. Blobs always have
+     * at least one pixel.
+     * @param maxBlobs the largest number of blobs that are reported. The largest blobs are kept.
+     */
+    public BlobDetector(int minArea, int maxBlobs) {
+        this.minArea = Math.max(1, minArea);
+        this.maxBlobs = maxBlobs;
+        this.labels = new int[0];
+        this.parents = new int[0];
+        this.output = new BlobList(maxBlobs);
+    }
+
+    @Override
+    public String getName() {
+        return "blobs";
+    }
+
+    @Override
+    public BlobList process(Image mask) {
+        if (mask.getChannels() != 1) {
+            throw new IllegalArgumentException("Blobs can only be found in a mask with one"
+                    + " channel");
+        }
+        int width = mask.getWidth();
+        int height = mask.getHeight();
+        this.ensureCapacity(width, height);
+        int labelCount = this.label(mask.getData(), width, height);
+        this.measure(width, height, labelCount);
+        this.select(labelCount);
+        return this.output;
+    }
+
+    /**
+     * Makes sure that the working arrays are large enough for a mask of the given size.
+     *
+     * @param width the width of the mask.
+     * @param height the height of the mask.
+     */
+    private void ensureCapacity(int width, int height) {
+        if (this.labels.length < width * height) {
+            this.labels = new int[width * height];
+        }
+        // a new label is only needed for a pixel whose left neighbor is empty, so there is at
+        // most one for every two pixels of a row
+        int maxLabels = (width + 1) / 2 * height + 1;
+        if (this.parents.length < maxLabels) {
+            this.parents = new int[maxLabels];
+            this.areas = new int[maxLabels];
+            this.sumX = new long[maxLabels];
+            this.sumY = new long[maxLabels];
+            this.boxes = new int[4 * maxLabels];
+        }
+    }
+
+    /**
+     * Gives every pixel of the mask a label, so that connected pixels have labels with the same
+     * root.
+     *
+     * @param mask the pixels of the mask.
+     * @param width the width of the mask.
+     * @param height the height of the mask.
+     * @return the number of labels that were used, plus one for the empty label.
+     */
+    private int label(byte[] mask, int width, int height) {
+        int[] labelled = this.labels;
+        int next = 1;
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                int p = row + x;
+                if (mask[p] == 0) {
+                    labelled[p] = 0;
+                    continue;
+                }
+                int label = 0;
+                if (x > 0) {
+                    label = this.join(label, labelled[p - 1]);
+                }
+                if (y > 0) {
+                    int above = p - width;
+                    if (x > 0) {
+                        label = this.join(label, labelled[above - 1]);
+                    }
+                    label = this.join(label, labelled[above]);
+                    if (x + 1 < width) {
+                        label = this.join(label, labelled[above + 1]);
+                    }
+                }
+                if (label == 0) {
+                    label = next++;
+                    this.parents[label] = label;
+                }
+                labelled[p] = label;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Joins the label of a pixel with the label of one of its neighbors.
+     *
+     * @param label the label of the pixel so far, or {@code 0} if it has none yet.
+     * @param neighbor the label of the neighbor, or {@code 0} if it is empty.
+     * @return the label of the pixel.
+     */
+    private int join(int label, int neighbor) {
+        if (neighbor == 0) {
+            return label;
+        }
+        if (label == 0) {
+            return neighbor;
+        }
+        int a = this.find(label);
+        int b = this.find(neighbor);
+        if (a != b) {
+            this.parents[Math.max(a, b)] = Math.min(a, b);
+        }
+        return label;
+    }
+
+    /**
+     * Finds the root of a label, and shortens the path to it along the way.
+     *
+     * @param label the label.
+     * @return the root label.
+     */
+    private int find(int label) {
+        int[] parent = this.parents;
+        while (parent[label] != label) {
+            parent[label] = parent[parent[label]];
+            label = parent[label];
+        }
+        return label;
+    }
+
+    /**
+     * Measures the area, centroid, and bounding box of the blob of every root label.
+     *
+     * @param width the width of the mask.
+     * @param height the height of the mask.
+     * @param labelCount the number of labels that were used, plus one.
+     */
+    private void measure(int width, int height, int labelCount) {
+        for (int label = 1; label < labelCount; label++) {
+            this.areas[label] = 0;
+            this.sumX[label] = 0;
+            this.sumY[label] = 0;
+            this.boxes[4 * label] = Integer.MAX_VALUE;
+            this.boxes[4 * label + 1] = Integer.MAX_VALUE;
+            this.boxes[4 * label + 2] = -1;
+            this.boxes[4 * label + 3] = -1;
+        }
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                int label = this.labels[row + x];
+                if (label == 0) {
+                    continue;
+                }
+                int root = this.find(label);
+                this.areas[root]++;
+                this.sumX[root] += x;
+                this.sumY[root] += y;
+                int box = 4 * root;
+                this.boxes[box] = Math.min(this.boxes[box], x);
+                this.boxes[box + 1] = Math.min(this.boxes[box + 1], y);
+                this.boxes[box + 2] = Math.max(this.boxes[box + 2], x);
+                this.boxes[box + 3] = Math.max(this.boxes[box + 3], y);
+            }
+        }
+    }
+
+    /**
+     * Adds the largest blobs to the output list, from the largest to the smallest.
+     *
+     * @param labelCount the number of labels that were used, plus one.
+     */
+    private void select(int labelCount) {
+        this.output.clear(this.maxBlobs);
+        int previousArea = Integer.MAX_VALUE;
+        int previousLabel = 0;
+        while (this.output.size() < this.maxBlobs) {
+            // find the largest blob that comes after the previous one in (area, label) order
+            int best = 0;
+            for (int label = 1; label < labelCount; label++) {
+                int area = this.areas[label];
+                if (area < this.minArea || area > previousArea
+                        || (area == previousArea && label <= previousLabel)) {
+                    continue;
+                }
+                if (best == 0 || area > this.areas[best]) {
+                    best = label;
+                }
+            }
+            if (best == 0) {
+                return;
+            }
+            int area = this.areas[best];
+            int box = 4 * best;
+            this.output.add(area, (float) this.sumX[best] / area, (float) this.sumY[best] / area,
+                    this.boxes[box], this.boxes[box + 1], this.boxes[box + 2],
+                    this.boxes[box + 3]);
+            previousArea = area;
+            previousLabel = best;
+        }
+    }
+
+}
@@ -0,0 +1,239 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.camera;
+
+/**
+ * A {@code BlobList} holds the blobs that a {@link BlobDetector} found in one mask, from the
+ * largest to the smallest. Each blob is described by its area, its centroid, and its bounding
+ * box, in the pixel coordinates of the mask. The blobs are stored in parallel arrays, which are
+ * only replaced when the list has to hold more blobs than it ever has before.
+ */
+public class BlobList implements Copyable<BlobList> {
+
+    /**
+     * The number of blobs in the list.
+     */
+    private int count;
+
+    /**
+     * The number of pixels in each blob.
+     */
+    private int[] area;
+
+    /**
+     * The column of the centroid of each blob.
+     */
+    private float[] centroidX;
+
+    /**
+     * The row of the centroid of each blob.
+     */
+    private float[] centroidY;
+
+    /**
+     * The leftmost column of each blob.
+     */
+    private int[] left;
+
+    /**
+     * The topmost row of each blob.
+     */
+    private int[] top;
+
+    /**
+     * The rightmost column of each blob.
+     */
+    private int[] right;
+
+    /**
+     * The bottommost row of each blob.
+     */
+    private int[] bottom;
+
+    /**
+     * Constructs an empty list with room for the given number of blobs.
+     *
+     * @param capacity the number of blobs the list can hold without growing.
+     */
+    public BlobList(int capacity) {
+        this.allocate(capacity);
+    }
+
+    /**
+     * Replaces the arrays of the list with arrays of the given length.
+     *
+     * @param capacity the length of the new arrays.
+     */
+    private void allocate(int capacity) {
+        this.area = new int[capacity];
+        this.centroidX = new float[capacity];
+        this.centroidY = new float[capacity];
+        this.left = new int[capacity];
+        this.top = new int[capacity];
+        this.right = new int[capacity];
+        this.bottom = new int[capacity];
+    }
+
+    /**
+     * Removes every blob from the list, and makes sure that it can hold the given number of
+     * blobs.
+     *
+     * @param capacity the number of blobs the list must be able to hold.
+     */
+    void clear(int capacity) {
+        this.count = 0;
+        if (this.area.length < capacity) {
+            this.allocate(capacity);
+        }
+    }
+
+    /**
+     * Adds a blob to the end of the list. The list must have room for it.
+     *
+     * @param blobArea the number of pixels in the blob.
+     * @param x the column of the centroid.
+     * @param y the row of the centroid.
+     * @param minX the leftmost column.
+     * @param minY the topmost row.
+     * @param maxX the rightmost column.
+     * @param maxY the bottommost row.
+     */
+    void add(int blobArea, float x, float y, int minX, int minY, int maxX, int maxY) {
+        int i = this.count++;
+        this.area[i] = blobArea;
+        this.centroidX[i] = x;
+        this.centroidY[i] = y;
+        this.left[i] = minX;
+        this.top[i] = minY;
+        this.right[i] = maxX;
+        this.bottom[i] = maxY;
+    }
+
+    /**
+     * Gets the number of blobs in the list.
+     *
+     * @return the number of blobs.
+     */
+    public int size() {
+        return this.count;
+    }
+
+    /**
+     * Gets the number of pixels in a blob.
+     *
+     * @param index the index of the blob, where {@code 0} is the largest.
+     * @return the area of the blob, in pixels.
+     */
+    public int getArea(int index) {
+        return this.area[this.check(index)];
+    }
+
+    /**
+     * Gets the column of the centroid of a blob.
+     *
+     * @param index the index of the blob, where {@code 0} is the largest.
+     * @return the column of the centroid.
+     */
+    public float getCentroidX(int index) {
+        return this.centroidX[this.check(index)];
+    }
+
+    /**
+     * Gets the row of the centroid of a blob.
+     *
+     * @param index the index of the blob, where {@code 0} is the largest.
+     * @return the row of the centroid.
+     */
+    public float getCentroidY(int index) {
+        return this.centroidY[this.check(index)];
+    }
+
+    /**
+     * Gets the leftmost column of a blob.
+     *
+     * @param index the index of the blob, where {@code 0} is the largest.
+     * @return the left edge of the bounding box.
+     */
+    public int getLeft(int index) {
+        return this.left[this.check(index)];
+    }
+
+    /**
+     * Gets the topmost row of a blob.
+     *
+     * @param index the index of the blob, where {@code 0} is the largest.
+     * @return the top edge of the bounding box.
+     */
+    public int getTop(int index) {
+        return this.top[this.check(index)];
+    }
+
+    /**
+     * Gets the rightmost column of a blob.
+     *
+     * @param index the index of the blob, where {@code 0} is the largest.
+     * @return the right edge of the bounding box, inclusive.
+     */
+    public int getRight(int index) {
+        return this.right[this.check(index)];
+    }
+
+    /**
+     * Gets the bottommost row of a blob.
+     *
+     * @param index the index of the blob, where {@code 0} is the largest.
+     * @return the bottom edge of the bounding box, inclusive.
+     */
+    public int getBottom(int index) {
+        return this.bottom[this.check(index)];
+    }
+
+    /**
+     * Checks that an index refers to a blob in the list.
+     *
+     * @param index the index of a blob.
+     * @return the index.
+     * @throws IndexOutOfBoundsException if there is no blob at the index.
+     */
+    private int check(int index) {
+        if (index < 0 || index >= this.count) {
+            throw new IndexOutOfBoundsException("Blob " + index + " of " + this.count);
+        }
+        return index;
+    }
+
+    @Override
+    public BlobList copy() {
+        BlobList copy = new BlobList(this.count);
+        this.copyTo(copy);
+        return copy;
+    }
+
+    @Override
+    public void copyTo(BlobList target) {
+        target.clear(this.count);
+        System.arraycopy(this.area, 0, target.area, 0, this.count);
+        System.arraycopy(this.centroidX, 0, target.centroidX, 0, this.count);
+        System.arraycopy(this.centroidY, 0, target.centroidY, 0, this.count);
+        System.arraycopy(this.left, 0, target.left, 0, this.count);
+        System.arraycopy(this.top, 0, target.top, 0, this.count);
+        System.arraycopy(this.right, 0, target.right, 0, this.count);
+        System.arraycopy(this.bottom, 0, target.bottom, 0, this.count);
+        target.count = this.count;
+    }
+
+}
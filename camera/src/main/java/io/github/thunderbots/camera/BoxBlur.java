@@ -0,0 +1,119 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.camera;
+
+/**
+ * {@code BoxBlur} replaces every pixel of an image with the average of the square of pixels
+ * around it. The blur is done in two passes, one along the rows and one along the columns, with
+ * running sums, so it takes the same time for every radius. Pixels beyond the edge of the image
+ * are treated as copies of the nearest edge pixel.
+ */
+public class BoxBlur implements Stage<Image, Image> {
+
+    /**
+     * The number of pixels on each side of the center of the square.
+     */
+    private final int radius;
+
+    /**
+     * The sums along each row, for every channel of every pixel. This is reused for every frame.
+     */
+    private int[] rowSums;
+
+    /**
+     * The output image, which is reused for every frame.
+     */
+    private final Image output;
+
+    /**
+     * Constructs a blur.
+     *
+     * @param radius the number of pixels on each side of the center of the square, which must
+     * be at least {@code 1}.
+     */
+    public BoxBlur(int radius) {
+        if (radius < 1) {
+            throw new IllegalArgumentException("The radius of a blur must be at least 1");
+        }
+        this.radius = radius;
+        this.rowSums = new int[0];
+        this.output = new Image();
+    }
+
+    @Override
+    public String getName() {
+        return "blur";
+    }
+
+    @Override
+    public Image process(Image input) {
+        int width = input.getWidth();
+        int height = input.getHeight();
+        int channels = input.getChannels();
+        this.output.resize(width, height, channels);
+        if (this.rowSums.length < input.getLength()) {
+            this.rowSums = new int[input.getLength()];
+        }
+        byte[] in = input.getData();
+        byte[] out = this.output.getData();
+        int[] sums = this.rowSums;
+        int size = 2 * this.radius + 1;
+        int area = size * size;
+        for (int y = 0; y < height; y++) {
+            int row = y * width * channels;
+            for (int c = 0; c < channels; c++) {
+                int sum = 0;
+                for (int k = -this.radius; k <= this.radius; k++) {
+                    sum += in[row + clamp(k, width) * channels + c] & 0xFF;
+                }
+                for (int x = 0; x < width; x++) {
+                    sums[row + x * channels + c] = sum;
+                    int leaving = clamp(x - this.radius, width);
+                    int entering = clamp(x + this.radius + 1, width);
+                    sum += (in[row + entering * channels + c] & 0xFF)
+                            - (in[row + leaving * channels + c] & 0xFF);
+                }
+            }
+        }
+        int stride = width * channels;
+        for (int i = 0; i < stride; i++) {
+            int sum = 0;
+            for (int k = -this.radius; k <= this.radius; k++) {
+                sum += sums[clamp(k, height) * stride + i];
+            }
+            for (int y = 0; y < height; y++) {
+                out[y * stride + i] = (byte) ((sum + area / 2) / area);
+                int leaving = clamp(y - this.radius, height);
+                int entering = clamp(y + this.radius + 1, height);
+                sum += sums[entering * stride + i] - sums[leaving * stride + i];
+            }
+        }
+        return this.output;
+    }
+
+    /**
+     * Limits a coordinate to the inside of the image.
+     *
+     * @param value the coordinate.
+     * @param length the width or height of the image.
+     * @return the nearest coordinate inside the image.
+     */
+    private static int clamp(int value, int length) {
+        return value < 0 ? 0 : (value >= length ? length - 1 : value);
+    }
+
+}
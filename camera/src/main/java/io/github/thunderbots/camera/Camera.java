@@ -1,5 +1,250 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
 package io.github.thunderbots.camera;
 
-public class Camera {
+import android.graphics.ImageFormat;
+import android.graphics.SurfaceTexture;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code Camera} is a {@link FrameSource} that delivers the preview images of one of the phone's
+ * cameras. The camera writes every image directly into the buffer of a frame from a
+ * {@link FrameRing}, so no image is ever copied, and no memory is allocated for each image once
+ * the preview has started.
+ * <p>
+ * Every free frame is handed back to the camera as soon as it is released or dropped. When the
+ * consumer holds every frame, the camera has no buffer to write to, and it skips images without
+ * reporting them; those images are not included in the dropped frame count.
+ *
+ * @author Zach Ohara
+ */
+public class Camera implements FrameSource {
+
+    /**
+     * The name of the texture that the preview is drawn to. The preview must be drawn somewhere
+     * for the camera to produce images, but the texture is never displayed.
+     */
+    private static final int PREVIEW_TEXTURE = 10;
+
+    /**
+     * The ID of the camera, as used by {@link android.hardware.Camera#open(int)}.
+     */
+    private final int cameraId;
+
+    /**
+     * The frames that the camera writes its images to.
+     */
+    private final FrameRing ring;
+
+    /**
+     * The open camera, or {@code null} if the camera is closed. The callbacks of a camera check
+     * this while holding the lock of this object, so that they never use a camera that has been
+     * released.
+     */
+    private android.hardware.Camera camera;
+
+    /**
+     * The texture that the preview is drawn to, or {@code null} if the preview is not running.
+     */
+    private SurfaceTexture texture;
+
+    /**
+     * Constructs a frame source for the given camera. The camera is not opened until
+     * {@link #start()} is called.
+     *
+     * @param cameraId the ID of the camera, as used by {@link android.hardware.Camera#open(int)}.
+     * @param width the width of the preview images, which must be a supported preview width.
+     * @param height the height of the preview images, which must be a supported preview height.
+     */
+    public Camera(int cameraId, int width, int height) {
+        this(cameraId, new FrameRing(width, height));
+    }
+
+    /**
+     * Constructs a frame source for the given camera, that writes its images to the given ring.
+     *
+     * @param cameraId the ID of the camera, as used by {@link android.hardware.Camera#open(int)}.
+     * @param ring the frames to write the preview images to. Their size must be a supported
+     * preview size.
+     */
+    public Camera(int cameraId, FrameRing ring) {
+        this.cameraId = cameraId;
+        this.ring = ring;
+    }
+
+    /**
+     * Opens the camera and starts the preview. The preview images are delivered on the thread
+     * that calls this method if it has a looper, or on the main thread otherwise.
+     *
+     * @throws IOException if the preview cannot be started.
+     * @throws IllegalArgumentException if the camera does not support the size of the frames.
+     */
+    public synchronized void start() throws IOException {
+        if (this.camera != null) {
+            return;
+        }
+        final android.hardware.Camera opened = android.hardware.Camera.open(this.cameraId);
+        this.camera = opened;
+        try {
+            android.hardware.Camera.Parameters parameters = opened.getParameters();
+            if (!isSupported(parameters, this.getWidth(), this.getHeight())) {
+                throw new IllegalArgumentException("Camera " + this.cameraId
+                        + " does not support a preview size of " + this.getWidth() + "x"
+                        + this.getHeight());
+            }
+            parameters.setPreviewSize(this.getWidth(), this.getHeight());
+            parameters.setPreviewFormat(ImageFormat.NV21);
+            opened.setParameters(parameters);
+            this.texture = new SurfaceTexture(PREVIEW_TEXTURE);
+            opened.setPreviewTexture(this.texture);
+            opened.setPreviewCallbackWithBuffer(new android.hardware.Camera.PreviewCallback() {
+                @Override
+                public void onPreviewFrame(byte[] data, android.hardware.Camera camera) {
+                    Frame frame = Camera.this.ring.getFrame(data);
+                    synchronized (Camera.this) {
+                        // the frame was already reclaimed if the camera has been closed
+                        if (frame != null && Camera.this.camera == opened) {
+                            Camera.this.ring.publish(frame, System.nanoTime());
+                        }
+                    }
+                }
+            });
+            this.ring.setBufferListener(new FrameRing.BufferListener() {
+                @Override
+                public void onBufferAvailable(Frame frame) {
+                    synchronized (Camera.this) {
+                        // a frame handed over while the camera was closing has been reclaimed
+                        if (Camera.this.camera == opened) {
+                            opened.addCallbackBuffer(frame.getData());
+                        }
+                    }
+                }
+            });
+            opened.startPreview();
+        } catch (IOException e) {
+            this.close(opened);
+            throw e;
+        } catch (RuntimeException e) {
+            this.close(opened);
+            throw e;
+        }
+    }
+
+    /**
+     * Stops the preview and closes the camera. Frames that have already been acquired may still
+     * be released after the camera is stopped.
+     */
+    public synchronized void stop() {
+        if (this.camera != null) {
+            this.close(this.camera);
+        }
+    }
+
+    /**
+     * Stops the preview of the given camera, releases it, and takes back every buffer that was
+     * handed to it. This must be called while holding the lock of this object.
+     *
+     * @param opened the camera to close.
+     */
+    private void close(android.hardware.Camera opened) {
+        this.ring.setBufferListener(null);
+        opened.setPreviewCallbackWithBuffer(null);
+        opened.stopPreview();
+        opened.release();
+        this.camera = null;
+        this.ring.reclaim();
+        if (this.texture != null) {
+            this.texture.release();
+            this.texture = null;
+        }
+    }
+
+    /**
+     * Determines if the camera supports a preview of the given size.
+     *
+     * @param parameters the parameters of the camera.
+     * @param width the width of the preview.
+     * @param height the height of the preview.
+     * @return {@code true} if the size is supported, or {@code false} otherwise.
+     */
+    private static boolean isSupported(android.hardware.Camera.Parameters parameters, int width,
+            int height) {
+        for (android.hardware.Camera.Size size : parameters.getSupportedPreviewSizes()) {
+            if (size.width == width && size.height == height) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the ring that the camera writes its images to, for its detailed drop counts.
+     *
+     * @return the frame ring of the camera.
+     */
+    public FrameRing getRing() {
+        return this.ring;
+    }
+
+    @Override
+    public int getWidth() {
+        return this.ring.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return this.ring.getHeight();
+    }
+
+    @Override
+    public void setRegion(Region region) {
+        this.ring.setRegion(region);
+    }
+
+    @Override
+    public Region getRegion() {
+        return this.ring.getRegion();
+    }
+
+    @Override
+    public Frame acquire(long timeout, TimeUnit unit) throws InterruptedException {
+        return this.ring.acquire(timeout, unit);
+    }
+
+    @Override
+    public Frame poll() {
+        return this.ring.poll();
+    }
+
+    @Override
+    public void release(Frame frame) {
+        this.ring.release(frame);
+    }
+
+    @Override
+    public long getFrameCount() {
+        return this.ring.getFrameCount();
+    }
+
+    @Override
+    public long getDroppedFrameCount() {
+        return this.ring.getDroppedFrameCount();
+    }
 
 }
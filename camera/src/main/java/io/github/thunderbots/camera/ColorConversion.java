@@ -0,0 +1,94 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.camera;
+
+/**
+ * {@code ColorConversion} is the first stage of most pipelines. It converts each NV21 frame into
+ * a grayscale or HSV {@link Image} with a {@link ColorConverter}. Only the {@link Region} of the
+ * frame is converted, so the image is the size of the region, and later stages work on fewer
+ * pixels. Coordinates in the image can be turned back into frame coordinates with the region.
+ */
+public class ColorConversion implements Stage<Frame, Image> {
+
+    /**
+     * The converter that converts each frame.
+     */
+    private final ColorConverter converter;
+
+    /**
+     * The format of the output image.
+     */
+    private final Format format;
+
+    /**
+     * The output image, which is reused for every frame.
+     */
+    private final Image output;
+
+    /**
+     * Constructs a conversion stage.
+     *
+     * @param converter the converter that converts each frame.
+     * @param format the format of the output image.
+     */
+    public ColorConversion(ColorConverter converter, Format format) {
+        this.converter = converter;
+        this.format = format;
+        this.output = new Image();
+    }
+
+    @Override
+    public String getName() {
+        return "convert";
+    }
+
+    @Override
+    public Image process(Frame frame) {
+        Region region = frame.getRegion();
+        int channels = this.format == Format.GRAY ? 1 : 3;
+        // the image is first sized for the whole frame, so that it never has to be reallocated
+        // when the region grows
+        this.output.resize(frame.getWidth(), frame.getHeight(), channels);
+        this.output.resize(region.getOutputWidth(), region.getOutputHeight(), channels);
+        if (this.format == Format.GRAY) {
+            this.converter.toGray(frame, this.output.getData());
+        } else {
+            this.converter.toHsv(frame, this.output.getData());
+        }
+        return this.output;
+    }
+
+    /**
+     * The formats that a frame can be converted to.
+     */
+    public enum Format {
+
+        /**
+         * One byte of luminance for each pixel.
+         */
+        GRAY,
+
+        /**
+         * Three bytes for each pixel: hue, saturation, and value.
+         *
+         * @see ColorConverter
+         */
+        HSV
+
+    }
+
+}
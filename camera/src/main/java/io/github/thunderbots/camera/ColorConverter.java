@@ -0,0 +1,498 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.camera;
+
+/**
+ * {@code ColorConverter} converts NV21 camera images into grayscale, RGB, and HSV images. Every
+ * conversion works on primitive arrays and writes into a buffer that the caller supplies, so no
+ * memory is allocated for each frame. The rows of each image are split into tiles, which are
+ * converted in parallel by a {@link TileExecutor}.
+ * <p>
+ * A conversion may be limited to a {@link Region} of the image, in which case only the pixels of
+ * the region are read, and the output is an image of the size of the region, decimated by its
+ * step. The conversions of a {@link Frame} use the region that was recorded in the frame.
+ * <p>
+ * The output formats are:
+ * <ul>
+ * <li>grayscale: one byte for each pixel, which is the luminance of the image.</li>
+ * <li>RGB: one {@code int} for each pixel, packed as {@code 0xAARRGGBB} with an opaque alpha,
+ * which is the format that Android bitmaps use.</li>
+ * <li>HSV: three bytes for each pixel, in the order hue, saturation, value. The hue is in units
+ * of two degrees, from {@code 0} to {@code 179}, so that it fits in a byte; saturation and value
+ * are from {@code 0} to {@code 255}. This is the same scale that OpenCV uses.</li>
+ * </ul>
+ * The RGB values are found with the integer form of the ITU-R BT.601 conversion, which is what
+ * Android cameras use for NV21 images.
+ * <p>
+ * Every conversion is also available as a static method that converts a range of output rows on
+ * the calling thread.
+ */
+public class ColorConverter {
+
+    /**
+     * The largest hue, plus one.
+     */
+    public static final int HUE_RANGE = 180;
+
+    /**
+     * The executor that the tiles of each image are converted on.
+     */
+    private final TileExecutor executor;
+
+    /**
+     * The task that converts rows to grayscale.
+     */
+    private final ConversionTask grayTask;
+
+    /**
+     * The task that converts rows to RGB.
+     */
+    private final ConversionTask rgbTask;
+
+    /**
+     * The task that converts rows to HSV.
+     */
+    private final ConversionTask hsvTask;
+
+    /**
+     * The region of the whole image for the most recent full-image conversion, which is kept so
+     * that converting whole images of the same size does not allocate.
+     */
+    private Region fullRegion;
+
+    /**
+     * Constructs a converter that converts images on the given executor.
+     *
+     * @param executor the executor to convert the tiles of each image on.
+     */
+    public ColorConverter(TileExecutor executor) {
+        this.executor = executor;
+        this.grayTask = new ConversionTask() {
+            @Override
+            public void run(int startRow, int endRow) {
+                toGray(this.source, this.width, this.height, this.region, startRow, endRow,
+                        this.bytes);
+            }
+        };
+        this.rgbTask = new ConversionTask() {
+            @Override
+            public void run(int startRow, int endRow) {
+                toRgb(this.source, this.width, this.height, this.region, startRow, endRow,
+                        this.ints);
+            }
+        };
+        this.hsvTask = new ConversionTask() {
+            @Override
+            public void run(int startRow, int endRow) {
+                toHsv(this.source, this.width, this.height, this.region, startRow, endRow,
+                        this.bytes);
+            }
+        };
+    }
+
+    /**
+     * Converts the region of a frame to grayscale.
+     *
+     * @param frame the frame to convert.
+     * @param gray the array to write the grayscale image to, with at least one byte for each
+     * pixel of the region.
+     */
+    public void toGray(Frame frame, byte[] gray) {
+        this.toGray(frame.getData(), frame.getWidth(), frame.getHeight(), frame.getRegion(),
+                gray);
+    }
+
+    /**
+     * Converts the region of a frame to RGB.
+     *
+     * @param frame the frame to convert.
+     * @param argb the array to write the RGB image to, with at least one element for each pixel
+     * of the region.
+     */
+    public void toRgb(Frame frame, int[] argb) {
+        this.toRgb(frame.getData(), frame.getWidth(), frame.getHeight(), frame.getRegion(),
+                argb);
+    }
+
+    /**
+     * Converts the region of a frame to HSV.
+     *
+     * @param frame the frame to convert.
+     * @param hsv the array to write the HSV image to, with at least three bytes for each pixel of
+     * the region.
+     */
+    public void toHsv(Frame frame, byte[] hsv) {
+        this.toHsv(frame.getData(), frame.getWidth(), frame.getHeight(), frame.getRegion(), hsv);
+    }
+
+    /**
+     * Converts an NV21 image to grayscale.
+     *
+     * @param nv21 the image to convert.
+     * @param width the width of the image, in pixels.
+     * @param height the height of the image, in pixels.
+     * @param gray the array to write the grayscale image to, with at least one byte for each
+     * pixel.
+     */
+    public synchronized void toGray(byte[] nv21, int width, int height, byte[] gray) {
+        this.toGray(nv21, width, height, this.getFullRegion(width, height), gray);
+    }
+
+    /**
+     * Converts an NV21 image to RGB.
+     *
+     * @param nv21 the image to convert.
+     * @param width the width of the image, in pixels.
+     * @param height the height of the image, in pixels.
+     * @param argb the array to write the RGB image to, with at least one element for each pixel.
+     */
+    public synchronized void toRgb(byte[] nv21, int width, int height, int[] argb) {
+        this.toRgb(nv21, width, height, this.getFullRegion(width, height), argb);
+    }
+
+    /**
+     * Converts an NV21 image to HSV.
+     *
+     * @param nv21 the image to convert.
+     * @param width the width of the image, in pixels.
+     * @param height the height of the image, in pixels.
+     * @param hsv the array to write the HSV image to, with at least three bytes for each pixel.
+     */
+    public synchronized void toHsv(byte[] nv21, int width, int height, byte[] hsv) {
+        this.toHsv(nv21, width, height, this.getFullRegion(width, height), hsv);
+    }
+
+    /**
+     * Converts a region of an NV21 image to grayscale.
+     *
+     * @param nv21 the image to convert.
+     * @param width the width of the image, in pixels.
+     * @param height the height of the image, in pixels.
+     * @param region the region of the image to convert.
+     * @param gray the array to write the grayscale image to, with at least one byte for each
+     * pixel of the region.
+     */
+    public synchronized void toGray(byte[] nv21, int width, int height, Region region,
+            byte[] gray) {
+        checkSizes(nv21, width, height, region, gray.length, 1);
+        this.run(this.grayTask, nv21, width, height, region, gray, null);
+    }
+
+    /**
+     * Converts a region of an NV21 image to RGB.
+     *
+     * @param nv21 the image to convert.
+     * @param width the width of the image, in pixels.
+     * @param height the height of the image, in pixels.
+     * @param region the region of the image to convert.
+     * @param argb the array to write the RGB image to, with at least one element for each pixel
+     * of the region.
+     */
+    public synchronized void toRgb(byte[] nv21, int width, int height, Region region,
+            int[] argb) {
+        checkSizes(nv21, width, height, region, argb.length, 1);
+        this.run(this.rgbTask, nv21, width, height, region, null, argb);
+    }
+
+    /**
+     * Converts a region of an NV21 image to HSV.
+     *
+     * @param nv21 the image to convert.
+     * @param width the width of the image, in pixels.
+     * @param height the height of the image, in pixels.
+     * @param region the region of the image to convert.
+     * @param hsv the array to write the HSV image to, with at least three bytes for each pixel of
+     * the region.
+     */
+    public synchronized void toHsv(byte[] nv21, int width, int height, Region region,
+            byte[] hsv) {
+        checkSizes(nv21, width, height, region, hsv.length, 3);
+        this.run(this.hsvTask, nv21, width, height, region, hsv, null);
+    }
+
+    /**
+     * Gets the region of a whole image of the given size.
+     *
+     * @param width the width of the image, in pixels.
+     * @param height the height of the image, in pixels.
+     * @return the region of the whole image.
+     */
+    private Region getFullRegion(int width, int height) {
+        if (this.fullRegion == null || this.fullRegion.getWidth() != width
+                || this.fullRegion.getHeight() != height) {
+            this.fullRegion = Region.full(width, height);
+        }
+        return this.fullRegion;
+    }
+
+    /**
+     * Runs a conversion task over every output row of a region, and clears the task afterwards
+     * so that it does not hold on to the buffers.
+     *
+     * @param task the conversion task.
+     * @param nv21 the image to convert.
+     * @param width the width of the image, in pixels.
+     * @param height the height of the image, in pixels.
+     * @param region the region of the image to convert.
+     * @param bytes the byte output buffer, or {@code null}.
+     * @param ints the {@code int} output buffer, or {@code null}.
+     */
+    private void run(ConversionTask task, byte[] nv21, int width, int height, Region region,
+            byte[] bytes, int[] ints) {
+        task.source = nv21;
+        task.width = width;
+        task.height = height;
+        task.region = region;
+        task.bytes = bytes;
+        task.ints = ints;
+        try {
+            this.executor.execute(task, region.getOutputHeight());
+        } finally {
+            task.source = null;
+            task.region = null;
+            task.bytes = null;
+            task.ints = null;
+        }
+    }
+
+    /**
+     * Converts a range of output rows of a region of an NV21 image to grayscale, on the calling
+     * thread.
+     *
+     * @param nv21 the image to convert.
+     * @param width the width of the image, in pixels.
+     * @param height the height of the image, in pixels.
+     * @param region the region of the image to convert.
+     * @param startRow the first output row to convert.
+     * @param endRow the output row after the last one to convert.
+     * @param gray the array to write the grayscale image to.
+     */
+    public static void toGray(byte[] nv21, int width, int height, Region region, int startRow,
+            int endRow, byte[] gray) {
+        int step = region.getStep();
+        int outWidth = region.getOutputWidth();
+        for (int row = startRow; row < endRow; row++) {
+            int luma = (region.getTop() + row * step) * width + region.getLeft();
+            int out = row * outWidth;
+            if (step == 1) {
+                // the luminance plane is already a grayscale image
+                System.arraycopy(nv21, luma, gray, out, outWidth);
+            } else {
+                for (int x = 0; x < outWidth; x++) {
+                    gray[out + x] = nv21[luma + x * step];
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts a range of output rows of a region of an NV21 image to RGB, on the calling
+     * thread.
+     *
+     * @param nv21 the image to convert.
+     * @param width the width of the image, in pixels.
+     * @param height the height of the image, in pixels.
+     * @param region the region of the image to convert.
+     * @param startRow the first output row to convert.
+     * @param endRow the output row after the last one to convert.
+     * @param argb the array to write the RGB image to.
+     */
+    public static void toRgb(byte[] nv21, int width, int height, Region region, int startRow,
+            int endRow, int[] argb) {
+        int chromaStart = width * height;
+        int chromaWidth = 2 * ((width + 1) / 2);
+        int step = region.getStep();
+        int left = region.getLeft();
+        int outWidth = region.getOutputWidth();
+        for (int row = startRow; row < endRow; row++) {
+            int y = region.getTop() + row * step;
+            int luma = y * width;
+            int chroma = chromaStart + (y >> 1) * chromaWidth;
+            int out = row * outWidth;
+            for (int i = 0, x = left; i < outWidth; i++, x += step) {
+                int c = Math.max((nv21[luma + x] & 0xFF) - 16, 0) * 298;
+                int uv = chroma + (x & ~1);
+                int e = (nv21[uv] & 0xFF) - 128;
+                int d = (nv21[uv + 1] & 0xFF) - 128;
+                int r = clamp((c + 409 * e + 128) >> 8);
+                int g = clamp((c - 100 * d - 208 * e + 128) >> 8);
+                int b = clamp((c + 516 * d + 128) >> 8);
+                argb[out + i] = 0xFF000000 | (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+
+    /**
+     * Converts a range of output rows of a region of an NV21 image to HSV, on the calling
+     * thread.
+     *
+     * @param nv21 the image to convert.
+     * @param width the width of the image, in pixels.
+     * @param height the height of the image, in pixels.
+     * @param region the region of the image to convert.
+     * @param startRow the first output row to convert.
+     * @param endRow the output row after the last one to convert.
+     * @param hsv the array to write the HSV image to.
+     */
+    public static void toHsv(byte[] nv21, int width, int height, Region region, int startRow,
+            int endRow, byte[] hsv) {
+        int chromaStart = width * height;
+        int chromaWidth = 2 * ((width + 1) / 2);
+        int step = region.getStep();
+        int left = region.getLeft();
+        int outWidth = region.getOutputWidth();
+        for (int row = startRow; row < endRow; row++) {
+            int y = region.getTop() + row * step;
+            int luma = y * width;
+            int chroma = chromaStart + (y >> 1) * chromaWidth;
+            int out = row * outWidth * 3;
+            for (int i = 0, x = left; i < outWidth; i++, x += step) {
+                int c = Math.max((nv21[luma + x] & 0xFF) - 16, 0) * 298;
+                int uv = chroma + (x & ~1);
+                int e = (nv21[uv] & 0xFF) - 128;
+                int d = (nv21[uv + 1] & 0xFF) - 128;
+                int r = clamp((c + 409 * e + 128) >> 8);
+                int g = clamp((c - 100 * d - 208 * e + 128) >> 8);
+                int b = clamp((c + 516 * d + 128) >> 8);
+                writeHsv(r, g, b, hsv, out);
+                out += 3;
+            }
+        }
+    }
+
+    /**
+     * Converts a single RGB color to HSV, and writes it to an array.
+     *
+     * @param r the red component, from {@code 0} to {@code 255}.
+     * @param g the green component, from {@code 0} to {@code 255}.
+     * @param b the blue component, from {@code 0} to {@code 255}.
+     * @param hsv the array to write the color to.
+     * @param offset the index of the hue in the array.
+     */
+    public static void writeHsv(int r, int g, int b, byte[] hsv, int offset) {
+        int max = Math.max(r, Math.max(g, b));
+        int min = Math.min(r, Math.min(g, b));
+        int delta = max - min;
+        int h;
+        if (delta == 0) {
+            h = 0;
+        } else {
+            int base;
+            int difference;
+            if (max == r) {
+                base = 0;
+                difference = g - b;
+            } else if (max == g) {
+                base = HUE_RANGE / 3;
+                difference = b - r;
+            } else {
+                base = 2 * HUE_RANGE / 3;
+                difference = r - g;
+            }
+            // each sixth of the hue circle is 30 units, rounded to the nearest unit
+            int scaled = 30 * difference;
+            h = base + (scaled >= 0 ? (scaled + delta / 2) / delta
+                    : -((-scaled + delta / 2) / delta));
+            if (h < 0) {
+                h += HUE_RANGE;
+            } else if (h >= HUE_RANGE) {
+                h -= HUE_RANGE;
+            }
+        }
+        hsv[offset] = (byte) h;
+        hsv[offset + 1] = (byte) (max == 0 ? 0 : (255 * delta + max / 2) / max);
+        hsv[offset + 2] = (byte) max;
+    }
+
+    /**
+     * Limits a color component to the range of a byte.
+     *
+     * @param value the color component.
+     * @return the component, from {@code 0} to {@code 255}.
+     */
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+
+    /**
+     * Checks that the buffers of a conversion are large enough for the size of the image, and
+     * that the region is inside the image.
+     *
+     * @param nv21 the image to convert.
+     * @param width the width of the image, in pixels.
+     * @param height the height of the image, in pixels.
+     * @param region the region of the image to convert.
+     * @param outputLength the length of the output buffer.
+     * @param elementsPerPixel the number of elements of the output buffer for each pixel.
+     * @throws IllegalArgumentException if a buffer is too small, or the region does not fit.
+     */
+    private static void checkSizes(byte[] nv21, int width, int height, Region region,
+            int outputLength, int elementsPerPixel) {
+        if (nv21.length < Frame.getBufferSize(width, height)) {
+            throw new IllegalArgumentException("The NV21 image is too small for "
+                    + width + "x" + height);
+        }
+        if (!region.fitsIn(width, height)) {
+            throw new IllegalArgumentException("The region " + region + " does not fit in a "
+                    + width + "x" + height + " image");
+        }
+        if (outputLength < region.getOutputWidth() * region.getOutputHeight()
+                * elementsPerPixel) {
+            throw new IllegalArgumentException("The output buffer is too small for "
+                    + region.getOutputWidth() + "x" + region.getOutputHeight());
+        }
+    }
+
+    /**
+     * A {@code ConversionTask} converts the rows of the image that its fields describe. The
+     * fields are set before each conversion, so the tasks are created only once.
+     */
+    private abstract static class ConversionTask implements TileExecutor.RowTask {
+
+        /**
+         * The image to convert.
+         */
+        byte[] source;
+
+        /**
+         * The width of the image, in pixels.
+         */
+        int width;
+
+        /**
+         * The height of the image, in pixels.
+         */
+        int height;
+
+        /**
+         * The region of the image to convert.
+         */
+        Region region;
+
+        /**
+         * The byte output buffer, or {@code null}.
+         */
+        byte[] bytes;
+
+        /**
+         * The {@code int} output buffer, or {@code null}.
+         */
+        int[] ints;
+
+    }
+
+}
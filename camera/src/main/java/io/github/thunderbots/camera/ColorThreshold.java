@@ -0,0 +1,104 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.camera;
+
+/**
+ * {@code ColorThreshold} turns an image into a mask, which has one byte for each pixel:
+ * {@code 255} if every channel of the pixel is within the bounds of the threshold, or {@code 0}
+ * otherwise. A channel whose lower bound is greater than its upper bound wraps around, which is
+ * how a range of hues that contains red is written: a hue range from {@code 170} to {@code 10}
+ * accepts the hues from {@code 170} to {@code 179} and from {@code 0} to {@code 10}.
+ * <p>
+ * The bounds can be changed with {@link #setBounds(int[], int[])} while the pipeline is running;
+ * each frame is thresholded with either the old bounds or the new bounds, never a mix.
+ */
+public class ColorThreshold implements Stage<Image, Image> {
+
+    /**
+     * The lower and upper bounds of every channel, interleaved. This array is replaced, never
+     * modified, when the bounds change.
+     */
+    private volatile int[] bounds;
+
+    /**
+     * The output mask, which is reused for every frame.
+     */
+    private final Image output;
+
+    /**
+     * Constructs a threshold with the given bounds.
+     *
+     * @param min the lowest accepted value of each channel.
+     * @param max the highest accepted value of each channel.
+     */
+    public ColorThreshold(int[] min, int[] max) {
+        this.output = new Image();
+        this.setBounds(min, max);
+    }
+
+    /**
+     * Changes the bounds of the threshold. The new bounds are used from the next frame on.
+     *
+     * @param min the lowest accepted value of each channel.
+     * @param max the highest accepted value of each channel.
+     */
+    public void setBounds(int[] min, int[] max) {
+        if (min.length != max.length || min.length == 0) {
+            throw new IllegalArgumentException("There must be one bound of each kind for every"
+                    + " channel");
+        }
+        int[] interleaved = new int[2 * min.length];
+        for (int i = 0; i < min.length; i++) {
+            interleaved[2 * i] = min[i];
+            interleaved[2 * i + 1] = max[i];
+        }
+        this.bounds = interleaved;
+    }
+
+    @Override
+    public String getName() {
+        return "threshold";
+    }
+
+    @Override
+    public Image process(Image input) {
+        int[] current = this.bounds;
+        int channels = input.getChannels();
+        if (current.length != 2 * channels) {
+            throw new IllegalArgumentException("The threshold has bounds for "
+                    + current.length / 2 + " channels, but the image has " + channels);
+        }
+        int pixels = input.getWidth() * input.getHeight();
+        this.output.resize(input.getWidth(), input.getHeight(), 1);
+        byte[] in = input.getData();
+        byte[] out = this.output.getData();
+        for (int p = 0, i = 0; p < pixels; p++) {
+            boolean accepted = true;
+            for (int c = 0; c < channels; c++, i++) {
+                int value = in[i] & 0xFF;
+                int min = current[2 * c];
+                int max = current[2 * c + 1];
+                if (min <= max ? (value < min || value > max) : (value < min && value > max)) {
+                    accepted = false;
+                }
+            }
+            out[p] = accepted ? (byte) 255 : 0;
+        }
+        return this.output;
+    }
+
+}
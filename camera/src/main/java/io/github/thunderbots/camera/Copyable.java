@@ -0,0 +1,43 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.camera;
+
+/**
+ * A {@code Copyable} object can copy its contents into another object of the same type, reusing
+ * the memory of that object where it can. This lets a {@link VisionPipeline} publish the result
+ * of each frame without allocating a new result for every frame.
+ *
+ * @param <T> the type of the object.
+ */
+public interface Copyable<T> {
+
+    /**
+     * Creates a new object with the same contents as this one.
+     *
+     * @return the new copy.
+     */
+    T copy();
+
+    /**
+     * Copies the contents of this object into another object, which keeps no trace of its old
+     * contents.
+     *
+     * @param target the object to copy into.
+     */
+    void copyTo(T target);
+
+}
@@ -0,0 +1,85 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.camera;
+
+/**
+ * {@code Downsample} shrinks an image by a whole factor, by averaging each square block of pixels
+ * into one pixel. Pixels at the right and bottom edges that do not fill a whole block are dropped.
+ */
+public class Downsample implements Stage<Image, Image> {
+
+    /**
+     * The width and height of each block of pixels.
+     */
+    private final int factor;
+
+    /**
+     * The output image, which is reused for every frame.
+     */
+    private final Image output;
+
+    /**
+     * Constructs a downsample stage.
+     *
+     * @param factor the width and height of each block of pixels, which must be at least
+     * {@code 1}.
+     */
+    public Downsample(int factor) {
+        if (factor < 1) {
+            throw new IllegalArgumentException("The downsample factor must be at least 1");
+        }
+        this.factor = factor;
+        this.output = new Image();
+    }
+
+    @Override
+    public String getName() {
+        return "downsample";
+    }
+
+    @Override
+    public Image process(Image input) {
+        int channels = input.getChannels();
+        int inStride = input.getWidth() * channels;
+        int width = input.getWidth() / this.factor;
+        int height = input.getHeight() / this.factor;
+        this.output.resize(width, height, channels);
+        byte[] in = input.getData();
+        byte[] out = this.output.getData();
+        int area = this.factor * this.factor;
+        int o = 0;
+        for (int y = 0; y < height; y++) {
+            int top = y * this.factor * inStride;
+            for (int x = 0; x < width; x++) {
+                int left = top + x * this.factor * channels;
+                for (int c = 0; c < channels; c++) {
+                    int sum = 0;
+                    for (int dy = 0; dy < this.factor; dy++) {
+                        int i = left + dy * inStride + c;
+                        for (int dx = 0; dx < this.factor; dx++) {
+                            sum += in[i] & 0xFF;
+                            i += channels;
+                        }
+                    }
+                    out[o++] = (byte) ((sum + area / 2) / area);
+                }
+            }
+        }
+        return this.output;
+    }
+
+}
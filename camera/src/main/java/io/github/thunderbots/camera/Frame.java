@@ -0,0 +1,167 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.camera;
+
+/**
+ * A {@code Frame} is one preview image from a {@link FrameSource}. Every frame belongs to a fixed
+ * pool, and its pixel buffer is reused for later images once the frame is released, so a frame
+ * must not be used after it has been passed to {@link FrameSource#release(Frame)}.
+ * <p>
+ * The pixels are in the NV21 format that Android cameras produce by default: a full-resolution
+ * plane of luminance bytes, followed by a half-resolution plane of interleaved V and U bytes.
+ */
+public class Frame {
+
+    /**
+     * The pixels of the frame, in NV21 format.
+     */
+    private final byte[] data;
+
+    /**
+     * The width of the frame, in pixels.
+     */
+    private final int width;
+
+    /**
+     * The height of the frame, in pixels.
+     */
+    private final int height;
+
+    /**
+     * The position of the frame in the pool it belongs to.
+     */
+    final int index;
+
+    /**
+     * The state of the frame in the pool it belongs to.
+     */
+    int state;
+
+    /**
+     * The time that the frame was captured, in nanoseconds, as given by {@link System#nanoTime()}
+     * or by the recording the frame was replayed from.
+     */
+    private long timestamp;
+
+    /**
+     * The number of frames that had been published by the frame source before this one.
+     */
+    private long sequence;
+
+    /**
+     * The part of the frame that the vision code should look at.
+     */
+    private Region region;
+
+    /**
+     * Constructs a frame with a buffer large enough for an NV21 image of the given size.
+     *
+     * @param width the width of the frame, in pixels.
+     * @param height the height of the frame, in pixels.
+     * @param index the position of the frame in the pool it belongs to.
+     */
+    Frame(int width, int height, int index) {
+        this.data = new byte[getBufferSize(width, height)];
+        this.width = width;
+        this.height = height;
+        this.index = index;
+    }
+
+    /**
+     * Gets the number of bytes needed to hold an NV21 image of the given size.
+     *
+     * @param width the width of the image, in pixels.
+     * @param height the height of the image, in pixels.
+     * @return the size of the image, in bytes.
+     */
+    public static int getBufferSize(int width, int height) {
+        return width * height + 2 * ((width + 1) / 2) * ((height + 1) / 2);
+    }
+
+    /**
+     * Gets the pixels of the frame, in NV21 format. The array is owned by the frame source, and
+     * will be overwritten after the frame is released.
+     *
+     * @return the pixels of the frame.
+     */
+    public byte[] getData() {
+        return this.data;
+    }
+
+    /**
+     * Gets the width of the frame.
+     *
+     * @return the width of the frame, in pixels.
+     */
+    public int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * Gets the height of the frame.
+     *
+     * @return the height of the frame, in pixels.
+     */
+    public int getHeight() {
+        return this.height;
+    }
+
+    /**
+     * Gets the time that the frame was captured.
+     *
+     * @return the capture time, in nanoseconds.
+     */
+    public long getTimestamp() {
+        return this.timestamp;
+    }
+
+    /**
+     * Gets the number of frames that had been published by the frame source before this one. A
+     * gap between the sequence numbers of two acquired frames means that the frames in between
+     * were dropped.
+     *
+     * @return the sequence number of the frame.
+     */
+    public long getSequence() {
+        return this.sequence;
+    }
+
+    /**
+     * Gets the part of the frame that the vision code should look at. This is the region of the
+     * frame source at the time the frame was published.
+     *
+     * @return the region of the frame.
+     * @see FrameSource#setRegion(Region)
+     */
+    public Region getRegion() {
+        return this.region;
+    }
+
+    /**
+     * Sets the capture time, sequence number, and region of the frame, when it is published.
+     *
+     * @param timestamp the capture time, in nanoseconds.
+     * @param sequence the sequence number of the frame.
+     * @param region the part of the frame that the vision code should look at.
+     */
+    void setPublished(long timestamp, long sequence, Region region) {
+        this.timestamp = timestamp;
+        this.sequence = sequence;
+        this.region = region;
+    }
+
+}
@@ -0,0 +1,190 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.camera;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * {@code FrameRecorder} writes raw camera frames, with their capture times, to a file that
+ * {@link FrameReplay} can play back through the same {@link FrameSource} interface. Recordings
+ * let a vision pipeline be tuned and profiled on a computer, with footage from a real field.
+ * <p>
+ * A recording is a header followed by one record for each frame. The header holds
+ * {@link #MAGIC}, {@link #VERSION}, and the width and height of the frames, as four big-endian
+ * {@code int}s. Every record holds the capture time of the frame in nanoseconds, as a big-endian
+ * {@code long}, followed by the whole NV21 image. There is nothing else in the file, and every
+ * record has the same size, so a frame can be found by its position without reading the frames
+ * before it.
+ * <p>
+ * The whole frame is always recorded, whatever the region of its source, so a recording can be
+ * replayed with any region. A recorder can also be used as the first stage of a
+ * {@link VisionPipeline}, where it records every frame and passes it on unchanged.
+ */
+public class FrameRecorder implements Stage<Frame, Frame> {
+
+    /**
+     * The first four bytes of every recording, which are {@code "TBFR"} in ASCII.
+     */
+    public static final int MAGIC = 0x54424652;
+
+    /**
+     * The version of the recording format. This should be changed whenever the format changes.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The size of the header of a recording, in bytes.
+     */
+    public static final int HEADER_SIZE = 16;
+
+    /**
+     * The size of the capture time at the start of each record, in bytes.
+     */
+    public static final int TIMESTAMP_SIZE = 8;
+
+    /**
+     * The size of the buffer between the recorder and the file. This is large enough for a whole
+     * 640x480 frame, so each frame is written with about one system call.
+     */
+    private static final int BUFFER_SIZE = 512 * 1024;
+
+    /**
+     * The stream that the records are written to.
+     */
+    private final DataOutputStream out;
+
+    /**
+     * The width of the frames, in pixels.
+     */
+    private final int width;
+
+    /**
+     * The height of the frames, in pixels.
+     */
+    private final int height;
+
+    /**
+     * The number of frames that have been recorded.
+     */
+    private long frameCount;
+
+    /**
+     * The number of frames that could not be recorded when the recorder was used as a stage.
+     */
+    private long errorCount;
+
+    /**
+     * Creates a recording, and writes its header.
+     *
+     * @param file the file to write the recording to. Any existing file is replaced.
+     * @param width the width of the frames, in pixels.
+     * @param height the height of the frames, in pixels.
+     * @throws IOException if the file cannot be written.
+     */
+    public FrameRecorder(File file, int width, int height) throws IOException {
+        this.width = width;
+        this.height = height;
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file),
+                BUFFER_SIZE));
+        try {
+            this.out.writeInt(MAGIC);
+            this.out.writeInt(VERSION);
+            this.out.writeInt(width);
+            this.out.writeInt(height);
+        } catch (IOException e) {
+            this.out.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the size of every record in a recording of frames of the given size.
+     *
+     * @param width the width of the frames, in pixels.
+     * @param height the height of the frames, in pixels.
+     * @return the size of a record, in bytes.
+     */
+    public static int getRecordSize(int width, int height) {
+        return TIMESTAMP_SIZE + Frame.getBufferSize(width, height);
+    }
+
+    /**
+     * Records a frame.
+     *
+     * @param frame the frame to record, which must have the size of the recording.
+     * @throws IOException if the frame cannot be written.
+     */
+    public synchronized void record(Frame frame) throws IOException {
+        if (frame.getWidth() != this.width || frame.getHeight() != this.height) {
+            throw new IllegalArgumentException("A " + frame.getWidth() + "x" + frame.getHeight()
+                    + " frame cannot be added to a " + this.width + "x" + this.height
+                    + " recording");
+        }
+        this.out.writeLong(frame.getTimestamp());
+        this.out.write(frame.getData(), 0, Frame.getBufferSize(this.width, this.height));
+        this.frameCount++;
+    }
+
+    @Override
+    public String getName() {
+        return "record";
+    }
+
+    @Override
+    public Frame process(Frame frame) {
+        try {
+            this.record(frame);
+        } catch (IOException e) {
+            // a full disk should not stop the rest of the pipeline
+            this.errorCount++;
+        }
+        return frame;
+    }
+
+    /**
+     * Gets the number of frames that have been recorded.
+     *
+     * @return the number of recorded frames.
+     */
+    public synchronized long getFrameCount() {
+        return this.frameCount;
+    }
+
+    /**
+     * Gets the number of frames that could not be recorded when the recorder was used as a
+     * stage of a pipeline.
+     *
+     * @return the number of frames that were not recorded.
+     */
+    public synchronized long getErrorCount() {
+        return this.errorCount;
+    }
+
+    /**
+     * Writes any buffered frames, and closes the file.
+     *
+     * @throws IOException if the file cannot be written.
+     */
+    public synchronized void close() throws IOException {
+        this.out.close();
+    }
+
+}
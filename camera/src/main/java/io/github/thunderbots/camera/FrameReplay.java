@@ -0,0 +1,382 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.camera;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code FrameReplay} is a {@link FrameSource} that plays back a recording from a
+ * {@link FrameRecorder}. It delivers frames just as a {@link Camera} does, so a vision pipeline
+ * can be run and profiled on any computer with a recording in place of a camera.
+ * <p>
+ * The recording is mapped into memory instead of being read, so the only copy of each image is
+ * from the mapped file into the buffer of a frame, and the operating system keeps as much of the
+ * file cached as it can. A mapping cannot be larger than 2 GB, so a long recording is mapped in
+ * several segments, each of which holds a whole number of frames.
+ * <p>
+ * A recording can be played back at the rate it was recorded, in which case frames that the
+ * consumer is too slow for are dropped, just as they would be from a camera. It can also be
+ * played back as fast as the consumer can take the frames, in which case no frame is ever
+ * dropped, so the pipeline sees the same frames every time.
+ */
+public class FrameReplay implements FrameSource {
+
+    /**
+     * The longest time that the playback thread waits for the consumer before checking if it has
+     * been stopped, in milliseconds.
+     */
+    private static final long WAIT_MILLIS = 100;
+
+    /**
+     * The largest width or height of a recording that can be played back, in pixels. This is
+     * larger than any preview size of a phone camera, so a larger size means that the header of
+     * the recording is corrupt.
+     */
+    private static final int MAX_DIMENSION = 4096;
+
+    /**
+     * The time between frames, in nanoseconds, that is used when a looped recording does not
+     * have one, because it has only one frame, or every frame has the same timestamp. This is
+     * the frame interval of a camera running at 30 frames per second.
+     */
+    private static final long DEFAULT_FRAME_INTERVAL = TimeUnit.SECONDS.toNanos(1) / 30;
+
+    /**
+     * The segments of the recording that are mapped into memory, in order.
+     */
+    private final MappedByteBuffer[] segments;
+
+    /**
+     * The number of frames in each segment, except perhaps the last one.
+     */
+    private final int framesPerSegment;
+
+    /**
+     * The size of each record in the recording, in bytes.
+     */
+    private final int recordSize;
+
+    /**
+     * The number of frames in the recording.
+     */
+    private final int recordedFrames;
+
+    /**
+     * The frames that the recording is played back into.
+     */
+    private final FrameRing ring;
+
+    /**
+     * How quickly the recording is played back.
+     */
+    private final Pacing pacing;
+
+    /**
+     * Whether the recording starts again from the beginning when it ends.
+     */
+    private final boolean loop;
+
+    /**
+     * The thread that plays back the recording, or {@code null} if it is not running.
+     */
+    private Thread thread;
+
+    /**
+     * Whether every frame of the recording has been delivered. This is never set if the recording
+     * is looped.
+     */
+    private volatile boolean finished;
+
+    /**
+     * Opens a recording, and maps it into memory. Playback does not begin until
+     * {@link #start()} is called.
+     *
+     * @param file the recording to play back.
+     * @param pacing how quickly the recording should be played back.
+     * @param loop {@code true} to start the recording again from the beginning when it ends, or
+     * {@code false} to stop after the last frame.
+     * @throws IOException if the file cannot be read, or is not a recording.
+     */
+    public FrameReplay(File file, Pacing pacing, boolean loop) throws IOException {
+        this.pacing = pacing;
+        this.loop = loop;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() < FrameRecorder.HEADER_SIZE) {
+                throw new IOException(file + " is too short to be a frame recording");
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    FrameRecorder.HEADER_SIZE);
+            if (header.getInt() != FrameRecorder.MAGIC) {
+                throw new IOException(file + " is not a frame recording");
+            }
+            int version = header.getInt();
+            if (version != FrameRecorder.VERSION) {
+                throw new IOException(file + " is a version " + version
+                        + " frame recording, which cannot be played back");
+            }
+            int width = header.getInt();
+            int height = header.getInt();
+            if (width <= 0 || height <= 0 || width > MAX_DIMENSION || height > MAX_DIMENSION) {
+                throw new IOException(file + " has an invalid frame size of " + width + "x"
+                        + height);
+            }
+            this.recordSize = FrameRecorder.getRecordSize(width, height);
+            // a recording that was cut off while a frame was written ends at the frame before it
+            long frames = (channel.size() - FrameRecorder.HEADER_SIZE) / this.recordSize;
+            if (frames > Integer.MAX_VALUE) {
+                throw new IOException(file + " has too many frames to be played back");
+            }
+            this.recordedFrames = (int) frames;
+            this.framesPerSegment = Math.max(1, Integer.MAX_VALUE / this.recordSize);
+            int segmentCount = (this.recordedFrames + this.framesPerSegment - 1)
+                    / this.framesPerSegment;
+            this.segments = new MappedByteBuffer[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                int first = i * this.framesPerSegment;
+                int count = Math.min(this.framesPerSegment, this.recordedFrames - first);
+                this.segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        FrameRecorder.HEADER_SIZE + (long) first * this.recordSize,
+                        (long) count * this.recordSize);
+            }
+            this.ring = new FrameRing(width, height);
+        } finally {
+            // the mappings stay valid after the file is closed
+            raf.close();
+        }
+    }
+
+    /**
+     * Starts playing back the recording from the beginning, on a new thread. This does nothing if
+     * the recording is already being played back.
+     */
+    public synchronized void start() {
+        if (this.thread != null) {
+            return;
+        }
+        this.finished = false;
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                FrameReplay.this.play();
+            }
+        }, "Frame replay");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Stops playing back the recording, and waits for the playback thread to finish. Frames that
+     * have already been acquired may still be released after playback is stopped.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public synchronized void stop() throws InterruptedException {
+        if (this.thread != null) {
+            this.thread.interrupt();
+            this.thread.join();
+            this.thread = null;
+        }
+    }
+
+    /**
+     * Plays back the recording until it ends or the playback thread is interrupted.
+     */
+    private void play() {
+        if (this.recordedFrames == 0) {
+            this.finished = true;
+            return;
+        }
+        long firstTimestamp = this.getTimestamp(0);
+        long lastTimestamp = this.getTimestamp(this.recordedFrames - 1);
+        // each pass through a looped recording is moved one frame interval past the last one
+        long passLength = Math.max(lastTimestamp - firstTimestamp, 0);
+        long interval = this.recordedFrames > 1 ? passLength / (this.recordedFrames - 1) : 0;
+        passLength += interval > 0 ? interval : DEFAULT_FRAME_INTERVAL;
+        long startTime = System.nanoTime();
+        long offset = 0;
+        try {
+            do {
+                for (int i = 0; i < this.recordedFrames; i++) {
+                    long timestamp = this.getTimestamp(i) + offset;
+                    Frame frame;
+                    if (this.pacing == Pacing.RECORDED) {
+                        long delay = startTime + (timestamp - firstTimestamp) - System.nanoTime();
+                        if (delay > 0) {
+                            TimeUnit.NANOSECONDS.sleep(delay);
+                        }
+                        frame = this.ring.obtain();
+                    } else {
+                        frame = this.obtainWhenConsumed();
+                    }
+                    if (frame != null) {
+                        this.copyFrame(i, frame);
+                        this.ring.publish(frame, timestamp);
+                    }
+                }
+                offset += passLength;
+            } while (this.loop);
+            this.finished = true;
+        } catch (InterruptedException e) {
+            // playback was stopped
+        }
+    }
+
+    /**
+     * Waits until the consumer has taken the last published frame, and then until a frame is
+     * free, so that the next frame of the recording will not replace one that was never seen.
+     *
+     * @return a free frame.
+     * @throws InterruptedException if the playback thread is interrupted while waiting.
+     */
+    private Frame obtainWhenConsumed() throws InterruptedException {
+        while (!this.ring.awaitConsumed(WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+            // keep waiting until the consumer catches up, or playback is stopped
+        }
+        Frame frame;
+        while ((frame = this.ring.obtain(WAIT_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+            // keep waiting until the consumer releases a frame, or playback is stopped
+        }
+        return frame;
+    }
+
+    /**
+     * Gets the capture time of a frame of the recording.
+     *
+     * @param index the index of the frame in the recording.
+     * @return the time that the frame was captured, in nanoseconds.
+     */
+    private long getTimestamp(int index) {
+        MappedByteBuffer segment = this.segments[index / this.framesPerSegment];
+        return segment.getLong((index % this.framesPerSegment) * this.recordSize);
+    }
+
+    /**
+     * Copies the image of a frame of the recording into the buffer of a frame. This is only
+     * called by the playback thread, which is the only user of the positions of the segments.
+     *
+     * @param index the index of the frame in the recording.
+     * @param frame the frame to copy the image into.
+     */
+    private void copyFrame(int index, Frame frame) {
+        MappedByteBuffer segment = this.segments[index / this.framesPerSegment];
+        segment.position((index % this.framesPerSegment) * this.recordSize
+                + FrameRecorder.TIMESTAMP_SIZE);
+        segment.get(frame.getData(), 0, this.recordSize - FrameRecorder.TIMESTAMP_SIZE);
+    }
+
+    /**
+     * Determines if every frame of the recording has been delivered. A looped recording never
+     * finishes.
+     *
+     * @return {@code true} if playback has reached the end of the recording, or {@code false}
+     * otherwise.
+     */
+    public boolean isFinished() {
+        return this.finished;
+    }
+
+    /**
+     * Gets the number of frames in the recording.
+     *
+     * @return the number of recorded frames.
+     */
+    public int getRecordedFrameCount() {
+        return this.recordedFrames;
+    }
+
+    /**
+     * Gets the ring that the recording is played back into, for its detailed drop counts.
+     *
+     * @return the frame ring of the playback.
+     */
+    public FrameRing getRing() {
+        return this.ring;
+    }
+
+    @Override
+    public int getWidth() {
+        return this.ring.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return this.ring.getHeight();
+    }
+
+    @Override
+    public void setRegion(Region region) {
+        this.ring.setRegion(region);
+    }
+
+    @Override
+    public Region getRegion() {
+        return this.ring.getRegion();
+    }
+
+    @Override
+    public Frame acquire(long timeout, TimeUnit unit) throws InterruptedException {
+        return this.ring.acquire(timeout, unit);
+    }
+
+    @Override
+    public Frame poll() {
+        return this.ring.poll();
+    }
+
+    @Override
+    public void release(Frame frame) {
+        this.ring.release(frame);
+    }
+
+    @Override
+    public long getFrameCount() {
+        return this.ring.getFrameCount();
+    }
+
+    @Override
+    public long getDroppedFrameCount() {
+        return this.ring.getDroppedFrameCount();
+    }
+
+    /**
+     * {@code Pacing} is how quickly a recording is played back.
+     */
+    public enum Pacing {
+
+        /**
+         * Frames are delivered at the times they were recorded, relative to the start of
+         * playback. Frames that the consumer is too slow for are dropped.
+         */
+        RECORDED,
+
+        /**
+         * Each frame is delivered as soon as the consumer has taken the one before it, and no
+         * frame is ever dropped.
+         */
+        UNTHROTTLED
+
+    }
+
+}
@@ -0,0 +1,485 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.camera;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@code FrameRing} is a {@link FrameSource} backed by a fixed pool of frames. A producer
+ * obtains a free frame, fills its buffer, and publishes it; a consumer acquires the newest
+ * published frame and releases it when it is done. All of the frames are allocated when the ring
+ * is constructed, so moving frames between the producer and the consumer never allocates.
+ * <p>
+ * A producer that hands buffers to another component ahead of time, as the Android camera does,
+ * can set a {@link BufferListener}. Every frame that becomes free is then handed straight back
+ * to the producer through the listener, instead of waiting to be obtained.
+ */
+public class FrameRing implements FrameSource {
+
+    /**
+     * The default number of frames in a ring. This is enough for the producer to fill one frame
+     * while another is waiting to be acquired, and a third is held by the consumer, with one left
+     * over so that a consumer that releases late does not cause a drop.
+     */
+    public static final int DEFAULT_CAPACITY = 4;
+
+    /**
+     * The state of a frame that is not in use.
+     */
+    private static final int FREE = 0;
+
+    /**
+     * The state of a frame that is being filled by the producer.
+     */
+    private static final int WRITING = 1;
+
+    /**
+     * The state of the frame that has been published, and is waiting to be acquired.
+     */
+    private static final int READY = 2;
+
+    /**
+     * The state of a frame that is held by the consumer.
+     */
+    private static final int ACQUIRED = 3;
+
+    /**
+     * Every frame in the ring.
+     */
+    private final Frame[] frames;
+
+    /**
+     * The width of the frames, in pixels.
+     */
+    private final int width;
+
+    /**
+     * The height of the frames, in pixels.
+     */
+    private final int height;
+
+    /**
+     * The frame that is waiting to be acquired, or {@code null} if there is none.
+     */
+    private Frame latest;
+
+    /**
+     * The region that is recorded in every published frame.
+     */
+    private volatile Region region;
+
+    /**
+     * The listener that free frames are handed to, or {@code null} if free frames are kept until
+     * they are obtained.
+     */
+    private BufferListener bufferListener;
+
+    /**
+     * The number of frames that have been published.
+     */
+    private volatile long frameCount;
+
+    /**
+     * The number of published frames that were replaced by a newer frame before they were
+     * acquired.
+     */
+    private volatile long replacedFrameCount;
+
+    /**
+     * The number of images that could not be stored because no frame was free.
+     */
+    private volatile long missedFrameCount;
+
+    /**
+     * Constructs a ring with {@link #DEFAULT_CAPACITY} frames of the given size.
+     *
+     * @param width the width of the frames, in pixels.
+     * @param height the height of the frames, in pixels.
+     */
+    public FrameRing(int width, int height) {
+        this(width, height, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a ring with the given number of frames of the given size.
+     *
+     * @param width the width of the frames, in pixels.
+     * @param height the height of the frames, in pixels.
+     * @param capacity the number of frames, which must be at least {@code 2}.
+     */
+    public FrameRing(int width, int height, int capacity) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid frame size " + width + "x" + height);
+        }
+        if (capacity < 2) {
+            throw new IllegalArgumentException("A frame ring needs at least 2 frames");
+        }
+        this.width = width;
+        this.height = height;
+        this.region = Region.full(width, height);
+        this.frames = new Frame[capacity];
+        for (int i = 0; i < capacity; i++) {
+            this.frames[i] = new Frame(width, height, i);
+        }
+    }
+
+    @Override
+    public int getWidth() {
+        return this.width;
+    }
+
+    @Override
+    public int getHeight() {
+        return this.height;
+    }
+
+    @Override
+    public void setRegion(Region region) {
+        if (region == null) {
+            region = Region.full(this.width, this.height);
+        } else if (!region.fitsIn(this.width, this.height)) {
+            throw new IllegalArgumentException("The region " + region + " does not fit in a "
+                    + this.width + "x" + this.height + " frame");
+        }
+        this.region = region;
+    }
+
+    @Override
+    public Region getRegion() {
+        return this.region;
+    }
+
+    /**
+     * Gets the number of frames in the ring.
+     *
+     * @return the number of frames.
+     */
+    public int getCapacity() {
+        return this.frames.length;
+    }
+
+    /**
+     * Sets the listener that every free frame is handed to. Every frame that is free when the
+     * listener is set is handed to it immediately.
+     *
+     * @param listener the listener, or {@code null} to keep free frames until they are obtained.
+     */
+    public void setBufferListener(BufferListener listener) {
+        synchronized (this) {
+            this.bufferListener = listener;
+        }
+        if (listener != null) {
+            Frame frame;
+            while ((frame = this.take()) != null) {
+                listener.onBufferAvailable(frame);
+            }
+        }
+    }
+
+    /**
+     * Obtains a free frame for the producer to fill. If no frame is free, the image that the
+     * producer was going to store is counted as dropped.
+     *
+     * @return a free frame, or {@code null} if every frame is in use.
+     */
+    public Frame obtain() {
+        Frame frame = this.take();
+        if (frame == null) {
+            this.recordMissed();
+        }
+        return frame;
+    }
+
+    /**
+     * Obtains a free frame for the producer to fill, waiting for one to be released if every
+     * frame is in use. Unlike {@link #obtain()}, this never drops an image, so it should only be
+     * used by a producer that can wait for the consumer, such as a recording.
+     *
+     * @param timeout the maximum time to wait.
+     * @param unit the unit of the timeout.
+     * @return a free frame, or {@code null} if none was released before the timeout.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public Frame obtain(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this) {
+            Frame frame;
+            while ((frame = this.take()) == null) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return frame;
+        }
+    }
+
+    /**
+     * Waits until the published frame has been acquired, so that publishing another frame will
+     * not replace it. A producer that can wait for the consumer uses this to deliver every
+     * frame.
+     *
+     * @param timeout the maximum time to wait.
+     * @param unit the unit of the timeout.
+     * @return {@code true} if no frame is waiting to be acquired, or {@code false} if the
+     * timeout passed first.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public boolean awaitConsumed(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this) {
+            while (this.latest != null) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Counts an image that could not be stored because the producer had no free frame.
+     */
+    public synchronized void recordMissed() {
+        this.missedFrameCount++;
+    }
+
+    /**
+     * Takes a free frame, and marks it as being filled by the producer.
+     *
+     * @return a free frame, or {@code null} if every frame is in use.
+     */
+    private synchronized Frame take() {
+        for (Frame frame : this.frames) {
+            if (frame.state == FREE) {
+                frame.state = WRITING;
+                return frame;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the frame whose buffer is the given array. This lets a producer that was handed
+     * frames through a {@link BufferListener} find the frame of a buffer that was given back to
+     * it.
+     *
+     * @param data the buffer of a frame in this ring.
+     * @return the frame that owns the buffer, or {@code null} if it is not from this ring.
+     */
+    public Frame getFrame(byte[] data) {
+        for (Frame frame : this.frames) {
+            if (frame.getData() == data) {
+                return frame;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Publishes a filled frame, so that it can be acquired. If the previously published frame has
+     * not been acquired, it is dropped and becomes free.
+     *
+     * @param frame a frame that was obtained by the producer.
+     * @param timestamp the time that the frame was captured, in nanoseconds.
+     */
+    public void publish(Frame frame, long timestamp) {
+        Frame replaced;
+        BufferListener listener;
+        synchronized (this) {
+            this.checkState(frame, WRITING);
+            frame.setPublished(timestamp, this.frameCount, this.region);
+            this.frameCount++;
+            replaced = this.latest;
+            if (replaced != null) {
+                this.replacedFrameCount++;
+                listener = this.free(replaced);
+            } else {
+                listener = null;
+            }
+            frame.state = READY;
+            this.latest = frame;
+            this.notifyAll();
+        }
+        if (listener != null) {
+            listener.onBufferAvailable(replaced);
+        }
+    }
+
+    /**
+     * Returns a frame that was obtained by the producer, but will not be published.
+     *
+     * @param frame a frame that was obtained by the producer.
+     */
+    public void cancel(Frame frame) {
+        BufferListener listener;
+        synchronized (this) {
+            this.checkState(frame, WRITING);
+            listener = this.free(frame);
+        }
+        if (listener != null) {
+            listener.onBufferAvailable(frame);
+        }
+    }
+
+    /**
+     * Frees every frame that is being filled by the producer. This should be called after a
+     * producer that was handed frames through a {@link BufferListener} has stopped, since it will
+     * never publish or cancel the frames it still holds.
+     */
+    public synchronized void reclaim() {
+        for (Frame frame : this.frames) {
+            if (frame.state == WRITING) {
+                frame.state = FREE;
+            }
+        }
+    }
+
+    @Override
+    public Frame acquire(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this) {
+            while (this.latest == null) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return this.takeLatest();
+        }
+    }
+
+    @Override
+    public synchronized Frame poll() {
+        return this.latest == null ? null : this.takeLatest();
+    }
+
+    /**
+     * Hands the waiting frame to the consumer.
+     *
+     * @return the frame that was waiting to be acquired.
+     */
+    private Frame takeLatest() {
+        Frame frame = this.latest;
+        this.latest = null;
+        frame.state = ACQUIRED;
+        // wake a producer that is waiting for the frame to be consumed
+        this.notifyAll();
+        return frame;
+    }
+
+    @Override
+    public void release(Frame frame) {
+        BufferListener listener;
+        synchronized (this) {
+            this.checkState(frame, ACQUIRED);
+            listener = this.free(frame);
+        }
+        if (listener != null) {
+            listener.onBufferAvailable(frame);
+        }
+    }
+
+    /**
+     * Marks a frame as free, or as handed to the producer if there is a buffer listener. This
+     * must be called while holding the lock of the ring, and the listener must be called after
+     * the lock is released.
+     *
+     * @param frame the frame that is no longer in use.
+     * @return the listener that the frame must be handed to, or {@code null} if the frame is
+     * free.
+     */
+    private BufferListener free(Frame frame) {
+        if (this.bufferListener != null) {
+            frame.state = WRITING;
+        } else {
+            frame.state = FREE;
+            // wake a producer that is waiting for a free frame
+            this.notifyAll();
+        }
+        return this.bufferListener;
+    }
+
+    /**
+     * Checks that a frame belongs to this ring, and is in the given state.
+     *
+     * @param frame the frame to check.
+     * @param state the state that the frame must be in.
+     * @throws IllegalStateException if the frame is from another ring, or in another state.
+     */
+    private void checkState(Frame frame, int state) {
+        if (frame.index >= this.frames.length || this.frames[frame.index] != frame) {
+            throw new IllegalStateException("The frame is not from this frame ring");
+        }
+        if (frame.state != state) {
+            throw new IllegalStateException("The frame is in state " + frame.state
+                    + ", not " + state);
+        }
+    }
+
+    @Override
+    public long getFrameCount() {
+        return this.frameCount;
+    }
+
+    @Override
+    public long getDroppedFrameCount() {
+        return this.replacedFrameCount + this.missedFrameCount;
+    }
+
+    /**
+     * Gets the number of published frames that were replaced by a newer frame before they were
+     * acquired. These frames were dropped because the consumer was slower than the producer.
+     *
+     * @return the number of replaced frames.
+     */
+    public long getReplacedFrameCount() {
+        return this.replacedFrameCount;
+    }
+
+    /**
+     * Gets the number of images that could not be stored because no frame was free. These
+     * images were dropped because the consumer held too many frames at once.
+     *
+     * @return the number of missed frames.
+     */
+    public long getMissedFrameCount() {
+        return this.missedFrameCount;
+    }
+
+    /**
+     * A {@code BufferListener} is handed every frame of a {@link FrameRing} that becomes free.
+     * The frame is already marked as being filled, so the listener owns it until it is
+     * published or cancelled.
+     */
+    public interface BufferListener {
+
+        /**
+         * Called when a frame becomes free. This is never called while the ring is locked, but
+         * it may be called on the consumer's thread.
+         *
+         * @param frame the frame that the producer may fill.
+         */
+        void onBufferAvailable(Frame frame);
+
+    }
+
+}
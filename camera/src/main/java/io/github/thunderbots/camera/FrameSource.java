@@ -0,0 +1,105 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.camera;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@code FrameSource} produces a stream of {@link Frame}s from a fixed pool of buffers. Only
+ * the newest frame is ever waiting to be acquired: when a new frame arrives before the previous
+ * one was acquired, the previous one is dropped and its buffer is reused. A consumer that falls
+ * behind therefore always gets the newest frame next, and never works through a backlog.
+ * <p>
+ * Every acquired frame must be released, and should be released as soon as possible. While a
+ * consumer holds frames, fewer buffers are left for new images, and incoming images are dropped
+ * when no buffer is free.
+ */
+public interface FrameSource {
+
+    /**
+     * Gets the width of the frames from this source.
+     *
+     * @return the width of the frames, in pixels.
+     */
+    int getWidth();
+
+    /**
+     * Gets the height of the frames from this source.
+     *
+     * @return the height of the frames, in pixels.
+     */
+    int getHeight();
+
+    /**
+     * Sets the part of each frame that the vision code should look at. The region is recorded in
+     * every frame that is published after this is called, and the color conversion reads only
+     * the pixels of the region. This may be called at any time, from any thread, and no frame
+     * buffers are reallocated.
+     *
+     * @param region the new region, or {@code null} for the whole frame.
+     * @throws IllegalArgumentException if the region does not fit in the frames.
+     */
+    void setRegion(Region region);
+
+    /**
+     * Gets the region that is recorded in newly published frames.
+     *
+     * @return the current region.
+     */
+    Region getRegion();
+
+    /**
+     * Acquires the newest frame that has not been acquired yet, waiting for one to arrive if
+     * necessary.
+     *
+     * @param timeout the maximum time to wait.
+     * @param unit the unit of the timeout.
+     * @return the newest frame, or {@code null} if no frame arrived before the timeout.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    Frame acquire(long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Acquires the newest frame that has not been acquired yet, without waiting.
+     *
+     * @return the newest frame, or {@code null} if no new frame has arrived.
+     */
+    Frame poll();
+
+    /**
+     * Releases a frame, so that its buffer can be reused for a new image.
+     *
+     * @param frame a frame that was acquired from this source.
+     */
+    void release(Frame frame);
+
+    /**
+     * Gets the number of frames that have been published by this source.
+     *
+     * @return the number of published frames.
+     */
+    long getFrameCount();
+
+    /**
+     * Gets the number of frames that were lost, either because a newer frame replaced them
+     * before they were acquired, or because no buffer was free to receive them.
+     *
+     * @return the number of dropped frames.
+     */
+    long getDroppedFrameCount();
+
+}
@@ -0,0 +1,159 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.camera;
+
+/**
+ * An {@code Image} is a buffer of pixels with one or more byte channels, stored row by row with
+ * the channels of each pixel next to each other. Its array is only replaced when the image is
+ * resized to more pixels than it has ever held, so an image that is reused for every frame stops
+ * allocating once it has seen the largest frame.
+ */
+public class Image implements Copyable<Image> {
+
+    /**
+     * The pixels of the image. The array may be longer than the image needs.
+     */
+    private byte[] data;
+
+    /**
+     * The width of the image, in pixels.
+     */
+    private int width;
+
+    /**
+     * The height of the image, in pixels.
+     */
+    private int height;
+
+    /**
+     * The number of bytes for each pixel.
+     */
+    private int channels;
+
+    /**
+     * Constructs an empty image.
+     */
+    public Image() {
+        this.data = new byte[0];
+        this.channels = 1;
+    }
+
+    /**
+     * Constructs an image of the given size.
+     *
+     * @param width the width of the image, in pixels.
+     * @param height the height of the image, in pixels.
+     * @param channels the number of bytes for each pixel.
+     */
+    public Image(int width, int height, int channels) {
+        this();
+        this.resize(width, height, channels);
+    }
+
+    /**
+     * Changes the size of the image. The contents of the image are undefined afterwards.
+     *
+     * @param width the new width of the image, in pixels.
+     * @param height the new height of the image, in pixels.
+     * @param channels the new number of bytes for each pixel.
+     */
+    public void resize(int width, int height, int channels) {
+        if (width < 0 || height < 0 || channels < 1) {
+            throw new IllegalArgumentException("Invalid image size " + width + "x" + height
+                    + "x" + channels);
+        }
+        int length = width * height * channels;
+        if (this.data.length < length) {
+            this.data = new byte[length];
+        }
+        this.width = width;
+        this.height = height;
+        this.channels = channels;
+    }
+
+    /**
+     * Gets the pixels of the image. Only the first {@link #getLength()} bytes belong to the
+     * image.
+     *
+     * @return the pixels of the image.
+     */
+    public byte[] getData() {
+        return this.data;
+    }
+
+    /**
+     * Gets the width of the image.
+     *
+     * @return the width of the image, in pixels.
+     */
+    public int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * Gets the height of the image.
+     *
+     * @return the height of the image, in pixels.
+     */
+    public int getHeight() {
+        return this.height;
+    }
+
+    /**
+     * Gets the number of bytes for each pixel.
+     *
+     * @return the number of channels.
+     */
+    public int getChannels() {
+        return this.channels;
+    }
+
+    /**
+     * Gets the number of bytes that belong to the image.
+     *
+     * @return the length of the image, in bytes.
+     */
+    public int getLength() {
+        return this.width * this.height * this.channels;
+    }
+
+    /**
+     * Gets one channel of one pixel of the image.
+     *
+     * @param x the column of the pixel.
+     * @param y the row of the pixel.
+     * @param channel the channel.
+     * @return the value of the channel, from {@code 0} to {@code 255}.
+     */
+    public int get(int x, int y, int channel) {
+        return this.data[(y * this.width + x) * this.channels + channel] & 0xFF;
+    }
+
+    @Override
+    public Image copy() {
+        Image copy = new Image(this.width, this.height, this.channels);
+        this.copyTo(copy);
+        return copy;
+    }
+
+    @Override
+    public void copyTo(Image target) {
+        target.resize(this.width, this.height, this.channels);
+        System.arraycopy(this.data, 0, target.data, 0, this.getLength());
+    }
+
+}
@@ -0,0 +1,212 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.camera;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@code LatencyHistogram} records the distribution of a set of durations, in nanoseconds.
+ * Each range between two powers of two is split into {@value #SUB_BUCKET_COUNT} buckets of equal
+ * width, so recording a duration never allocates, and the percentiles reported by the histogram
+ * are accurate to within one sixteenth of their value. The exact count, sum, minimum and maximum
+ * are also kept. Durations may be recorded from any thread. This is based on the robot
+ * controller's metrics histogram, which the camera module cannot depend on, but its buckets are
+ * finer, since stage times are compared with each other.
+ */
+public class LatencyHistogram {
+
+    /**
+     * The number of bits of a value, below its highest set bit, that select its bucket.
+     */
+    private static final int SUB_BUCKET_BITS = 4;
+
+    /**
+     * The number of buckets between two powers of two.
+     */
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * The number of buckets. The values below {@link #SUB_BUCKET_COUNT} each have their own
+     * bucket, and every larger range between two powers of two has {@link #SUB_BUCKET_COUNT}
+     * buckets, up to the largest {@code long}.
+     */
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    /**
+     * The number of values in each bucket.
+     */
+    private final AtomicLongArray buckets;
+
+    /**
+     * The number of values that have been recorded.
+     */
+    private final AtomicLong count;
+
+    /**
+     * The sum of every value that has been recorded.
+     */
+    private final AtomicLong sum;
+
+    /**
+     * The smallest value that has been recorded.
+     */
+    private final AtomicLong min;
+
+    /**
+     * The largest value that has been recorded.
+     */
+    private final AtomicLong max;
+
+    /**
+     * Constructs an empty histogram.
+     */
+    public LatencyHistogram() {
+        this.buckets = new AtomicLongArray(BUCKET_COUNT);
+        this.count = new AtomicLong();
+        this.sum = new AtomicLong();
+        this.min = new AtomicLong(Long.MAX_VALUE);
+        this.max = new AtomicLong(Long.MIN_VALUE);
+    }
+
+    /**
+     * Records a value. Negative values are recorded as zero.
+     *
+     * @param value the value to record.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        this.buckets.incrementAndGet(getBucket(value));
+        this.count.incrementAndGet();
+        this.sum.addAndGet(value);
+        long current;
+        while (value < (current = this.min.get()) && !this.min.compareAndSet(current, value)) {
+            // another thread changed the minimum; try again
+        }
+        while (value > (current = this.max.get()) && !this.max.compareAndSet(current, value)) {
+            // another thread changed the maximum; try again
+        }
+    }
+
+    /**
+     * Gets the index of the bucket that counts the given value.
+     *
+     * @param value a value that is not negative.
+     * @return the index of the bucket.
+     */
+    private static int getBucket(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKET_COUNT + (int) (value >>> shift) - SUB_BUCKET_COUNT;
+    }
+
+    /**
+     * Gets the smallest value that is counted by the given bucket.
+     *
+     * @param bucket the index of the bucket.
+     * @return the lower bound of the bucket.
+     */
+    private static long getLowerBound(int bucket) {
+        if (bucket < SUB_BUCKET_COUNT) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKET_COUNT - 1;
+        return (long) (SUB_BUCKET_COUNT + bucket % SUB_BUCKET_COUNT) << shift;
+    }
+
+    /**
+     * Gets the number of values that are counted by the given bucket.
+     *
+     * @param bucket the index of the bucket.
+     * @return the width of the bucket.
+     */
+    private static long getWidth(int bucket) {
+        return bucket < SUB_BUCKET_COUNT ? 1 : 1L << (bucket / SUB_BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Gets the number of values that have been recorded.
+     *
+     * @return the number of values.
+     */
+    public long getCount() {
+        return this.count.get();
+    }
+
+    /**
+     * Gets the sum of every value that has been recorded.
+     *
+     * @return the sum of the values.
+     */
+    public long getSum() {
+        return this.sum.get();
+    }
+
+    /**
+     * Gets the smallest value that has been recorded.
+     *
+     * @return the smallest value, or {@code 0} if no values have been recorded.
+     */
+    public long getMin() {
+        return this.getCount() == 0 ? 0 : this.min.get();
+    }
+
+    /**
+     * Gets the largest value that has been recorded.
+     *
+     * @return the largest value, or {@code 0} if no values have been recorded.
+     */
+    public long getMax() {
+        return this.getCount() == 0 ? 0 : this.max.get();
+    }
+
+    /**
+     * Estimates the value below which the given fraction of the recorded values fall. The values
+     * in the bucket that contains the percentile are assumed to be spread evenly across it, and
+     * the estimate is limited to the range of recorded values.
+     *
+     * @param fraction the fraction of values, between {@code 0} and {@code 1}.
+     * @return the estimated percentile, or {@code 0} if no values have been recorded.
+     */
+    public long getPercentile(double fraction) {
+        long total = this.getCount();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(fraction * total);
+        rank = Math.max(rank, 1);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long inBucket = this.buckets.get(i);
+            if (seen + inBucket >= rank) {
+                long width = getWidth(i);
+                double position = (double) (rank - seen) / inBucket;
+                // rounding to a double could push the top bucket past the largest long
+                long offset = Math.min((long) ((width - 1) * position), width - 1);
+                long estimate = getLowerBound(i) + offset;
+                return Math.max(this.getMin(), Math.min(estimate, this.getMax()));
+            }
+            seen += inBucket;
+        }
+        return this.getMax();
+    }
+
+}
@@ -0,0 +1,128 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.camera;
+
+/**
+ * A {@code PipelineResult} is the output of a {@link VisionPipeline} for one frame, along with
+ * the frame it came from and how long it took. Results are reused by the pipeline, so a result is
+ * only valid until the next call to {@link VisionPipeline#getLatest()}.
+ *
+ * @param <R> the type of the output of the pipeline.
+ */
+public class PipelineResult<R extends Copyable<R>> {
+
+    /**
+     * The output of the last stage of the pipeline, or {@code null} if nothing has been written
+     * to this result yet.
+     */
+    private R value;
+
+    /**
+     * The capture time of the frame, in nanoseconds.
+     */
+    private long frameTimestamp;
+
+    /**
+     * The sequence number of the frame.
+     */
+    private long frameSequence;
+
+    /**
+     * The time that the pipeline took to process the frame, in nanoseconds.
+     */
+    private long processingTime;
+
+    /**
+     * The time at which the result was published, in nanoseconds, as given by
+     * {@link System#nanoTime()}.
+     */
+    private long publishTime;
+
+    /**
+     * Constructs an empty result.
+     */
+    PipelineResult() {
+    }
+
+    /**
+     * Gets the output of the last stage of the pipeline.
+     *
+     * @return the output of the pipeline.
+     */
+    public R getValue() {
+        return this.value;
+    }
+
+    /**
+     * Gets the capture time of the frame that the result came from.
+     *
+     * @return the capture time of the frame, in nanoseconds.
+     */
+    public long getFrameTimestamp() {
+        return this.frameTimestamp;
+    }
+
+    /**
+     * Gets the sequence number of the frame that the result came from.
+     *
+     * @return the sequence number of the frame.
+     * @see Frame#getSequence()
+     */
+    public long getFrameSequence() {
+        return this.frameSequence;
+    }
+
+    /**
+     * Gets the time that the pipeline took to process the frame, from when the frame was
+     * acquired until the result was published.
+     *
+     * @return the processing time, in nanoseconds.
+     */
+    public long getProcessingTime() {
+        return this.processingTime;
+    }
+
+    /**
+     * Gets the time at which the result was published.
+     *
+     * @return the publish time, in nanoseconds, as given by {@link System#nanoTime()}.
+     */
+    public long getPublishTime() {
+        return this.publishTime;
+    }
+
+    /**
+     * Sets the contents of the result, copying the output of the pipeline into the value of the
+     * result.
+     *
+     * @param output the output of the last stage of the pipeline.
+     * @param frame the frame that the output came from.
+     * @param processingTime the time that the pipeline took to process the frame.
+     */
+    void set(R output, Frame frame, long processingTime) {
+        if (this.value == null) {
+            this.value = output.copy();
+        } else {
+            output.copyTo(this.value);
+        }
+        this.frameTimestamp = frame.getTimestamp();
+        this.frameSequence = frame.getSequence();
+        this.processingTime = processingTime;
+        this.publishTime = System.nanoTime();
+    }
+
+}
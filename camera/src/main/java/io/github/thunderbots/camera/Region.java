@@ -0,0 +1,190 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.camera;
+
+/**
+ * A {@code Region} is the part of a frame that the vision code looks at: a rectangle of the
+ * frame, and a step that decimates it by keeping one pixel out of every {@code step} in each
+ * direction. The color conversion reads only the pixels of the region, so every later stage of a
+ * pipeline works on the smaller image and touches fewer pixels.
+ * <p>
+ * A region never changes once it is constructed. The region of a {@link FrameSource} is changed
+ * by setting a new one, which is recorded in every frame that is published afterwards, so every
+ * frame is processed with a single region from start to finish.
+ */
+public final class Region {
+
+    /**
+     * The leftmost column of the region, in frame pixels.
+     */
+    private final int left;
+
+    /**
+     * The topmost row of the region, in frame pixels.
+     */
+    private final int top;
+
+    /**
+     * The width of the region, in frame pixels.
+     */
+    private final int width;
+
+    /**
+     * The height of the region, in frame pixels.
+     */
+    private final int height;
+
+    /**
+     * The distance between the pixels that are kept, in each direction.
+     */
+    private final int step;
+
+    /**
+     * Constructs a region.
+     *
+     * @param left the leftmost column of the region, in frame pixels.
+     * @param top the topmost row of the region, in frame pixels.
+     * @param width the width of the region, in frame pixels.
+     * @param height the height of the region, in frame pixels.
+     * @param step the distance between the pixels that are kept, in each direction. A step of
+     * {@code 1} keeps every pixel.
+     */
+    public Region(int left, int top, int width, int height, int step) {
+        if (left < 0 || top < 0 || width < 1 || height < 1 || step < 1) {
+            throw new IllegalArgumentException("Invalid region " + width + "x" + height + " at ("
+                    + left + ", " + top + ") with a step of " + step);
+        }
+        this.left = left;
+        this.top = top;
+        this.width = width;
+        this.height = height;
+        this.step = step;
+    }
+
+    /**
+     * Constructs a region that covers a whole frame, with every pixel kept.
+     *
+     * @param frameWidth the width of the frame, in pixels.
+     * @param frameHeight the height of the frame, in pixels.
+     * @return the region of the whole frame.
+     */
+    public static Region full(int frameWidth, int frameHeight) {
+        return new Region(0, 0, frameWidth, frameHeight, 1);
+    }
+
+    /**
+     * Gets the leftmost column of the region.
+     *
+     * @return the left edge, in frame pixels.
+     */
+    public int getLeft() {
+        return this.left;
+    }
+
+    /**
+     * Gets the topmost row of the region.
+     *
+     * @return the top edge, in frame pixels.
+     */
+    public int getTop() {
+        return this.top;
+    }
+
+    /**
+     * Gets the width of the region.
+     *
+     * @return the width, in frame pixels.
+     */
+    public int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * Gets the height of the region.
+     *
+     * @return the height, in frame pixels.
+     */
+    public int getHeight() {
+        return this.height;
+    }
+
+    /**
+     * Gets the distance between the pixels that are kept, in each direction.
+     *
+     * @return the decimation step.
+     */
+    public int getStep() {
+        return this.step;
+    }
+
+    /**
+     * Gets the width of the image that is made from the region.
+     *
+     * @return the number of columns that are kept.
+     */
+    public int getOutputWidth() {
+        return (this.width + this.step - 1) / this.step;
+    }
+
+    /**
+     * Gets the height of the image that is made from the region.
+     *
+     * @return the number of rows that are kept.
+     */
+    public int getOutputHeight() {
+        return (this.height + this.step - 1) / this.step;
+    }
+
+    /**
+     * Determines if the region is entirely inside a frame of the given size.
+     *
+     * @param frameWidth the width of the frame, in pixels.
+     * @param frameHeight the height of the frame, in pixels.
+     * @return {@code true} if the region fits in the frame, or {@code false} otherwise.
+     */
+    public boolean fitsIn(int frameWidth, int frameHeight) {
+        return this.left + this.width <= frameWidth && this.top + this.height <= frameHeight;
+    }
+
+    /**
+     * Converts a column of the image that is made from the region to a column of the frame. This
+     * turns the coordinates of a blob into the coordinates of the whole frame.
+     *
+     * @param x a column of the image.
+     * @return the column of the frame.
+     */
+    public float toFrameX(float x) {
+        return this.left + x * this.step;
+    }
+
+    /**
+     * Converts a row of the image that is made from the region to a row of the frame.
+     *
+     * @param y a row of the image.
+     * @return the row of the frame.
+     */
+    public float toFrameY(float y) {
+        return this.top + y * this.step;
+    }
+
+    @Override
+    public String toString() {
+        return this.width + "x" + this.height + " at (" + this.left + ", " + this.top
+                + ") with a step of " + this.step;
+    }
+
+}
@@ -0,0 +1,48 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.camera;
+
+/**
+ * A {@code Stage} is one step of a {@link VisionPipeline}. It reads the output of the stage
+ * before it, and writes its own output to a buffer that it owns and reuses for every frame. The
+ * output is only valid until the stage processes the next frame, so a stage must not keep a
+ * reference to its input, and nothing else should keep a reference to its output.
+ * <p>
+ * A stage is only ever called from the thread of its pipeline, so it does not have to be
+ * thread-safe, except for any settings that can be changed while the pipeline is running.
+ *
+ * @param <I> the type of the input of the stage.
+ * @param <O> the type of the output of the stage.
+ */
+public interface Stage<I, O> {
+
+    /**
+     * Gets the name of the stage, which is shown in the timing report of the pipeline.
+     *
+     * @return the name of the stage.
+     */
+    String getName();
+
+    /**
+     * Processes the output of the previous stage.
+     *
+     * @param input the output of the previous stage, or the frame for the first stage.
+     * @return the output of this stage.
+     */
+    O process(I input);
+
+}
@@ -0,0 +1,90 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.camera;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@code StageChain} is an ordered list of {@link Stage}s that starts with a {@link Frame}, in
+ * which the output of every stage is the input of the next. Chains are built one stage at a time,
+ * and the compiler checks that each stage accepts the output of the stage before it:
+ * <pre>
+ * StageChain&lt;BlobList&gt; chain = StageChain
+ *         .start(new ColorConversion(converter, ColorConversion.Format.HSV))
+ *         .then(new ColorThreshold(min, max))
+ *         .then(new BlobDetector(50, 10));
+ * </pre>
+ * A chain never changes once it is built; adding a stage creates a new chain.
+ *
+ * @param <O> the type of the output of the last stage.
+ */
+public class StageChain<O> {
+
+    /**
+     * The stages of the chain, in order.
+     */
+    private final List<Stage<Object, Object>> stages;
+
+    /**
+     * Constructs a chain of the given stages.
+     *
+     * @param stages the stages of the chain, in order.
+     */
+    private StageChain(List<Stage<Object, Object>> stages) {
+        this.stages = Collections.unmodifiableList(stages);
+    }
+
+    /**
+     * Starts a chain with a stage that processes frames.
+     *
+     * @param first the first stage.
+     * @param <O> the type of the output of the first stage.
+     * @return a chain with the one stage.
+     */
+    @SuppressWarnings("unchecked")
+    public static <O> StageChain<O> start(Stage<Frame, O> first) {
+        List<Stage<Object, Object>> stages = new ArrayList<Stage<Object, Object>>();
+        stages.add((Stage<Object, Object>) (Stage<?, ?>) first);
+        return new StageChain<O>(stages);
+    }
+
+    /**
+     * Creates a chain with another stage added to the end of this one.
+     *
+     * @param next the stage to add, which processes the output of the last stage of this chain.
+     * @param <N> the type of the output of the new stage.
+     * @return the longer chain.
+     */
+    @SuppressWarnings("unchecked")
+    public <N> StageChain<N> then(Stage<? super O, N> next) {
+        List<Stage<Object, Object>> longer = new ArrayList<Stage<Object, Object>>(this.stages);
+        longer.add((Stage<Object, Object>) (Stage<?, ?>) next);
+        return new StageChain<N>(longer);
+    }
+
+    /**
+     * Gets the stages of the chain.
+     *
+     * @return the stages of the chain, in order.
+     */
+    List<Stage<Object, Object>> getStages() {
+        return this.stages;
+    }
+
+}
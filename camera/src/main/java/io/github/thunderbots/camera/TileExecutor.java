@@ -0,0 +1,295 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.camera;
+
+/**
+ * A {@code TileExecutor} splits the rows of an image into tiles, and processes the tiles on a
+ * fixed set of worker threads. The calling thread processes tiles as well, and returns once every
+ * tile is done. The worker threads are started once and then reused, and running a task allocates
+ * nothing, so an executor can be used for every frame of a camera preview.
+ * <p>
+ * There are several tiles for each thread, so that a thread that is slowed down by the system
+ * does not hold up the whole image. Only one task is run at a time; tasks that are submitted from
+ * several threads at once are run one after another.
+ */
+public class TileExecutor {
+
+    /**
+     * The number of tiles that the rows are split into for each thread.
+     */
+    private static final int TILES_PER_THREAD = 4;
+
+    /**
+     * The smallest number of rows in a tile. Smaller tiles would cost more to hand out than to
+     * process.
+     */
+    private static final int MIN_TILE_ROWS = 8;
+
+    /**
+     * The worker threads.
+     */
+    private final Thread[] workers;
+
+    /**
+     * The lock that guards the current task, and that the worker threads wait on.
+     */
+    private final Object lock;
+
+    /**
+     * The lock that is held while a task is being run, so that only one task runs at a time.
+     */
+    private final Object runLock;
+
+    /**
+     * The task that is being run, or {@code null} if the workers are idle.
+     */
+    private RowTask task;
+
+    /**
+     * The number of rows in the image that the current task is processing.
+     */
+    private int rows;
+
+    /**
+     * The number of rows in each tile of the current task.
+     */
+    private int tileRows;
+
+    /**
+     * The number of tiles in the current task.
+     */
+    private int tileCount;
+
+    /**
+     * The number of tiles of the current task that have been handed out.
+     */
+    private int nextTile;
+
+    /**
+     * The number of tiles of the current task that are done.
+     */
+    private int finishedTiles;
+
+    /**
+     * The number of tasks that have been started. A worker only takes tiles from the task it
+     * was woken for.
+     */
+    private long generation;
+
+    /**
+     * The first exception that was thrown by a tile of the current task, or {@code null} if none
+     * was thrown.
+     */
+    private Throwable failure;
+
+    /**
+     * Whether the executor has been shut down.
+     */
+    private boolean shutdown;
+
+    /**
+     * Constructs an executor that uses every available processor.
+     */
+    public TileExecutor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs an executor that runs tasks on the given number of threads, counting the
+     * calling thread. An executor with one thread runs every task on the calling thread.
+     *
+     * @param threads the number of threads, which must be at least {@code 1}.
+     */
+    public TileExecutor(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("A tile executor needs at least 1 thread");
+        }
+        this.lock = new Object();
+        this.runLock = new Object();
+        this.workers = new Thread[threads - 1];
+        for (int i = 0; i < this.workers.length; i++) {
+            this.workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    TileExecutor.this.work();
+                }
+            }, "Tile worker " + (i + 1));
+            this.workers[i].setDaemon(true);
+            this.workers[i].start();
+        }
+    }
+
+    /**
+     * Gets the number of threads that tasks are run on, counting the calling thread.
+     *
+     * @return the number of threads.
+     */
+    public int getThreadCount() {
+        return this.workers.length + 1;
+    }
+
+    /**
+     * Runs a task over every row of an image, and waits for it to finish. The task is called once
+     * for each tile, with a range of rows that no other call is given.
+     *
+     * @param task the task to run.
+     * @param rows the number of rows in the image.
+     * @throws RuntimeException if the task threw an exception for any tile. The other tiles are
+     * still finished first.
+     */
+    public void execute(RowTask task, int rows) {
+        int tiles = Math.min(this.getThreadCount() * TILES_PER_THREAD,
+                Math.max(1, rows / MIN_TILE_ROWS));
+        if (tiles <= 1 || this.workers.length == 0) {
+            task.run(0, rows);
+            return;
+        }
+        synchronized (this.runLock) {
+            long current;
+            synchronized (this.lock) {
+                if (this.shutdown) {
+                    throw new IllegalStateException("The tile executor has been shut down");
+                }
+                this.task = task;
+                this.rows = rows;
+                this.tileRows = (rows + tiles - 1) / tiles;
+                this.tileCount = (rows + this.tileRows - 1) / this.tileRows;
+                this.nextTile = 0;
+                this.finishedTiles = 0;
+                this.failure = null;
+                current = ++this.generation;
+                this.lock.notifyAll();
+            }
+            this.runTiles(task, current);
+            Throwable thrown;
+            synchronized (this.lock) {
+                boolean interrupted = false;
+                while (this.finishedTiles < this.tileCount) {
+                    try {
+                        this.lock.wait();
+                    } catch (InterruptedException e) {
+                        // the tiles that are being run cannot be abandoned
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+                this.task = null;
+                thrown = this.failure;
+                this.failure = null;
+            }
+            if (thrown instanceof RuntimeException) {
+                throw (RuntimeException) thrown;
+            } else if (thrown instanceof Error) {
+                throw (Error) thrown;
+            }
+        }
+    }
+
+    /**
+     * Stops the worker threads. Tasks that are run after this will fail.
+     */
+    public void shutdown() {
+        synchronized (this.lock) {
+            this.shutdown = true;
+            this.lock.notifyAll();
+        }
+    }
+
+    /**
+     * Waits for tasks, and runs their tiles, until the executor is shut down.
+     */
+    private void work() {
+        long seen = 0;
+        while (true) {
+            RowTask current;
+            long currentGeneration;
+            synchronized (this.lock) {
+                while (!this.shutdown && (this.task == null || this.generation == seen)) {
+                    try {
+                        this.lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (this.shutdown) {
+                    return;
+                }
+                current = this.task;
+                currentGeneration = this.generation;
+                seen = currentGeneration;
+            }
+            this.runTiles(current, currentGeneration);
+        }
+    }
+
+    /**
+     * Runs tiles of a task until none are left.
+     *
+     * @param current the task to run.
+     * @param taskGeneration the generation of the task.
+     */
+    private void runTiles(RowTask current, long taskGeneration) {
+        while (true) {
+            int start;
+            int end;
+            synchronized (this.lock) {
+                if (this.generation != taskGeneration || this.nextTile >= this.tileCount) {
+                    return;
+                }
+                start = this.nextTile * this.tileRows;
+                end = Math.min(this.rows, start + this.tileRows);
+                this.nextTile++;
+            }
+            Throwable thrown = null;
+            try {
+                current.run(start, end);
+            } catch (RuntimeException e) {
+                thrown = e;
+            } catch (Error e) {
+                thrown = e;
+            }
+            synchronized (this.lock) {
+                if (thrown != null && this.failure == null) {
+                    this.failure = thrown;
+                }
+                this.finishedTiles++;
+                if (this.finishedTiles == this.tileCount) {
+                    this.lock.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * A {@code RowTask} processes a range of rows of an image. It is called from several threads
+     * at once, with ranges that do not overlap, so it must only write to the rows it is given.
+     */
+    public interface RowTask {
+
+        /**
+         * Processes a range of rows.
+         *
+         * @param startRow the first row to process.
+         * @param endRow the row after the last row to process.
+         */
+        void run(int startRow, int endRow);
+
+    }
+
+}
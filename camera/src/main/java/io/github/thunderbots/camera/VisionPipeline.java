@@ -0,0 +1,340 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.camera;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@code VisionPipeline} runs a {@link StageChain} over the frames of a {@link FrameSource}, on
+ * its own thread, so that the op mode loop never waits for an image to be processed. The op mode
+ * reads the result of the newest processed frame with {@link #getLatest()}.
+ * <p>
+ * Results are published through three reusable {@link PipelineResult}s: the pipeline writes one,
+ * the reader holds another, and the third is the newest complete result. Publishing and reading
+ * each swap a result with the third one in a single atomic step, so the reader never sees a
+ * result that is partly written, and neither side ever waits for the other or allocates.
+ * <p>
+ * The time that each stage takes is recorded in a {@link LatencyHistogram}, so the stage that
+ * uses up the frame budget can be found with {@link #getTimingReport()}.
+ *
+ * @param <R> the type of the output of the pipeline.
+ */
+public class VisionPipeline<R extends Copyable<R>> {
+
+    /**
+     * The longest time that the pipeline thread waits for a frame before checking whether it has
+     * been stopped, in milliseconds.
+     */
+    private static final long FRAME_TIMEOUT = 100;
+
+    /**
+     * The bit of {@link #shared} that is set when the shared result is newer than the one the
+     * reader holds.
+     */
+    private static final int FRESH = 4;
+
+    /**
+     * The mask of the bits of {@link #shared} that hold the index of the shared result.
+     */
+    private static final int INDEX = 3;
+
+    /**
+     * The source of the frames.
+     */
+    private final FrameSource source;
+
+    /**
+     * The stages of the pipeline, in order.
+     */
+    private final List<Stage<Object, Object>> stages;
+
+    /**
+     * The time taken by each stage.
+     */
+    private final LatencyHistogram[] stageTimes;
+
+    /**
+     * The time taken by the whole pipeline for each frame.
+     */
+    private final LatencyHistogram totalTime;
+
+    /**
+     * The three results that are passed between the pipeline and the reader.
+     */
+    private final PipelineResult<R>[] results;
+
+    /**
+     * The index of the shared result, with {@link #FRESH} set if the pipeline has published it
+     * since the reader last took it.
+     */
+    private final AtomicInteger shared;
+
+    /**
+     * The index of the result that the pipeline writes next. This is only used by the pipeline
+     * thread.
+     */
+    private int writing;
+
+    /**
+     * The index of the result that the reader holds.
+     */
+    private int reading;
+
+    /**
+     * Whether the reader holds a result that has been written.
+     */
+    private boolean hasResult;
+
+    /**
+     * The number of frames that a stage failed to process.
+     */
+    private volatile long errorCount;
+
+    /**
+     * The exception from the most recent frame that a stage failed to process, or {@code null}.
+     */
+    private volatile RuntimeException lastError;
+
+    /**
+     * The thread that runs the pipeline, or {@code null} if it is not running.
+     */
+    private Thread thread;
+
+    /**
+     * Constructs a pipeline that runs the given stages over the frames of the given source.
+     *
+     * @param source the source of the frames.
+     * @param chain the stages to run.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public VisionPipeline(FrameSource source, StageChain<R> chain) {
+        this.source = source;
+        this.stages = chain.getStages();
+        this.stageTimes = new LatencyHistogram[this.stages.size()];
+        for (int i = 0; i < this.stageTimes.length; i++) {
+            this.stageTimes[i] = new LatencyHistogram();
+        }
+        this.totalTime = new LatencyHistogram();
+        this.results = new PipelineResult[3];
+        for (int i = 0; i < this.results.length; i++) {
+            this.results[i] = new PipelineResult<R>();
+        }
+        this.writing = 0;
+        this.reading = 1;
+        this.shared = new AtomicInteger(2);
+    }
+
+    /**
+     * Starts processing frames on a new thread. Nothing happens if the pipeline is already
+     * running.
+     */
+    public synchronized void start() {
+        if (this.thread != null) {
+            return;
+        }
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                VisionPipeline.this.runLoop();
+            }
+        }, "Vision pipeline");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Stops processing frames, and waits for the frame that is being processed to finish.
+     *
+     * @throws InterruptedException if the calling thread is interrupted while waiting.
+     */
+    public void stop() throws InterruptedException {
+        Thread running;
+        synchronized (this) {
+            running = this.thread;
+            this.thread = null;
+        }
+        if (running != null) {
+            running.interrupt();
+            running.join();
+        }
+    }
+
+    /**
+     * Processes frames until the pipeline thread is interrupted.
+     */
+    private void runLoop() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Frame frame = this.source.acquire(FRAME_TIMEOUT, TimeUnit.MILLISECONDS);
+                if (frame != null) {
+                    try {
+                        this.process(frame);
+                    } finally {
+                        this.source.release(frame);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // the pipeline was stopped
+        }
+    }
+
+    /**
+     * Runs every stage on one frame, and publishes the result. If a stage fails, the frame is
+     * skipped, and the error is recorded. This is called by the pipeline thread for every frame
+     * it acquires; it may also be called directly, to process frames on the calling thread, as
+     * long as the pipeline has not been started.
+     *
+     * @param frame the frame to process.
+     */
+    @SuppressWarnings("unchecked")
+    public void process(Frame frame) {
+        long start = System.nanoTime();
+        Object value = frame;
+        try {
+            long stageStart = start;
+            for (int i = 0; i < this.stageTimes.length; i++) {
+                value = this.stages.get(i).process(value);
+                long stageEnd = System.nanoTime();
+                this.stageTimes[i].record(stageEnd - stageStart);
+                stageStart = stageEnd;
+            }
+        } catch (RuntimeException e) {
+            this.errorCount++;
+            this.lastError = e;
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        this.results[this.writing].set((R) value, frame, elapsed);
+        this.writing = this.shared.getAndSet(this.writing | FRESH) & INDEX;
+        this.totalTime.record(elapsed);
+    }
+
+    /**
+     * Gets the result of the newest frame that has been processed. The returned result is owned
+     * by the pipeline, and stays valid until the next call to this method, which may reuse it.
+     * Only one thread should read results.
+     *
+     * @return the newest result, or {@code null} if no frame has been processed yet.
+     */
+    public synchronized PipelineResult<R> getLatest() {
+        if ((this.shared.get() & FRESH) != 0) {
+            this.reading = this.shared.getAndSet(this.reading) & INDEX;
+            this.hasResult = true;
+        }
+        return this.hasResult ? this.results[this.reading] : null;
+    }
+
+    /**
+     * Gets the number of stages in the pipeline.
+     *
+     * @return the number of stages.
+     */
+    public int getStageCount() {
+        return this.stages.size();
+    }
+
+    /**
+     * Gets the name of a stage.
+     *
+     * @param stage the index of the stage.
+     * @return the name of the stage.
+     */
+    public String getStageName(int stage) {
+        return this.stages.get(stage).getName();
+    }
+
+    /**
+     * Gets the time taken by a stage for each frame.
+     *
+     * @param stage the index of the stage.
+     * @return the histogram of the stage's times, in nanoseconds.
+     */
+    public LatencyHistogram getStageTimes(int stage) {
+        return this.stageTimes[stage];
+    }
+
+    /**
+     * Gets the time taken by the whole pipeline for each frame that was published.
+     *
+     * @return the histogram of the pipeline's times, in nanoseconds.
+     */
+    public LatencyHistogram getTotalTimes() {
+        return this.totalTime;
+    }
+
+    /**
+     * Gets the number of frames that a stage failed to process. These frames were skipped.
+     *
+     * @return the number of failed frames.
+     */
+    public long getErrorCount() {
+        return this.errorCount;
+    }
+
+    /**
+     * Gets the exception from the most recent frame that a stage failed to process.
+     *
+     * @return the most recent error, or {@code null} if no stage has failed.
+     */
+    public RuntimeException getLastError() {
+        return this.lastError;
+    }
+
+    /**
+     * Describes the time taken by each stage and by the whole pipeline, with one line for each,
+     * such as {@code "threshold: n=120 p50=1.02 ms p99=2.05 ms max=2.31 ms"}.
+     *
+     * @return the timing report.
+     */
+    public String getTimingReport() {
+        StringBuilder report = new StringBuilder();
+        for (int i = 0; i < this.stageTimes.length; i++) {
+            appendTimes(report, this.getStageName(i), this.stageTimes[i]);
+        }
+        appendTimes(report, "total", this.totalTime);
+        return report.toString();
+    }
+
+    /**
+     * Adds one line of the timing report.
+     *
+     * @param report the report to add to.
+     * @param name the name of the line.
+     * @param times the times to describe.
+     */
+    private static void appendTimes(StringBuilder report, String name, LatencyHistogram times) {
+        report.append(name).append(": n=").append(times.getCount())
+                .append(" p50=").append(toMillis(times.getPercentile(0.5)))
+                .append(" ms p99=").append(toMillis(times.getPercentile(0.99)))
+                .append(" ms max=").append(toMillis(times.getMax())).append(" ms\n");
+    }
+
+    /**
+     * Formats a time in milliseconds, with two decimal places.
+     *
+     * @param nanos the time, in nanoseconds.
+     * @return the formatted time.
+     */
+    private static String toMillis(long nanos) {
+        return String.format(Locale.US, "%.2f", nanos / 1e6);
+    }
+
+}
@@ -0,0 +1,224 @@
+/* Copyright (C) 2015-2016 Thunderbots Robotics
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.thunderbots.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import io.github.thunderbots.annotation.Active;
+import io.github.thunderbots.annotation.OpMode;
+
+/**
+ * {@code OpModeProcessor} is an annotation processor that writes an op mode manifest into every
+ * JAR file that is compiled with it. The manifest lists every op mode class in the JAR file, with
+ * its name and whether it is active, so that the robot controller can register the op modes
+ * without reading any class files, loading any classes, or reading any annotations.
+ * <p>
+ * The manifest is a text resource at {@link #MANIFEST_PATH}. Its first line is
+ * {@link #HEADER}, and every following line describes one op mode with three fields, separated by
+ * tabs: the binary name of the class, the name of the op mode, and {@code true} if the op mode
+ * is active or {@code false} otherwise. This is the format that the robot controller's
+ * {@code OpModeManifest} reads, so the two must be changed together.
+ * <p>
+ * A class is listed if it extends {@code com.qualcomm.robotcore.eventloop.opmode.OpMode} and can
+ * be instantiated through a public no-arg constructor, which is the same rule that the robot
+ * controller uses when it scans a JAR file itself. Every class that is compiled is examined,
+ * whether or not it is annotated, since an op mode without an {@code OpMode} annotation is
+ * still registered under its simple name.
+ */
+@SupportedAnnotationTypes("*")
+public class OpModeProcessor extends AbstractProcessor {
+
+    /**
+     * The path of the manifest inside the JAR file.
+     */
+    public static final String MANIFEST_PATH = "META-INF/thunderbots/opmodes";
+
+    /**
+     * The first line of every manifest. This should be changed whenever the format of the
+     * manifest changes, so that the robot controller ignores manifests it cannot read.
+     */
+    public static final String HEADER = "# op mode manifest 1";
+
+    /**
+     * The binary name of the class that every op mode extends.
+     */
+    private static final String OP_MODE_CLASS = "com.qualcomm.robotcore.eventloop.opmode.OpMode";
+
+    /**
+     * The string that separates the fields on each line of the manifest.
+     */
+    private static final String SEPARATOR = "\t";
+
+    /**
+     * The manifest lines of the op modes that have been found in every round so far.
+     */
+    private final List<String> lines = new ArrayList<String>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement opModeElement = this.processingEnv.getElementUtils()
+                .getTypeElement(OP_MODE_CLASS);
+        if (opModeElement == null) {
+            if (roundEnv.processingOver()) {
+                this.processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                        OP_MODE_CLASS + " is not on the class path, so no op mode manifest will"
+                        + " be written");
+            }
+            return false;
+        }
+        TypeMirror opModeType = this.processingEnv.getTypeUtils()
+                .erasure(opModeElement.asType());
+        for (TypeElement type : ElementFilter.typesIn(roundEnv.getRootElements())) {
+            this.addOpModes(type, opModeType);
+        }
+        if (roundEnv.processingOver()) {
+            this.writeManifest();
+        }
+        // other processors may also be interested in the annotations
+        return false;
+    }
+
+    /**
+     * Adds the given class to the manifest if it is an op mode, and then examines its member
+     * classes in the same way.
+     *
+     * @param type the class to examine.
+     * @param opModeType the erased type of the op mode class.
+     */
+    private void addOpModes(TypeElement type, TypeMirror opModeType) {
+        if (this.isOpMode(type, opModeType)) {
+            String className = this.processingEnv.getElementUtils().getBinaryName(type)
+                    .toString();
+            this.lines.add(className + SEPARATOR + getOpModeName(type) + SEPARATOR
+                    + (type.getAnnotation(Active.class) != null));
+        }
+        for (TypeElement member : ElementFilter.typesIn(type.getEnclosedElements())) {
+            this.addOpModes(member, opModeType);
+        }
+    }
+
+    /**
+     * Determines if the given class is an op mode that the robot controller can instantiate.
+     *
+     * @param type the class to examine.
+     * @param opModeType the erased type of the op mode class.
+     * @return {@code true} if the class is an instantiable op mode, or {@code false} otherwise.
+     */
+    private boolean isOpMode(TypeElement type, TypeMirror opModeType) {
+        Set<Modifier> modifiers = type.getModifiers();
+        if (type.getKind() != ElementKind.CLASS || !modifiers.contains(Modifier.PUBLIC)
+                || modifiers.contains(Modifier.ABSTRACT)) {
+            return false;
+        }
+        if (type.getEnclosingElement().getKind() != ElementKind.PACKAGE
+                && !modifiers.contains(Modifier.STATIC)) {
+            return false;
+        }
+        if (!hasPublicNoArgConstructor(type)) {
+            return false;
+        }
+        TypeMirror erased = this.processingEnv.getTypeUtils().erasure(type.asType());
+        return this.processingEnv.getTypeUtils().isSubtype(erased, opModeType);
+    }
+
+    /**
+     * Determines if the given class has a public constructor that takes no arguments. A class
+     * that declares no constructors is given one by the compiler, and it appears here as well.
+     *
+     * @param type the class to examine.
+     * @return {@code true} if the class has a public no-arg constructor, or {@code false}
+     * otherwise.
+     */
+    private static boolean hasPublicNoArgConstructor(TypeElement type) {
+        for (ExecutableElement constructor
+                : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getModifiers().contains(Modifier.PUBLIC)
+                    && constructor.getParameters().isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Determines the name of an op mode, as specified by its {@code OpMode} annotation. If no
+     * annotation is present, or the name is not defined in the annotation, then the simple name of
+     * the class is returned instead.
+     *
+     * @param type the op mode to get the name of.
+     * @return the name of the op mode.
+     */
+    private static String getOpModeName(Element type) {
+        OpMode annotation = type.getAnnotation(OpMode.class);
+        if (annotation != null && annotation.name() != null && !annotation.name().equals("")) {
+            return annotation.name();
+        }
+        return type.getSimpleName().toString();
+    }
+
+    /**
+     * Writes the manifest to the class output, which is packaged into the JAR file along with the
+     * compiled classes. A manifest is written even if no op modes were found, so that the robot
+     * controller knows that the JAR file does not have to be scanned.
+     */
+    private void writeManifest() {
+        try {
+            FileObject file = this.processingEnv.getFiler().createResource(
+                    StandardLocation.CLASS_OUTPUT, "", MANIFEST_PATH);
+            Writer out = file.openWriter();
+            try {
+                PrintWriter writer = new PrintWriter(out);
+                writer.println(HEADER);
+                for (String line : this.lines) {
+                    writer.println(line);
+                }
+                writer.flush();
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            this.processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "The op mode manifest cannot be written: " + e.getMessage());
+        }
+    }
+
+}